@@ -0,0 +1,496 @@
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import tester.*;
+
+//to represent how hard a board is, measured without playing it
+//Safe cells with no neighboring mines are zeros, and each 8-connected group of zeros
+//is an opening: one click on it uncovers the whole group and the numbers around it.
+//Numbers with no zero around them are isolated, and each needs a click of its own, so
+//the fewest clicks that clear the board, its 3BV, is the number of openings plus the
+//number of isolated numbers. Touching isolated numbers form islands.
+//Everything is found in one sweep over the cells with a union-find over cell indices:
+//each zero is joined with the zeros before it in the sweep, and each isolated number
+//with the isolated numbers before it, so no reveal is ever simulated. The sweep only
+//asks the board for neighbors, so it rates boards of any topology.
+class BoardAnalytics {
+  // what each cell is
+  static final byte MINE = 0;
+  static final byte ZERO = 1;
+  // a number next to a zero, which some opening uncovers
+  static final byte BORDER = 2;
+  static final byte ISOLATED = 3;
+
+  int rows;
+  int cols;
+  int mines;
+  int bbbv;
+  int openings;
+  // the number of cells each opening uncovers, counting the numbers around it
+  IntList openingSizes;
+  int isolatedNumbers;
+  int islands;
+  // numberCounts[n] is how many safe cells have n neighboring mines
+  int[] numberCounts;
+
+  BoardAnalytics(Board board) {
+    board.finishCounts();
+    this.rows = board.rows;
+    this.cols = board.cols;
+    this.mines = board.mines.size();
+    this.numberCounts = new int[board.maxNeighbors() + 1];
+    this.openingSizes = new IntList();
+    byte[] kinds = new byte[board.size()];
+    int[] parent = new int[board.size()];
+    int[] around = new int[board.maxNeighbors()];
+    for (int idx = 0; idx < kinds.length; idx++) {
+      int n = board.neighbors(idx, around);
+      byte kind = BoardAnalytics.kind(board, idx, around, n);
+      kinds[idx] = kind;
+      parent[idx] = idx;
+      if (kind != MINE) {
+        this.numberCounts[board.nearMines(idx)]++;
+      }
+      if (kind == ZERO || kind == ISOLATED) {
+        // only the neighbors already swept have their kind
+        for (int k = 0; k < n; k++) {
+          if (around[k] < idx && kinds[around[k]] == kind) {
+            BoardAnalytics.union(parent, idx, around[k]);
+          }
+        }
+      }
+    }
+    this.count(board, kinds, parent);
+    this.bbbv = this.openings + this.isolatedNumbers;
+  }
+
+  // what the cell at row and col of board is
+  static byte kind(Board board, int row, int col) {
+    int[] around = new int[board.maxNeighbors()];
+    int idx = board.index(row, col);
+    return BoardAnalytics.kind(board, idx, around, board.neighbors(idx, around));
+  }
+
+  // what the cell at idx of board is, given its n neighbors in around
+  static byte kind(Board board, int idx, int[] around, int n) {
+    if (board.isMine(idx)) {
+      return MINE;
+    }
+    if (board.nearMines(idx) == 0) {
+      return ZERO;
+    }
+    for (int k = 0; k < n; k++) {
+      if ((board.cells[around[k]] & (Board.MINE | Board.NEAR_MINES)) == 0) {
+        return BORDER;
+      }
+    }
+    return ISOLATED;
+  }
+
+  // the representative of the set holding idx
+  // EFFECT: halves the path from idx to its representative
+  static int find(int[] parent, int idx) {
+    int at = idx;
+    while (parent[at] != at) {
+      parent[at] = parent[parent[at]];
+      at = parent[at];
+    }
+    return at;
+  }
+
+  // EFFECT: joins the sets holding a and b, under the smaller representative
+  static void union(int[] parent, int a, int b) {
+    int rootA = BoardAnalytics.find(parent, a);
+    int rootB = BoardAnalytics.find(parent, b);
+    if (rootA < rootB) {
+      parent[rootB] = rootA;
+    }
+    else if (rootB < rootA) {
+      parent[rootA] = rootB;
+    }
+  }
+
+  // EFFECT: counts the openings, their sizes, the isolated numbers and the islands
+  // Sets are joined under their smallest cell, which the sweep reaches first, so the
+  // openings are listed in the order their first cells appear
+  void count(Board board, byte[] kinds, int[] parent) {
+    // the size of each opening, kept at its representative
+    int[] sizes = new int[board.size()];
+    for (int idx = 0; idx < kinds.length; idx++) {
+      if (kinds[idx] == ZERO) {
+        sizes[BoardAnalytics.find(parent, idx)]++;
+      }
+      else if (kinds[idx] == ISOLATED) {
+        this.isolatedNumbers++;
+        if (BoardAnalytics.find(parent, idx) == idx) {
+          this.islands++;
+        }
+      }
+    }
+    // each number around an opening is uncovered by it once, however many of the
+    // opening's zeros it touches
+    int[] around = new int[board.maxNeighbors()];
+    int[] roots = new int[board.maxNeighbors()];
+    for (int idx = 0; idx < kinds.length; idx++) {
+      if (kinds[idx] == BORDER) {
+        int n = board.neighbors(idx, around);
+        int distinct = 0;
+        for (int k = 0; k < n; k++) {
+          if (kinds[around[k]] == ZERO) {
+            int root = BoardAnalytics.find(parent, around[k]);
+            boolean seen = false;
+            for (int j = 0; j < distinct; j++) {
+              seen = seen || roots[j] == root;
+            }
+            if (!seen) {
+              roots[distinct] = root;
+              distinct++;
+              sizes[root]++;
+            }
+          }
+        }
+      }
+    }
+    for (int idx = 0; idx < kinds.length; idx++) {
+      if (kinds[idx] == ZERO && parent[idx] == idx) {
+        this.openings++;
+        this.openingSizes.add(sizes[idx]);
+      }
+    }
+  }
+
+  // the number of cells the largest opening uncovers, or 0 if there are none
+  int largestOpening() {
+    int largest = 0;
+    for (int i = 0; i < this.openingSizes.size(); i++) {
+      largest = Math.max(largest, this.openingSizes.get(i));
+    }
+    return largest;
+  }
+
+  // the fraction of the cells that are mines
+  double density() {
+    return (double) this.mines / (this.rows * this.cols);
+  }
+}
+
+//to represent the combined measures of many boards
+class DifficultyStats {
+  long boards;
+  long bbbv;
+  long openings;
+  long isolatedNumbers;
+  long islands;
+  // bbbvCounts[v] is how many boards had a 3BV of v
+  long[] bbbvCounts;
+  // numberCounts[n] is how many safe cells had n neighboring mines
+  long[] numberCounts;
+  // the wall clock time the boards took, filled in by the runner
+  long nanos;
+
+  DifficultyStats() {
+    this.bbbvCounts = new long[0];
+    this.numberCounts = new long[Board.NEAR_MINES + 1];
+  }
+
+  // EFFECT: adds the measures of one board to these statistics
+  void add(BoardAnalytics board) {
+    this.boards++;
+    this.bbbv += board.bbbv;
+    this.openings += board.openings;
+    this.isolatedNumbers += board.isolatedNumbers;
+    this.islands += board.islands;
+    if (board.bbbv >= this.bbbvCounts.length) {
+      this.bbbvCounts = Arrays.copyOf(this.bbbvCounts, board.bbbv + 1);
+    }
+    this.bbbvCounts[board.bbbv]++;
+    for (int n = 0; n < board.numberCounts.length; n++) {
+      this.numberCounts[n] += board.numberCounts[n];
+    }
+  }
+
+  // EFFECT: adds the measures of another batch of boards to these statistics
+  void combine(DifficultyStats other) {
+    this.boards += other.boards;
+    this.bbbv += other.bbbv;
+    this.openings += other.openings;
+    this.isolatedNumbers += other.isolatedNumbers;
+    this.islands += other.islands;
+    if (other.bbbvCounts.length > this.bbbvCounts.length) {
+      this.bbbvCounts = Arrays.copyOf(this.bbbvCounts, other.bbbvCounts.length);
+    }
+    for (int v = 0; v < other.bbbvCounts.length; v++) {
+      this.bbbvCounts[v] += other.bbbvCounts[v];
+    }
+    for (int n = 0; n < this.numberCounts.length; n++) {
+      this.numberCounts[n] += other.numberCounts[n];
+    }
+  }
+
+  // the average 3BV of a board
+  double meanBbbv() {
+    if (this.boards == 0) {
+      return 0;
+    }
+    return (double) this.bbbv / this.boards;
+  }
+
+  // the smallest 3BV that at least the given fraction of boards are no harder than,
+  // or 0 if there are no boards
+  int bbbvPercentile(double fraction) {
+    long rank = Math.max((long) Math.ceil(fraction * this.boards), 1);
+    long seen = 0;
+    for (int v = 0; v < this.bbbvCounts.length; v++) {
+      seen += this.bbbvCounts[v];
+      if (seen >= rank) {
+        return v;
+      }
+    }
+    return 0;
+  }
+
+  // the number of boards rated per second of wall clock time
+  double boardsPerSecond() {
+    if (this.nanos == 0) {
+      return 0;
+    }
+    return this.boards * 1e9 / this.nanos;
+  }
+
+  // a one line summary of these statistics
+  public String toString() {
+    return String.format("%d boards, 3BV mean %.2f p10 %d p50 %d p90 %d, %.2f openings, "
+        + "%.2f isolated numbers, %.0f boards/s", this.boards, this.meanBbbv(),
+        this.bbbvPercentile(0.1), this.bbbvPercentile(0.5), this.bbbvPercentile(0.9),
+        (double) this.openings / Math.max(this.boards, 1),
+        (double) this.isolatedNumbers / Math.max(this.boards, 1), this.boardsPerSecond());
+  }
+}
+
+//to represent rating the boards numbered firstBoard up to but not including lastBoard
+//ranges that are too big are split in half and rated in parallel
+class AnalyticsTask extends RecursiveTask<DifficultyStats> {
+  // ranges with at most this many boards are rated on one thread
+  static final int BOARDS_PER_TASK = 256;
+
+  AnalyticsRunner runner;
+  long firstBoard;
+  long lastBoard;
+
+  AnalyticsTask(AnalyticsRunner runner, long firstBoard, long lastBoard) {
+    this.runner = runner;
+    this.firstBoard = firstBoard;
+    this.lastBoard = lastBoard;
+  }
+
+  // rates this task's boards and combines their measures
+  protected DifficultyStats compute() {
+    if (this.lastBoard - this.firstBoard <= BOARDS_PER_TASK) {
+      DifficultyStats stats = new DifficultyStats();
+      for (long n = this.firstBoard; n < this.lastBoard; n++) {
+        stats.add(this.runner.rate(n));
+      }
+      return stats;
+    }
+    long middle = this.firstBoard + (this.lastBoard - this.firstBoard) / 2;
+    AnalyticsTask left = new AnalyticsTask(this.runner, this.firstBoard, middle);
+    left.fork();
+    DifficultyStats stats = new AnalyticsTask(this.runner, middle, this.lastBoard).compute();
+    stats.combine(left.join());
+    return stats;
+  }
+}
+
+//to represent rating many seeded boards across every core, to calibrate difficulty
+//Board number n is the same board BatchRunner plays as game number n with the same
+//seed, so ratings can be set against how bots fare on the very same boards
+class AnalyticsRunner {
+  int rows;
+  int cols;
+  int numMines;
+  BatchRunner boards;
+
+  AnalyticsRunner(int rows, int cols, int numMines, long seed) {
+    this.rows = rows;
+    this.cols = cols;
+    this.numMines = numMines;
+    this.boards = new BatchRunner(rows, cols, numMines, seed, RandomStrategy::new);
+  }
+
+  // the measures of board number n
+  BoardAnalytics rate(long n) {
+    Game game = new Game(this.rows, this.cols, this.numMines,
+        new Random(this.boards.boardSeed(n)));
+    return new BoardAnalytics(game.board);
+  }
+
+  // rates the given number of boards in parallel and reports their combined measures
+  DifficultyStats run(long boards) {
+    long start = System.nanoTime();
+    DifficultyStats stats = ForkJoinPool.commonPool().invoke(new AnalyticsTask(this, 0,
+        boards));
+    stats.nanos = System.nanoTime() - start;
+    return stats;
+  }
+
+  // rates boards from the command line:
+  // java AnalyticsRunner rows cols mines boards [seed]
+  public static void main(String[] args) {
+    if (args.length < 4) {
+      System.out.println("usage: java AnalyticsRunner rows cols mines boards [seed]");
+      return;
+    }
+    long seed = 0;
+    if (args.length > 4) {
+      seed = Long.parseLong(args[4]);
+    }
+    AnalyticsRunner runner = new AnalyticsRunner(Integer.parseInt(args[0]),
+        Integer.parseInt(args[1]), Integer.parseInt(args[2]), seed);
+    System.out.println(runner.run(Long.parseLong(args[3])));
+  }
+}
+
+//tests and examples for BoardAnalytics and AnalyticsRunner
+class ExamplesAnalytics {
+
+  // the 3x4 board, where X is a mine:
+  // . X . .
+  // . . . .
+  // X . . .
+  Board board3x4() {
+    Board board = new Board(3, 4);
+    board.placeMine(board.index(0, 1));
+    board.placeMine(board.index(2, 0));
+    board.computeCounts();
+    return board;
+  }
+
+  // the fewest clicks that clear game, found by playing it: every opening first, then
+  // every safe cell still covered
+  int playedClicks(Game game) {
+    Board board = game.board;
+    for (int idx = 0; idx < board.size(); idx++) {
+      if (!board.isMine(idx) && board.nearMines(idx) == 0 && !board.isUncovered(idx)) {
+        game.reveal(idx / board.cols, idx % board.cols);
+      }
+    }
+    for (int idx = 0; idx < board.size(); idx++) {
+      if (!board.isMine(idx) && !board.isUncovered(idx)) {
+        game.reveal(idx / board.cols, idx % board.cols);
+      }
+    }
+    return game.clicks;
+  }
+
+  // tests for the measures of a small board
+  void testSmallBoard(Tester t) {
+    Board board = this.board3x4();
+    t.checkExpect(BoardAnalytics.kind(board, 0, 0), BoardAnalytics.ISOLATED);
+    t.checkExpect(BoardAnalytics.kind(board, 0, 1), BoardAnalytics.MINE);
+    t.checkExpect(BoardAnalytics.kind(board, 0, 2), BoardAnalytics.BORDER);
+    t.checkExpect(BoardAnalytics.kind(board, 0, 3), BoardAnalytics.ZERO);
+    BoardAnalytics analytics = new BoardAnalytics(board);
+    t.checkExpect(analytics.openings, 1);
+    t.checkExpect(analytics.openingSizes.toArray(), new int[] { 8 });
+    t.checkExpect(analytics.isolatedNumbers, 2);
+    t.checkExpect(analytics.islands, 1);
+    t.checkExpect(analytics.bbbv, 3);
+    t.checkExpect(analytics.numberCounts, new int[] { 4, 4, 2, 0, 0, 0, 0, 0, 0 });
+    t.checkExpect(analytics.density(), 2.0 / 12);
+    t.checkExpect(this.playedClicks(new Game(board, 2)), 3);
+  }
+
+  // tests for union and find
+  void testUnionFind(Tester t) {
+    int[] parent = new int[] { 0, 1, 2, 3, 4 };
+    BoardAnalytics.union(parent, 3, 4);
+    BoardAnalytics.union(parent, 4, 1);
+    t.checkExpect(BoardAnalytics.find(parent, 3), 1);
+    t.checkExpect(BoardAnalytics.find(parent, 2), 2);
+    BoardAnalytics.union(parent, 1, 3);
+    t.checkExpect(BoardAnalytics.find(parent, 4), 1);
+  }
+
+  // tests that openings shaped like a U, which the sweep meets as two before it joins
+  // them, are counted once
+  void testJoinedOpening(Tester t) {
+    // . . . X . . .
+    // . . . X . . .
+    // . . . X . . .
+    // . . . . . . .
+    // . . . . . . .
+    Board board = new Board(5, 7);
+    for (int row = 0; row < 3; row++) {
+      board.placeMine(board.index(row, 3));
+    }
+    board.computeCounts();
+    BoardAnalytics analytics = new BoardAnalytics(board);
+    t.checkExpect(analytics.openings, 1);
+    t.checkExpect(analytics.openingSizes.toArray(), new int[] { 32 });
+    t.checkExpect(analytics.bbbv, 1);
+    // two openings apart share the numbers between them
+    Board apart = new Board(3, 7);
+    for (int row = 0; row < 3; row++) {
+      apart.placeMine(apart.index(row, 3));
+    }
+    apart.computeCounts();
+    BoardAnalytics split = new BoardAnalytics(apart);
+    t.checkExpect(split.openingSizes.toArray(), new int[] { 9, 9 });
+    t.checkExpect(split.bbbv, 2);
+  }
+
+  // tests that the 3BV is the number of clicks it takes to clear random boards
+  void testBbbv(Tester t) {
+    boolean matches = true;
+    Random rand = new Random(4);
+    for (int i = 0; i < 200; i++) {
+      int rows = 1 + rand.nextInt(20);
+      int cols = 1 + rand.nextInt(30);
+      Game game = new Game(rows, cols, rand.nextInt(rows * cols / 3 + 1), rand.nextLong());
+      BoardAnalytics analytics = new BoardAnalytics(game.board);
+      int sizes = 0;
+      for (int o = 0; o < analytics.openings; o++) {
+        sizes = Math.max(sizes, analytics.openingSizes.get(o));
+      }
+      if (analytics.bbbv != this.playedClicks(game) || !game.won()
+          || sizes != analytics.largestOpening()) {
+        matches = false;
+      }
+    }
+    t.checkExpect(matches, true);
+  }
+
+  // tests for DifficultyStats
+  void testDifficultyStats(Tester t) {
+    DifficultyStats stats = new DifficultyStats();
+    t.checkExpect(stats.meanBbbv(), 0.0);
+    t.checkExpect(stats.bbbvPercentile(0.5), 0);
+    stats.add(new BoardAnalytics(this.board3x4()));
+    DifficultyStats other = new DifficultyStats();
+    other.add(new BoardAnalytics(new Game(4, 4, 0, 1L).board));
+    stats.combine(other);
+    t.checkExpect(stats.boards, 2L);
+    t.checkExpect(stats.meanBbbv(), 2.0);
+    t.checkExpect(stats.bbbvCounts, new long[] { 0, 1, 0, 1 });
+    t.checkExpect(stats.bbbvPercentile(0.5), 1);
+    t.checkExpect(stats.bbbvPercentile(1.0), 3);
+    t.checkExpect(stats.numberCounts[0], 20L);
+  }
+
+  // tests for rating boards in parallel
+  void testAnalyticsRunner(Tester t) {
+    AnalyticsRunner runner = new AnalyticsRunner(16, 30, 99, 5);
+    t.checkExpect(runner.rate(7).bbbv, runner.rate(7).bbbv);
+    // board n is the board BatchRunner plays as game n
+    t.checkExpect(new BoardAnalytics(runner.boards.play(7).board).bbbv, runner.rate(7).bbbv);
+    DifficultyStats first = runner.run(2000);
+    DifficultyStats second = runner.run(2000);
+    t.checkExpect(first.boards, 2000L);
+    t.checkExpect(second.bbbv, first.bbbv);
+    t.checkExpect(second.bbbvCounts, first.bbbvCounts);
+    t.checkExpect(first.numberCounts[0] + first.numberCounts[1] > 0, true);
+    t.checkExpect(first.toString().startsWith("2000 boards"), true);
+  }
+}
@@ -0,0 +1,252 @@
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+
+import tester.*;
+
+//to represent a way of choosing moves in a game, such as a bot
+interface IStrategy {
+  // EFFECT: makes one move in game, a reveal or a flag
+  void move(Game game, Random rand);
+}
+
+//to represent a strategy that reveals a random covered cell without a flag
+class RandomStrategy implements IStrategy {
+
+  // EFFECT: reveals a random covered cell without a flag, if there is one
+  // a few random guesses are tried first, then the board is scanned from a random cell
+  public void move(Game game, Random rand) {
+    Board board = game.board;
+    for (int tries = 0; tries < 32; tries++) {
+      int idx = rand.nextInt(board.size());
+      if (this.canReveal(board, idx)) {
+        game.reveal(idx / board.cols, idx % board.cols);
+        return;
+      }
+    }
+    int start = rand.nextInt(board.size());
+    for (int i = 0; i < board.size(); i++) {
+      int idx = (start + i) % board.size();
+      if (this.canReveal(board, idx)) {
+        game.reveal(idx / board.cols, idx % board.cols);
+        return;
+      }
+    }
+  }
+
+  // is the cell at idx covered and without a flag?
+  boolean canReveal(Board board, int idx) {
+    return !board.isUncovered(idx) && !board.isMarked(idx);
+  }
+}
+
+//to represent the combined results of a batch of games
+class BatchStats {
+  long games;
+  long wins;
+  long clicks;
+  long cellsRevealed;
+  // the wall clock time the batch took, filled in by the runner
+  long nanos;
+
+  // EFFECT: adds the results of a finished game to these statistics
+  void add(Game game) {
+    this.games++;
+    if (game.won()) {
+      this.wins++;
+    }
+    this.clicks += game.clicks;
+    this.cellsRevealed += game.revealedSafe();
+  }
+
+  // EFFECT: adds the results of another batch to these statistics
+  void combine(BatchStats other) {
+    this.games += other.games;
+    this.wins += other.wins;
+    this.clicks += other.clicks;
+    this.cellsRevealed += other.cellsRevealed;
+  }
+
+  // the fraction of games won
+  double winRate() {
+    if (this.games == 0) {
+      return 0;
+    }
+    return (double) this.wins / this.games;
+  }
+
+  // the average number of clicks per game
+  double clicksPerGame() {
+    if (this.games == 0) {
+      return 0;
+    }
+    return (double) this.clicks / this.games;
+  }
+
+  // the number of safe cells revealed per second of wall clock time
+  double cellsPerSecond() {
+    if (this.nanos == 0) {
+      return 0;
+    }
+    return this.cellsRevealed * 1e9 / this.nanos;
+  }
+
+  // a one line summary of these statistics
+  public String toString() {
+    return String.format("%d games, win rate %.4f, %.2f clicks/game, %.0f cells/s", this.games,
+        this.winRate(), this.clicksPerGame(), this.cellsPerSecond());
+  }
+}
+
+//to represent playing the games numbered firstGame up to but not including lastGame
+//ranges that are too big are split in half and played in parallel
+class BatchTask extends RecursiveTask<BatchStats> {
+  // ranges with at most this many games are played on one thread
+  static final int GAMES_PER_TASK = 64;
+
+  BatchRunner runner;
+  long firstGame;
+  long lastGame;
+
+  BatchTask(BatchRunner runner, long firstGame, long lastGame) {
+    this.runner = runner;
+    this.firstGame = firstGame;
+    this.lastGame = lastGame;
+  }
+
+  // plays this task's games and combines their results
+  protected BatchStats compute() {
+    if (this.lastGame - this.firstGame <= GAMES_PER_TASK) {
+      BatchStats stats = new BatchStats();
+      for (long n = this.firstGame; n < this.lastGame; n++) {
+        stats.add(this.runner.play(n));
+      }
+      return stats;
+    }
+    long middle = this.firstGame + (this.lastGame - this.firstGame) / 2;
+    BatchTask left = new BatchTask(this.runner, this.firstGame, middle);
+    left.fork();
+    BatchStats stats = new BatchTask(this.runner, middle, this.lastGame).compute();
+    stats.combine(left.join());
+    return stats;
+  }
+}
+
+//to represent running many seeded games with one kind of strategy across every core
+//Game number n always gets the same board and the same strategy randomness, so a
+//batch gives the same results however its games are spread over threads
+class BatchRunner {
+  int rows;
+  int cols;
+  int numMines;
+  long seed;
+  Supplier<IStrategy> strategies;
+
+  BatchRunner(int rows, int cols, int numMines, long seed, Supplier<IStrategy> strategies) {
+    this.rows = rows;
+    this.cols = cols;
+    this.numMines = numMines;
+    this.seed = seed;
+    this.strategies = strategies;
+  }
+
+  // the seed for the board of game number n
+  long boardSeed(long n) {
+    return this.seed ^ (n * 0x9E3779B97F4A7C15L);
+  }
+
+  // plays game number n with a fresh strategy until it is over, or until the
+  // strategy stops making moves
+  Game play(long n) {
+    Game game = new Game(this.rows, this.cols, this.numMines, new Random(this.boardSeed(n)));
+    Random rand = new Random(~this.boardSeed(n));
+    IStrategy strategy = this.strategies.get();
+    while (!game.isOver()) {
+      int before = game.clicks;
+      strategy.move(game, rand);
+      if (game.clicks == before) {
+        break;
+      }
+    }
+    return game;
+  }
+
+  // plays the given number of games in parallel and reports their combined results
+  BatchStats run(long games) {
+    long start = System.nanoTime();
+    BatchStats stats = ForkJoinPool.commonPool().invoke(new BatchTask(this, 0, games));
+    stats.nanos = System.nanoTime() - start;
+    return stats;
+  }
+
+  // runs a batch from the command line:
+  // java BatchRunner rows cols mines games [seed]
+  public static void main(String[] args) {
+    if (args.length < 4) {
+      System.out.println("usage: java BatchRunner rows cols mines games [seed]");
+      return;
+    }
+    long seed = 0;
+    if (args.length > 4) {
+      seed = Long.parseLong(args[4]);
+    }
+    BatchRunner runner = new BatchRunner(Integer.parseInt(args[0]), Integer.parseInt(args[1]),
+        Integer.parseInt(args[2]), seed, RandomStrategy::new);
+    System.out.println(runner.run(Long.parseLong(args[3])));
+  }
+}
+
+//tests and examples for BatchRunner
+class ExamplesBatchRunner {
+
+  // tests for RandomStrategy
+  void testRandomStrategy(Tester t) {
+    Game game = new Game(4, 4, 0, new Random(1));
+    new RandomStrategy().move(game, new Random(2));
+    t.checkExpect(game.won(), true);
+    t.checkExpect(game.clicks, 1);
+
+    // with every covered cell flagged there is no move to make
+    Game flagged = new Game(1, 2, 1, new Random(1));
+    flagged.flag(0, 0);
+    flagged.flag(0, 1);
+    new RandomStrategy().move(flagged, new Random(2));
+    t.checkExpect(flagged.clicks, 2);
+  }
+
+  // tests for BatchStats
+  void testBatchStats(Tester t) {
+    BatchStats stats = new BatchStats();
+    t.checkExpect(stats.winRate(), 0.0);
+    t.checkExpect(stats.cellsPerSecond(), 0.0);
+    Game won = new Game(2, 2, 0, new Random(1));
+    won.reveal(0, 0);
+    stats.add(won);
+    BatchStats other = new BatchStats();
+    other.add(new Game(2, 2, 1, new Random(1)));
+    stats.combine(other);
+    stats.nanos = 1000000000;
+    t.checkExpect(stats.games, 2L);
+    t.checkExpect(stats.winRate(), 0.5);
+    t.checkExpect(stats.clicksPerGame(), 0.5);
+    t.checkExpect(stats.cellsPerSecond(), 4.0);
+  }
+
+  // tests for BatchRunner
+  void testBatchRunner(Tester t) {
+    BatchRunner runner = new BatchRunner(9, 9, 10, 77, RandomStrategy::new);
+    t.checkExpect(runner.play(5).board.cells, runner.play(5).board.cells);
+    BatchStats first = runner.run(500);
+    BatchStats second = runner.run(500);
+    t.checkExpect(first.games, 500L);
+    // the same seed gives the same results, however the games were scheduled
+    t.checkExpect(second.wins, first.wins);
+    t.checkExpect(second.clicks, first.clicks);
+    t.checkExpect(second.cellsRevealed, first.cellsRevealed);
+    t.checkExpect(first.clicks >= 500, true);
+    // every board is played until it is over
+    Game game = runner.play(3);
+    t.checkExpect(game.isOver(), true);
+  }
+}
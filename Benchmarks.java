@@ -0,0 +1,415 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Random;
+
+import tester.*;
+import javalib.impworld.*;
+
+//to represent one operation on a board that can be timed over and over
+//setUp builds fresh state for the given board, outside the timed region, and run
+//does the work being measured, returning something derived from it so the work
+//cannot be optimized away
+abstract class ABenchmark {
+  String name;
+
+  ABenchmark(String name) {
+    this.name = name;
+  }
+
+  // EFFECT: prepares a rows by cols board with about density of its cells mines
+  abstract void setUp(int rows, int cols, double density, Random rand);
+
+  // does the measured work once
+  abstract long run();
+
+  // the largest board, in cells, this benchmark is worth running on
+  int maxCells() {
+    return Integer.MAX_VALUE;
+  }
+
+  // the number of mines for a rows by cols board of the given density
+  static int mines(int rows, int cols, double density) {
+    return (int) Math.round((double) rows * cols * density);
+  }
+}
+
+//to represent timing the creation of a board: placing the mines and counting them
+class GenerateBenchmark extends ABenchmark {
+  int rows;
+  int cols;
+  int numMines;
+  Random rand;
+
+  GenerateBenchmark() {
+    super("generate");
+  }
+
+  // EFFECT: remembers the board to generate
+  void setUp(int rows, int cols, double density, Random rand) {
+    this.rows = rows;
+    this.cols = cols;
+    this.numMines = ABenchmark.mines(rows, cols, density);
+    this.rand = rand;
+  }
+
+  // builds a new game, which places the mines and works out every count
+  long run() {
+    return new Game(this.rows, this.cols, this.numMines, this.rand).board.mines.size();
+  }
+}
+
+//to represent timing the neighbor counts of an existing board
+class CountBenchmark extends ABenchmark {
+  Board board;
+
+  CountBenchmark() {
+    super("counts");
+  }
+
+  // EFFECT: builds a board with its mines placed
+  void setUp(int rows, int cols, double density, Random rand) {
+    this.board = new Board(rows, cols);
+    this.board.placeRandomMines(ABenchmark.mines(rows, cols, density), rand);
+  }
+
+  // works out the count of every cell again
+  long run() {
+    this.board.computeCounts();
+    return this.board.nearMines(0);
+  }
+}
+
+//to represent timing the worst reveal: one click on a board without mines, which
+//floods over every cell
+class OpenRevealBenchmark extends ABenchmark {
+  int rows;
+  int cols;
+  Game game;
+
+  OpenRevealBenchmark() {
+    super("open reveal");
+  }
+
+  // EFFECT: remembers the board size; the density is ignored, since any mine would
+  // stop the flood early
+  void setUp(int rows, int cols, double density, Random rand) {
+    this.rows = rows;
+    this.cols = cols;
+    this.game = new Game(rows, cols, 0, rand);
+  }
+
+  // uncovers the whole board from its middle, then covers it again for the next run
+  long run() {
+    int opened = this.game.reveal(this.rows / 2, this.cols / 2);
+    Board board = this.game.board;
+    for (int idx = 0; idx < board.size(); idx++) {
+      board.cells[idx] &= ~Board.UNCOVERED;
+    }
+    board.coveredSafe = board.size();
+    return opened;
+  }
+}
+
+//to represent timing the check made on every tick for whether the game is won
+class WinCheckBenchmark extends ABenchmark {
+  Game game;
+
+  WinCheckBenchmark() {
+    super("win check");
+  }
+
+  // EFFECT: builds a game with every safe cell but one uncovered
+  void setUp(int rows, int cols, double density, Random rand) {
+    this.game = new Game(rows, cols, ABenchmark.mines(rows, cols, density), rand);
+    Board board = this.game.board;
+    boolean skipped = false;
+    for (int idx = 0; idx < board.size(); idx++) {
+      if (!board.isMine(idx)) {
+        if (skipped) {
+          board.setUncovered(idx);
+        }
+        skipped = true;
+      }
+    }
+  }
+
+  // checks whether the game has been won
+  long run() {
+    if (this.game.won()) {
+      return 1;
+    }
+    return 0;
+  }
+}
+
+//to represent timing the drawing of a whole frame, as for the first frame of a game
+class FullSceneBenchmark extends ABenchmark {
+  Minesweeper world;
+
+  FullSceneBenchmark() {
+    super("full scene");
+  }
+
+  // EFFECT: builds a world for the board
+  void setUp(int rows, int cols, double density, Random rand) {
+    this.world = new Minesweeper(rows, cols, ABenchmark.mines(rows, cols, density), rand);
+  }
+
+  // draws every visible cell onto a fresh scene
+  long run() {
+    this.world.scene = new WorldScene(this.world.scene.width, this.world.scene.height);
+    this.world.dirty.all = true;
+    return this.world.makeScene().width;
+  }
+}
+
+//to represent timing the drawing of a frame after a click that changes a single cell
+class ClickSceneBenchmark extends ABenchmark {
+  Minesweeper world;
+  int cell;
+
+  ClickSceneBenchmark() {
+    super("click scene");
+  }
+
+  // EFFECT: builds a world and draws its first frame
+  void setUp(int rows, int cols, double density, Random rand) {
+    this.world = new Minesweeper(rows, cols, ABenchmark.mines(rows, cols, density), rand);
+    this.world.makeScene();
+  }
+
+  // flags the next cell and draws the frame
+  long run() {
+    this.cell = (this.cell + 1) % this.world.board.size();
+    this.world.board.toggleMarked(this.cell);
+    this.world.makeScene();
+    return this.world.board.flags;
+  }
+
+  // the drawn scene is kept between runs, and every run adds to it
+  int maxCells() {
+    return 1000 * 1000;
+  }
+}
+
+//to represent the measurements of one benchmark on one board
+class BenchmarkResult {
+  String name;
+  int rows;
+  int cols;
+  double density;
+  long runs;
+  long nanos;
+  // bytes allocated by the measuring thread, or -1 if the JVM cannot report it
+  long bytes;
+
+  BenchmarkResult(String name, int rows, int cols, double density, long runs, long nanos,
+      long bytes) {
+    this.name = name;
+    this.rows = rows;
+    this.cols = cols;
+    this.density = density;
+    this.runs = runs;
+    this.nanos = nanos;
+    this.bytes = bytes;
+  }
+
+  // the average time of one run, in nanoseconds
+  double nanosPerRun() {
+    if (this.runs == 0) {
+      return 0;
+    }
+    return (double) this.nanos / this.runs;
+  }
+
+  // the number of runs per second
+  double runsPerSecond() {
+    if (this.nanos == 0) {
+      return 0;
+    }
+    return this.runs * 1e9 / this.nanos;
+  }
+
+  // the average bytes allocated by one run, or -1 if unknown
+  double bytesPerRun() {
+    if (this.bytes < 0 || this.runs == 0) {
+      return -1;
+    }
+    return (double) this.bytes / this.runs;
+  }
+
+  // the bytes allocated per second while measuring, or -1 if unknown
+  double allocationRate() {
+    if (this.bytes < 0 || this.nanos == 0) {
+      return -1;
+    }
+    return this.bytes * 1e9 / this.nanos;
+  }
+
+  // one row of the results table
+  public String toString() {
+    return String.format("%-12s %5dx%-5d %5.2f %12.1f %14.1f %14.0f %10.1f", this.name,
+        this.rows, this.cols, this.density, this.runsPerSecond(), this.nanosPerRun(),
+        this.bytesPerRun(), this.allocationRate() / (1 << 20));
+  }
+}
+
+//to represent running benchmarks over a grid of board sizes and mine densities
+//Each benchmark is set up once per board, warmed up, and then run until its time
+//budget is spent. Allocation is read from the measuring thread's allocation counter,
+//the same number the gc profiler of a benchmark harness reports
+class Benchmarks {
+  static final int[] SIZES = new int[] { 9, 30, 100, 1000, 4000 };
+  static final double[] DENSITIES = new double[] { 0.12, 0.2 };
+  static final String HEADER = String.format("%-12s %11s %5s %12s %14s %14s %10s", "benchmark",
+      "board", "mines", "runs/s", "ns/run", "bytes/run", "MB/s");
+
+  long warmupNanos;
+  long measureNanos;
+  long seed;
+
+  Benchmarks(long warmupNanos, long measureNanos, long seed) {
+    this.warmupNanos = warmupNanos;
+    this.measureNanos = measureNanos;
+    this.seed = seed;
+  }
+
+  // every benchmark, freshly made
+  static ArrayList<ABenchmark> all() {
+    ArrayList<ABenchmark> benchmarks = new ArrayList<ABenchmark>();
+    benchmarks.add(new GenerateBenchmark());
+    benchmarks.add(new CountBenchmark());
+    benchmarks.add(new OpenRevealBenchmark());
+    benchmarks.add(new WinCheckBenchmark());
+    benchmarks.add(new FullSceneBenchmark());
+    benchmarks.add(new ClickSceneBenchmark());
+    return benchmarks;
+  }
+
+  // the bytes allocated so far by the current thread, or -1 if the JVM cannot tell
+  static long allocatedBytes() {
+    java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      com.sun.management.ThreadMXBean counting = (com.sun.management.ThreadMXBean) threads;
+      if (counting.isThreadAllocatedMemorySupported()
+          && counting.isThreadAllocatedMemoryEnabled()) {
+        return counting.getThreadAllocatedBytes(Thread.currentThread().getId());
+      }
+    }
+    return -1;
+  }
+
+  // runs the benchmark for at least the given time, at least once
+  // returns the number of runs made
+  static long repeat(ABenchmark benchmark, long nanos, long[] sink) {
+    long runs = 0;
+    long start = System.nanoTime();
+    do {
+      sink[0] += benchmark.run();
+      runs++;
+    } while (System.nanoTime() - start < nanos);
+    return runs;
+  }
+
+  // measures benchmark on a rows by cols board of the given density
+  // Work done by other threads, such as the parallel counts on large boards, is
+  // timed but its allocation is not counted
+  BenchmarkResult measure(ABenchmark benchmark, int rows, int cols, double density) {
+    long[] sink = new long[1];
+    benchmark.setUp(rows, cols, density, new Random(this.seed));
+    Benchmarks.repeat(benchmark, this.warmupNanos, sink);
+    long bytesBefore = Benchmarks.allocatedBytes();
+    long start = System.nanoTime();
+    long runs = Benchmarks.repeat(benchmark, this.measureNanos, sink);
+    long nanos = System.nanoTime() - start;
+    long bytesAfter = Benchmarks.allocatedBytes();
+    long bytes = -1;
+    if (bytesBefore >= 0 && bytesAfter >= 0) {
+      bytes = bytesAfter - bytesBefore;
+    }
+    return new BenchmarkResult(benchmark.name, rows, cols, density, runs, nanos, bytes);
+  }
+
+  // measures every benchmark whose name contains filter over every size and density
+  // a benchmark is skipped on boards bigger than its maxCells
+  ArrayList<BenchmarkResult> runAll(String filter, int[] sizes, double[] densities) {
+    ArrayList<BenchmarkResult> results = new ArrayList<BenchmarkResult>();
+    for (ABenchmark benchmark : Benchmarks.all()) {
+      if (!benchmark.name.contains(filter)) {
+        continue;
+      }
+      for (int size : sizes) {
+        if ((long) size * size > benchmark.maxCells()) {
+          continue;
+        }
+        for (double density : densities) {
+          results.add(this.measure(benchmark, size, size, density));
+        }
+      }
+    }
+    return results;
+  }
+
+  // runs the benchmarks from the command line and prints a table of results:
+  // java Benchmarks [filter] [seconds per measurement]
+  public static void main(String[] args) {
+    String filter = "";
+    double seconds = 1;
+    if (args.length > 0) {
+      filter = args[0];
+    }
+    if (args.length > 1) {
+      seconds = Double.parseDouble(args[1]);
+    }
+    long nanos = (long) (seconds * 1e9);
+    Benchmarks benchmarks = new Benchmarks(nanos / 2, nanos, 1);
+    System.out.println(HEADER);
+    for (BenchmarkResult result : benchmarks.runAll(filter, SIZES, DENSITIES)) {
+      System.out.println(result);
+    }
+  }
+}
+
+//tests and examples for Benchmarks
+class ExamplesBenchmarks {
+
+  // tests for BenchmarkResult
+  void testBenchmarkResult(Tester t) {
+    BenchmarkResult result = new BenchmarkResult("counts", 9, 9, 0.12, 4, 2000, 800);
+    t.checkExpect(result.nanosPerRun(), 500.0);
+    t.checkExpect(result.runsPerSecond(), 2000000.0);
+    t.checkExpect(result.bytesPerRun(), 200.0);
+    t.checkExpect(result.allocationRate(), 4e8);
+    BenchmarkResult unknown = new BenchmarkResult("counts", 9, 9, 0.12, 0, 0, -1);
+    t.checkExpect(unknown.nanosPerRun(), 0.0);
+    t.checkExpect(unknown.bytesPerRun(), -1.0);
+    t.checkExpect(ABenchmark.mines(9, 9, 0.12), 10);
+  }
+
+  // tests that each benchmark leaves its board ready for the next run
+  void testBenchmarks(Tester t) {
+    OpenRevealBenchmark open = new OpenRevealBenchmark();
+    open.setUp(5, 7, 0.2, new Random(1));
+    t.checkExpect(open.run(), 35L);
+    t.checkExpect(open.run(), 35L);
+    WinCheckBenchmark win = new WinCheckBenchmark();
+    win.setUp(9, 9, 0.12, new Random(1));
+    t.checkExpect(win.run(), 0L);
+    t.checkExpect(win.game.board.coveredSafe, 1);
+    ClickSceneBenchmark click = new ClickSceneBenchmark();
+    click.setUp(9, 9, 0.12, new Random(1));
+    t.checkExpect(click.run(), 1L);
+    t.checkExpect(click.world.dirty.cells.size(), 0);
+  }
+
+  // tests for running a small grid of benchmarks
+  void testRunAll(Tester t) {
+    Benchmarks benchmarks = new Benchmarks(0, 1000000, 3);
+    ArrayList<BenchmarkResult> results = benchmarks.runAll("", new int[] { 9 },
+        new double[] { 0.12 });
+    t.checkExpect(results.size(), 6);
+    t.checkExpect(results.get(0).name, "generate");
+    t.checkExpect(results.get(0).runs >= 1, true);
+    t.checkExpect(benchmarks.runAll("scene", new int[] { 2000 }, new double[] { 0.1 }).size(), 1);
+  }
+}
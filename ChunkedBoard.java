@@ -0,0 +1,555 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import tester.*;
+
+//to represent an effectively unbounded board, split into square chunks of cells
+//A chunk is only built the first time one of its cells is looked at, and its mines
+//come from a seed derived from the board's seed and the chunk's position, so any
+//chunk can be rebuilt exactly. Chunks the player has not changed are kept in a
+//least recently used cache and may be dropped; changed chunks are always kept.
+//A ChunkedTerminal plays one.
+class ChunkedBoard {
+  static final int CHUNK = 64;
+
+  long seed;
+  int minesPerChunk;
+  int maxCachedChunks;
+  // chunks with uncovered or marked cells, which cannot be rebuilt from the seed
+  HashMap<Long, Board> touched;
+  // chunks that are exactly as generated, in least recently used order
+  LinkedHashMap<Long, Board> pristine;
+  // has a mine been uncovered?
+  boolean lost;
+
+  ChunkedBoard(long seed, int minesPerChunk, int maxCachedChunks) {
+    if (minesPerChunk < 0 || minesPerChunk > CHUNK * CHUNK) {
+      throw new IllegalArgumentException(
+          "Cannot place " + minesPerChunk + " mines in a chunk of " + CHUNK * CHUNK + " cells");
+    }
+    if (maxCachedChunks < 1) {
+      throw new IllegalArgumentException("The chunk cache must hold at least one chunk");
+    }
+    this.seed = seed;
+    this.minesPerChunk = minesPerChunk;
+    this.maxCachedChunks = maxCachedChunks;
+    this.touched = new HashMap<Long, Board>();
+    this.pristine = new LinkedHashMap<Long, Board>(16, 0.75f, true) {
+      protected boolean removeEldestEntry(Map.Entry<Long, Board> eldest) {
+        return this.size() > ChunkedBoard.this.maxCachedChunks;
+      }
+    };
+  }
+
+  // the key of the chunk at the given chunk row and chunk column
+  static long key(int chunkRow, int chunkCol) {
+    return ((long) chunkRow << 32) | (chunkCol & 0xFFFFFFFFL);
+  }
+
+  // the seed for the mines of the chunk at the given chunk row and chunk column
+  // mixes the board's seed with the chunk position using the SplitMix64 finalizer
+  long chunkSeed(int chunkRow, int chunkCol) {
+    long z = this.seed + 0x9E3779B97F4A7C15L * (ChunkedBoard.key(chunkRow, chunkCol) + 1);
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  // the chunk holding the cell at row and col, building it if needed
+  Board chunkAt(int row, int col) {
+    int chunkRow = Math.floorDiv(row, CHUNK);
+    int chunkCol = Math.floorDiv(col, CHUNK);
+    Long key = ChunkedBoard.key(chunkRow, chunkCol);
+    Board chunk = this.touched.get(key);
+    if (chunk == null) {
+      chunk = this.pristine.get(key);
+    }
+    if (chunk == null) {
+      chunk = new Board(CHUNK, CHUNK);
+      chunk.placeRandomMines(this.minesPerChunk, new Random(this.chunkSeed(chunkRow, chunkCol)));
+      this.pristine.put(key, chunk);
+    }
+    return chunk;
+  }
+
+  // the chunk holding the cell at row and col, which is about to be changed
+  // EFFECT: moves the chunk out of the cache so it is never dropped
+  Board touchedChunkAt(int row, int col) {
+    Board chunk = this.chunkAt(row, col);
+    Long key = ChunkedBoard.key(Math.floorDiv(row, CHUNK), Math.floorDiv(col, CHUNK));
+    if (this.pristine.remove(key) != null) {
+      this.touched.put(key, chunk);
+    }
+    return chunk;
+  }
+
+  // the index within its chunk of the cell at row and col
+  static int indexInChunk(int row, int col) {
+    return Math.floorMod(row, CHUNK) * CHUNK + Math.floorMod(col, CHUNK);
+  }
+
+  // is the cell at row and col a mine?
+  boolean isMine(int row, int col) {
+    return this.chunkAt(row, col).isMine(ChunkedBoard.indexInChunk(row, col));
+  }
+
+  // is the cell at row and col uncovered?
+  boolean isUncovered(int row, int col) {
+    return this.chunkAt(row, col).isUncovered(ChunkedBoard.indexInChunk(row, col));
+  }
+
+  // is the cell at row and col marked with a flag?
+  boolean isMarked(int row, int col) {
+    return this.chunkAt(row, col).isMarked(ChunkedBoard.indexInChunk(row, col));
+  }
+
+  // counts the mines around the cell at row and col, looking into neighboring chunks
+  // where the cell is on the edge of its own
+  int countMines(int row, int col) {
+    int sum = 0;
+    for (int i = -1; i < 2; i++) {
+      for (int j = -1; j < 2; j++) {
+        if ((i != 0 || j != 0) && this.isMine(row + i, col + j)) {
+          sum++;
+        }
+      }
+    }
+    return sum;
+  }
+
+  // the number of mines around the uncovered cell at row and col
+  // counts are worked out when a cell is uncovered, so covered cells report 0
+  int nearMines(int row, int col) {
+    return this.chunkAt(row, col).nearMines(ChunkedBoard.indexInChunk(row, col));
+  }
+
+  // EFFECT: flips whether the cell at row and col is marked with a flag
+  void toggleMarked(int row, int col) {
+    this.touchedChunkAt(row, col).toggleMarked(ChunkedBoard.indexInChunk(row, col));
+  }
+
+  // EFFECT: uncovers the cell at row and col and, if it has no neighboring mines,
+  // floods outward like Board.uncover, crossing chunk borders as needed; a mine is
+  // uncovered alone and loses the game
+  // The flood stops once limit cells have been uncovered, since a sparse enough
+  // board can have an opening that never ends
+  // returns how many cells were newly uncovered
+  int uncover(int row, int col, int limit) {
+    if (this.isMarked(row, col) || this.isUncovered(row, col)) {
+      return 0;
+    }
+    if (this.isMine(row, col)) {
+      this.touchedChunkAt(row, col).setUncovered(ChunkedBoard.indexInChunk(row, col));
+      this.lost = true;
+      return 1;
+    }
+    int count = 1;
+    if (this.reveal(row, col) != 0) {
+      return count;
+    }
+    IntList stack = new IntList();
+    stack.add(row);
+    stack.add(col);
+    while (!stack.isEmpty() && count < limit) {
+      int c = stack.removeLast();
+      int r = stack.removeLast();
+      for (int i = -1; i < 2; i++) {
+        for (int j = -1; j < 2; j++) {
+          if (count < limit && !this.isMine(r + i, c + j) && !this.isMarked(r + i, c + j)
+              && !this.isUncovered(r + i, c + j)) {
+            count++;
+            if (this.reveal(r + i, c + j) == 0) {
+              stack.add(r + i);
+              stack.add(c + j);
+            }
+          }
+        }
+      }
+    }
+    return count;
+  }
+
+  // EFFECT: uncovers the single cell at row and col and stores its count
+  // returns the number of mines around it
+  int reveal(int row, int col) {
+    int count = this.countMines(row, col);
+    Board chunk = this.touchedChunkAt(row, col);
+    int idx = ChunkedBoard.indexInChunk(row, col);
+    chunk.setNearMines(idx, count);
+    chunk.setUncovered(idx);
+    return count;
+  }
+
+  // the number of chunks currently held in memory
+  int materializedChunks() {
+    return this.touched.size() + this.pristine.size();
+  }
+}
+
+//to represent a game on an unbounded ChunkedBoard played from a terminal, a line of
+//input at a time, with rows and columns that may be any int, negative ones too:
+//  R row col   reveals a cell
+//  F row col   flips a flag
+//  V row col   scrolls the window so that the cell is at its top left
+//  Q           quits
+//A cell of an unbounded board has no index for a set of changed cells to hold, so
+//unlike a TerminalView every frame draws the whole window again, in the same symbols
+//and colors. There is no winning; the game goes on until a mine is uncovered.
+class ChunkedTerminal {
+  // the most cells one reveal uncovers before its flood stops
+  static final int FLOOD_LIMIT = 1 << 20;
+
+  ChunkedBoard board;
+  // the window of the board shown: its top left cell and its size
+  int firstRow;
+  int firstCol;
+  int viewRows;
+  int viewCols;
+  PrintStream out;
+  boolean batch;
+  // the safe cells uncovered and the moves made so far
+  long uncovered;
+  int moves;
+  String message;
+
+  ChunkedTerminal(ChunkedBoard board, int viewRows, int viewCols, PrintStream out,
+      boolean batch) {
+    this.board = board;
+    this.viewRows = viewRows;
+    this.viewCols = viewCols;
+    this.out = out;
+    this.batch = batch;
+    this.message = "";
+  }
+
+  // the character the cell at row and col is drawn with, as TerminalView draws it
+  char symbol(int row, int col) {
+    if (this.board.isUncovered(row, col)) {
+      if (this.board.isMine(row, col)) {
+        return '*';
+      }
+      else if (this.board.nearMines(row, col) == 0) {
+        return '.';
+      }
+      return (char) ('0' + this.board.nearMines(row, col));
+    }
+    else if (this.board.isMarked(row, col)) {
+      return 'F';
+    }
+    else if (this.board.lost && this.board.isMine(row, col)) {
+      return 'x';
+    }
+    return '#';
+  }
+
+  // the line shown below the window
+  String status() {
+    String state = "playing";
+    if (this.board.lost) {
+      state = "GAME OVER";
+    }
+    String status = "at " + this.firstRow + " " + this.firstCol + "  uncovered "
+        + this.uncovered + "  moves " + this.moves + "  " + state;
+    if (!this.message.isEmpty()) {
+      status += "  " + this.message;
+    }
+    return status;
+  }
+
+  // the output that draws the window, with the status on the line below it
+  String frame() {
+    StringBuilder out = new StringBuilder(TerminalView.CLEAR);
+    String color = "";
+    for (int row = 0; row < this.viewRows; row++) {
+      out.append(TerminalView.ESC).append(row + 1).append(";1H");
+      for (int col = 0; col < this.viewCols; col++) {
+        char symbol = this.symbol(this.firstRow + row, this.firstCol + col);
+        String next = TerminalView.colorFor(symbol);
+        if (!next.equals(color)) {
+          out.append(next);
+          color = next;
+        }
+        out.append(symbol);
+      }
+    }
+    out.append(TerminalView.ESC).append(this.viewRows + 2).append(";1H")
+        .append(TerminalView.RESET).append(this.status()).append(TerminalView.ESC).append('K');
+    out.append(TerminalView.ESC).append(this.viewRows + 3).append(";1H");
+    return out.toString();
+  }
+
+  // EFFECT: carries out the command on line, leaving any complaint about it in message
+  // returns false if the command was to quit
+  boolean apply(String line) {
+    this.message = "";
+    String[] words = line.trim().split("\\s+");
+    String command = words[0].toUpperCase();
+    if (command.equals("Q")) {
+      return false;
+    }
+    else if (words.length == 3 && (command.equals("R") || command.equals("F")
+        || command.equals("V"))) {
+      int row;
+      int col;
+      try {
+        row = Integer.parseInt(words[1]);
+        col = Integer.parseInt(words[2]);
+      }
+      catch (NumberFormatException e) {
+        this.message = "bad cell " + words[1] + " " + words[2];
+        return true;
+      }
+      if (command.equals("V")) {
+        this.firstRow = row;
+        this.firstCol = col;
+      }
+      else {
+        this.move(command.equals("F"), row, col);
+      }
+    }
+    else if (!command.isEmpty()) {
+      this.message = "unknown command " + line.trim();
+    }
+    return true;
+  }
+
+  // EFFECT: reveals or flags the cell at row and col, unless the game is over
+  void move(boolean flag, int row, int col) {
+    if (this.board.lost) {
+      this.message = "the game is over";
+      return;
+    }
+    this.moves++;
+    if (flag) {
+      if (!this.board.isUncovered(row, col)) {
+        this.board.toggleMarked(row, col);
+      }
+      return;
+    }
+    int opened = this.board.uncover(row, col, FLOOD_LIMIT);
+    if (!this.board.lost) {
+      this.uncovered += opened;
+    }
+    if (opened == FLOOD_LIMIT) {
+      this.message = "the opening was only followed for " + FLOOD_LIMIT + " cells";
+    }
+  }
+
+  // EFFECT: sends the next frame, and the prompt unless in batch mode
+  void draw() {
+    this.out.print(this.frame());
+    if (!this.batch) {
+      this.out.print("> ");
+    }
+    this.out.flush();
+  }
+
+  // EFFECT: plays the commands read from in until it ends or one of them quits
+  void run(Reader in) throws IOException {
+    BufferedReader lines = new BufferedReader(in);
+    this.draw();
+    String line = lines.readLine();
+    while (line != null && this.apply(line)) {
+      this.draw();
+      line = lines.readLine();
+    }
+    this.out.println();
+    this.out.flush();
+  }
+
+  // plays a game on an unbounded board on this terminal:
+  //   java ChunkedTerminal minesPerChunk [seed] [--batch]
+  public static void main(String[] args) throws IOException {
+    boolean batch = args.length > 0 && args[args.length - 1].equals("--batch");
+    int count = args.length;
+    if (batch) {
+      count--;
+    }
+    if (count < 1) {
+      System.err.println("usage: java ChunkedTerminal minesPerChunk [seed] [--batch]");
+      System.exit(2);
+    }
+    long seed = System.nanoTime();
+    if (count > 1) {
+      seed = Long.parseLong(args[1]);
+    }
+    ChunkedBoard board = new ChunkedBoard(seed, Integer.parseInt(args[0]), 1024);
+    PrintStream out = new PrintStream(System.out, false, StandardCharsets.UTF_8);
+    new ChunkedTerminal(board, 40, 120, out, batch)
+        .run(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+  }
+}
+
+//tests and examples for ChunkedBoard and ChunkedTerminal
+class ExamplesChunkedBoard {
+
+  // tests for the chunk seeds and keys
+  void testChunkSeed(Tester t) {
+    ChunkedBoard b = new ChunkedBoard(5, 400, 16);
+    t.checkExpect(b.chunkSeed(3, -2), new ChunkedBoard(5, 400, 16).chunkSeed(3, -2));
+    t.checkExpect(b.chunkSeed(3, -2) == b.chunkSeed(-2, 3), false);
+    t.checkExpect(b.chunkSeed(0, 0) == new ChunkedBoard(6, 400, 16).chunkSeed(0, 0), false);
+    t.checkExpect(ChunkedBoard.key(1, -1), (1L << 32) | 0xFFFFFFFFL);
+    t.checkExpect(ChunkedBoard.indexInChunk(-1, 65), 63 * ChunkedBoard.CHUNK + 1);
+  }
+
+  // tests that chunks are generated deterministically, even after being dropped
+  void testGeneration(Tester t) {
+    ChunkedBoard big = new ChunkedBoard(42, 500, 1000);
+    ChunkedBoard small = new ChunkedBoard(42, 500, 1);
+    boolean same = true;
+    int mines = 0;
+    for (int row = -100; row < 100; row += 3) {
+      for (int col = -100; col < 100; col += 7) {
+        if (big.isMine(row, col) != small.isMine(row, col)) {
+          same = false;
+        }
+      }
+    }
+    for (int row = 0; row < ChunkedBoard.CHUNK; row++) {
+      for (int col = 0; col < ChunkedBoard.CHUNK; col++) {
+        if (big.isMine(row, col)) {
+          mines++;
+        }
+      }
+    }
+    t.checkExpect(same, true);
+    t.checkExpect(mines, 500);
+    t.checkExpect(small.materializedChunks(), 1);
+    t.checkConstructorException(
+        new IllegalArgumentException("Cannot place 5000 mines in a chunk of 4096 cells"),
+        "ChunkedBoard", 1L, 5000, 4);
+    t.checkConstructorException(
+        new IllegalArgumentException("The chunk cache must hold at least one chunk"),
+        "ChunkedBoard", 1L, 50, 0);
+  }
+
+  // tests for countMines across chunk borders
+  void testCountMines(Tester t) {
+    ChunkedBoard b = new ChunkedBoard(7, 1200, 64);
+    boolean same = true;
+    for (int row = -2; row < 2; row++) {
+      for (int col = 60; col < 68; col++) {
+        int sum = 0;
+        for (int i = -1; i < 2; i++) {
+          for (int j = -1; j < 2; j++) {
+            if ((i != 0 || j != 0) && b.chunkAt(row + i, col + j)
+                .isMine(ChunkedBoard.indexInChunk(row + i, col + j))) {
+              sum++;
+            }
+          }
+        }
+        if (sum != b.countMines(row, col)) {
+          same = false;
+        }
+      }
+    }
+    t.checkExpect(same, true);
+  }
+
+  // tests for uncover and toggleMarked
+  void testUncover(Tester t) {
+    // with no mines every opening runs until the limit
+    ChunkedBoard empty = new ChunkedBoard(1, 0, 4);
+    t.checkExpect(empty.uncover(10, 10, 20000), 20000);
+    t.checkExpect(empty.uncover(10, 10, 20000), 0);
+    t.checkExpect(empty.isUncovered(10, 10), true);
+    // changed chunks are kept even though the cache only holds four chunks
+    t.checkExpect(empty.touched.size() > 4, true);
+    t.checkExpect(empty.pristine.size() <= 4, true);
+
+    ChunkedBoard b = new ChunkedBoard(3, 700, 8);
+    b.toggleMarked(-5, -5);
+    t.checkExpect(b.isMarked(-5, -5), true);
+    t.checkExpect(b.uncover(-5, -5, 100), 0);
+    // fill the cache with other chunks; the marked chunk survives
+    for (int i = 0; i < 20; i++) {
+      b.isMine(i * ChunkedBoard.CHUNK, 1000);
+    }
+    t.checkExpect(b.isMarked(-5, -5), true);
+    b.toggleMarked(-5, -5);
+
+    // find a safe cell and check that what it reveals is consistent
+    int row = 0;
+    while (b.isMine(row, 0)) {
+      row++;
+    }
+    int opened = b.uncover(row, 0, 100000);
+    t.checkExpect(opened >= 1, true);
+    t.checkExpect(b.isUncovered(row, 0), true);
+    t.checkExpect(b.nearMines(row, 0), b.countMines(row, 0));
+  }
+
+  // tests that uncovering a mine uncovers only it and loses the game
+  void testUncoverMine(Tester t) {
+    ChunkedBoard b = new ChunkedBoard(3, 40, 64);
+    int col = 0;
+    while (!b.isMine(0, col)) {
+      col++;
+    }
+    t.checkExpect(b.lost, false);
+    t.checkExpect(b.uncover(0, col, 1000), 1);
+    t.checkExpect(b.lost, true);
+    t.checkExpect(b.isUncovered(0, col), true);
+    t.checkExpect(b.isUncovered(1, col) || b.isUncovered(0, col + 1)
+        || b.isUncovered(-1, col - 1), false);
+  }
+
+  // tests for playing a ChunkedBoard from a terminal
+  void testTerminal(Tester t) {
+    ChunkedTerminal session = new ChunkedTerminal(new ChunkedBoard(3, 40, 64), 3, 5,
+        System.out, true);
+    t.checkExpect(session.status(), "at 0 0  uncovered 0  moves 0  playing");
+    int col = 0;
+    while (!session.board.isMine(-2, col)) {
+      col++;
+    }
+    session.apply("f -2 " + col);
+    t.checkExpect(session.symbol(-2, col), 'F');
+    t.checkExpect(session.apply("R -2 " + col), true);
+    t.checkExpect(session.board.lost, false);
+    session.apply("F -2 " + col);
+    session.apply("V -3 " + (col - 1));
+    t.checkExpect(session.frame().startsWith(TerminalView.CLEAR + TerminalView.ESC + "1;1H"
+        + TerminalView.RESET + "#####"), true);
+    session.apply("R a 1");
+    t.checkExpect(session.message, "bad cell a 1");
+    session.apply("jump");
+    t.checkExpect(session.message, "unknown command jump");
+    session.apply("r -2 " + col);
+    t.checkExpect(session.symbol(-2, col), '*');
+    t.checkExpect(session.status(),
+        "at -3 " + (col - 1) + "  uncovered 0  moves 4  GAME OVER");
+    t.checkExpect(session.frame().contains(TerminalView.ESC + "31m*"), true);
+    session.apply("R 5 5");
+    t.checkExpect(session.message, "the game is over");
+    t.checkExpect(session.apply(" q "), false);
+
+    // a script plays through run, revealing a safe cell
+    java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+    ChunkedTerminal scripted = new ChunkedTerminal(new ChunkedBoard(3, 40, 64), 3, 5,
+        new PrintStream(bytes, true, StandardCharsets.UTF_8), true);
+    int safe = 0;
+    while (scripted.board.isMine(0, safe)) {
+      safe++;
+    }
+    try {
+      scripted.run(new StringReader("R 0 " + safe + "\nQ\nR 0 0\n"));
+    }
+    catch (IOException e) {
+      t.checkExpect(e.getMessage(), "no exception");
+    }
+    t.checkExpect(scripted.uncovered > 0, true);
+    t.checkExpect(scripted.moves, 1);
+    t.checkExpect(bytes.toString(StandardCharsets.UTF_8).contains("moves 1  playing"), true);
+  }
+}
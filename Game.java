@@ -0,0 +1,494 @@
+import java.util.Arrays;
+import java.util.Random;
+
+import tester.*;
+
+//to represent the rules of a game of minesweeper, played on cell coordinates
+//A Game knows nothing about drawing or the mouse, so it can be driven by the
+//javalib world, by bots, or by a batch of simulated games alike
+//A game made with safeStart places no mines until its first reveal, and then none on
+//or around the cell revealed, so the first reveal always opens an area. Until then the
+//board is only an empty array of cells, so even a huge game starts at once, and once
+//the mines are placed each cell's count is worked out only as it is uncovered.
+class Game {
+  // what state reports for cells that do not show a number
+  static final int COVERED = -1;
+  static final int FLAGGED = -2;
+  static final int EXPLODED = -3;
+
+  Board board;
+  int rows;
+  int cols;
+  int numMines;
+  Random rand;
+  // the seed rand was made from, or 0 if it is not known
+  long seed;
+  // has a mine been uncovered?
+  boolean lost;
+  // the number of reveals and flags made so far
+  int clicks;
+  // were the mines left to be placed at the first reveal, clear of the cell revealed?
+  boolean safeStart;
+  // have the mines been placed?
+  boolean placed = true;
+
+  Game(int rows, int cols, int numMines, Random rand) {
+    this(rows, cols, numMines, rand, false);
+  }
+
+  // throws an IllegalArgumentException if the game is a safeStart game and its mines
+  // cannot all fit outside the neighborhood of any first reveal
+  Game(int rows, int cols, int numMines, Random rand, boolean safeStart) {
+    this.rows = rows;
+    this.cols = cols;
+    this.numMines = numMines;
+    this.rand = rand;
+    this.safeStart = safeStart;
+    GenerateEvent event = new GenerateEvent();
+    event.begin();
+    if (safeStart) {
+      this.board = new Board(rows, cols);
+      if (numMines < 0 || numMines > this.board.size() - this.board.maxNeighbors() - 1) {
+        throw new IllegalArgumentException("Cannot place " + numMines + " mines on a " + rows
+            + "x" + cols + " board and keep a first click clear");
+      }
+      this.placed = false;
+    }
+    else {
+      this.createGrid();
+      this.updateTiles();
+    }
+    this.endGenerate(event);
+  }
+
+  Game(int rows, int cols, int numMines, long seed) {
+    this(rows, cols, numMines, seed, false);
+  }
+
+  Game(int rows, int cols, int numMines, long seed, boolean safeStart) {
+    this(rows, cols, numMines, new Random(seed), safeStart);
+    this.seed = seed;
+  }
+
+  Game(Board board, int numMines) {
+    this.rows = board.rows;
+    this.cols = board.cols;
+    this.numMines = numMines;
+    this.rand = new Random();
+    this.board = board;
+    this.updateTiles();
+  }
+
+  // EFFECT: Board changes to become a rows by cols board of randomly placed mines
+  void createGrid() {
+    this.board = new Board(this.rows, this.cols);
+    this.board.placeRandomMines(this.numMines, this.rand);
+  }
+
+  // EFFECT: Changes the nearMines property of every tile on the board
+  void updateTiles() {
+    this.board.computeCounts();
+  }
+
+  // EFFECT: places the mines, if they are not placed yet, on cells other than idx and
+  // its neighbors; from then on the board counts the neighboring mines of each cell
+  // as it is uncovered
+  void placeMinesAround(int idx) {
+    if (this.placed) {
+      return;
+    }
+    GenerateEvent event = new GenerateEvent();
+    event.begin();
+    int[] clear = new int[this.board.maxNeighbors() + 1];
+    int n = this.board.neighbors(idx, clear);
+    clear[n] = idx;
+    clear = Arrays.copyOf(clear, n + 1);
+    Arrays.sort(clear);
+    this.board.countOnUncover = true;
+    this.board.placeRandomMines(this.numMines, this.rand, clear);
+    this.placed = true;
+    this.endGenerate(event);
+  }
+
+  // EFFECT: ends event, and records it with the size of this game if it is enabled
+  void endGenerate(GenerateEvent event) {
+    event.end();
+    if (event.shouldCommit()) {
+      event.rows = this.rows;
+      event.cols = this.cols;
+      event.mines = this.numMines;
+      event.commit();
+    }
+  }
+
+  // the index of the cell at row and col
+  // throws an IllegalArgumentException if the cell is not on the board
+  int cell(int row, int col) {
+    if (row < 0 || row >= this.rows || col < 0 || col >= this.cols) {
+      throw new IllegalArgumentException(
+          "Cell (" + row + ", " + col + ") is not on a " + this.rows + "x" + this.cols + " board");
+    }
+    return this.board.index(row, col);
+  }
+
+  // EFFECT: uncovers the cell at row and col, flooding outward from cells with no
+  // neighboring mines; uncovering a mine loses the game; a flagged cell stays covered,
+  // and does not place the mines
+  // EFFECT: appends the index of every newly uncovered cell to changed
+  // returns how many cells were newly uncovered
+  int reveal(int row, int col, IntList changed) {
+    int idx = this.cell(row, col);
+    if (this.board.isMarked(idx)) {
+      this.clicks++;
+      return 0;
+    }
+    this.placeMinesAround(idx);
+    RevealEvent event = new RevealEvent();
+    event.begin();
+    this.clicks++;
+    int opened = this.board.uncover(idx, changed);
+    if (this.board.isMine(idx) && this.board.isUncovered(idx)) {
+      this.lost = true;
+    }
+    event.end();
+    if (event.shouldCommit()) {
+      event.cell = idx;
+      event.opened = opened;
+      event.depth = this.board.floodDepth;
+      event.hitMine = this.lost;
+      event.commit();
+    }
+    return opened;
+  }
+
+  // EFFECT: uncovers the cell at row and col like reveal(row, col, changed)
+  // returns how many cells were newly uncovered
+  int reveal(int row, int col) {
+    return this.reveal(row, col, new IntList());
+  }
+
+  // EFFECT: chords the cell at row and col: if it is an uncovered number with as many
+  // flags around it as mines, uncovers every other covered cell around it, losing the
+  // game if a flag was wrong
+  // EFFECT: appends the index of every newly uncovered cell to changed
+  // returns how many cells were newly uncovered
+  int chord(int row, int col, IntList changed) {
+    int idx = this.cell(row, col);
+    this.clicks++;
+    int before = changed.size();
+    int opened = this.board.chord(idx, changed);
+    this.checkLost(changed, before);
+    return opened;
+  }
+
+  // EFFECT: what a left click on the cell at row and col does: chords it if it is
+  // uncovered, and reveals it otherwise
+  // EFFECT: appends the index of every newly uncovered cell to changed
+  // returns how many cells were newly uncovered
+  int open(int row, int col, IntList changed) {
+    if (this.board.isUncovered(this.cell(row, col))) {
+      return this.chord(row, col, changed);
+    }
+    return this.reveal(row, col, changed);
+  }
+
+  // EFFECT: reveals every cell in cells, given as board indices, in one pass that
+  // shares a single flood, counting a click for each cell
+  // EFFECT: appends the index of every newly uncovered cell to changed, once each
+  // returns how many cells were newly uncovered
+  // throws an IllegalArgumentException, before changing anything, if a cell is not
+  // on the board
+  int revealAll(IntList cells, IntList changed) {
+    for (int i = 0; i < cells.size(); i++) {
+      int idx = cells.get(i);
+      this.cell(idx / this.cols, idx % this.cols);
+    }
+    for (int i = 0; i < cells.size() && !this.placed; i++) {
+      if (!this.board.isMarked(cells.get(i))) {
+        this.placeMinesAround(cells.get(i));
+      }
+    }
+    RevealEvent event = new RevealEvent();
+    event.begin();
+    this.clicks += cells.size();
+    int before = changed.size();
+    int opened = this.board.uncoverAll(cells, changed);
+    this.checkLost(changed, before);
+    event.end();
+    if (event.shouldCommit()) {
+      event.cell = -1;
+      event.opened = opened;
+      event.depth = this.board.floodDepth;
+      event.hitMine = this.lost;
+      event.commit();
+    }
+    return opened;
+  }
+
+  // EFFECT: loses the game if any of the cells in changed from position from on is
+  // a mine
+  void checkLost(IntList changed, int from) {
+    for (int i = from; i < changed.size(); i++) {
+      if (this.board.isMine(changed.get(i))) {
+        this.lost = true;
+      }
+    }
+  }
+
+  // EFFECT: flips the flag on the covered cell at row and col
+  // returns whether the cell is now flagged
+  boolean flag(int row, int col) {
+    int idx = this.cell(row, col);
+    this.clicks++;
+    if (!this.board.isUncovered(idx)) {
+      this.board.toggleMarked(idx);
+    }
+    return this.board.isMarked(idx);
+  }
+
+  // what the player sees at row and col: COVERED, FLAGGED, EXPLODED, or the number
+  // of neighboring mines of an uncovered tile
+  int state(int row, int col) {
+    int idx = this.cell(row, col);
+    if (this.board.isUncovered(idx)) {
+      if (this.board.isMine(idx)) {
+        return EXPLODED;
+      }
+      else {
+        return this.board.nearMines(idx);
+      }
+    }
+    else if (this.board.isMarked(idx)) {
+      return FLAGGED;
+    }
+    else {
+      return COVERED;
+    }
+  }
+
+  // has every safe cell been uncovered without uncovering a mine?
+  boolean won() {
+    return !this.lost && this.board.allSafeUncovered();
+  }
+
+  // is this game finished, either won or lost?
+  boolean isOver() {
+    return this.lost || this.board.allSafeUncovered();
+  }
+
+  // is this game just as new Game(rows, cols, numMines, seed, safeStart) makes it?
+  // only a game made from a known seed and not yet played is
+  boolean asSeeded() {
+    return this.seed != 0 && this.clicks == 0 && !this.lost && this.board.flags == 0
+        && this.revealedSafe() == 0;
+  }
+
+  // the number of cells uncovered so far that are not mines
+  int revealedSafe() {
+    return this.board.size() - this.board.mines.size() - this.board.coveredSafe;
+  }
+}
+
+//tests and examples for Game
+class ExamplesGame {
+  Board board3x4;
+  Game game;
+
+  // initial data
+  // the 3x4 board looks like this, where X is a mine:
+  // . X . .
+  // . . . .
+  // X . . .
+  void initData() {
+    this.board3x4 = new Board(3, 4);
+    this.board3x4.placeMine(this.board3x4.index(0, 1));
+    this.board3x4.placeMine(this.board3x4.index(2, 0));
+    this.game = new Game(this.board3x4, 2);
+  }
+
+  // tests for the Game constructors
+  void testGame(Tester t) {
+    this.initData();
+    t.checkExpect(this.game.rows, 3);
+    t.checkExpect(this.game.cols, 4);
+    t.checkExpect(this.board3x4.nearMines(4), 2);
+    Game seeded = new Game(10, 12, 20, new Random(8));
+    t.checkExpect(seeded.board.mines.size(), 20);
+    t.checkExpect(seeded.board.cells, new Game(10, 12, 20, new Random(8)).board.cells);
+  }
+
+  // tests for reveal
+  void testReveal(Tester t) {
+    this.initData();
+    IntList changed = new IntList();
+    t.checkExpect(this.game.reveal(2, 3, changed), 8);
+    t.checkExpect(changed.size(), 8);
+    t.checkExpect(this.game.reveal(2, 3), 0);
+    t.checkExpect(this.game.lost, false);
+    t.checkExpect(this.game.clicks, 2);
+    t.checkExpect(this.game.revealedSafe(), 8);
+    t.checkExpect(this.game.reveal(0, 1), 1);
+    t.checkExpect(this.game.lost, true);
+    t.checkExpect(this.game.isOver(), true);
+    t.checkExpect(this.game.won(), false);
+    t.checkException(new IllegalArgumentException("Cell (3, 0) is not on a 3x4 board"),
+        this.game, "reveal", 3, 0);
+  }
+
+  // tests for chord and open
+  void testChord(Tester t) {
+    this.initData();
+    IntList changed = new IntList();
+    t.checkExpect(this.game.open(1, 1, changed), 1);
+    this.game.flag(0, 1);
+    t.checkExpect(this.game.open(1, 1, changed), 0);
+    this.game.flag(2, 0);
+    t.checkExpect(this.game.open(1, 1, changed), 9);
+    t.checkExpect(changed.size(), 10);
+    t.checkExpect(this.game.clicks, 5);
+    t.checkExpect(this.game.won(), true);
+
+    this.initData();
+    this.game.reveal(1, 1);
+    this.game.flag(0, 1);
+    this.game.flag(0, 0);
+    t.checkExpect(this.game.chord(1, 1, new IntList()), 9);
+    t.checkExpect(this.game.lost, true);
+  }
+
+  // tests for revealAll
+  void testRevealAll(Tester t) {
+    this.initData();
+    IntList cells = new IntList();
+    cells.add(11);
+    cells.add(0);
+    cells.add(12);
+    IntList changed = new IntList();
+    t.checkException(new IllegalArgumentException("Cell (3, 0) is not on a 3x4 board"),
+        this.game, "revealAll", cells, changed);
+    t.checkExpect(this.game.clicks, 0);
+    t.checkExpect(this.game.revealedSafe(), 0);
+    cells.removeLast();
+    t.checkExpect(this.game.revealAll(cells, changed), 9);
+    t.checkExpect(this.game.clicks, 2);
+    t.checkExpect(this.game.lost, false);
+    cells.add(8);
+    t.checkExpect(this.game.revealAll(cells, changed), 1);
+    t.checkExpect(this.game.lost, true);
+    t.checkExpect(changed.size(), 10);
+  }
+
+  // tests for flag
+  void testFlag(Tester t) {
+    this.initData();
+    t.checkExpect(this.game.flag(0, 1), true);
+    t.checkExpect(this.game.reveal(0, 1), 0);
+    t.checkExpect(this.game.lost, false);
+    t.checkExpect(this.game.flag(0, 1), false);
+    this.game.reveal(0, 0);
+    // flags cannot go on uncovered cells
+    t.checkExpect(this.game.flag(0, 0), false);
+    t.checkExpect(this.board3x4.flags, 0);
+  }
+
+  // tests for state, won and isOver
+  void testState(Tester t) {
+    this.initData();
+    t.checkExpect(this.game.state(0, 0), Game.COVERED);
+    this.game.flag(0, 0);
+    t.checkExpect(this.game.state(0, 0), Game.FLAGGED);
+    this.game.flag(0, 0);
+    this.game.reveal(0, 0);
+    t.checkExpect(this.game.state(0, 0), 1);
+    this.game.reveal(2, 3);
+    t.checkExpect(this.game.state(2, 3), 0);
+    t.checkExpect(this.game.isOver(), false);
+    this.game.reveal(1, 0);
+    this.game.reveal(1, 1);
+    t.checkExpect(this.game.won(), true);
+    t.checkExpect(this.game.isOver(), true);
+    this.game.reveal(2, 0);
+    t.checkExpect(this.game.state(2, 0), Game.EXPLODED);
+    t.checkExpect(this.game.won(), false);
+  }
+
+  // tests for safeStart games, which place their mines at the first reveal
+  void testSafeStart(Tester t) {
+    Game game = new Game(30, 40, 300, 7L, true);
+    t.checkExpect(game.placed, false);
+    t.checkExpect(game.board.mines.size(), 0);
+    t.checkExpect(game.flag(0, 0), true);
+    t.checkExpect(game.placed, false);
+    // revealing the flag leaves it covered and keeps the safe start for a real reveal
+    t.checkExpect(game.reveal(0, 0), 0);
+    t.checkExpect(game.placed, false);
+    t.checkExpect(game.board.mines.size(), 0);
+    int opened = game.reveal(10, 20);
+    t.checkExpect(game.placed, true);
+    t.checkExpect(game.board.mines.size(), 300);
+    t.checkExpect(game.lost, false);
+    t.checkExpect(game.board.isMarked(0), true);
+    // the cell revealed and its neighbors are clear, so the reveal opened an area
+    boolean clear = true;
+    for (int row = 9; row <= 11; row++) {
+      for (int col = 19; col <= 21; col++) {
+        clear = clear && !game.board.isMine(game.cell(row, col));
+      }
+    }
+    t.checkExpect(clear, true);
+    t.checkExpect(game.state(10, 20), 0);
+    t.checkExpect(opened > 9, true);
+    t.checkExpect(game.revealedSafe(), opened);
+    // only the uncovered cells were counted
+    boolean counted = true;
+    int uncounted = 0;
+    for (int idx = 0; idx < game.board.size(); idx++) {
+      boolean right = game.board.isMine(idx)
+          || game.board.nearMines(idx) == game.board.countMines(idx);
+      if (game.board.isUncovered(idx)) {
+        counted = counted && right;
+      }
+      else if (!right) {
+        uncounted++;
+      }
+    }
+    t.checkExpect(counted, true);
+    t.checkExpect(uncounted > 0, true);
+
+    // the same seed and first reveal place the same mines, however the reveal is made
+    Game again = new Game(30, 40, 300, 7L, true);
+    again.flag(0, 0);
+    again.reveal(10, 20);
+    t.checkExpect(again.board.cells, game.board.cells);
+    Game all = new Game(30, 40, 300, 7L, true);
+    all.flag(0, 0);
+    IntList cells = new IntList();
+    cells.add(all.cell(0, 0));
+    cells.add(all.cell(10, 20));
+    all.revealAll(cells, new IntList());
+    t.checkExpect(all.board.mines.toArray(), game.board.mines.toArray());
+
+    // every cell is counted once the counts are finished
+    game.board.finishCounts();
+    boolean finished = true;
+    for (int idx = 0; idx < game.board.size(); idx++) {
+      finished = finished && (game.board.isMine(idx)
+          || game.board.nearMines(idx) == game.board.countMines(idx));
+    }
+    t.checkExpect(finished, true);
+
+    // a reveal in a corner keeps only its four cells clear
+    Game corner = new Game(4, 4, 7, 2L, true);
+    corner.reveal(0, 0);
+    t.checkExpect(corner.board.mines.size(), 7);
+    t.checkExpect(corner.board.isMine(0) || corner.board.isMine(1) || corner.board.isMine(4)
+        || corner.board.isMine(5), false);
+    t.checkExpect(corner.lost, false);
+    t.checkConstructorException(new IllegalArgumentException(
+        "Cannot place 1 mines on a 3x3 board and keep a first click clear"),
+        "Game", 3, 3, 1, 2L, true);
+    Minesweeper world = new Minesweeper(16, 30, 99, true);
+    t.checkExpect(world.game.placed, false);
+    t.checkExpect(world.board.mines.size(), 0);
+  }
+}
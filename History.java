@@ -0,0 +1,425 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import tester.*;
+import javalib.worldimages.*;
+
+//to represent one node of a CellTrie: either a block of cells, or the children below
+//an inner node
+//A node may only be changed in place by the update that made it, identified by edit;
+//every other update copies it first, so a finished trie never changes.
+class TrieNode {
+  Object edit;
+  TrieNode[] children;
+  byte[] cells;
+
+  TrieNode(Object edit, TrieNode[] children, byte[] cells) {
+    this.edit = edit;
+    this.children = children;
+    this.cells = cells;
+  }
+
+  // a copy of this node that the update identified by edit may change
+  TrieNode editable(Object edit) {
+    if (this.edit == edit) {
+      return this;
+    }
+    if (this.cells != null) {
+      return new TrieNode(edit, null, this.cells.clone());
+    }
+    return new TrieNode(edit, this.children.clone(), null);
+  }
+}
+
+//to represent an unchanging copy of a board's cells, stored as a tree of fixed size
+//blocks
+//The cells are cut into blocks of BLOCK cells, and inner nodes have BRANCH children
+//each. Changing some cells copies only the blocks holding them and the inner nodes
+//above those blocks, and shares everything else with the trie it was made from, so
+//the memory one version costs follows the cells it changed and not the board.
+class CellTrie {
+  static final int BLOCK_BITS = 6;
+  static final int BLOCK = 1 << BLOCK_BITS;
+  static final int BRANCH_BITS = 5;
+  static final int BRANCH = 1 << BRANCH_BITS;
+
+  int size;
+  // the number of levels of inner nodes above the blocks
+  int levels;
+  TrieNode root;
+
+  // a trie holding a copy of cells
+  CellTrie(byte[] cells) {
+    this.size = cells.length;
+    long blocks = (cells.length + BLOCK - 1) / BLOCK;
+    this.levels = 0;
+    while ((1L << (BRANCH_BITS * this.levels)) < blocks) {
+      this.levels++;
+    }
+    this.root = this.build(cells, 0, this.levels, new Object());
+  }
+
+  CellTrie(int size, int levels, TrieNode root) {
+    this.size = size;
+    this.levels = levels;
+    this.root = root;
+  }
+
+  // a node at the given level holding the cells from block firstBlock on
+  TrieNode build(byte[] cells, int firstBlock, int level, Object edit) {
+    int first = firstBlock * BLOCK;
+    if (level == 0) {
+      return new TrieNode(edit, null, Arrays.copyOfRange(cells, first, first + BLOCK));
+    }
+    TrieNode[] children = new TrieNode[BRANCH];
+    int span = 1 << (BRANCH_BITS * (level - 1));
+    for (int i = 0; i < BRANCH && (long) (firstBlock + i * span) * BLOCK < this.size; i++) {
+      children[i] = this.build(cells, firstBlock + i * span, level - 1, edit);
+    }
+    return new TrieNode(edit, children, null);
+  }
+
+  // the cell at idx
+  byte get(int idx) {
+    TrieNode node = this.root;
+    int block = idx >>> BLOCK_BITS;
+    for (int level = this.levels; level > 0; level--) {
+      node = node.children[(block >>> (BRANCH_BITS * (level - 1))) & (BRANCH - 1)];
+    }
+    return node.cells[idx & (BLOCK - 1)];
+  }
+
+  // a trie like this one, except that each cell listed in changed holds what it holds
+  // in cells
+  CellTrie with(IntList changed, byte[] cells) {
+    Object edit = new Object();
+    TrieNode root = this.root;
+    for (int i = 0; i < changed.size(); i++) {
+      int idx = changed.get(i);
+      root = this.set(root, idx >>> BLOCK_BITS, idx & (BLOCK - 1), cells[idx], this.levels,
+          edit);
+    }
+    return new CellTrie(this.size, this.levels, root);
+  }
+
+  // node, or a copy of it that the update identified by edit may change, with the cell
+  // at offset of the given block set to value
+  TrieNode set(TrieNode node, int block, int offset, byte value, int level, Object edit) {
+    TrieNode copy = node.editable(edit);
+    if (level == 0) {
+      copy.cells[offset] = value;
+    }
+    else {
+      int i = (block >>> (BRANCH_BITS * (level - 1))) & (BRANCH - 1);
+      copy.children[i] = this.set(copy.children[i], block, offset, value, level - 1, edit);
+    }
+    return copy;
+  }
+}
+
+//to represent the state of a game after one move: its cells, and which of them the
+//move changed
+class Version {
+  CellTrie cells;
+  // the cells that differ from the version before, possibly with repeats
+  int[] changed;
+  boolean lost;
+  int clicks;
+
+  Version(CellTrie cells, int[] changed, Game game) {
+    this.cells = cells;
+    this.changed = changed;
+    this.lost = game.lost;
+    this.clicks = game.clicks;
+  }
+}
+
+//to represent the moves of a game that can be undone and redone
+//Each move keeps a CellTrie of the cells after it, sharing every block the move did
+//not touch with the move before, and the list of cells it changed. Undoing or redoing
+//a move only puts back the cells it changed, reading them from the neighboring
+//version, so both cost as much as the move changed and not the size of the board.
+class History {
+  Game game;
+  ArrayList<Version> versions;
+  // the version the game is at
+  int current;
+
+  History(Game game) {
+    this.game = game;
+    this.versions = new ArrayList<Version>();
+    this.versions.add(new Version(new CellTrie(game.board.cells), new int[0], game));
+    this.current = 0;
+  }
+
+  // EFFECT: records the move just made in the game, which changed the cells listed in
+  // changed, and forgets any moves that were undone
+  void record(IntList changed) {
+    while (this.versions.size() > this.current + 1) {
+      this.versions.remove(this.versions.size() - 1);
+    }
+    CellTrie last = this.versions.get(this.current).cells;
+    this.versions.add(new Version(last.with(changed, this.game.board.cells),
+        changed.toArray(), this.game));
+    this.current++;
+  }
+
+  // is there a move to undo?
+  boolean canUndo() {
+    return this.current > 0;
+  }
+
+  // is there an undone move to redo?
+  boolean canRedo() {
+    return this.current + 1 < this.versions.size();
+  }
+
+  // EFFECT: puts the game back to how it was before the last move, if there is one
+  // returns whether a move was undone
+  boolean undo() {
+    if (!this.canUndo()) {
+      return false;
+    }
+    int[] changed = this.versions.get(this.current).changed;
+    this.current--;
+    this.restore(changed, this.versions.get(this.current));
+    return true;
+  }
+
+  // EFFECT: makes the last undone move again, if there is one
+  // returns whether a move was redone
+  boolean redo() {
+    if (!this.canRedo()) {
+      return false;
+    }
+    this.current++;
+    Version next = this.versions.get(this.current);
+    this.restore(next.changed, next);
+    return true;
+  }
+
+  // EFFECT: sets the given cells, and the rest of the game's state, to what they are
+  // in version
+  // Mines never move once placed, but a safeStart game places them at its first reveal,
+  // after the versions before it were made; each cell keeps the mine bit it has now
+  void restore(int[] cells, Version version) {
+    byte[] now = this.game.board.cells;
+    for (int idx : cells) {
+      this.game.board.restoreCell(idx, (byte) (version.cells.get(idx) | (now[idx] & Board.MINE)));
+    }
+    this.game.lost = version.lost;
+    this.game.clicks = version.clicks;
+  }
+}
+
+//tests and examples for CellTrie and History
+class ExamplesHistory {
+
+  // tests for building, reading and changing a CellTrie
+  void testCellTrie(Tester t) {
+    byte[] cells = new byte[5000];
+    for (int i = 0; i < cells.length; i++) {
+      cells[i] = (byte) (i % 100);
+    }
+    CellTrie trie = new CellTrie(cells);
+    // 79 blocks need two levels of 32 children
+    t.checkExpect(trie.levels, 2);
+    t.checkExpect(trie.get(0), (byte) 0);
+    t.checkExpect(trie.get(4999), (byte) 99);
+    t.checkExpect(new CellTrie(new byte[64]).levels, 0);
+    cells[70] = 1;
+    cells[4000] = 2;
+    cells[4001] = 3;
+    IntList changed = new IntList();
+    changed.add(70);
+    changed.add(4000);
+    changed.add(4001);
+    CellTrie next = trie.with(changed, cells);
+    t.checkExpect(next.get(70), (byte) 1);
+    t.checkExpect(next.get(4001), (byte) 3);
+    t.checkExpect(next.get(71), (byte) 71);
+    // the old trie is untouched
+    t.checkExpect(trie.get(70), (byte) 70);
+    t.checkExpect(trie.get(4000), (byte) 0);
+    // only the touched blocks and the nodes above them were copied
+    t.checkExpect(next.root.children[0].children[0] == trie.root.children[0].children[0],
+        true);
+    t.checkExpect(next.root.children[0].children[1] == trie.root.children[0].children[1],
+        false);
+    t.checkExpect(next.root.children[1] == trie.root.children[1], false);
+    t.checkExpect(next.root.children[2] == trie.root.children[2], true);
+    t.checkExpect(next.root.children[0].children[2] == trie.root.children[0].children[2],
+        true);
+  }
+
+  // tests for undo and redo
+  void testUndoRedo(Tester t) {
+    Game game = new Game(30, 40, 100, 3L);
+    History history = new History(game);
+    t.checkExpect(history.undo(), false);
+    byte[] start = game.board.cells.clone();
+    IntList changed = new IntList();
+    int idx = 0;
+    while (game.board.isMine(idx) || game.board.nearMines(idx) > 0) {
+      idx++;
+    }
+    game.reveal(idx / 40, idx % 40, changed);
+    history.record(changed);
+    byte[] afterReveal = game.board.cells.clone();
+    int coveredSafe = game.board.coveredSafe;
+    int mine = game.board.mines.get(0);
+    game.flag(mine / 40, mine % 40);
+    changed.clear();
+    changed.add(mine);
+    history.record(changed);
+    byte[] afterFlag = game.board.cells.clone();
+
+    t.checkExpect(history.undo(), true);
+    t.checkExpect(game.board.cells, afterReveal);
+    t.checkExpect(game.board.flags, 0);
+    t.checkExpect(game.clicks, 1);
+    t.checkExpect(history.undo(), true);
+    t.checkExpect(game.board.cells, start);
+    t.checkExpect(game.board.coveredSafe, 1100);
+    t.checkExpect(game.clicks, 0);
+    t.checkExpect(history.canUndo(), false);
+    t.checkExpect(history.redo(), true);
+    t.checkExpect(game.board.coveredSafe, coveredSafe);
+    t.checkExpect(history.redo(), true);
+    t.checkExpect(game.board.cells, afterFlag);
+    t.checkExpect(history.redo(), false);
+
+    // a loss can be undone, and a new move forgets the undone ones
+    game.flag(mine / 40, mine % 40);
+    changed.clear();
+    changed.add(mine);
+    history.record(changed);
+    changed.clear();
+    game.reveal(mine / 40, mine % 40, changed);
+    history.record(changed);
+    t.checkExpect(game.lost, true);
+    history.undo();
+    t.checkExpect(game.lost, false);
+    t.checkExpect(game.board.cells, afterReveal);
+    t.checkExpect(game.board.flags, 0);
+    changed.clear();
+    changed.add(mine);
+    game.flag(mine / 40, mine % 40);
+    history.record(changed);
+    t.checkExpect(history.canRedo(), false);
+    t.checkExpect(history.versions.size(), 5);
+  }
+
+  // tests that undoing a safeStart game keeps the mines placed after its history began
+  void testUndoSafeStart(Tester t) {
+    Game game = new Game(30, 40, 100, 3L, true);
+    History history = new History(game);
+    IntList changed = new IntList();
+    game.reveal(15, 20, changed);
+    history.record(changed);
+    byte[] afterReveal = game.board.cells.clone();
+    int mine = game.board.mines.get(0);
+    game.flag(mine / 40, mine % 40);
+    changed.clear();
+    changed.add(mine);
+    history.record(changed);
+    byte[] afterFlag = game.board.cells.clone();
+
+    history.undo();
+    t.checkExpect(game.board.isMine(mine), true);
+    t.checkExpect(game.board.isMarked(mine), false);
+    history.undo();
+    t.checkExpect(game.board.mines.size(), 100);
+    t.checkExpect(game.board.coveredSafe, 1100);
+    t.checkExpect(game.revealedSafe(), 0);
+    history.redo();
+    history.redo();
+    t.checkExpect(game.board.cells, afterFlag);
+    // the cells covered again are counted again when next uncovered
+    history.undo();
+    history.undo();
+    game.reveal(15, 20);
+    t.checkExpect(game.board.cells, afterReveal);
+  }
+
+  // tests that a flood over a huge board copies only the blocks it changed
+  void testSharing(Tester t) {
+    Board board = new Board(1000, 1000);
+    board.placeMine(board.index(0, 1));
+    Game game = new Game(board, 1);
+    History history = new History(game);
+    IntList changed = new IntList();
+    // opens the one cell in the top left corner, then everything else
+    game.reveal(0, 0, changed);
+    history.record(changed);
+    CellTrie before = history.versions.get(1).cells;
+    t.checkExpect(before.get(0), game.board.cells[0]);
+    t.checkExpect(before.root.children[1] == history.versions.get(0).cells.root.children[1],
+        true);
+    changed.clear();
+    game.reveal(999, 999, changed);
+    history.record(changed);
+    history.undo();
+    t.checkExpect(game.board.coveredSafe, 1000000 - 2);
+    t.checkExpect(game.board.cells, this.cellsOf(history.versions.get(1).cells));
+  }
+
+  // the cells the trie holds
+  byte[] cellsOf(CellTrie trie) {
+    byte[] cells = new byte[trie.size];
+    for (int i = 0; i < cells.length; i++) {
+      cells[i] = trie.get(i);
+    }
+    return cells;
+  }
+
+  // tests undoing and redoing from the keyboard
+  void testWorldUndo(Tester t) {
+    Minesweeper world = new Minesweeper(new Game(9, 9, 10, 4L));
+    int idx = 0;
+    while (world.board.isMine(idx)) {
+      idx++;
+    }
+    world.onMouseReleased(new Posn((idx % 9) * IConstants.tileSize,
+        (idx / 9) * IConstants.tileSize), "LeftButton");
+    byte[] played = world.board.cells.clone();
+    world.makeScene();
+    world.onKeyEvent("u");
+    t.checkExpect(world.board.coveredSafe, 71);
+    t.checkExpect(world.journal.size(), 0);
+    t.checkExpect(world.dirty.cells.size() > 0, true);
+    world.onKeyEvent("r");
+    t.checkExpect(world.board.cells, played);
+    t.checkExpect(world.journal.size(), 1);
+    t.checkExpect(new Replay(world.journal).toEnd().board.cells, played);
+    world.onKeyEvent("r");
+    t.checkExpect(world.journal.size(), 1);
+  }
+
+  // tests that undoing the move that lost the game hides the mines the frame showed
+  void testWorldUndoLoss(Tester t) {
+    Minesweeper world = new Minesweeper(new Game(9, 9, 10, 4L));
+    int mine = world.board.mines.get(0);
+    world.onMouseReleased(new Posn((mine % 9) * IConstants.tileSize,
+        (mine / 9) * IConstants.tileSize), "LeftButton");
+    byte[] lost = world.board.cells.clone();
+    world.makeScene();
+    t.checkExpect(world.minesShown, true);
+    t.checkExpect(world.board.cells, lost);
+    world.onKeyEvent("u");
+    world.makeScene();
+    t.checkExpect(world.gameOver, false);
+    t.checkExpect(world.minesShown, false);
+    t.checkExpect(world.viewport.minesShown, false);
+    t.checkExpect(world.messageShown, false);
+    boolean covered = true;
+    for (int i = 0; i < world.board.mines.size(); i++) {
+      covered = covered && !world.board.isUncovered(world.board.mines.get(i));
+    }
+    t.checkExpect(covered, true);
+    world.onKeyEvent("r");
+    t.checkExpect(world.board.cells, lost);
+    world.makeScene();
+    t.checkExpect(world.minesShown, true);
+  }
+}
@@ -0,0 +1,514 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import tester.*;
+import javalib.worldimages.*;
+
+//to represent the moves of one game, in the order they were made
+//Each move is packed into a single long: the cell index in the low 32 bits, whether
+//it was a flag in bit 32, and the milliseconds since the journal began above that.
+//Moves are only ever appended, and together with the seed and size of the board they
+//are enough to rebuild the game at any point. A game that its seed cannot make again,
+//because the seed is not known or the game was already played when the journal began,
+//has its cells at that point kept in the journal instead, and is rebuilt from them.
+class Journal {
+  static final long FLAG_BIT = 1L << 32;
+  static final int MILLIS_SHIFT = 33;
+  static final int MAGIC = 0x4D534A4E;
+  // begins the journals of safeStart games, which are otherwise saved the same way
+  static final int SAFE_START_MAGIC = 0x4D534A53;
+  // begins the journals that keep the cells the game began with, saved after the seed
+  // along with whether it was a safeStart game and its clicks and loss at that point
+  static final int START_MAGIC = 0x4D534A43;
+
+  int rows;
+  int cols;
+  int numMines;
+  long seed;
+  // was the game a safeStart game, with its mines placed at the first reveal?
+  boolean safeStart;
+  // the cells, clicks and loss of the game when the journal began, or null cells if
+  // the seed alone makes the game again
+  byte[] startCells;
+  int startClicks;
+  boolean startLost;
+  long[] moves;
+  int size;
+  // how many moves past size were undone and can still be redone
+  int undone;
+  // when the journal began, from System.nanoTime
+  long startNanos;
+
+  Journal(int rows, int cols, int numMines, long seed) {
+    this.rows = rows;
+    this.cols = cols;
+    this.numMines = numMines;
+    this.seed = seed;
+    this.moves = new long[64];
+    this.size = 0;
+    this.startNanos = System.nanoTime();
+  }
+
+  // a journal for the moves still to be made in game
+  // throws an IllegalArgumentException if game is still to place its mines from a
+  // seed that is not known, since then nothing can place them the same way again, or
+  // if it is not played on a square board, since replays rebuild their boards square
+  Journal(Game game) {
+    this(game.rows, game.cols, game.numMines, game.seed);
+    Snapshot.checkSquare(game, "journal");
+    if (!game.placed && game.seed == 0) {
+      throw new IllegalArgumentException(
+          "Cannot journal a game that will place its mines from an unknown seed");
+    }
+    this.safeStart = game.safeStart;
+    if (!game.asSeeded()) {
+      this.startCells = game.board.cells.clone();
+      this.startClicks = game.clicks;
+      this.startLost = game.lost;
+    }
+  }
+
+  // a new game like the one this journal's moves were made in, before any of them
+  Game newGame() {
+    if (this.startCells == null) {
+      return new Game(this.rows, this.cols, this.numMines, this.seed, this.safeStart);
+    }
+    Board board = new Board(this.rows, this.cols);
+    System.arraycopy(this.startCells, 0, board.cells, 0, this.startCells.length);
+    IntList mines = new IntList();
+    for (int idx = 0; idx < board.size(); idx++) {
+      if (board.isMine(idx)) {
+        mines.add(idx);
+      }
+    }
+    return Snapshot.restore(board, mines, this.numMines, this.seed, this.startClicks,
+        this.startLost);
+  }
+
+  // EFFECT: appends a move on cell, made nanos after the journal began
+  void record(int cell, boolean flag, long nanos) {
+    if (this.size == this.moves.length) {
+      this.moves = Arrays.copyOf(this.moves, this.moves.length * 2);
+    }
+    long millis = Math.max(nanos / 1000000, 0);
+    long move = (cell & 0xFFFFFFFFL) | (millis << MILLIS_SHIFT);
+    if (flag) {
+      move |= FLAG_BIT;
+    }
+    this.moves[this.size] = move;
+    this.size++;
+    this.undone = 0;
+  }
+
+  // EFFECT: appends a move on cell made now
+  void record(int cell, boolean flag) {
+    this.record(cell, flag, System.nanoTime() - this.startNanos);
+  }
+
+  // EFFECT: drops the last move, keeping it to be redone
+  void undo() {
+    if (this.size > 0) {
+      this.size--;
+      this.undone++;
+    }
+  }
+
+  // EFFECT: puts back the last move dropped by undo, if no move was recorded since
+  void redo() {
+    if (this.undone > 0) {
+      this.size++;
+      this.undone--;
+    }
+  }
+
+  // the number of moves recorded
+  int size() {
+    return this.size;
+  }
+
+  // the cell of move i
+  int cell(int i) {
+    return (int) this.moves[i];
+  }
+
+  // was move i a flag, rather than a reveal?
+  boolean isFlag(int i) {
+    return (this.moves[i] & FLAG_BIT) != 0;
+  }
+
+  // the milliseconds after the journal began that move i was made
+  long millis(int i) {
+    return this.moves[i] >>> MILLIS_SHIFT;
+  }
+
+  // EFFECT: makes move i in game, without recording which cells it changed
+  void apply(int i, Game game, IntList scratch) {
+    int cell = this.cell(i);
+    if (this.isFlag(i)) {
+      game.flag(cell / this.cols, cell % this.cols);
+    }
+    else {
+      scratch.clear();
+      game.open(cell / this.cols, cell % this.cols, scratch);
+    }
+  }
+
+  // EFFECT: writes this journal to the file at path, replacing anything already there
+  void save(Path path) throws IOException {
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(path)))) {
+      if (this.startCells != null) {
+        out.writeInt(START_MAGIC);
+      }
+      else if (this.safeStart) {
+        out.writeInt(SAFE_START_MAGIC);
+      }
+      else {
+        out.writeInt(MAGIC);
+      }
+      out.writeInt(this.rows);
+      out.writeInt(this.cols);
+      out.writeInt(this.numMines);
+      out.writeLong(this.seed);
+      if (this.startCells != null) {
+        out.writeBoolean(this.safeStart);
+        out.writeInt(this.startClicks);
+        out.writeBoolean(this.startLost);
+        out.write(this.startCells);
+      }
+      out.writeInt(this.size);
+      for (int i = 0; i < this.size; i++) {
+        out.writeLong(this.moves[i]);
+      }
+    }
+  }
+
+  // the journal saved in the file at path
+  // throws an IOException if the file is not a journal or ends early
+  static Journal load(Path path) throws IOException {
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(path)))) {
+      int magic = in.readInt();
+      if (magic != MAGIC && magic != SAFE_START_MAGIC && magic != START_MAGIC) {
+        throw new IOException(path + " is not a minesweeper journal");
+      }
+      Journal journal = new Journal(in.readInt(), in.readInt(), in.readInt(), in.readLong());
+      journal.safeStart = magic == SAFE_START_MAGIC;
+      if (magic == START_MAGIC) {
+        journal.safeStart = in.readBoolean();
+        journal.startClicks = in.readInt();
+        journal.startLost = in.readBoolean();
+        journal.startCells = new byte[journal.rows * journal.cols];
+        in.readFully(journal.startCells);
+      }
+      int size = in.readInt();
+      journal.moves = new long[Math.max(size, 1)];
+      for (int i = 0; i < size; i++) {
+        journal.moves[i] = in.readLong();
+      }
+      journal.size = size;
+      return journal;
+    }
+  }
+}
+
+//to represent the state of a game after some number of moves, kept so that seeking
+//does not have to replay from the start
+class Checkpoint {
+  int moves;
+  byte[] cells;
+  boolean lost;
+  int clicks;
+
+  Checkpoint(int moves, Game game) {
+    this.moves = moves;
+    this.cells = game.board.cells.clone();
+    this.lost = game.lost;
+    this.clicks = game.clicks;
+  }
+
+  // EFFECT: puts game back to the state it was in at this checkpoint
+  void restore(Game game) {
+    System.arraycopy(this.cells, 0, game.board.cells, 0, this.cells.length);
+    // the mines never move, so the list of them is still right; a safeStart game may
+    // have placed them since this checkpoint, so their bits are put back
+    for (int i = 0; i < game.board.mines.size(); i++) {
+      game.board.cells[game.board.mines.get(i)] |= Board.MINE;
+    }
+    game.board.recount(game.board.mines);
+    game.lost = this.lost;
+    game.clicks = this.clicks;
+  }
+}
+
+//to represent replaying a journal on a headless game, seeking to any move
+//Moves are applied straight to the game with nothing drawn. While replaying forward,
+//the state is saved every interval moves, so seeking backward restores the nearest
+//earlier checkpoint and replays only the moves after it.
+class Replay {
+  Journal journal;
+  Game game;
+  // the number of moves of the journal applied to game
+  int position;
+  int interval;
+  ArrayList<Checkpoint> checkpoints;
+  IntList scratch;
+
+  Replay(Journal journal, int interval) {
+    if (interval < 1) {
+      throw new IllegalArgumentException("Checkpoints must be at least one move apart");
+    }
+    this.journal = journal;
+    this.interval = interval;
+    this.game = journal.newGame();
+    this.position = 0;
+    this.checkpoints = new ArrayList<Checkpoint>();
+    this.checkpoints.add(new Checkpoint(0, this.game));
+    this.scratch = new IntList();
+  }
+
+  // large boards save their state less often, since each checkpoint copies every cell
+  Replay(Journal journal) {
+    this(journal, Math.max(64, journal.rows * journal.cols / 4096));
+  }
+
+  // EFFECT: moves the game to its state after the first target moves of the journal
+  // returns the game
+  Game seek(int target) {
+    if (target < 0 || target > this.journal.size()) {
+      throw new IllegalArgumentException(
+          "Cannot seek to move " + target + " of " + this.journal.size());
+    }
+    Checkpoint nearest = this.checkpoints.get(
+        Math.min(target / this.interval, this.checkpoints.size() - 1));
+    if (target < this.position || nearest.moves > this.position) {
+      nearest.restore(this.game);
+      this.position = nearest.moves;
+    }
+    while (this.position < target) {
+      this.journal.apply(this.position, this.game, this.scratch);
+      this.position++;
+      if (this.position % this.interval == 0
+          && this.checkpoints.size() == this.position / this.interval) {
+        this.checkpoints.add(new Checkpoint(this.position, this.game));
+      }
+    }
+    return this.game;
+  }
+
+  // EFFECT: moves the game to its state after every move of the journal
+  // returns the game
+  Game toEnd() {
+    return this.seek(this.journal.size());
+  }
+}
+
+//tests and examples for Journal and Replay
+class ExamplesJournal {
+
+  // a world played with random clicks, recording its journal
+  Minesweeper played(int clicks, long seed) {
+    return this.play(new Minesweeper(new Game(16, 30, 60, seed)), clicks, seed);
+  }
+
+  // world, a 16x30 world, after the given number of random clicks drawn from seed
+  Minesweeper play(Minesweeper world, int clicks, long seed) {
+    Random rand = new Random(seed);
+    for (int i = 0; i < clicks && !world.game.isOver(); i++) {
+      int row = rand.nextInt(16);
+      int col = rand.nextInt(30);
+      String button = "LeftButton";
+      if (world.board.isMine(world.board.index(row, col))) {
+        button = "RightButton";
+      }
+      world.onMouseReleased(new Posn(col * IConstants.tileSize,
+          row * IConstants.tileSize), button);
+    }
+    return world;
+  }
+
+  // tests for record and the packed moves
+  void testRecord(Tester t) {
+    Journal journal = new Journal(9, 9, 10, 3);
+    journal.record(40, false, 2500000);
+    journal.record(80, true, 7000000000L);
+    t.checkExpect(journal.size(), 2);
+    t.checkExpect(journal.cell(0), 40);
+    t.checkExpect(journal.isFlag(0), false);
+    t.checkExpect(journal.millis(0), 2L);
+    t.checkExpect(journal.cell(1), 80);
+    t.checkExpect(journal.isFlag(1), true);
+    t.checkExpect(journal.millis(1), 7000L);
+    for (int i = 0; i < 100; i++) {
+      journal.record(i % 81, false);
+    }
+    t.checkExpect(journal.size(), 102);
+    t.checkExpect(journal.cell(101), 99 % 81);
+    journal.undo();
+    journal.undo();
+    journal.redo();
+    t.checkExpect(journal.size(), 101);
+    t.checkExpect(journal.cell(100), 98 % 81);
+    journal.record(5, true);
+    journal.redo();
+    t.checkExpect(journal.size(), 102);
+    t.checkExpect(journal.cell(101), 5);
+  }
+
+  // tests that a world journals its clicks
+  void testWorldJournal(Tester t) {
+    Minesweeper world = this.played(40, 5);
+    t.checkExpect(world.journal.size(), world.game.clicks);
+    t.checkExpect(world.journal.seed, 5L);
+    Game replayed = new Replay(world.journal).toEnd();
+    t.checkExpect(replayed.board.cells, world.board.cells);
+    t.checkExpect(replayed.lost, world.game.lost);
+  }
+
+  // tests for seeking backward and forward
+  void testSeek(Tester t) {
+    Minesweeper world = this.played(200, 8);
+    Journal journal = world.journal;
+    Replay replay = new Replay(journal, 4);
+    Replay slow = new Replay(journal, 1000000);
+    int[] targets = new int[] { 10, 3, journal.size(), 0, 9, 8, journal.size() / 2 };
+    boolean same = true;
+    for (int target : targets) {
+      Game fresh = new Replay(journal, 1000000).seek(target);
+      if (!Arrays.equals(replay.seek(target).board.cells, fresh.board.cells)
+          || !Arrays.equals(slow.seek(target).board.cells, fresh.board.cells)
+          || replay.game.board.coveredSafe != fresh.board.coveredSafe
+          || replay.game.clicks != fresh.clicks) {
+        same = false;
+      }
+    }
+    t.checkExpect(same, true);
+    t.checkExpect(replay.checkpoints.size(), journal.size() / 4 + 1);
+    t.checkException(new IllegalArgumentException(
+        "Cannot seek to move " + (journal.size() + 1) + " of " + journal.size()), replay,
+        "seek", journal.size() + 1);
+    t.checkConstructorException(
+        new IllegalArgumentException("Checkpoints must be at least one move apart"), "Replay",
+        journal, 0);
+  }
+
+  // tests for save and load
+  void testSaveLoad(Tester t) {
+    Journal journal = this.played(30, 2).journal;
+    try {
+      Path file = Files.createTempFile("minesweeper", ".journal");
+      journal.save(file);
+      Journal loaded = Journal.load(file);
+      t.checkExpect(loaded.size(), journal.size());
+      t.checkExpect(Arrays.copyOf(loaded.moves, loaded.size),
+          Arrays.copyOf(journal.moves, journal.size));
+      t.checkExpect(loaded.seed, 2L);
+      Files.write(file, new byte[30]);
+      String error = "";
+      try {
+        Journal.load(file);
+      }
+      catch (IOException e) {
+        error = e.getMessage();
+      }
+      t.checkExpect(error, file + " is not a minesweeper journal");
+      Files.delete(file);
+    }
+    catch (IOException e) {
+      t.checkExpect(e.getMessage(), "no exception");
+    }
+  }
+
+  // tests that the journal of a safeStart game replays, saved or not
+  void testSafeStart(Tester t) {
+    Minesweeper world = new Minesweeper(new Game(16, 30, 60, 11L, true));
+    world.onMouseReleased(new Posn(2 * IConstants.tileSize, 3 * IConstants.tileSize),
+        "RightButton");
+    world.onMouseReleased(new Posn(10 * IConstants.tileSize, 8 * IConstants.tileSize),
+        "LeftButton");
+    t.checkExpect(world.journal.safeStart, true);
+    t.checkExpect(world.game.placed, true);
+    Replay replay = new Replay(world.journal, 1);
+    t.checkExpect(replay.toEnd().board.cells, world.board.cells);
+    // seeking back before the first reveal keeps the mines it placed
+    Game start = replay.seek(0);
+    t.checkExpect(start.board.mines.size(), 60);
+    t.checkExpect(start.board.isMine(start.board.mines.get(0)), true);
+    t.checkExpect(start.board.coveredSafe, 420);
+    t.checkExpect(start.board.flags, 0);
+    t.checkExpect(replay.toEnd().board.cells, world.board.cells);
+    try {
+      Path file = Files.createTempFile("minesweeper", ".journal");
+      world.journal.save(file);
+      Journal loaded = Journal.load(file);
+      t.checkExpect(loaded.safeStart, true);
+      t.checkExpect(new Replay(loaded).toEnd().board.cells, world.board.cells);
+      this.played(3, 2).journal.save(file);
+      t.checkExpect(Journal.load(file).safeStart, false);
+      Files.delete(file);
+    }
+    catch (IOException e) {
+      t.checkExpect(e.getMessage(), "no exception");
+    }
+  }
+
+  // tests that games their seed cannot make again replay from the cells they began with
+  void testStartCells(Tester t) {
+    t.checkExpect(this.played(0, 4).journal.startCells, null);
+    Minesweeper random = this.play(new Minesweeper(new Game(16, 30, 60, new Random(42))), 40,
+        1);
+    t.checkExpect(random.journal.startCells == null, false);
+    t.checkExpect(new Replay(random.journal).toEnd().board.cells, random.board.cells);
+    Minesweeper fromBoard = this.play(new Minesweeper(new Game(
+        new Game(16, 30, 60, new Random(7)).board, 60)), 40, 2);
+    t.checkExpect(new Replay(fromBoard.journal).toEnd().board.cells, fromBoard.board.cells);
+    // a safeStart game flagged before the journal began still places the same mines
+    Game flagged = new Game(16, 30, 60, 5L, true);
+    flagged.flag(0, 0);
+    Minesweeper safe = this.play(new Minesweeper(flagged), 30, 3);
+    Game replayed = new Replay(safe.journal).toEnd();
+    t.checkExpect(replayed.board.cells, safe.board.cells);
+    t.checkExpect(replayed.clicks, safe.game.clicks);
+    t.checkConstructorException(new IllegalArgumentException(
+        "Cannot journal a game that will place its mines from an unknown seed"), "Journal",
+        new Game(9, 9, 10, new Random(1), true));
+    // replays rebuild their boards square, so only games on square boards are journaled
+    Board hex = new Board(new HexTopology(9, 9));
+    hex.placeMine(0);
+    hex.computeCounts();
+    t.checkConstructorException(new IllegalArgumentException(
+        "Cannot journal a game played on a HexTopology board"), "Journal", new Game(hex, 1));
+    try {
+      // a world loaded part way through replays from where it was loaded
+      Path snap = Files.createTempFile("minesweeper", ".snap");
+      Snapshot.write(this.played(20, 6).game, snap);
+      Minesweeper loaded = this.play(new Minesweeper(Snapshot.read(snap)), 20, 9);
+      t.checkExpect(loaded.journal.startClicks > 0, true);
+      t.checkExpect(new Replay(loaded.journal).toEnd().board.cells, loaded.board.cells);
+      Files.delete(snap);
+
+      Path file = Files.createTempFile("minesweeper", ".journal");
+      random.journal.save(file);
+      Journal again = Journal.load(file);
+      t.checkExpect(again.startCells, random.journal.startCells);
+      t.checkExpect(new Replay(again).toEnd().board.cells, random.board.cells);
+      safe.journal.save(file);
+      again = Journal.load(file);
+      t.checkExpect(again.safeStart, true);
+      t.checkExpect(again.startClicks, 1);
+      t.checkExpect(new Replay(again).toEnd().board.cells, safe.board.cells);
+      Files.delete(file);
+    }
+    catch (IOException e) {
+      t.checkExpect(e.getMessage(), "no exception");
+    }
+  }
+}
@@ -1,4 +1,3 @@
-
 import java.util.ArrayList;
 import java.util.Arrays;
 
@@ -7,6 +6,10 @@ import javalib.impworld.*;
 import java.awt.Color;
 import javalib.worldimages.*;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.io.IOException;
+import java.nio.file.Path;
 
 //global constants
 interface IConstants {
@@ -20,59 +23,627 @@ interface IConstants {
   int tileSize = 30; // FEEL FREE TO CHANGE
 }
 
-//to represent a game piece (tile/mine)
-abstract class AGamePiece {
+//to represent something that wants to hear about every change to a board's cells
+interface ICellListener {
+  // EFFECT: reacts to the cell at idx changing state
+  void cellChanged(int idx);
+}
+
+//to represent the one shared, immutable image for each way a cell can look
+//every cell in the same state is drawn with the very same image object
+class TileImages {
+  static final WorldImage BORDER = new RectangleImage(IConstants.tileSize, IConstants.tileSize,
+      OutlineMode.OUTLINE, Color.BLACK);
+  static final WorldImage COVERED = new OverlayImage(BORDER, new RectangleImage(
+      IConstants.tileSize, IConstants.tileSize, OutlineMode.SOLID, IConstants.tileColor));
+  static final WorldImage FLAGGED = new OverlayImage(
+      new EquilateralTriangleImage(IConstants.tileSize / 2, OutlineMode.SOLID, Color.YELLOW),
+      COVERED);
+  static final WorldImage HINT = new OverlayImage(
+      new CircleImage(IConstants.tileSize / 4, OutlineMode.SOLID, Color.GREEN), COVERED);
+  static final WorldImage EXPLODED = new OverlayImage(
+      new CircleImage(IConstants.tileSize / 4, OutlineMode.SOLID, Color.BLACK),
+      new OverlayImage(BORDER, new RectangleImage(IConstants.tileSize, IConstants.tileSize,
+          OutlineMode.SOLID, IConstants.explodedMineTile)));
+  // REVEALED[n] is an uncovered tile with n neighboring mines
+  static final WorldImage[] REVEALED = TileImages.revealedImages();
+
+  // builds the images of uncovered tiles with 0 through 8 neighboring mines
+  static WorldImage[] revealedImages() {
+    WorldImage[] images = new WorldImage[9];
+    images[0] = new OverlayImage(BORDER, new RectangleImage(IConstants.tileSize,
+        IConstants.tileSize, OutlineMode.SOLID, IConstants.unlockedTileColor));
+    for (int n = 1; n < 9; n++) {
+      images[n] = new OverlayImage(new TextImage(Integer.toString(n), IConstants.tileSize / 2,
+          IConstants.colors.get(n - 1)), images[0]);
+    }
+    return images;
+  }
+
+  // the image for the cell at idx of the given board
+  static WorldImage forCell(Board board, int idx) {
+    if (board.isUncovered(idx)) {
+      if (board.isMine(idx)) {
+        return EXPLODED;
+      }
+      else {
+        return REVEALED[board.nearMines(idx)];
+      }
+    }
+    else if (board.isMarked(idx)) {
+      return FLAGGED;
+    }
+    else {
+      return COVERED;
+    }
+  }
+}
+
+//to represent the set of cells that changed since a scene was last drawn
+//a bitset keeps each changed cell from being listed more than once
+class DirtyCells implements ICellListener {
+  long[] listed;
+  IntList cells;
+  // is every cell dirty, as it is before the first draw?
+  boolean all;
+
+  DirtyCells(int size) {
+    this.listed = new long[(size + 63) / 64];
+    this.cells = new IntList();
+    this.all = true;
+  }
+
+  // EFFECT: adds the cell at idx to the dirty cells, unless it is already there
+  public void cellChanged(int idx) {
+    if (this.all) {
+      return;
+    }
+    long bit = 1L << idx;
+    if ((this.listed[idx >>> 6] & bit) == 0) {
+      this.listed[idx >>> 6] |= bit;
+      this.cells.add(idx);
+    }
+  }
+
+  // EFFECT: empties the dirty cells once they have been drawn
+  void clear() {
+    for (int i = 0; i < this.cells.size(); i++) {
+      int idx = this.cells.get(i);
+      this.listed[idx >>> 6] &= ~(1L << idx);
+    }
+    this.cells.clear();
+    this.all = false;
+  }
+}
+
+//to represent a growable list of ints, stored without boxing
+class IntList {
+  int[] items;
+  int size;
+
+  IntList() {
+    this.items = new int[16];
+    this.size = 0;
+  }
+
+  // the number of ints in this list
+  int size() {
+    return this.size;
+  }
+
+  // is this list empty?
+  boolean isEmpty() {
+    return this.size == 0;
+  }
+
+  // the int at position i of this list
+  int get(int i) {
+    if (i < 0 || i >= this.size) {
+      throw new IndexOutOfBoundsException("Index " + i + " out of bounds for size " + this.size);
+    }
+    return this.items[i];
+  }
+
+  // EFFECT: adds value to the end of this list, growing its storage if needed
+  void add(int value) {
+    if (this.size == this.items.length) {
+      this.items = Arrays.copyOf(this.items, this.items.length * 2);
+    }
+    this.items[this.size] = value;
+    this.size++;
+  }
+
+  // EFFECT: adds every int of other to the end of this list, in order
+  void addAll(IntList other) {
+    if (this.size + other.size > this.items.length) {
+      this.items = Arrays.copyOf(this.items,
+          Math.max(this.items.length * 2, this.size + other.size));
+    }
+    System.arraycopy(other.items, 0, this.items, this.size, other.size);
+    this.size += other.size;
+  }
+
+  // EFFECT: removes the last int of this list
+  // returns the removed int
+  int removeLast() {
+    if (this.size == 0) {
+      throw new IndexOutOfBoundsException("Cannot remove from an empty list");
+    }
+    this.size--;
+    return this.items[this.size];
+  }
+
+  // EFFECT: removes every int from this list, keeping its storage
+  void clear() {
+    this.size = 0;
+  }
+
+  // a copy of the ints in this list
+  int[] toArray() {
+    return Arrays.copyOf(this.items, this.size);
+  }
+}
+
+//to represent the state of every cell on a board, packed into one byte per cell
+//cells are stored row by row, so the cell at (row, col) lives at index row * cols + col
+class Board {
+  // the low four bits of a cell hold its number of neighboring mines
+  static final int NEAR_MINES = 0x0F;
+  static final int MINE = 0x10;
+  static final int UNCOVERED = 0x20;
+  static final int MARKED = 0x40;
+
+  int rows;
+  int cols;
+  // which cells neighbor each other
+  ATopology topology;
+  byte[] cells;
+  // live counters, kept up to date by every change made through this board's methods
+  int coveredSafe;
+  int flags;
+  IntList mines;
+  ArrayList<ICellListener> listeners;
+  // the most cells waiting on the flood's stack at once during the last uncover
+  int floodDepth;
+  // the most cells one uncover or continueFlood uncovers by flooding before it stops,
+  // leaving the rest of the flood for later calls to continueFlood
+  int floodBudget = Integer.MAX_VALUE;
+  // the cells the flood has yet to spread from, empty unless a flood was stopped
+  IntList flood;
+  // is each cell's count of neighboring mines worked out only as it is uncovered, so
+  // that covered cells may not hold theirs?
+  boolean countOnUncover;
+
+  Board(int rows, int cols) {
+    this(SquareTopology.of(rows, cols));
+  }
+
+  Board(ATopology topology) {
+    this.topology = topology;
+    this.rows = topology.rows;
+    this.cols = topology.cols;
+    this.cells = new byte[this.rows * this.cols];
+    this.coveredSafe = this.rows * this.cols;
+    this.flags = 0;
+    this.mines = new IntList();
+    this.listeners = new ArrayList<ICellListener>();
+    this.flood = new IntList();
+  }
+
+  // EFFECT: registers listener to hear about every later change to a cell
+  void addListener(ICellListener listener) {
+    this.listeners.add(listener);
+  }
+
+  // EFFECT: tells every listener that the cell at idx changed
+  void changed(int idx) {
+    for (int i = 0; i < this.listeners.size(); i++) {
+      this.listeners.get(i).cellChanged(idx);
+    }
+  }
+
+  // the number of cells on this board
+  int size() {
+    return this.cells.length;
+  }
+
+  // the index of the cell at the given row and column
+  int index(int row, int col) {
+    return row * this.cols + col;
+  }
+
+  // is the cell at idx a mine?
+  boolean isMine(int idx) {
+    return (this.cells[idx] & MINE) != 0;
+  }
+
+  // is the cell at idx uncovered?
+  boolean isUncovered(int idx) {
+    return (this.cells[idx] & UNCOVERED) != 0;
+  }
+
+  // is the cell at idx marked with a flag?
+  boolean isMarked(int idx) {
+    return (this.cells[idx] & MARKED) != 0;
+  }
+
+  // the stored number of mines neighboring the cell at idx
+  int nearMines(int idx) {
+    return this.cells[idx] & NEAR_MINES;
+  }
+
+  // EFFECT: makes the cell at idx a mine and records it in the list of mines
+  void placeMine(int idx) {
+    if (this.isMine(idx)) {
+      return;
+    }
+    if (!this.isUncovered(idx)) {
+      this.coveredSafe--;
+    }
+    this.cells[idx] |= MINE;
+    this.mines.add(idx);
+    this.changed(idx);
+  }
+
+  // EFFECT: uncovers the cell at idx without flooding its neighbors
+  void setUncovered(int idx) {
+    if (this.isUncovered(idx)) {
+      return;
+    }
+    if (!this.isMine(idx)) {
+      this.coveredSafe--;
+      if (this.countOnUncover) {
+        this.setNearMines(idx, this.countMines(idx));
+      }
+    }
+    this.cells[idx] |= UNCOVERED;
+    this.changed(idx);
+  }
+
+  // EFFECT: flips whether the cell at idx is marked with a flag
+  void toggleMarked(int idx) {
+    if (this.isMarked(idx)) {
+      this.flags--;
+    }
+    else {
+      this.flags++;
+    }
+    this.cells[idx] ^= MARKED;
+    this.changed(idx);
+  }
+
+  // has every cell that is not a mine been uncovered?
+  boolean allSafeUncovered() {
+    return this.coveredSafe == 0;
+  }
+
+  // EFFECT: uncovers every mine on this board, touching only the mine cells
+  void uncoverMines() {
+    for (int i = 0; i < this.mines.size(); i++) {
+      this.setUncovered(this.mines.get(i));
+    }
+  }
+
+  // EFFECT: stores the number of mines neighboring the cell at idx
+  void setNearMines(int idx, int count) {
+    this.cells[idx] = (byte) ((this.cells[idx] & ~NEAR_MINES) | count);
+  }
+
+  // EFFECT: rebuilds the live counters from the cells, after they were filled in
+  // directly rather than through this board's methods; mines lists every mine cell
+  void recount(IntList mines) {
+    int covered = 0;
+    int marked = 0;
+    for (int idx = 0; idx < this.cells.length; idx++) {
+      int cell = this.cells[idx];
+      // 1 when neither bit is set, without a branch
+      covered += ((cell & (MINE | UNCOVERED)) - 1) >>> 31;
+      marked += (cell & MARKED) >>> 6;
+    }
+    this.coveredSafe = covered;
+    this.flags = marked;
+    this.mines = mines;
+  }
 
-  ArrayList<AGamePiece> neighbors;
-  Color color;
-  boolean uncovered = false;
-  boolean marked = false;
+  // EFFECT: puts the cell at idx back into an earlier state, keeping the live counters
+  // right; the mine bit must be the same in both states
+  void restoreCell(int idx, byte cell) {
+    if (this.cells[idx] == cell) {
+      return;
+    }
+    if ((this.cells[idx] & (MINE | UNCOVERED)) == 0) {
+      this.coveredSafe--;
+    }
+    if ((cell & (MINE | UNCOVERED)) == 0) {
+      this.coveredSafe++;
+    }
+    this.flags += ((cell & MARKED) - (this.cells[idx] & MARKED)) >> 6;
+    this.cells[idx] = cell;
+    this.changed(idx);
+  }
 
-  AGamePiece() {
-    this.neighbors = new ArrayList<AGamePiece>();
-    this.color = Color.CYAN;
+  // EFFECT: writes the indices of the cells around idx into out, which must hold at
+  // least maxNeighbors() entries
+  // returns how many neighbors were written
+  int neighbors(int idx, int[] out) {
+    return this.topology.neighbors(idx, out);
   }
 
-  AGamePiece(ArrayList<AGamePiece> neighbors) {
-    this.neighbors = neighbors;
-    this.color = Color.CYAN;
+  // the most neighbors any cell of this board has
+  int maxNeighbors() {
+    return this.topology.maxNeighbors;
   }
 
-  // EFFECT: Changes this AGamePiece's list of neighbors by adding AGamePiece's to
-  // the list
-  // adds all the neighboring tiles in a grid to this AGamePiece's list of
-  // neighbors
-  void addNeighbors(ArrayList<ArrayList<AGamePiece>> grid, int row, int col) {
-    int width = grid.get(0).size();
-    int height = grid.size();
+  // counts the number of mines around the cell at idx
+  int countMines(int idx) {
+    return this.topology.countMines(this.cells, idx);
+  }
+
+  // EFFECT: uncovers the unmarked cell at idx and, if it has no neighboring mines,
+  // floods outward through the covered neighbors that are neither mines nor marked
+  // EFFECT: appends the index of every newly uncovered cell to changed
+  // returns how many cells were newly uncovered
+  // The flood fill keeps an explicit stack of cells instead of recursing, and marks a
+  // cell uncovered as soon as it is pushed, so the uncovered bits double as the
+  // visited set and no cell is pushed twice
+  int uncover(int idx, IntList changed) {
+    IntList cells = new IntList();
+    cells.add(idx);
+    return this.uncoverAll(cells, changed);
+  }
 
-    for (int i = -1; i < 2; i++) {
-      for (int j = -1; j < 2; j++) {
-        if (i + row >= 0 && i + row < height && j + col >= 0 && j + col < width
-            && (i != j || i + j != 0)) {
-          this.neighbors.add(grid.get(row + i).get(col + j));
+  // EFFECT: uncovers every unmarked cell in cells like uncover(idx, changed), in one
+  // pass: the cells share one flood stack and one visited set, so a region reached from
+  // several of them is only flooded once
+  // EFFECT: appends the index of every newly uncovered cell to changed
+  // returns how many cells were newly uncovered
+  int uncoverAll(IntList cells, IntList changed) {
+    int before = changed.size();
+    for (int i = 0; i < cells.size(); i++) {
+      int idx = cells.get(i);
+      if (!this.isMarked(idx)) {
+        if (!this.isUncovered(idx)) {
+          this.setUncovered(idx);
+          changed.add(idx);
         }
+        if (!this.isMine(idx) && this.nearMines(idx) == 0) {
+          this.flood.add(idx);
+        }
+      }
+    }
+    this.floodDepth = this.flood.size();
+    this.continueFlood(changed);
+    return changed.size() - before;
+  }
+
+  // EFFECT: spreads the flood outward from the cells waiting on it, stopping once it
+  // has uncovered floodBudget cells; the flood is the same however often it stops
+  // EFFECT: appends the index of every newly uncovered cell to changed
+  // returns how many cells were newly uncovered
+  int continueFlood(IntList changed) {
+    int before = changed.size();
+    int[] around = new int[this.maxNeighbors()];
+    while (!this.flood.isEmpty() && changed.size() - before < this.floodBudget) {
+      int n = this.neighbors(this.flood.removeLast(), around);
+      for (int k = 0; k < n; k++) {
+        int next = around[k];
+        if ((this.cells[next] & (MINE | UNCOVERED | MARKED)) == 0) {
+          this.setUncovered(next);
+          changed.add(next);
+          if (this.nearMines(next) == 0) {
+            this.flood.add(next);
+          }
+        }
+      }
+      this.floodDepth = Math.max(this.floodDepth, this.flood.size());
+    }
+    return changed.size() - before;
+  }
+
+  // has a flood stopped partway, with cells left for continueFlood?
+  boolean flooding() {
+    return !this.flood.isEmpty();
+  }
+
+  // EFFECT: if the cell at idx is an uncovered number with as many marked neighbors as
+  // neighboring mines, uncovers all of its other covered neighbors in one pass, as
+  // uncoverAll does; a wrongly placed flag means a mine is uncovered
+  // EFFECT: appends the index of every newly uncovered cell to changed
+  // returns how many cells were newly uncovered
+  int chord(int idx, IntList changed) {
+    if (!this.isUncovered(idx) || this.isMine(idx)) {
+      return 0;
+    }
+    int[] around = new int[this.maxNeighbors()];
+    int n = this.neighbors(idx, around);
+    int marked = 0;
+    IntList covered = new IntList();
+    for (int k = 0; k < n; k++) {
+      if (this.isMarked(around[k])) {
+        marked++;
+      }
+      else if (!this.isUncovered(around[k])) {
+        covered.add(around[k]);
+      }
+    }
+    if (marked != this.nearMines(idx)) {
+      return 0;
+    }
+    return this.uncoverAll(covered, changed);
+  }
+
+  // EFFECT: uncovers the cell at idx, flooding outward like uncover(idx, changed)
+  // returns how many cells were newly uncovered
+  int uncover(int idx) {
+    return this.uncover(idx, new IntList());
+  }
+
+  // EFFECT: places count mines on distinct, uniformly chosen cells of this board
+  // Uses Floyd's sampling algorithm: one draw from rand per mine, with the mine bits
+  // themselves recording which cells were already chosen, so no list of candidate
+  // cells is ever built
+  void placeRandomMines(int count, Random rand) {
+    if (count < 0 || count > this.size()) {
+      throw new IllegalArgumentException(
+          "Cannot place " + count + " mines on " + this.size() + " cells");
+    }
+    for (int j = this.size() - count; j < this.size(); j++) {
+      int idx = rand.nextInt(j + 1);
+      if (this.isMine(idx)) {
+        idx = j;
       }
+      this.placeMine(idx);
     }
   }
 
+  // EFFECT: places count mines on distinct, uniformly chosen cells of this board that
+  // are not in clear, which lists distinct cells in increasing order
+  // Uses Floyd's sampling like placeRandomMines, over the positions of the cells not in
+  // clear. Stepping a position past the clear cells before it keeps the cells in order,
+  // so the mine bits still record exactly which positions were chosen
+  void placeRandomMines(int count, Random rand, int[] clear) {
+    int open = this.size() - clear.length;
+    if (count < 0 || count > open) {
+      throw new IllegalArgumentException(
+          "Cannot place " + count + " mines on " + open + " cells");
+    }
+    for (int j = open - count; j < open; j++) {
+      int idx = Board.skip(rand.nextInt(j + 1), clear);
+      if (this.isMine(idx)) {
+        idx = Board.skip(j, clear);
+      }
+      this.placeMine(idx);
+    }
+  }
+
+  // the cell at the given position among the cells not in clear, which lists distinct
+  // cells in increasing order
+  static int skip(int position, int[] clear) {
+    int idx = position;
+    for (int k = 0; k < clear.length && idx >= clear[k]; k++) {
+      idx++;
+    }
+    return idx;
+  }
+
+  // EFFECT: stores the number of neighboring mines in every cell that is not a mine,
+  // if they were only being worked out as cells were uncovered
+  void finishCounts() {
+    if (this.countOnUncover) {
+      this.computeCounts();
+    }
+  }
+
+  // EFFECT: stores the number of neighboring mines in every cell that is not a mine
+  // Boards with at least CountBand.PARALLEL_CELLS cells are split into bands of rows
+  // that are counted in parallel
+  void computeCounts() {
+    if (this.size() < CountBand.PARALLEL_CELLS) {
+      this.countRows(0, this.rows);
+    }
+    else {
+      ForkJoinPool.commonPool().invoke(new CountBand(this, 0, this.rows));
+    }
+  }
+
+  // EFFECT: stores the number of neighboring mines in every cell that is not a mine
+  // in the rows from firstRow up to but not including lastRow
+  void countRows(int firstRow, int lastRow) {
+    this.topology.countRows(this, firstRow, lastRow);
+  }
+
+  // a game piece viewing the cell at the given row and column
+  AGamePiece pieceAt(int row, int col) {
+    int idx = this.index(row, col);
+    if (this.isMine(idx)) {
+      return new Mine(this, idx);
+    }
+    else {
+      return new Tile(this, idx);
+    }
+  }
+}
+
+//to represent counting the neighboring mines of a band of rows on a board
+//bands that are too big are split in half and counted in parallel
+class CountBand extends RecursiveAction {
+  // boards with fewer cells than this are counted on one thread, and bands with fewer
+  // cells than this are not split further
+  static final int PARALLEL_CELLS = 1 << 18;
+
+  Board board;
+  int firstRow;
+  int lastRow;
+
+  CountBand(Board board, int firstRow, int lastRow) {
+    this.board = board;
+    this.firstRow = firstRow;
+    this.lastRow = lastRow;
+  }
+
+  // EFFECT: counts the neighboring mines of every cell in this band's rows
+  protected void compute() {
+    int bandRows = this.lastRow - this.firstRow;
+    if (bandRows < 2 || (long) bandRows * this.board.cols < PARALLEL_CELLS) {
+      this.board.countRows(this.firstRow, this.lastRow);
+    }
+    else {
+      int middle = this.firstRow + bandRows / 2;
+      RecursiveAction.invokeAll(new CountBand(this.board, this.firstRow, middle),
+          new CountBand(this.board, middle, this.lastRow));
+    }
+  }
+}
+
+//to represent a game piece (tile/mine)
+//a game piece is a view onto one cell of a Board, which holds all of its state
+abstract class AGamePiece {
+
+  Board board;
+  int index;
+
+  AGamePiece(Board board, int index) {
+    this.board = board;
+    this.index = index;
+  }
+
+  // is this game piece uncovered?
+  boolean isUncovered() {
+    return this.board.isUncovered(this.index);
+  }
+
+  // is this game piece marked with a flag?
+  boolean isMarked() {
+    return this.board.isMarked(this.index);
+  }
+
+  // EFFECT: Changes the uncovered value of this game piece to true without
+  // uncovering any of its neighbors
+  void setUncovered() {
+    this.board.setUncovered(this.index);
+  }
+
+  // EFFECT: Flips whether this game piece is marked with a flag
+  void toggleMarked() {
+    this.board.toggleMarked(this.index);
+  }
+
   // counts the number of mines present in this AGamePiece's neighbors
   public int countMines() {
-    int sum = 0;
-    for (int i = 0; i < this.neighbors.size(); i++) {
-      sum += this.neighbors.get(i).countMinesHelp();
-    }
-    return sum;
+    return this.board.countMines(this.index);
   }
 
   // counts the number of mines present in this AGamePiece's neighbors
   abstract int countMinesHelp();
 
-  // EFFECT: changes color to its uncovered color, gray. Changes the uncovered
-  // value to true.
-  // EFFECT: Uncovers all tiles in this AGamePiece's list of neighbors
+  // the color this game piece is drawn with
+  abstract Color color();
+
+  // EFFECT: Changes the uncovered value to true.
+  // EFFECT: Uncovers the tiles around this AGamePiece when it has no nearby mines
   // Uncovers this AGamePiece to show what it value is
-  abstract void uncover();
+  // returns how many cells were newly uncovered
+  abstract int uncover();
 
   // determines if the gamePiece is a clicked mine
   abstract boolean clickedMine();
@@ -92,14 +663,19 @@ abstract class AGamePiece {
 
 //to represent a tile
 class Tile extends AGamePiece {
-  int nearMines;
 
+  // a tile on a board of its own
   Tile() {
-    super();
+    super(new Board(1, 1), 0);
   }
 
-  Tile(ArrayList<AGamePiece> neighbors) {
-    super(neighbors);
+  Tile(Board board, int index) {
+    super(board, index);
+  }
+
+  // the number of mines stored as neighboring this tile
+  int nearMines() {
+    return this.board.nearMines(this.index);
   }
 
   // this is not a mine, so output is 0
@@ -107,6 +683,16 @@ class Tile extends AGamePiece {
     return 0;
   }
 
+  // an uncovered tile is gray, a covered one is cyan
+  Color color() {
+    if (this.isUncovered()) {
+      return IConstants.unlockedTileColor;
+    }
+    else {
+      return IConstants.tileColor;
+    }
+  }
+
   // a tile is not a clicked mine
   public boolean clickedMine() {
     return false;
@@ -119,58 +705,24 @@ class Tile extends AGamePiece {
 
   // is this tile covered?
   public boolean coveredTile() {
-    return !this.uncovered;
+    return !this.isUncovered();
   }
 
   // Performs the flood fill effect if needed
   // Updates uncovered properties of the tile
-  // EFFECT: Changes color and uncovered property of a tile
-  public void uncover() {
-    if (!this.marked) {
-      if (this.nearMines == 0) {
-        this.color = IConstants.unlockedTileColor;
-        this.uncovered = true;
-        for (AGamePiece tile : this.neighbors) {
-          if (tile.coveredTile()) {
-            tile.uncover();
-          }
-        }
-      }
-      else {
-        this.uncovered = true;
-        this.color = IConstants.unlockedTileColor;
-      }
-
-    }
+  // EFFECT: Changes the uncovered property of this tile and its neighbors
+  public int uncover() {
+    return this.board.uncover(this.index);
   }
 
   // sets the nearby mines of this tile
   public void setMines() {
-    this.nearMines = this.countMines();
+    this.board.setNearMines(this.index, this.countMines());
   }
 
   // draws this tile into a square image
   public WorldImage drawTile() {
-    WorldImage tile = new RectangleImage(IConstants.tileSize, IConstants.tileSize,
-        OutlineMode.SOLID, this.color);
-    WorldImage tileBorder = new RectangleImage(IConstants.tileSize, IConstants.tileSize,
-        OutlineMode.OUTLINE, Color.BLACK);
-    if (this.marked && !this.uncovered) {
-      WorldImage marker = new EquilateralTriangleImage(IConstants.tileSize / 2, OutlineMode.SOLID,
-          Color.YELLOW);
-      WorldImage temp = new OverlayImage(tileBorder, tile);
-      return new OverlayImage(marker, temp);
-    }
-    if (this.uncovered && this.nearMines > 0) {
-      WorldImage nbr = new TextImage(Integer.toString(this.countMines()), IConstants.tileSize / 2,
-          IConstants.colors.get(this.countMines() - 1));
-      WorldImage temp = new OverlayImage(tileBorder, tile);
-      return new OverlayImage(nbr, temp);
-    }
-    else {
-      return new OverlayImage(tileBorder, tile);
-    }
-
+    return TileImages.forCell(this.board, this.index);
   }
 
 }
@@ -178,12 +730,14 @@ class Tile extends AGamePiece {
 //to represent a mine
 class Mine extends AGamePiece {
 
+  // a mine on a board of its own
   Mine() {
-    super();
+    super(new Board(1, 1), 0);
+    this.board.placeMine(0);
   }
 
-  Mine(ArrayList<AGamePiece> neighbors) {
-    super(neighbors);
+  Mine(Board board, int index) {
+    super(board, index);
   }
 
   // this is a mine so outputs 1
@@ -191,17 +745,25 @@ class Mine extends AGamePiece {
     return 1;
   }
 
+  // an uncovered mine has exploded and is red, a covered one is cyan
+  Color color() {
+    if (this.isUncovered()) {
+      return IConstants.explodedMineTile;
+    }
+    else {
+      return IConstants.tileColor;
+    }
+  }
+
   // is this a clicked mine?
   public boolean clickedMine() {
-    return this.uncovered;
+    return this.isUncovered();
   }
 
   // updates the mine properties when the game is over
-  // EFFECT: Changes the uncovered and color properties of the mine
+  // EFFECT: Changes the uncovered property of the mine
   public void gameOverStatus() {
-    this.uncovered = true;
-    this.color = IConstants.explodedMineTile;
-
+    this.setUncovered();
   }
 
   // this is not a tile
@@ -210,11 +772,13 @@ class Mine extends AGamePiece {
   }
 
   // Changes the status of a mine if it is uncovered and not marked
-  // EFFECT: Changes the uncovered and color properties of the mine
-  public void uncover() {
-    if (!this.marked) {
-      this.gameOverStatus();
+  // EFFECT: Changes the uncovered property of the mine
+  public int uncover() {
+    if (this.isMarked() || this.isUncovered()) {
+      return 0;
     }
+    this.gameOverStatus();
+    return 1;
   }
 
   // mines don't need to keep track of nearby mines
@@ -224,24 +788,7 @@ class Mine extends AGamePiece {
 
   // draws this mine as a square image
   public WorldImage drawTile() {
-    WorldImage tile = new RectangleImage(IConstants.tileSize, IConstants.tileSize,
-        OutlineMode.SOLID, this.color);
-    WorldImage tileBorder = new RectangleImage(IConstants.tileSize, IConstants.tileSize,
-        OutlineMode.OUTLINE, Color.BLACK);
-    if (this.clickedMine()) {
-      WorldImage bomb = new CircleImage(IConstants.tileSize / 4, OutlineMode.SOLID, Color.BLACK);
-      WorldImage temp = new OverlayImage(tileBorder, tile);
-      return new OverlayImage(bomb, temp);
-    }
-    if (this.marked && !this.uncovered) {
-      WorldImage marker = new EquilateralTriangleImage(IConstants.tileSize / 2, OutlineMode.SOLID,
-          Color.YELLOW);
-      WorldImage temp = new OverlayImage(tileBorder, tile);
-      return new OverlayImage(marker, temp);
-    }
-    else {
-      return new OverlayImage(tileBorder, tile);
-    }
+    return TileImages.forCell(this.board, this.index);
   }
 
 }
@@ -249,124 +796,156 @@ class Mine extends AGamePiece {
 //to represent the minesweeper game
 class Minesweeper extends World {
 
-  ArrayList<ArrayList<AGamePiece>> grid = new ArrayList<ArrayList<AGamePiece>>();
+  Game game;
+  Board board;
   int rows;
   int cols;
   WorldScene scene;
+  // the part of the board on screen
+  Viewport viewport;
   Random rand;
   boolean gameOver = false;
   int numMines;
   boolean winner;
+  // are the covered mines drawn, as they are while the game is lost? Only the drawing
+  // shows them, so undoing the losing move hides them again
+  boolean minesShown = false;
+  // has the end of game message been drawn?
+  boolean messageShown = false;
+  DirtyCells dirty;
+  // built the first time a hint is asked for
+  Solver solver;
+  // the cell last suggested as safe, or -1
+  int hintCell = -1;
+  // the time from each click to the end of the next frame drawn
+  LatencyHistogram clickLatency = new LatencyHistogram();
+  // when the oldest click not yet drawn happened, or 0 if every click has been drawn
+  long clickStart = 0;
+  // every move made in this world, to replay the game from its seed
+  Journal journal;
+  // the moves that can be undone, made at the first click so that worlds that are
+  // never played do not copy their board
+  History history;
+  // the worker that makes the clicks and undos, or null to make them as they happen
+  InputPipeline pipeline;
 
   Minesweeper(int rows, int cols, int numMines) {
-    this.rows = rows;
-    this.cols = cols;
-    this.scene = new WorldScene(IConstants.tileSize * cols, IConstants.tileSize * rows);
-    this.numMines = numMines;
-    this.rand = new Random();
-    this.createGrid();
-    this.updateNeighbors();
-    this.winner = false;
-    this.updateTiles();
+    this(new Game(rows, cols, numMines, new Random().nextLong()));
   }
 
   Minesweeper(int rows, int cols, int numMines, Random r) {
-    this.rows = rows;
-    this.cols = cols;
-    this.scene = new WorldScene(IConstants.tileSize * cols, IConstants.tileSize * rows);
-    this.numMines = numMines;
-    this.rand = r;
-    this.createGrid();
-    this.updateNeighbors();
-    this.winner = false;
-    this.updateTiles();
-
-  }
-
-  Minesweeper(int rows, int cols, int numMines, ArrayList<ArrayList<AGamePiece>> grid) {
-    this.rows = rows;
-    this.cols = cols;
-    this.rand = new Random();
-    this.scene = new WorldScene(IConstants.tileSize * cols, IConstants.tileSize * rows);
-    this.numMines = numMines;
-    this.grid = grid;
-    this.updateNeighbors();
-    this.winner = false;
-    this.updateTiles();
-  }
-
-  // updates all of the tiles in the grid to keep track of nearby mines
-  // EFFECT: Changes the nearMines property of a tile
-  void updateTiles() {
-    for (int i = 0; i < this.rows; i++) {
-      for (int j = 0; j < this.cols; j++) {
-        grid.get(i).get(j).setMines();
-      }
-    }
+    this(new Game(rows, cols, numMines, r));
+  }
 
+  Minesweeper(int rows, int cols, int numMines, Board board) {
+    this(new Game(board, numMines));
   }
 
-  // EFFECT: Grid changes to become an X by X grid containing rows and columns
-  // with tiles and mines
-  // creates a grid of randomly places mines and tiles
-  void createGrid() {
-    ArrayList<AGamePiece> row;
-    ArrayList<Posn> posn = new ArrayList<Posn>();
-    int counter = 0;
-    for (int i = 0; i < this.rows; i++) {
-      for (int j = 0; j < this.cols; j++) {
-        posn.add(new Posn(i, j));
-      }
-    }
+  // a world whose mines are placed at the first reveal, if safeStart, and never on or
+  // around the cell revealed
+  Minesweeper(int rows, int cols, int numMines, boolean safeStart) {
+    this(new Game(rows, cols, numMines, new Random().nextLong(), safeStart));
+  }
 
-    ArrayList<Posn> minePositions = new ArrayList<Posn>();
-    while (counter < this.numMines) {
-      Posn p = posn.get(rand.nextInt(posn.size()));
-      int idx = posn.indexOf(p);
-      minePositions.add(p);
-      posn.remove(idx);
-      counter++;
-    }
+  // a world showing game, which may already be partly played, as after loading it
+  Minesweeper(Game game) {
+    this.game = game;
+    this.board = game.board;
+    this.rows = game.rows;
+    this.cols = game.cols;
+    this.numMines = game.numMines;
+    this.rand = game.rand;
+    this.viewport = new Viewport(this.board);
+    this.scene = new WorldScene(this.viewport.width, this.viewport.height);
+    this.gameOver = game.lost;
+    this.winner = game.won();
+    this.dirty = new DirtyCells(this.board.size());
+    this.board.addListener(this.dirty);
+    this.journal = new Journal(game);
+  }
 
-    for (int i = 0; i < this.rows; i++) {
-      row = new ArrayList<AGamePiece>();
-      for (int j = 0; j < this.cols; j++) {
-        if (minePositions.contains(new Posn(i, j))) {
-          row.add(new Mine());
-        }
-        else {
-          row.add(new Tile());
-        }
-      }
-      grid.add(row);
-    }
+  // EFFECT: hands every later click, undo and redo to a worker thread, so that a big
+  // reveal never holds up the frames
+  void startPipeline() {
+    this.pipeline = new InputPipeline(this.game, this.journal, InputPipeline.BATCH_CELLS);
+    this.pipeline.history = this.history;
+    this.pipeline.start();
   }
 
-  // EFFECT: Changes each AGamePiece's list of neighbors to add all of the
-  // tiles/mines around
-  // EFFECT: them in the grid
-  // Updates each AGamePiece's list of neighbors
-  void updateNeighbors() {
-    for (int i = 0; i < this.rows; i++) {
-      for (int j = 0; j < this.cols; j++) {
-        grid.get(i).get(j).addNeighbors(grid, i, j);
-      }
-    }
+  // EFFECT: writes this game to the file at path, replacing anything already there
+  void save(Path path) throws IOException {
+    Snapshot.write(this.game, path);
   }
 
-  // draws the Minesweeper game onto a board of inputted dimension
+  // draws the part of the Minesweeper game in the viewport
+  // Zoomed in, only the visible cells that changed since the last frame are drawn
+  // again, each with the shared image for its state, and every visible cell is drawn
+  // after the view moves. Zoomed out, the screen is drawn again as one overview image
+  // whenever anything changed.
+  // EFFECT: shows the mines while the game is lost, and hides them once it is not
+  // EFFECT: empties the dirty cells
+  // With a pipeline, the frame waits for the worker to finish its current batch, and
+  // shows the game as the worker left it
   public WorldScene makeScene() {
-    for (int i = 0; i < this.rows; i++) {
-      for (int j = 0; j < this.cols; j++) {
-        if (this.gameOver) {
-          grid.get(i).get(j).gameOverStatus();
+    if (this.pipeline == null) {
+      return this.drawScene();
+    }
+    this.pipeline.lock.lock();
+    try {
+      this.gameOver = this.game.lost;
+      return this.drawScene();
+    }
+    finally {
+      this.pipeline.lock.unlock();
+    }
+  }
+
+  // draws the part of the game in the viewport, as makeScene does; it only reads the
+  // board
+  // EFFECT: shows the mines while the game is lost, and hides them once it is not
+  // EFFECT: empties the dirty cells
+  WorldScene drawScene() {
+    FrameEvent event = new FrameEvent();
+    event.begin();
+    this.showMines(this.gameOver);
+    if (this.viewport.moved) {
+      this.scene = new WorldScene(this.viewport.width, this.viewport.height);
+      this.dirty.all = true;
+      this.messageShown = false;
+      this.viewport.moved = false;
+    }
+    boolean full = this.dirty.all;
+    int drawn = 0;
+    if (!this.viewport.detailed()) {
+      if (full || !this.dirty.cells.isEmpty()) {
+        full = true;
+        drawn = (this.viewport.lastRow() - this.viewport.firstRow())
+            * (this.viewport.lastCol() - this.viewport.firstCol());
+        this.scene = new WorldScene(this.viewport.width, this.viewport.height);
+        this.scene.placeImageXY(this.viewport.overview(), this.viewport.width / 2,
+            this.viewport.height / 2);
+        this.messageShown = false;
+      }
+    }
+    else if (full) {
+      for (int row = this.viewport.firstRow(); row < this.viewport.lastRow(); row++) {
+        for (int col = this.viewport.firstCol(); col < this.viewport.lastCol(); col++) {
+          this.drawCell(this.board.index(row, col));
+          drawn++;
         }
-        this.scene.placeImageXY(grid.get(i).get(j).drawTile(),
-            j * IConstants.tileSize + IConstants.tileSize / 2,
-            i * IConstants.tileSize + IConstants.tileSize / 2);
       }
     }
-    if (this.gameOver || this.winner) {
+    else {
+      for (int i = 0; i < this.dirty.cells.size(); i++) {
+        int idx = this.dirty.cells.get(i);
+        if (this.viewport.visible(idx)) {
+          this.drawCell(idx);
+          drawn++;
+        }
+      }
+    }
+    this.dirty.clear();
+    if ((this.gameOver || this.winner) && !this.messageShown) {
       String gameMessage = "";
       if (this.winner) {
         gameMessage = "YOU WIN";
@@ -374,61 +953,211 @@ class Minesweeper extends World {
       else {
         gameMessage = "GAME OVER";
       }
-      WorldImage back = new RectangleImage(this.cols * IConstants.tileSize / 2,
-          this.rows * IConstants.tileSize / 5, OutlineMode.SOLID, Color.BLACK);
+      WorldImage back = new RectangleImage(this.scene.width / 2, this.scene.height / 5,
+          OutlineMode.SOLID, Color.BLACK);
       WorldImage text = new TextImage(gameMessage, IConstants.tileSize / 1.5, Color.MAGENTA);
       WorldImage gameOver = new OverlayImage(text, back);
       this.scene.placeImageXY(gameOver, this.scene.width / 2, this.scene.height / 2);
+      this.messageShown = true;
+    }
+    event.end();
+    if (event.shouldCommit()) {
+      event.cellsDrawn = drawn;
+      event.full = full;
+      event.commit();
+    }
+    if (this.clickStart != 0) {
+      this.clickLatency.record(System.nanoTime() - this.clickStart);
+      this.clickStart = 0;
     }
     return this.scene;
   }
 
+  // EFFECT: shows or hides the covered mines, marking them to be drawn again if that
+  // changes; hiding them draws the whole screen again, without the end of game message
+  void showMines(boolean show) {
+    if (show == this.minesShown) {
+      return;
+    }
+    this.minesShown = show;
+    this.viewport.showMines(show);
+    for (int i = 0; i < this.board.mines.size(); i++) {
+      this.dirty.cellChanged(this.board.mines.get(i));
+    }
+    if (!show) {
+      this.viewport.moved = true;
+    }
+  }
+
+  // EFFECT: places the image of the cell at idx onto the scene, where the viewport
+  // shows it
+  void drawCell(int idx) {
+    WorldImage image = TileImages.forCell(this.board, idx);
+    if (this.minesShown && this.board.isMine(idx)) {
+      image = TileImages.EXPLODED;
+    }
+    if (idx == this.hintCell && image == TileImages.COVERED) {
+      image = TileImages.HINT;
+    }
+    this.scene.placeImageXY(this.viewport.scale(image),
+        this.viewport.centerX(idx % this.cols), this.viewport.centerY(idx / this.cols));
+  }
+
   // Checks whether the game has been won or not
   // EFFECT: Changes the game world property winner based off of the status
   public void onTick() {
+    TickEvent event = new TickEvent();
+    event.begin();
     if (this.gameOver) {
       this.endOfWorld("The game has stopped!");
     }
-    this.winner = true;
-    for (int i = 0; i < this.rows; i++) {
-      for (int j = 0; j < this.cols; j++) {
-        if (grid.get(i).get(j).coveredTile()) {
-          this.winner = false;
-        }
+    if (this.pipeline == null) {
+      this.winner = this.game.won();
+    }
+    else {
+      this.pipeline.lock.lock();
+      try {
+        this.winner = this.game.won();
+      }
+      finally {
+        this.pipeline.lock.unlock();
       }
     }
     if (this.winner) {
       this.endOfWorld("The game has stopped!");
     }
+    event.end();
+    if (event.shouldCommit()) {
+      event.won = this.winner;
+      event.commit();
+    }
+  }
+
+  // draws the final scene, and prints how long clicks took to be drawn this game
+  public WorldScene lastScene(String msg) {
+    System.out.println("click to frame: " + this.clickLatency.report());
+    return this.makeScene();
+  }
+
+  // h: marks a covered cell that is certainly safe, if one can be found in time
+  // u: undoes the last move, r: redoes the last undone move
+  // arrows: move the view a quarter of the screen, +/-: zoom in and out
+  // EFFECT: Changes the hint cell and marks it to be drawn again
+  // EFFECT: undoing and redoing change the cells and the journal to match
+  public void onKeyEvent(String key) {
+    if (this.pipeline != null && (key.equals("u") || key.equals("r") || key.equals("h"))) {
+      this.queueKey(key);
+    }
+    else if (key.equals("u") && this.history != null && this.history.undo()) {
+      this.journal.undo();
+      this.gameOver = this.game.lost;
+    }
+    else if (key.equals("r") && this.history != null && this.history.redo()) {
+      this.journal.redo();
+      this.gameOver = this.game.lost;
+    }
+    else if (key.equals("left")) {
+      this.viewport.pan(-this.viewport.width / 4, 0);
+    }
+    else if (key.equals("right")) {
+      this.viewport.pan(this.viewport.width / 4, 0);
+    }
+    else if (key.equals("up")) {
+      this.viewport.pan(0, -this.viewport.height / 4);
+    }
+    else if (key.equals("down")) {
+      this.viewport.pan(0, this.viewport.height / 4);
+    }
+    else if (key.equals("+") || key.equals("=")) {
+      this.viewport.zoomBy(-1);
+    }
+    else if (key.equals("-")) {
+      this.viewport.zoomBy(1);
+    }
+    else if (key.equals("h")) {
+      this.hint();
+    }
+  }
 
+  // EFFECT: hands undoing and redoing to the pipeline, and finds a hint once the
+  // pipeline's current batch is done
+  void queueKey(String key) {
+    if (key.equals("u")) {
+      this.pipeline.undo();
+    }
+    else if (key.equals("r")) {
+      this.pipeline.redo();
+    }
+    else {
+      this.pipeline.lock.lock();
+      try {
+        this.hint();
+      }
+      finally {
+        this.pipeline.lock.unlock();
+      }
+    }
   }
 
-  // Left Click: Uncovers the clicked on tile
+  // EFFECT: Changes the hint cell to a covered cell that is certainly safe, if one can
+  // be found in time, and marks the old and new hint cells to be drawn again
+  void hint() {
+    if (this.solver == null) {
+      this.solver = new Solver(this.board);
+    }
+    if (this.hintCell >= 0) {
+      this.dirty.cellChanged(this.hintCell);
+    }
+    this.hintCell = this.solver.hint();
+    if (this.hintCell >= 0) {
+      this.dirty.cellChanged(this.hintCell);
+    }
+  }
+
+  // Left Click: Uncovers the clicked on tile, unless it is marked with a flag; on an
+  // uncovered number with enough flags around it, uncovers the rest of its neighbors
   // Right Click: Marks the clicked tile with a flag
+  // EFFECT: appends the move to the journal and to the moves that can be undone
+  // Clicks that miss the board do nothing; with a pipeline, the click is only queued
   public void onMouseReleased(Posn p, String button) {
-    AGamePiece clicked = this.grid.get(p.y / IConstants.tileSize).get(p.x / IConstants.tileSize);
-    if (button.equals("RightButton")) {
-      clicked.marked = !clicked.marked;
+    int idx = this.viewport.cellAt(p);
+    if (idx < 0) {
+      return;
+    }
+    if (this.clickStart == 0) {
+      this.clickStart = System.nanoTime();
+    }
+    if (this.pipeline != null) {
+      this.pipeline.click(idx, button.equals("RightButton"));
+      return;
+    }
+    if (this.history == null) {
+      this.history = new History(this.game);
+    }
+    int row = idx / this.cols;
+    int col = idx % this.cols;
+    boolean flag = button.equals("RightButton");
+    IntList changed = new IntList();
+    if (flag) {
+      this.game.flag(row, col);
+      changed.add(this.board.index(row, col));
     }
     else {
-      clicked.uncovered = true;
-      if (clicked.clickedMine()) {
+      this.game.open(row, col, changed);
+      if (this.game.lost) {
         this.gameOver = true;
 
       }
-      clicked.uncover();
     }
+    this.journal.record(this.board.index(row, col), flag);
+    this.history.record(changed);
   }
 
 }
 
 //tests and examples for Minesweeper
 class Examples {
-  ArrayList<AGamePiece> mt;
-  ArrayList<AGamePiece> row1;
-  ArrayList<AGamePiece> row2;
-  ArrayList<AGamePiece> row3;
-  ArrayList<ArrayList<AGamePiece>> grid3x4;
+  Board board3x4;
   AGamePiece middle;
   AGamePiece middleTop;
   AGamePiece middleBottom;
@@ -439,77 +1168,267 @@ class Examples {
   AGamePiece mine2;
 
   // initial data
+  // the 3x4 board looks like this, where X is a mine:
+  // . X . .
+  // . . . .
+  // X . . .
   void initData() {
     tile1 = new Tile();
     tile2 = new Tile();
     mine1 = new Mine();
     mine2 = new Mine();
-    this.mt = new ArrayList<AGamePiece>();
-    this.row1 = new ArrayList<AGamePiece>(
-        Arrays.asList(new Tile(), new Mine(), new Tile(), new Tile()));
-    this.row2 = new ArrayList<AGamePiece>(
-        Arrays.asList(new Tile(), new Tile(), new Tile(), new Tile()));
-    this.row3 = new ArrayList<AGamePiece>(
-        Arrays.asList(new Mine(), new Tile(), new Tile(), new Tile()));
-    this.grid3x4 = new ArrayList<ArrayList<AGamePiece>>(Arrays.asList(row1, row2, row3));
-    this.middle = this.grid3x4.get(1).get(1);
-    this.middleTop = this.row1.get(1);
-    this.middleBottom = this.row3.get(1);
-    this.bottomRightCorner = this.row3.get(2);
-  }
-
-  // tests for addNeighbors
-  void testAddNeighbors(Tester t) {
+    this.board3x4 = new Board(3, 4);
+    this.board3x4.placeMine(this.board3x4.index(0, 1));
+    this.board3x4.placeMine(this.board3x4.index(2, 0));
+    this.middle = this.board3x4.pieceAt(1, 1);
+    this.middleTop = this.board3x4.pieceAt(0, 1);
+    this.middleBottom = this.board3x4.pieceAt(2, 1);
+    this.bottomRightCorner = this.board3x4.pieceAt(2, 2);
+  }
+
+  // tests for the Board constructor
+  void testBoard(Tester t) {
+    this.initData();
+    t.checkExpect(this.board3x4.size(), 12);
+    t.checkExpect(this.board3x4.index(2, 1), 9);
+    t.checkExpect(new Board(1, 1).cells, new byte[1]);
+    t.checkExpect(this.middleTop.board, this.board3x4);
+    t.checkExpect(this.middleTop.index, 1);
+    t.checkExpect(this.board3x4.isMine(1), true);
+    t.checkExpect(this.board3x4.isMine(0), false);
+    t.checkConstructorException(new IllegalArgumentException("Invalid board dimensions: 0x4"),
+        "Board", 0, 4);
+    t.checkConstructorException(
+        new IllegalArgumentException("Invalid board dimensions: 100000x100000"), "Board", 100000,
+        100000);
+  }
+
+  // tests for neighbors
+  void testNeighbors(Tester t) {
     this.initData();
-    t.checkExpect(middle.neighbors, this.mt);
-    t.checkExpect(middleTop.neighbors, this.mt);
+    int[] around = new int[this.board3x4.maxNeighbors()];
+    t.checkExpect(this.board3x4.neighbors(this.board3x4.index(1, 1), around), 8);
+    t.checkExpect(around, new int[] { 0, 1, 2, 4, 6, 8, 9, 10 });
 
-    middle.addNeighbors(this.grid3x4, 1, 1);
-    t.checkExpect(middle.neighbors.size(), 8);
-    t.checkExpect(middle.neighbors, new ArrayList<AGamePiece>(Arrays.asList(new Tile(), new Mine(),
-        new Tile(), new Tile(), new Tile(), new Mine(), new Tile(), new Tile())));
-    t.checkExpect(middleTop.neighbors, this.mt);
+    t.checkExpect(this.board3x4.neighbors(this.board3x4.index(0, 1), around), 5);
+    t.checkExpect(Arrays.copyOf(around, 5), new int[] { 0, 2, 4, 5, 6 });
 
-    middleTop.addNeighbors(this.grid3x4, 0, 1);
-    t.checkExpect(middleTop.neighbors.size(), 5);
-    t.checkExpect(middleTop.neighbors, new ArrayList<AGamePiece>(
-        Arrays.asList(new Tile(), new Tile(), new Tile(), middle, new Tile())));
+    t.checkExpect(this.board3x4.neighbors(this.board3x4.index(2, 3), around), 3);
+    t.checkExpect(Arrays.copyOf(around, 3), new int[] { 6, 7, 10 });
 
-    bottomRightCorner.addNeighbors(this.grid3x4, 2, 3);
-    t.checkExpect(bottomRightCorner.neighbors.size(), 3);
+    t.checkExpect(new Board(1, 1).neighbors(0, around), 0);
   }
 
   // testing the setMines method
   void testSetMines(Tester t) {
     this.initData();
-    this.middle.addNeighbors(this.grid3x4, 1, 1);
     this.middle.setMines();
-    t.checkExpect(((Tile) middle).nearMines, 2);
-    AGamePiece middleTopCopy = this.row1.get(1);
-    this.middleTop.addNeighbors(this.grid3x4, 0, 1);
-    middleTopCopy.addNeighbors(this.grid3x4, 0, 1);
+    t.checkExpect(((Tile) middle).nearMines(), 2);
+    byte[] before = Arrays.copyOf(this.board3x4.cells, 12);
     this.middleTop.setMines();
-    t.checkExpect(this.middleTop, middleTopCopy);
-    this.middleBottom.addNeighbors(this.grid3x4, 2, 1);
+    t.checkExpect(this.board3x4.cells, before);
     this.middleBottom.setMines();
-    t.checkExpect(((Tile) (this.middleBottom)).nearMines, 1);
-    this.bottomRightCorner.addNeighbors(this.grid3x4, 2, 2);
+    t.checkExpect(((Tile) (this.middleBottom)).nearMines(), 1);
     this.bottomRightCorner.setMines();
-    t.checkExpect(((Tile) (this.bottomRightCorner)).nearMines, 0);
+    t.checkExpect(((Tile) (this.bottomRightCorner)).nearMines(), 0);
   }
 
   // tests for countMine/countMineHelp
   void testCountMines(Tester t) {
     this.initData();
-    middle.addNeighbors(this.grid3x4, 1, 1);
-    middleTop.addNeighbors(this.grid3x4, 0, 1);
-    middleBottom.addNeighbors(this.grid3x4, 2, 1);
     t.checkExpect(this.middleTop.countMinesHelp(), 1);
     t.checkExpect(this.middle.countMinesHelp(), 0);
     t.checkExpect(this.middleBottom.countMinesHelp(), 0);
     t.checkExpect(this.middleTop.countMines(), 0);
     t.checkExpect(this.middle.countMines(), 2);
     t.checkExpect(this.middleBottom.countMines(), 1);
+    t.checkExpect(this.board3x4.countMines(this.board3x4.index(1, 0)), 2);
+  }
+
+  // tests for computeCounts
+  void testComputeCounts(Tester t) {
+    this.initData();
+    this.board3x4.computeCounts();
+    int[] expected = new int[] { 1, 0, 1, 0, 2, 2, 1, 0, 0, 1, 0, 0 };
+    for (int idx = 0; idx < 12; idx++) {
+      t.checkExpect(this.board3x4.nearMines(idx), expected[idx]);
+    }
+    // a single column and a single row
+    Board column = new Board(4, 1);
+    column.placeMine(1);
+    column.computeCounts();
+    t.checkExpect(column.cells, new byte[] { 1, Board.MINE, 1, 0 });
+    Board row = new Board(1, 4);
+    row.placeMine(3);
+    row.computeCounts();
+    t.checkExpect(row.cells, new byte[] { 0, 0, 1, Board.MINE });
+
+    // boards big enough to be counted in parallel agree with countMines
+    Board[] boards = new Board[] { new Board(37, 53), new Board(1100, 1000) };
+    for (Board b : boards) {
+      b.placeRandomMines(b.size() / 5, new Random(9));
+      b.computeCounts();
+      boolean same = true;
+      for (int idx = 0; idx < b.size(); idx++) {
+        if (!b.isMine(idx) && b.nearMines(idx) != b.countMines(idx)) {
+          same = false;
+        }
+      }
+      t.checkExpect(same, true);
+    }
+  }
+
+  // tests for the packed cell flags
+  void testCellFlags(Tester t) {
+    this.initData();
+    int idx = this.board3x4.index(1, 2);
+    t.checkExpect(this.board3x4.isUncovered(idx), false);
+    t.checkExpect(this.board3x4.isMarked(idx), false);
+    this.board3x4.setNearMines(idx, 7);
+    this.board3x4.toggleMarked(idx);
+    t.checkExpect(this.board3x4.isMarked(idx), true);
+    t.checkExpect(this.board3x4.nearMines(idx), 7);
+    this.board3x4.setUncovered(idx);
+    this.board3x4.setNearMines(idx, 1);
+    t.checkExpect(this.board3x4.isUncovered(idx), true);
+    t.checkExpect(this.board3x4.nearMines(idx), 1);
+    this.board3x4.toggleMarked(idx);
+    t.checkExpect(this.board3x4.isMarked(idx), false);
+    t.checkExpect(this.board3x4.isMine(idx), false);
+    t.checkExpect(this.board3x4.cells[idx], (byte) (Board.UNCOVERED | 1));
+  }
+
+  // tests for the live counters kept by a board
+  void testBoardCounters(Tester t) {
+    this.initData();
+    t.checkExpect(this.board3x4.coveredSafe, 10);
+    t.checkExpect(this.board3x4.mines.toArray(), new int[] { 1, 8 });
+    // placing a mine twice does not count it twice
+    this.board3x4.placeMine(1);
+    t.checkExpect(this.board3x4.coveredSafe, 10);
+    t.checkExpect(this.board3x4.mines.size(), 2);
+
+    this.board3x4.toggleMarked(3);
+    this.board3x4.toggleMarked(4);
+    t.checkExpect(this.board3x4.flags, 2);
+    this.board3x4.toggleMarked(3);
+    t.checkExpect(this.board3x4.flags, 1);
+
+    Minesweeper game = new Minesweeper(3, 4, 2, this.board3x4);
+    // the flag on cell 4 keeps it covered
+    this.board3x4.uncover(11);
+    t.checkExpect(this.board3x4.coveredSafe, 2);
+    this.board3x4.setUncovered(11);
+    t.checkExpect(this.board3x4.coveredSafe, 2);
+    // uncovering a mine leaves the safe count alone
+    this.board3x4.setUncovered(1);
+    t.checkExpect(this.board3x4.coveredSafe, 2);
+    t.checkExpect(this.board3x4.allSafeUncovered(), false);
+    this.board3x4.setUncovered(0);
+    this.board3x4.setUncovered(4);
+    t.checkExpect(this.board3x4.allSafeUncovered(), true);
+    t.checkExpect(game.board.coveredSafe, 0);
+  }
+
+  // tests for uncoverMines
+  void testUncoverMines(Tester t) {
+    this.initData();
+    this.board3x4.uncoverMines();
+    t.checkExpect(this.board3x4.isUncovered(1), true);
+    t.checkExpect(this.board3x4.isUncovered(8), true);
+    t.checkExpect(this.board3x4.coveredSafe, 10);
+    t.checkExpect(this.middleTop.clickedMine(), true);
+
+    // a lost game shows its mines when it is drawn, without uncovering them
+    this.initData();
+    Minesweeper game = new Minesweeper(3, 4, 2, this.board3x4);
+    game.onMouseReleased(new Posn(IConstants.tileSize / 2, 2 * IConstants.tileSize), "LeftButton");
+    t.checkExpect(game.gameOver, true);
+    t.checkExpect(this.middleTop.isUncovered(), false);
+    game.makeScene();
+    t.checkExpect(game.minesShown, true);
+    t.checkExpect(game.viewport.minesShown, true);
+    t.checkExpect(this.middleTop.isUncovered(), false);
+  }
+
+  // tests for the shared tile images
+  void testTileImages(Tester t) {
+    this.initData();
+    t.checkExpect(TileImages.forCell(this.board3x4, 0), TileImages.COVERED);
+    this.board3x4.toggleMarked(0);
+    t.checkExpect(TileImages.forCell(this.board3x4, 0), TileImages.FLAGGED);
+    this.board3x4.setNearMines(5, 2);
+    this.board3x4.setUncovered(5);
+    t.checkExpect(TileImages.forCell(this.board3x4, 5), TileImages.REVEALED[2]);
+    this.board3x4.setUncovered(1);
+    t.checkExpect(TileImages.forCell(this.board3x4, 1), TileImages.EXPLODED);
+    // cells in the same state share one image
+    t.checkExpect(this.tile1.drawTile() == this.tile2.drawTile(), true);
+    t.checkExpect(TileImages.REVEALED[3],
+        new OverlayImage(new TextImage("3", IConstants.tileSize / 2, Color.RED),
+            TileImages.REVEALED[0]));
+  }
+
+  // tests for DirtyCells
+  void testDirtyCells(Tester t) {
+    this.initData();
+    DirtyCells dirty = new DirtyCells(this.board3x4.size());
+    this.board3x4.addListener(dirty);
+    this.board3x4.toggleMarked(3);
+    // before the first draw everything is dirty, so nothing is listed
+    t.checkExpect(dirty.all, true);
+    t.checkExpect(dirty.cells.size(), 0);
+    dirty.clear();
+    t.checkExpect(dirty.all, false);
+    this.board3x4.toggleMarked(3);
+    this.board3x4.toggleMarked(3);
+    this.board3x4.setUncovered(7);
+    t.checkExpect(dirty.cells.toArray(), new int[] { 3, 7 });
+    dirty.clear();
+    t.checkExpect(dirty.cells.size(), 0);
+    t.checkExpect(dirty.listed, new long[1]);
+    this.board3x4.setUncovered(3);
+    t.checkExpect(dirty.cells.toArray(), new int[] { 3 });
+  }
+
+  // testing that makeScene only draws the cells that changed
+  void testMakeSceneDirty(Tester t) {
+    this.initData();
+    Minesweeper game = new Minesweeper(3, 4, 2, this.board3x4);
+    WorldScene expected = new WorldScene(IConstants.tileSize * 4, IConstants.tileSize * 3);
+    for (int idx = 0; idx < 12; idx++) {
+      expected.placeImageXY(TileImages.forCell(this.board3x4, idx),
+          (idx % 4) * IConstants.tileSize + IConstants.tileSize / 2,
+          (idx / 4) * IConstants.tileSize + IConstants.tileSize / 2);
+    }
+    t.checkExpect(game.makeScene(), expected);
+
+    game.onMouseReleased(new Posn(IConstants.tileSize / 2, IConstants.tileSize / 2),
+        "RightButton");
+    t.checkExpect(game.dirty.cells.toArray(), new int[] { 0 });
+    expected.placeImageXY(TileImages.FLAGGED, IConstants.tileSize / 2, IConstants.tileSize / 2);
+    t.checkExpect(game.makeScene(), expected);
+    // nothing changed, so nothing is drawn
+    t.checkExpect(game.makeScene(), expected);
+  }
+
+  // testing onKeyEvent
+  void testOnKeyEvent(Tester t) {
+    this.initData();
+    Minesweeper game = new Minesweeper(3, 4, 2, this.board3x4);
+    game.makeScene();
+    game.onKeyEvent("h");
+    // nothing is uncovered, so nothing is certain
+    t.checkExpect(game.hintCell, -1);
+    game.onMouseReleased(new Posn(3 * IConstants.tileSize, 2 * IConstants.tileSize),
+        "LeftButton");
+    game.onMouseReleased(new Posn(0, 0), "LeftButton");
+    game.onKeyEvent("h");
+    t.checkExpect(game.hintCell, this.board3x4.index(1, 0));
+    t.checkExpect(game.dirty.cells.toArray()[game.dirty.cells.size() - 1], 4);
+    game.makeScene();
+    game.onKeyEvent("x");
+    t.checkExpect(game.dirty.cells.size(), 0);
   }
 
   // tests for drawTile
@@ -524,9 +1443,7 @@ class Examples {
 
     // Tile with TWO neighboring mines
     t.checkExpect(this.middle.drawTile(), new OverlayImage(tileBorder, tileCovered));
-    this.middle.uncovered = true;
-    this.middle.color = IConstants.unlockedTileColor;
-    this.middle.addNeighbors(this.grid3x4, 1, 1);
+    this.middle.setUncovered();
     this.middle.setMines();
     t.checkExpect(this.middle.drawTile(),
         new OverlayImage(new TextImage("2", IConstants.tileSize / 2, Color.GREEN),
@@ -534,25 +1451,19 @@ class Examples {
 
     // Tile with NO neighboring mines
     t.checkExpect(this.bottomRightCorner.drawTile(), new OverlayImage(tileBorder, tileCovered));
-    this.bottomRightCorner.uncovered = true;
-    this.bottomRightCorner.color = IConstants.unlockedTileColor;
-    this.bottomRightCorner.addNeighbors(this.grid3x4, 2, 3);
+    this.bottomRightCorner.setUncovered();
     t.checkExpect(this.bottomRightCorner.drawTile(), new OverlayImage(tileBorder, tileUncovered));
 
     // MINE
     t.checkExpect(this.middleTop.drawTile(), new OverlayImage(tileBorder, tileCovered));
-    this.middleTop.uncovered = true;
-    this.middleTop.color = IConstants.explodedMineTile;
-    this.middleTop.addNeighbors(this.grid3x4, 0, 1);
+    this.middleTop.setUncovered();
     t.checkExpect(this.middleTop.drawTile(),
         new OverlayImage(new CircleImage(IConstants.tileSize / 4, OutlineMode.SOLID, Color.BLACK),
             new OverlayImage(tileBorder, new RectangleImage(IConstants.tileSize,
                 IConstants.tileSize, OutlineMode.SOLID, IConstants.explodedMineTile))));
 
-    this.middleTop.uncovered = false;
-    this.middleTop.marked = true;
-    this.middleTop.color = Color.CYAN;
-    t.checkExpect(this.middleTop.drawTile(),
+    this.mine1.toggleMarked();
+    t.checkExpect(this.mine1.drawTile(),
         new OverlayImage(
             new EquilateralTriangleImage(IConstants.tileSize / 2, OutlineMode.SOLID, Color.YELLOW),
             new OverlayImage(tileBorder, new RectangleImage(IConstants.tileSize,
@@ -564,36 +1475,141 @@ class Examples {
     this.initData();
 
     // Tile with TWO neighboring mines
-    t.checkExpect(this.middle.uncovered, false);
-    t.checkExpect(this.middle.color, IConstants.tileColor);
+    this.middle.setMines();
+    t.checkExpect(this.middle.isUncovered(), false);
+    t.checkExpect(this.middle.color(), IConstants.tileColor);
     this.middle.uncover();
-    t.checkExpect(this.middle.uncovered, true);
-    t.checkExpect(this.middle.color, IConstants.unlockedTileColor);
+    t.checkExpect(this.middle.isUncovered(), true);
+    t.checkExpect(this.middle.color(), IConstants.unlockedTileColor);
 
     // MINE
-    t.checkExpect(this.middleTop.uncovered, false);
-    t.checkExpect(this.middleTop.color, IConstants.tileColor);
+    t.checkExpect(this.middleTop.isUncovered(), false);
+    t.checkExpect(this.middleTop.color(), IConstants.tileColor);
     this.middleTop.uncover();
-    t.checkExpect(this.middleTop.uncovered, true);
-    t.checkExpect(this.middleTop.color, IConstants.explodedMineTile);
+    t.checkExpect(this.middleTop.isUncovered(), true);
+    t.checkExpect(this.middleTop.color(), IConstants.explodedMineTile);
 
     // Tile with NO neighboring mines (flooding)
-    this.bottomRightCorner.addNeighbors(this.grid3x4, 2, 3);
-    t.checkExpect(this.bottomRightCorner.uncovered, false);
-    t.checkExpect(this.bottomRightCorner.color, IConstants.tileColor);
-    for (int i = 0; i < this.bottomRightCorner.neighbors.size(); i++) {
-      t.checkExpect(this.bottomRightCorner.neighbors.get(i).uncovered, false);
-    }
-    this.bottomRightCorner.uncover();
-    t.checkExpect(this.bottomRightCorner.uncovered, true);
-    t.checkExpect(this.bottomRightCorner.color, IConstants.unlockedTileColor);
-    for (int i = 0; i < this.bottomRightCorner.neighbors.size(); i++) {
-      t.checkExpect(this.bottomRightCorner.neighbors.get(i).uncovered, true);
+    int[] around = new int[this.board3x4.maxNeighbors()];
+    int n = this.board3x4.neighbors(this.board3x4.index(2, 3), around);
+    t.checkExpect(this.board3x4.isUncovered(this.board3x4.index(2, 3)), false);
+    for (int i = 0; i < n; i++) {
+      t.checkExpect(this.board3x4.isUncovered(around[i]), false);
     }
-    for (int i = 0; i < this.bottomRightCorner.neighbors.size(); i++) {
-      t.checkExpect(this.bottomRightCorner.neighbors.get(i).color, IConstants.unlockedTileColor);
+    this.board3x4.pieceAt(2, 3).uncover();
+    t.checkExpect(this.board3x4.isUncovered(this.board3x4.index(2, 3)), true);
+    t.checkExpect(this.board3x4.pieceAt(2, 3).color(), IConstants.unlockedTileColor);
+    for (int i = 0; i < n; i++) {
+      t.checkExpect(this.board3x4.isUncovered(around[i]), true);
     }
+    // the flood only continues through cells with no neighboring mines, which
+    // were never counted on this board
+    t.checkExpect(this.board3x4.isUncovered(this.board3x4.index(2, 0)), false);
+
+    // marked tiles stay covered
+    this.tile1.toggleMarked();
+    t.checkExpect(this.tile1.uncover(), 0);
+    t.checkExpect(this.tile1.isUncovered(), false);
+    this.mine1.toggleMarked();
+    t.checkExpect(this.mine1.uncover(), 0);
+    t.checkExpect(this.mine1.isUncovered(), false);
+  }
 
+  // tests for the flood fill in Board.uncover
+  void testBoardUncover(Tester t) {
+    this.initData();
+    Minesweeper game = new Minesweeper(3, 4, 2, this.board3x4);
+    IntList changed = new IntList();
+    // a numbered cell only uncovers itself
+    t.checkExpect(this.board3x4.uncover(this.board3x4.index(1, 1), changed), 1);
+    t.checkExpect(changed.toArray(), new int[] { 5 });
+    // uncovering it again changes nothing
+    t.checkExpect(this.board3x4.uncover(this.board3x4.index(1, 1), changed), 0);
+    // a cell with no nearby mines opens every safe cell it can reach
+    changed.clear();
+    this.board3x4.toggleMarked(this.board3x4.index(0, 3));
+    t.checkExpect(this.board3x4.uncover(this.board3x4.index(2, 3), changed), 6);
+    t.checkExpect(this.board3x4.floodDepth, 2);
+    t.checkExpect(changed.toArray(), new int[] { 11, 6, 7, 10, 9, 2 });
+    t.checkExpect(this.board3x4.isUncovered(this.board3x4.index(0, 3)), false);
+    t.checkExpect(this.board3x4.isUncovered(this.board3x4.index(0, 1)), false);
+    t.checkExpect(game.board, this.board3x4);
+
+    // a huge open board is flooded in one call without overflowing the stack
+    Board open = new Board(2000, 2000);
+    t.checkExpect(open.uncover(open.index(1000, 1000)), 4000000);
+    t.checkExpect(open.isUncovered(0), true);
+  }
+
+  // tests for uncoverAll and chord
+  void testChord(Tester t) {
+    this.initData();
+    this.board3x4.computeCounts();
+    IntList changed = new IntList();
+    IntList cells = new IntList();
+    cells.add(0);
+    cells.add(11);
+    cells.add(0);
+    cells.add(this.board3x4.index(2, 0));
+    this.board3x4.toggleMarked(this.board3x4.index(2, 0));
+    // the sources share one flood, a repeated cell is only uncovered once, and marked
+    // cells are left alone
+    t.checkExpect(this.board3x4.uncoverAll(cells, changed), 9);
+    t.checkExpect(changed.size(), 9);
+    t.checkExpect(this.board3x4.coveredSafe, 1);
+    t.checkExpect(this.board3x4.isUncovered(this.board3x4.index(2, 0)), false);
+
+    this.initData();
+    this.board3x4.computeCounts();
+    changed.clear();
+    // covered cells and numbers without enough flags around them do not chord
+    t.checkExpect(this.board3x4.chord(5, changed), 0);
+    this.board3x4.uncover(5);
+    this.board3x4.toggleMarked(1);
+    t.checkExpect(this.board3x4.chord(5, changed), 0);
+    this.board3x4.toggleMarked(8);
+    t.checkExpect(this.board3x4.chord(5, changed), 9);
+    t.checkExpect(this.board3x4.allSafeUncovered(), true);
+    t.checkExpect(this.board3x4.chord(5, changed), 0);
+
+    // a wrongly placed flag uncovers a mine
+    this.initData();
+    this.board3x4.computeCounts();
+    changed.clear();
+    this.board3x4.uncover(5);
+    this.board3x4.toggleMarked(1);
+    this.board3x4.toggleMarked(0);
+    t.checkExpect(this.board3x4.chord(5, changed), 9);
+    t.checkExpect(this.board3x4.isUncovered(8), true);
+  }
+
+  // tests for IntList
+  void testIntList(Tester t) {
+    IntList list = new IntList();
+    t.checkExpect(list.isEmpty(), true);
+    for (int i = 0; i < 40; i++) {
+      list.add(i * 2);
+    }
+    t.checkExpect(list.size(), 40);
+    t.checkExpect(list.get(39), 78);
+    t.checkExpect(list.removeLast(), 78);
+    t.checkExpect(list.size(), 39);
+    t.checkExpect(list.toArray().length, 39);
+    IntList more = new IntList();
+    more.add(5);
+    more.add(7);
+    list.addAll(more);
+    t.checkExpect(list.size(), 41);
+    t.checkExpect(list.get(40), 7);
+    more.addAll(list);
+    t.checkExpect(more.size(), 43);
+    t.checkExpect(more.get(2), 0);
+    list.clear();
+    t.checkExpect(list.isEmpty(), true);
+    t.checkException(new IndexOutOfBoundsException("Cannot remove from an empty list"), list,
+        "removeLast");
+    t.checkException(new IndexOutOfBoundsException("Index 0 out of bounds for size 0"), list,
+        "get", 0);
   }
 
   // tests for CreateGrid
@@ -609,8 +1625,8 @@ class Examples {
     }
     Posn p = posn.get(rand);
     Minesweeper msTestGrid = new Minesweeper(2, 2, 1, new Random(4));
-    msTestGrid.grid.get(p.x).get(p.y).uncovered = true;
-    t.checkExpect(msTestGrid.grid.get(p.x).get(p.y).clickedMine(), true);
+    msTestGrid.board.pieceAt(p.x, p.y).setUncovered();
+    t.checkExpect(msTestGrid.board.pieceAt(p.x, p.y).clickedMine(), true);
 
     // test with seed 6
     Random r1 = new Random(6);
@@ -623,34 +1639,72 @@ class Examples {
     }
     Posn p1 = posn1.get(rand1);
     Minesweeper msTestGrid1 = new Minesweeper(3, 3, 1, new Random(6));
-    msTestGrid1.grid.get(p1.x).get(p1.y).uncovered = true;
-    t.checkExpect(msTestGrid1.grid.get(p1.x).get(p1.y).clickedMine(), true);
+    msTestGrid1.board.pieceAt(p1.x, p1.y).setUncovered();
+    t.checkExpect(msTestGrid1.board.pieceAt(p1.x, p1.y).clickedMine(), true);
   }
 
-  // testing updateNeighbors
-  void testUpdateNeighbors(Tester t) {
-    this.initData();
-    Minesweeper msTestGrid1 = new Minesweeper(3, 4, 2, this.grid3x4);
-    t.checkExpect(this.grid3x4.get(0).get(0).neighbors.size(), 3);
-    t.checkExpect(this.grid3x4.get(0).get(1).neighbors.size(), 5);
-    t.checkExpect(this.grid3x4.get(1).get(1).neighbors.size(), 8);
-    t.checkExpect(this.grid3x4.get(0).get(0).neighbors.get(0),
-        this.grid3x4.get(0).get(2).neighbors.get(0));
-    t.checkExpect(this.grid3x4.get(2).get(0), this.grid3x4.get(2).get(1).neighbors.get(3));
+  // tests for placeRandomMines
+  void testPlaceRandomMines(Tester t) {
+    Board b1 = new Board(20, 30);
+    Board b2 = new Board(20, 30);
+    b1.placeRandomMines(99, new Random(12));
+    b2.placeRandomMines(99, new Random(12));
+    // the same seed gives the same layout
+    t.checkExpect(b1.cells, b2.cells);
+    int mines = 0;
+    for (int idx = 0; idx < b1.size(); idx++) {
+      if (b1.isMine(idx)) {
+        mines++;
+      }
+    }
+    t.checkExpect(mines, 99);
+
+    // a single mine lands on the first cell drawn
+    Board b3 = new Board(5, 5);
+    int expected = new Random(3).nextInt(25);
+    b3.placeRandomMines(1, new Random(3));
+    t.checkExpect(b3.isMine(expected), true);
+
+    // every cell can be a mine
+    Board full = new Board(2, 3);
+    full.placeRandomMines(6, new Random());
+    for (int idx = 0; idx < full.size(); idx++) {
+      t.checkExpect(full.isMine(idx), true);
+    }
+    t.checkException(new IllegalArgumentException("Cannot place 7 mines on 6 cells"),
+        new Board(2, 3), "placeRandomMines", 7, new Random());
+
+    // mines kept off the clear cells fill every other cell
+    Board kept = new Board(3, 4);
+    kept.placeRandomMines(9, new Random(5), new int[] { 0, 6, 11 });
+    t.checkExpect(kept.mines.size(), 9);
+    t.checkExpect(kept.isMine(0) || kept.isMine(6) || kept.isMine(11), false);
+    t.checkExpect(kept.coveredSafe, 3);
+    t.checkExpect(Board.skip(0, new int[] { 0, 1, 3 }), 2);
+    t.checkExpect(Board.skip(1, new int[] { 0, 1, 3 }), 4);
+    t.checkExpect(Board.skip(1, new int[] { 5 }), 1);
+    t.checkException(new IllegalArgumentException("Cannot place 10 mines on 9 cells"),
+        new Board(3, 4), "placeRandomMines", 10, new Random(), new int[] { 0, 6, 11 });
+  }
 
+  // testing pieceAt
+  void testPieceAt(Tester t) {
+    this.initData();
+    t.checkExpect(this.board3x4.pieceAt(0, 1), new Mine(this.board3x4, 1));
+    t.checkExpect(this.board3x4.pieceAt(2, 3), new Tile(this.board3x4, 11));
+    t.checkExpect(this.board3x4.pieceAt(2, 0).countMinesHelp(), 1);
   }
 
   // testing the updateTiles method
   void testUpdateTiles(Tester t) {
     this.initData();
-    Minesweeper game1 = new Minesweeper(3, 4, 2, this.grid3x4);
-    Tile fTile = (Tile) game1.grid.get(0).get(0);
-    Tile fTile1 = (Tile) game1.grid.get(1).get(1);
-    Mine fMine = (Mine) game1.grid.get(0).get(1);
-    t.checkExpect(fTile.nearMines, 1);
-    t.checkExpect(fTile1.nearMines, 2);
+    Minesweeper game1 = new Minesweeper(3, 4, 2, this.board3x4);
+    Tile fTile = (Tile) game1.board.pieceAt(0, 0);
+    Tile fTile1 = (Tile) game1.board.pieceAt(1, 1);
+    t.checkExpect(fTile.nearMines(), 1);
+    t.checkExpect(fTile1.nearMines(), 2);
     // ensure that nothing changes for a mine
-    t.checkExpect(fMine, this.middleTop);
+    t.checkExpect(game1.board.cells[1], (byte) Board.MINE);
 
   }
 
@@ -667,10 +1721,10 @@ class Examples {
         IConstants.tileSize / 2);
     scene2.placeImageXY(new Tile().drawTile(), IConstants.tileSize / 2, IConstants.tileSize / 2);
 
-    Minesweeper msTestGrid1 = new Minesweeper(3, 4, 2, this.grid3x4);
+    Minesweeper msTestGrid1 = new Minesweeper(3, 4, 2, this.board3x4);
     for (int i = 0; i < 3; i++) {
       for (int j = 0; j < 4; j++) {
-        scene.placeImageXY(msTestGrid1.grid.get(i).get(j).drawTile(),
+        scene.placeImageXY(msTestGrid1.board.pieceAt(i, j).drawTile(),
             j * IConstants.tileSize + IConstants.tileSize / 2,
             i * IConstants.tileSize + IConstants.tileSize / 2);
       }
@@ -706,7 +1760,7 @@ class Examples {
   // testing onMouseReleased
   void testOnMouseRelease(Tester t) {
     this.initData();
-    Minesweeper msTestGrid1 = new Minesweeper(3, 4, 2, this.grid3x4);
+    Minesweeper msTestGrid1 = new Minesweeper(3, 4, 2, this.board3x4);
     Posn p = new Posn(IConstants.tileSize / 2, IConstants.tileSize / 2);
     Posn p1 = new Posn(2 * IConstants.tileSize + IConstants.tileSize / 2,
         IConstants.tileSize + IConstants.tileSize / 2);
@@ -714,29 +1768,37 @@ class Examples {
     Posn p2 = new Posn(IConstants.tileSize + IConstants.tileSize / 2, IConstants.tileSize / 2);
     Posn p3 = new Posn(IConstants.tileSize + IConstants.tileSize / 2,
         IConstants.tileSize + IConstants.tileSize / 2);
-    AGamePiece convP1 = msTestGrid1.grid.get(p.y / IConstants.tileSize)
-        .get(p.x / IConstants.tileSize);
-    AGamePiece convP2 = msTestGrid1.grid.get(p1.y / IConstants.tileSize)
-        .get(p1.x / IConstants.tileSize);
-    AGamePiece convP3 = msTestGrid1.grid.get(p2.y / IConstants.tileSize)
-        .get(p2.x / IConstants.tileSize);
-    AGamePiece convP4 = msTestGrid1.grid.get(p3.y / IConstants.tileSize)
-        .get(p3.x / IConstants.tileSize);
+    AGamePiece convP1 = msTestGrid1.board.pieceAt(p.y / IConstants.tileSize,
+        p.x / IConstants.tileSize);
+    AGamePiece convP2 = msTestGrid1.board.pieceAt(p1.y / IConstants.tileSize,
+        p1.x / IConstants.tileSize);
+    AGamePiece convP3 = msTestGrid1.board.pieceAt(p2.y / IConstants.tileSize,
+        p2.x / IConstants.tileSize);
+    AGamePiece convP4 = msTestGrid1.board.pieceAt(p3.y / IConstants.tileSize,
+        p3.x / IConstants.tileSize);
     msTestGrid1.onMouseReleased(p, "UnknownButton");
     msTestGrid1.onMouseReleased(p1, "UnknownButton");
+    t.checkExpect(msTestGrid1.gameOver, false);
     msTestGrid1.onMouseReleased(p2, "UnknownButton");
     msTestGrid1.onMouseReleased(p3, "RightButton");
-    t.checkExpect(convP1.color, Color.GRAY);
-    t.checkExpect(convP1.uncovered, true);
-    t.checkExpect(convP2.color, Color.GRAY);
-    t.checkExpect(convP2.uncovered, true);
+    t.checkExpect(convP1.color(), Color.GRAY);
+    t.checkExpect(convP1.isUncovered(), true);
+    t.checkExpect(convP2.color(), Color.GRAY);
+    t.checkExpect(convP2.isUncovered(), true);
     t.checkExpect(convP3.clickedMine(), true);
-    t.checkExpect(convP3.color, Color.RED);
-    t.checkExpect(convP3.uncovered, true);
-    t.checkExpect(convP4.uncovered, false);
-    t.checkExpect(convP4.marked, true);
-    t.checkExpect(convP4.color, Color.CYAN);
-
+    t.checkExpect(convP3.color(), Color.RED);
+    t.checkExpect(convP3.isUncovered(), true);
+    t.checkExpect(msTestGrid1.gameOver, true);
+    t.checkExpect(convP4.isUncovered(), false);
+    t.checkExpect(convP4.isMarked(), true);
+    t.checkExpect(convP4.color(), Color.CYAN);
+    // the clicks are all timed to the next frame drawn
+    t.checkExpect(msTestGrid1.clickStart > 0, true);
+    msTestGrid1.makeScene();
+    t.checkExpect(msTestGrid1.clickStart, 0L);
+    t.checkExpect(msTestGrid1.clickLatency.count(), 1L);
+    msTestGrid1.makeScene();
+    t.checkExpect(msTestGrid1.clickLatency.count(), 1L);
   }
 
   // testing the clickedMine method
@@ -744,10 +1806,10 @@ class Examples {
     this.initData();
     t.checkExpect(tile1.clickedMine(), false);
     t.checkExpect(tile2.clickedMine(), false);
-    mine1.uncovered = true;
+    mine1.setUncovered();
     t.checkExpect(mine1.clickedMine(), true);
     t.checkExpect(mine2.clickedMine(), false);
-    mine2.uncovered = true;
+    mine2.setUncovered();
     t.checkExpect(mine2.clickedMine(), true);
   }
 
@@ -759,46 +1821,46 @@ class Examples {
     tile2.gameOverStatus();
     t.checkExpect(tile2, new Tile());
     mine1.gameOverStatus();
-    t.checkExpect(mine1.uncovered, true);
-    t.checkExpect(mine1.color, IConstants.explodedMineTile);
+    t.checkExpect(mine1.isUncovered(), true);
+    t.checkExpect(mine1.color(), IConstants.explodedMineTile);
     mine2.gameOverStatus();
-    t.checkExpect(mine2.uncovered, true);
-    t.checkExpect(mine2.color, IConstants.explodedMineTile);
+    t.checkExpect(mine2.isUncovered(), true);
+    t.checkExpect(mine2.color(), IConstants.explodedMineTile);
   }
 
   // testing the coveredTile method
   void testCoveredTile(Tester t) {
     this.initData();
     t.checkExpect(tile1.coveredTile(), true);
-    tile1.uncovered = true;
+    tile1.setUncovered();
     t.checkExpect(tile1.coveredTile(), false);
     t.checkExpect(tile2.coveredTile(), true);
     t.checkExpect(mine1.coveredTile(), false);
-    mine2.uncovered = true;
+    mine2.setUncovered();
     t.checkExpect(mine2.coveredTile(), false);
   }
 
   // testing the onTick method
   void testOnTick(Tester t) {
     this.initData();
-    Minesweeper msTestGrid1 = new Minesweeper(3, 4, 2, this.grid3x4);
+    Minesweeper msTestGrid1 = new Minesweeper(3, 4, 2, this.board3x4);
     msTestGrid1.onTick();
     t.checkExpect(msTestGrid1.winner, false);
     for (int i = 0; i < 3; i++) {
       for (int j = 0; j < 4; j++) {
-        if (msTestGrid1.grid.get(i).get(j).coveredTile()) {
-          msTestGrid1.grid.get(i).get(j).uncovered = true;
+        if (msTestGrid1.board.pieceAt(i, j).coveredTile()) {
+          msTestGrid1.board.pieceAt(i, j).setUncovered();
         }
       }
     }
     msTestGrid1.onTick();
     t.checkExpect(msTestGrid1.winner, true);
-    Minesweeper msTestGrid2 = new Minesweeper(3, 4, 2, this.grid3x4);
+    this.initData();
+    Minesweeper msTestGrid2 = new Minesweeper(3, 4, 2, this.board3x4);
     msTestGrid2.gameOver = true;
     msTestGrid2.onTick();
-    msTestGrid2.grid.get(0).get(2).uncovered = true;
-    // testing endOfWorld. A click should not change any property of a piece
-    t.checkExpect(msTestGrid2.grid.get(0).get(2).color, Color.CYAN);
+    t.checkExpect(msTestGrid2.winner, false);
+    t.checkExpect(msTestGrid2.board.pieceAt(0, 2).color(), Color.CYAN);
 
   }
 
@@ -808,7 +1870,8 @@ class Examples {
     int cols = 30;
     int numMines = 12;
     Minesweeper ms1 = new Minesweeper(rows, cols, numMines);
-    ms1.bigBang(IConstants.tileSize * cols, IConstants.tileSize * rows, 1);
+    ms1.startPipeline();
+    ms1.bigBang(ms1.viewport.width, ms1.viewport.height, 1);
 
   }
 
@@ -0,0 +1,295 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import tester.*;
+
+//to represent how far the solver got on one candidate board
+class CandidateResult {
+  // the number of the candidate, or -1 for no candidate
+  long number;
+  // how many safe cells deduction alone uncovered, starting from the first click
+  int uncovered;
+
+  CandidateResult(long number, int uncovered) {
+    this.number = number;
+    this.uncovered = uncovered;
+  }
+
+  // the better of this result and other: the one that uncovered more, or the lower
+  // numbered one if they uncovered the same
+  CandidateResult better(CandidateResult other) {
+    if (other.number < 0) {
+      return this;
+    }
+    if (this.number < 0 || other.uncovered > this.uncovered
+        || other.uncovered == this.uncovered && other.number < this.number) {
+      return other;
+    }
+    return this;
+  }
+}
+
+//to represent checking the candidates from first up to but not including last
+//ranges that are too big are split in half and checked in parallel
+class CandidateSearch extends RecursiveTask<CandidateResult> {
+  static final int CANDIDATES_PER_TASK = 2;
+
+  NoGuessGenerator generator;
+  // the seed of each candidate's stream
+  long[] seeds;
+  long firstNumber;
+  int first;
+  int last;
+
+  CandidateSearch(NoGuessGenerator generator, long[] seeds, long firstNumber, int first,
+      int last) {
+    this.generator = generator;
+    this.seeds = seeds;
+    this.firstNumber = firstNumber;
+    this.first = first;
+    this.last = last;
+  }
+
+  // the best of this task's candidates, skipping any numbered after a candidate
+  // already proved solvable
+  protected CandidateResult compute() {
+    if (this.last - this.first <= CANDIDATES_PER_TASK) {
+      CandidateResult best = new CandidateResult(-1, 0);
+      for (int i = this.first; i < this.last; i++) {
+        long number = this.firstNumber + i;
+        if (number < this.generator.solvedNumber.get() && !this.generator.pastDeadline()) {
+          best = best.better(
+              this.generator.check(number, new SplittableRandom(this.seeds[i])));
+        }
+      }
+      return best;
+    }
+    int middle = this.first + (this.last - this.first) / 2;
+    CandidateSearch left = new CandidateSearch(this.generator, this.seeds, this.firstNumber,
+        this.first, middle);
+    left.fork();
+    CandidateResult right = new CandidateSearch(this.generator, this.seeds, this.firstNumber,
+        middle, this.last).compute();
+    return left.join().better(right);
+  }
+}
+
+//to represent making boards that can be cleared from a chosen first click by
+//deduction alone, with no guesses
+//Candidates keep the first click and its neighbors clear of mines, and are played
+//out by a Solver: reveal every cell it proves safe until it proves nothing more. A
+//candidate is solvable if that uncovers every safe cell. Candidate n draws its mines
+//from a stream seeded by the nth stream split off a SplittableRandom seeded by seed,
+//and candidates are checked a round at a time across every core. A candidate once
+//started is always played out in full, and the lowest numbered solvable candidate
+//wins, so a search that ends before its deadline gives a board that only depends on
+//the seed and not on how the checks were scheduled.
+//The search stops after the first round that ends past the deadline; candidates that
+//round had not started are skipped. If no candidate is solvable by then or after
+//maxCandidates, the one that deduction got furthest on is used, or candidate 0 if none
+//was checked in time, and solvable is left false.
+class NoGuessGenerator {
+  int rows;
+  int cols;
+  int numMines;
+  long seed;
+  long timeLimitNanos;
+  long maxCandidates;
+  int firstCell;
+  // the cells kept clear of mines, in increasing order
+  int[] clear;
+  // the lowest numbered candidate proved solvable, or Long.MAX_VALUE
+  AtomicLong solvedNumber;
+  long deadline;
+  // what the last call to generate found
+  long candidatesTried;
+  boolean solvable;
+
+  NoGuessGenerator(int rows, int cols, int numMines, long seed, long timeLimitNanos,
+      long maxCandidates) {
+    if (numMines > (long) rows * cols - 9 || numMines < 0) {
+      throw new IllegalArgumentException("Cannot place " + numMines + " mines on a " + rows
+          + "x" + cols + " board and keep a first click clear");
+    }
+    this.rows = rows;
+    this.cols = cols;
+    this.numMines = numMines;
+    this.seed = seed;
+    this.timeLimitNanos = timeLimitNanos;
+    this.maxCandidates = maxCandidates;
+  }
+
+  // has the time limit of the current call to generate passed?
+  boolean pastDeadline() {
+    return System.nanoTime() > this.deadline;
+  }
+
+  // EFFECT: remembers the cell at row and col, and its neighbors, as the cells to
+  // keep clear of mines
+  void setFirstClick(int row, int col) {
+    Board shape = new Board(this.rows, this.cols);
+    this.firstCell = shape.index(row, col);
+    int[] around = new int[shape.maxNeighbors()];
+    int n = shape.neighbors(this.firstCell, around);
+    this.clear = Arrays.copyOf(around, n + 1);
+    this.clear[n] = this.firstCell;
+    Arrays.sort(this.clear);
+  }
+
+  // a board with numMines mines drawn from rand, none of them on the clear cells
+  // Uses Floyd's sampling algorithm like Board.placeRandomMines, over the cells that
+  // are not kept clear
+  Board candidate(SplittableRandom rand) {
+    Board board = new Board(this.rows, this.cols);
+    int open = board.size() - this.clear.length;
+    for (int j = open - this.numMines; j < open; j++) {
+      int idx = Board.skip(rand.nextInt(j + 1), this.clear);
+      if (board.isMine(idx)) {
+        idx = Board.skip(j, this.clear);
+      }
+      board.placeMine(idx);
+    }
+    board.computeCounts();
+    return board;
+  }
+
+  // how far deduction alone gets on candidate number, drawn from rand
+  // EFFECT: records the number if the candidate is solvable
+  CandidateResult check(long number, SplittableRandom rand) {
+    Board board = this.candidate(rand);
+    board.uncover(this.firstCell);
+    Solver solver = new Solver(board);
+    solver.solve();
+    int idx = solver.nextSafe();
+    while (idx >= 0) {
+      board.uncover(idx);
+      solver.solve();
+      idx = solver.nextSafe();
+    }
+    if (board.allSafeUncovered()) {
+      this.solvedNumber.accumulateAndGet(number, Math::min);
+    }
+    return new CandidateResult(number, board.size() - board.mines.size() - board.coveredSafe);
+  }
+
+  // a game that can be cleared from the cell at row and col by deduction alone, if
+  // one was found in time
+  // EFFECT: sets candidatesTried and solvable
+  Game generate(int row, int col) {
+    this.setFirstClick(row, col);
+    this.solvedNumber = new AtomicLong(Long.MAX_VALUE);
+    this.deadline = System.nanoTime() + this.timeLimitNanos;
+    int round = 8 * ForkJoinPool.commonPool().getParallelism();
+    SplittableRandom root = new SplittableRandom(this.seed);
+    ArrayList<Long> seeds = new ArrayList<Long>();
+    CandidateResult best = new CandidateResult(-1, 0);
+    // there is always at least one round, so there is always a board to return
+    boolean timeUp = false;
+    while (seeds.size() < this.maxCandidates && this.solvedNumber.get() == Long.MAX_VALUE
+        && !timeUp) {
+      int size = (int) Math.min(round, this.maxCandidates - seeds.size());
+      long[] roundSeeds = new long[size];
+      for (int i = 0; i < size; i++) {
+        roundSeeds[i] = root.split().nextLong();
+        seeds.add(roundSeeds[i]);
+      }
+      best = best.better(ForkJoinPool.commonPool().invoke(
+          new CandidateSearch(this, roundSeeds, seeds.size() - size, 0, size)));
+      timeUp = this.pastDeadline();
+    }
+    this.candidatesTried = seeds.size();
+    this.solvable = this.solvedNumber.get() != Long.MAX_VALUE;
+    // if even the first round ran out of time, candidate 0 is used unchecked
+    long winner = Math.max(best.number, 0);
+    if (this.solvable) {
+      winner = this.solvedNumber.get();
+    }
+    Board board = this.candidate(new SplittableRandom(seeds.get((int) winner)));
+    return new Game(board, this.numMines);
+  }
+}
+
+//tests and examples for NoGuessGenerator
+class ExamplesNoGuess {
+
+  // tests for CandidateResult
+  void testCandidateResult(Tester t) {
+    CandidateResult none = new CandidateResult(-1, 0);
+    CandidateResult a = new CandidateResult(4, 30);
+    CandidateResult b = new CandidateResult(2, 30);
+    CandidateResult c = new CandidateResult(9, 31);
+    t.checkExpect(none.better(a), a);
+    t.checkExpect(a.better(none), a);
+    t.checkExpect(a.better(b), b);
+    t.checkExpect(b.better(a), b);
+    t.checkExpect(a.better(c), c);
+  }
+
+  // tests that candidates keep the first click and its neighbors clear
+  void testCandidate(Tester t) {
+    NoGuessGenerator generator = new NoGuessGenerator(5, 5, 16, 1, 1000000000L, 10);
+    generator.setFirstClick(0, 0);
+    t.checkExpect(generator.clear, new int[] { 0, 1, 5, 6 });
+    t.checkExpect(Board.skip(0, generator.clear), 2);
+    t.checkExpect(Board.skip(2, generator.clear), 4);
+    t.checkExpect(Board.skip(3, generator.clear), 7);
+    boolean kept = true;
+    SplittableRandom rand = new SplittableRandom(3);
+    for (int i = 0; i < 50; i++) {
+      Board board = generator.candidate(rand.split());
+      // every one of the 21 cells not kept clear may be chosen
+      if (board.mines.size() != 16 || board.isMine(0) || board.isMine(1) || board.isMine(5)
+          || board.isMine(6)) {
+        kept = false;
+      }
+    }
+    t.checkExpect(kept, true);
+    t.checkConstructorException(new IllegalArgumentException(
+        "Cannot place 20 mines on a 4x7 board and keep a first click clear"),
+        "NoGuessGenerator", 4, 7, 20, 1L, 1L, 1L);
+  }
+
+  // tests that generated boards can be cleared by the solver alone, and depend only on
+  // the seed
+  void testGenerate(Tester t) {
+    NoGuessGenerator generator = new NoGuessGenerator(16, 30, 99, 21, 20000000000L, 100000);
+    Game game = generator.generate(8, 15);
+    t.checkExpect(generator.solvable, true);
+    t.checkExpect(game.board.mines.size(), 99);
+    t.checkExpect(game.board.nearMines(game.board.index(8, 15)), 0);
+    Game again = new NoGuessGenerator(16, 30, 99, 21, 20000000000L, 100000).generate(8, 15);
+    t.checkExpect(again.board.cells, game.board.cells);
+    // playing it out with the solver alone wins
+    game.reveal(8, 15);
+    Solver solver = new Solver(game.board);
+    solver.solve();
+    int idx = solver.nextSafe();
+    while (idx >= 0) {
+      game.reveal(idx / game.cols, idx % game.cols);
+      solver.solve();
+      idx = solver.nextSafe();
+    }
+    t.checkExpect(game.won(), true);
+
+    // with too few candidates allowed, the best one is used anyway
+    NoGuessGenerator hopeless = new NoGuessGenerator(10, 10, 60, 5, 20000000000L, 3);
+    Game fallback = hopeless.generate(5, 5);
+    t.checkExpect(hopeless.solvable, false);
+    t.checkExpect(hopeless.candidatesTried, 3L);
+    t.checkExpect(fallback.board.mines.size(), 60);
+
+    // with no time at all, one round is drawn and candidate 0 is used unchecked
+    NoGuessGenerator rushed = new NoGuessGenerator(16, 30, 99, 1, 0, 2000000);
+    Game unchecked = rushed.generate(8, 15);
+    t.checkExpect(rushed.solvable, false);
+    t.checkExpect(rushed.candidatesTried,
+        8L * ForkJoinPool.commonPool().getParallelism());
+    rushed.setFirstClick(8, 15);
+    t.checkExpect(unchecked.board.cells, rushed.candidate(new SplittableRandom(
+        new SplittableRandom(1).split().nextLong())).cells);
+  }
+}
@@ -0,0 +1,447 @@
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javalib.worldimages.Posn;
+
+import tester.*;
+
+//to represent one input to the game: a click on a cell, or undoing or redoing a move
+class Input {
+  static final int OPEN = 0;
+  static final int FLAG = 1;
+  static final int UNDO = 2;
+  static final int REDO = 3;
+
+  int kind;
+  // the board index of the cell clicked, or -1 for undo and redo
+  int cell;
+
+  Input(int kind, int cell) {
+    this.kind = kind;
+    this.cell = cell;
+  }
+}
+
+//to represent the player's inputs to a game, made in order by a game logic worker
+//The mouse and keyboard handlers only add inputs to a lock-free queue, so they return
+//at once however much a click uncovers. One worker thread takes the inputs out in the
+//order they were made and floods at most batchCells cells at a time, holding the lock
+//only for one batch, so a frame waits for at most one batch and draws a big opening
+//as it spreads. Each input is finished before the next one starts, so the cells after
+//every input are the same as when the clicks are made one at a time, and the journal
+//replays to the same board.
+//Inputs that would change nothing, such as a second click on the cell a click just
+//opened, are dropped before they reach the journal or the history.
+class InputPipeline {
+  // the most cells one batch of a flood uncovers
+  static final int BATCH_CELLS = 4096;
+
+  Game game;
+  Journal journal;
+  // made at the first input, so that games that are never played do not copy their board
+  History history;
+  int batchCells;
+  ConcurrentLinkedQueue<Input> inputs;
+  // held while the worker changes the game and while a frame reads it; fair, so that a
+  // frame waiting on a flood goes next
+  ReentrantLock lock;
+  AtomicLong submitted;
+  // inputs made or dropped
+  AtomicLong done;
+  // inputs dropped because they would change nothing
+  int coalesced;
+  // the times the lock was taken to change the game
+  int batches;
+  Thread worker;
+  volatile boolean running;
+
+  InputPipeline(Game game, Journal journal, int batchCells) {
+    if (batchCells <= 0) {
+      throw new IllegalArgumentException("Invalid batch size: " + batchCells);
+    }
+    this.game = game;
+    this.journal = journal;
+    this.batchCells = batchCells;
+    this.inputs = new ConcurrentLinkedQueue<Input>();
+    this.lock = new ReentrantLock(true);
+    this.submitted = new AtomicLong();
+    this.done = new AtomicLong();
+  }
+
+  // EFFECT: starts the worker thread that makes the inputs
+  void start() {
+    this.running = true;
+    this.worker = new Thread(this::work, "minesweeper-input");
+    this.worker.setDaemon(true);
+    this.worker.start();
+  }
+
+  // EFFECT: stops the worker once it has made the inputs already taken out of the queue
+  void stop() {
+    this.running = false;
+    if (this.worker != null) {
+      LockSupport.unpark(this.worker);
+    }
+  }
+
+  // EFFECT: makes inputs as they arrive, sleeping while there are none, until stopped
+  void work() {
+    while (this.running) {
+      this.runPending();
+      if (this.running && this.inputs.isEmpty()) {
+        LockSupport.park(this);
+      }
+    }
+  }
+
+  // EFFECT: adds input to the end of the queue and wakes the worker
+  void submit(Input input) {
+    this.submitted.incrementAndGet();
+    this.inputs.offer(input);
+    if (this.worker != null) {
+      LockSupport.unpark(this.worker);
+    }
+  }
+
+  // EFFECT: queues a left click, or with flag a right click, on the cell at idx
+  // throws an IllegalArgumentException if the cell is not on the board
+  void click(int idx, boolean flag) {
+    if (idx < 0 || idx >= this.game.board.size()) {
+      throw new IllegalArgumentException("Cell " + idx + " is not on the board");
+    }
+    if (flag) {
+      this.submit(new Input(Input.FLAG, idx));
+    }
+    else {
+      this.submit(new Input(Input.OPEN, idx));
+    }
+  }
+
+  // EFFECT: queues undoing the last move
+  void undo() {
+    this.submit(new Input(Input.UNDO, -1));
+  }
+
+  // EFFECT: queues redoing the last undone move
+  void redo() {
+    this.submit(new Input(Input.REDO, -1));
+  }
+
+  // EFFECT: makes every input in the queue, in order, on this thread
+  // returns how many inputs were taken out of the queue
+  int runPending() {
+    int taken = 0;
+    Input input = this.inputs.poll();
+    while (input != null) {
+      this.apply(input);
+      this.done.incrementAndGet();
+      taken++;
+      input = this.inputs.poll();
+    }
+    return taken;
+  }
+
+  // EFFECT: waits until every input submitted so far has been made or dropped, making
+  // them on this thread if there is no worker
+  void awaitIdle() {
+    if (this.worker == null) {
+      this.runPending();
+    }
+    while (this.done.get() < this.submitted.get()) {
+      LockSupport.parkNanos(100000);
+    }
+  }
+
+  // EFFECT: makes input on the game, holding the lock for one batch of its flood at a
+  // time, then records it in the journal and the history; drops it instead if it would
+  // change nothing
+  // Only this thread changes the cells while there is a pipeline: frames drawn under the
+  // lock only read them, even the mines a lost game shows, so the history can be built
+  // and recorded from them without the lock, however big it is
+  void apply(Input input) {
+    Board board = this.game.board;
+    if (this.history == null) {
+      this.history = new History(this.game);
+    }
+    IntList changed = new IntList();
+    this.lock.lock();
+    try {
+      this.batches++;
+      if (this.noOp(input)) {
+        this.coalesced++;
+        return;
+      }
+      if (input.kind == Input.UNDO) {
+        this.history.undo();
+        this.journal.undo();
+        return;
+      }
+      if (input.kind == Input.REDO) {
+        this.history.redo();
+        this.journal.redo();
+        return;
+      }
+      board.floodBudget = this.batchCells;
+      if (input.kind == Input.FLAG) {
+        this.game.flag(input.cell / board.cols, input.cell % board.cols);
+        changed.add(input.cell);
+      }
+      else {
+        this.game.open(input.cell / board.cols, input.cell % board.cols, changed);
+      }
+    }
+    finally {
+      this.lock.unlock();
+    }
+    // each batch goes into a list of its own, so that the list of every changed cell
+    // grows, which copies it, without the lock
+    IntList batch = new IntList();
+    while (board.flooding()) {
+      batch.clear();
+      this.lock.lock();
+      try {
+        this.batches++;
+        board.continueFlood(batch);
+      }
+      finally {
+        this.lock.unlock();
+      }
+      changed.addAll(batch);
+    }
+    board.floodBudget = Integer.MAX_VALUE;
+    this.journal.record(input.cell, input.kind == Input.FLAG);
+    this.history.record(changed);
+  }
+
+  // would making input change nothing? Clicks once the game is over, flags on uncovered
+  // cells, left clicks on flags, chords on numbers whose flags do not match them, and
+  // undoing or redoing with nothing to undo or redo all change nothing
+  boolean noOp(Input input) {
+    Board board = this.game.board;
+    if (input.kind == Input.UNDO) {
+      return !this.history.canUndo();
+    }
+    if (input.kind == Input.REDO) {
+      return !this.history.canRedo();
+    }
+    if (this.game.isOver()) {
+      return true;
+    }
+    if (input.kind == Input.FLAG) {
+      return board.isUncovered(input.cell);
+    }
+    if (board.isMarked(input.cell)) {
+      return true;
+    }
+    return board.isUncovered(input.cell) && !this.chords(input.cell);
+  }
+
+  // would chording the uncovered cell at idx uncover anything?
+  boolean chords(int idx) {
+    Board board = this.game.board;
+    if (board.isMine(idx)) {
+      return false;
+    }
+    int[] around = new int[board.maxNeighbors()];
+    int n = board.neighbors(idx, around);
+    int marked = 0;
+    int covered = 0;
+    for (int k = 0; k < n; k++) {
+      if (board.isMarked(around[k])) {
+        marked++;
+      }
+      else if (!board.isUncovered(around[k])) {
+        covered++;
+      }
+    }
+    return marked == board.nearMines(idx) && covered > 0;
+  }
+}
+
+//tests and examples for InputPipeline
+class ExamplesPipeline {
+
+  // the same random clicks, on cells of a rows by cols board
+  IntList clicks(int rows, int cols, int count, long seed) {
+    Random rand = new Random(seed);
+    IntList clicks = new IntList();
+    for (int i = 0; i < count; i++) {
+      // the high bit marks a flag
+      int flag = 0;
+      if (rand.nextInt(4) == 0) {
+        flag = 1 << 30;
+      }
+      clicks.add(rand.nextInt(rows * cols) | flag);
+    }
+    return clicks;
+  }
+
+  // the cells of game after making clicks on it one at a time, as the world's mouse
+  // handler does without a pipeline
+  byte[] clickedOneAtATime(Game game, IntList clicks) {
+    for (int i = 0; i < clicks.size() && !game.isOver(); i++) {
+      int cell = clicks.get(i) & ~(1 << 30);
+      if ((clicks.get(i) >> 30) != 0) {
+        game.flag(cell / game.cols, cell % game.cols);
+      }
+      else {
+        game.open(cell / game.cols, cell % game.cols, new IntList());
+      }
+    }
+    return game.board.cells.clone();
+  }
+
+  // EFFECT: submits clicks to pipeline
+  void submit(InputPipeline pipeline, IntList clicks) {
+    for (int i = 0; i < clicks.size(); i++) {
+      pipeline.click(clicks.get(i) & ~(1 << 30), (clicks.get(i) >> 30) != 0);
+    }
+  }
+
+  // tests that the pipeline leaves the same cells as clicking one at a time, however
+  // small its batches, and that its journal replays to them
+  void testSameCells(Tester t) {
+    boolean same = true;
+    for (int seed = 0; seed < 20; seed++) {
+      IntList clicks = this.clicks(40, 50, 30, seed);
+      byte[] expected = this.clickedOneAtATime(new Game(40, 50, 150, (long) seed), clicks);
+      for (int batch : new int[] { 1, 7, InputPipeline.BATCH_CELLS }) {
+        Game game = new Game(40, 50, 150, (long) seed);
+        Journal journal = new Journal(game);
+        InputPipeline pipeline = new InputPipeline(game, journal, batch);
+        this.submit(pipeline, clicks);
+        pipeline.awaitIdle();
+        Game replayed = new Game(40, 50, 150, (long) seed);
+        for (int i = 0; i < journal.size(); i++) {
+          journal.apply(i, replayed, new IntList());
+        }
+        same = same && java.util.Arrays.equals(game.board.cells, expected)
+            && java.util.Arrays.equals(replayed.board.cells, expected)
+            && game.board.floodBudget == Integer.MAX_VALUE;
+      }
+    }
+    t.checkExpect(same, true);
+  }
+
+  // tests that a big opening is flooded in batches
+  void testBatches(Tester t) {
+    Board board = new Board(100, 100);
+    board.placeMine(board.index(99, 99));
+    Game game = new Game(board, 1);
+    InputPipeline pipeline = new InputPipeline(game, new Journal(game), 1000);
+    pipeline.click(0, false);
+    t.checkExpect(pipeline.runPending(), 1);
+    t.checkExpect(game.won(), true);
+    // each batch floods at least 1000 cells, so the 9999 cells take ten batches
+    t.checkExpect(pipeline.batches, 10);
+    t.checkExpect(pipeline.journal.size(), 1);
+    t.checkExpect(pipeline.history.canUndo(), true);
+    t.checkExpect(board.flooding(), false);
+  }
+
+  // tests that inputs that change nothing are dropped
+  void testCoalesce(Tester t) {
+    // the 3x4 board with mines at (0, 1) and (2, 0)
+    Board board = new Board(3, 4);
+    board.placeMine(board.index(0, 1));
+    board.placeMine(board.index(2, 0));
+    Game game = new Game(board, 2);
+    InputPipeline pipeline = new InputPipeline(game, new Journal(game), 4);
+    pipeline.undo();
+    pipeline.click(board.index(0, 0), false);
+    // the cell is a 1 with no flag next to it, so clicking it again does nothing
+    pipeline.click(board.index(0, 0), false);
+    pipeline.click(board.index(0, 0), true);
+    pipeline.click(board.index(0, 1), true);
+    pipeline.click(board.index(0, 1), false);
+    // with the mine flagged, clicking the 1 again chords it
+    pipeline.click(board.index(0, 0), false);
+    pipeline.redo();
+    pipeline.awaitIdle();
+    t.checkExpect(pipeline.coalesced, 5);
+    t.checkExpect(pipeline.journal.size(), 3);
+    t.checkExpect(game.clicks, 3);
+    t.checkExpect(board.isUncovered(board.index(1, 0)), true);
+    t.checkExpect(board.isUncovered(board.index(1, 1)), true);
+    pipeline.undo();
+    pipeline.awaitIdle();
+    t.checkExpect(board.isUncovered(board.index(1, 0)), false);
+    t.checkExpect(pipeline.journal.size(), 2);
+    t.checkException(new IllegalArgumentException("Cell 12 is not on the board"),
+        pipeline, "click", 12, false);
+    t.checkConstructorException(new IllegalArgumentException("Invalid batch size: 0"),
+        "InputPipeline", game, new Journal(game), 0);
+  }
+
+  // tests that the worker thread makes the inputs in the order they were given
+  void testWorker(Tester t) {
+    IntList clicks = this.clicks(300, 300, 400, 3);
+    byte[] expected = this.clickedOneAtATime(new Game(300, 300, 2000, 3L), clicks);
+    Game game = new Game(300, 300, 2000, 3L);
+    InputPipeline pipeline = new InputPipeline(game, new Journal(game), 64);
+    pipeline.start();
+    this.submit(pipeline, clicks);
+    pipeline.awaitIdle();
+    pipeline.stop();
+    t.checkExpect(java.util.Arrays.equals(game.board.cells, expected), true);
+    t.checkExpect(pipeline.done.get(), 400L);
+  }
+
+  // tests a world that hands its clicks and undos to a worker
+  void testWorld(Tester t) {
+    Board board = new Board(3, 4);
+    board.placeMine(board.index(0, 1));
+    board.placeMine(board.index(2, 0));
+    Minesweeper world = new Minesweeper(3, 4, 2, board);
+    world.startPipeline();
+    Posn corner = new Posn(world.viewport.centerX(3), world.viewport.centerY(0));
+    world.onMouseReleased(corner, "LeftButton");
+    world.pipeline.awaitIdle();
+    t.checkExpect(board.coveredSafe, 2);
+    t.checkExpect(world.makeScene().width, world.viewport.width);
+    world.onKeyEvent("u");
+    world.pipeline.awaitIdle();
+    t.checkExpect(board.coveredSafe, 10);
+    world.onKeyEvent("r");
+    world.onMouseReleased(new Posn(world.viewport.centerX(1), world.viewport.centerY(0)),
+        "LeftButton");
+    world.pipeline.awaitIdle();
+    world.makeScene();
+    t.checkExpect(world.gameOver, true);
+    t.checkExpect(world.journal.size(), 2);
+    world.pipeline.stop();
+  }
+
+  // tests that a frame of a lost game leaves the cells alone, so the history records
+  // the losing move as it was made, and undoing it covers every mine
+  void testUndoLoss(Tester t) {
+    Minesweeper world = new Minesweeper(new Game(9, 9, 10, 4L));
+    world.startPipeline();
+    int mine = world.board.mines.get(0);
+    world.onMouseReleased(new Posn(world.viewport.centerX(mine % 9),
+        world.viewport.centerY(mine / 9)), "LeftButton");
+    world.pipeline.awaitIdle();
+    world.makeScene();
+    t.checkExpect(world.gameOver, true);
+    byte[] lost = world.board.cells.clone();
+    t.checkExpect(new ExamplesHistory().cellsOf(
+        world.pipeline.history.versions.get(1).cells), lost);
+    world.onKeyEvent("u");
+    world.pipeline.awaitIdle();
+    world.makeScene();
+    t.checkExpect(world.gameOver, false);
+    t.checkExpect(world.minesShown, false);
+    boolean covered = true;
+    for (int i = 0; i < world.board.mines.size(); i++) {
+      covered = covered && !world.board.isUncovered(world.board.mines.get(i));
+    }
+    t.checkExpect(covered, true);
+    world.onKeyEvent("r");
+    world.pipeline.awaitIdle();
+    t.checkExpect(world.board.cells, lost);
+    world.pipeline.stop();
+  }
+}
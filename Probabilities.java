@@ -0,0 +1,869 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import tester.*;
+
+//to represent the key of a frontier component: each of its numbers, with the mines
+//still needed around it and the unknown cells it touches
+//two components with equal keys have exactly the same configurations
+class ComponentKey {
+  int[] data;
+
+  ComponentKey(int[] data) {
+    this.data = data;
+  }
+
+  // is that a key for the same component?
+  public boolean equals(Object that) {
+    return that instanceof ComponentKey && Arrays.equals(this.data, ((ComponentKey) that).data);
+  }
+
+  // a hash code consistent with equals
+  public int hashCode() {
+    return Arrays.hashCode(this.data);
+  }
+}
+
+//to represent every configuration of mines in one frontier component, summarized by
+//how many mines each configuration uses
+class ComponentResult {
+  // the covered cells of the component, in increasing order
+  int[] cells;
+  // the numbers of the component: constraintCells[c] are the positions in cells
+  // around number c, which needs constraintNeeds[c] more mines
+  int[][] constraintCells;
+  int[] constraintNeeds;
+  // ways[k] is the number of configurations with k mines, and mineWays[k][i] is how
+  // many of those have a mine on cells[i]
+  double[] ways;
+  double[][] mineWays;
+  // did enumeration finish within its budget?
+  boolean exact;
+  // how many search steps enumeration has taken
+  long steps;
+
+  ComponentResult(int[] cells, int[][] constraintCells, int[] constraintNeeds) {
+    this.cells = cells;
+    this.constraintCells = constraintCells;
+    this.constraintNeeds = constraintNeeds;
+  }
+
+  // EFFECT: fills in ways and mineWays by trying every assignment of mines to cells,
+  // abandoning a branch as soon as some number can no longer be satisfied
+  // gives up, leaving exact false, after Probabilities.STEP_BUDGET steps
+  void enumerate() {
+    int size = this.cells.length;
+    this.ways = new double[size + 1];
+    this.mineWays = new double[size + 1][size];
+    // the numbers around each cell
+    int[][] cellConstraints = new int[size][];
+    int[] counts = new int[size];
+    for (int[] around : this.constraintCells) {
+      for (int i : around) {
+        counts[i]++;
+      }
+    }
+    for (int i = 0; i < size; i++) {
+      cellConstraints[i] = new int[counts[i]];
+      counts[i] = 0;
+    }
+    for (int c = 0; c < this.constraintCells.length; c++) {
+      for (int i : this.constraintCells[c]) {
+        cellConstraints[i][counts[i]] = c;
+        counts[i]++;
+      }
+    }
+    int[] placed = new int[this.constraintNeeds.length];
+    int[] left = new int[this.constraintNeeds.length];
+    for (int c = 0; c < left.length; c++) {
+      left[c] = this.constraintCells[c].length;
+    }
+    this.exact = this.assign(0, 0, new boolean[size], cellConstraints, placed, left);
+  }
+
+  // EFFECT: counts every configuration that extends the choices made for the cells
+  // before position i, which placed mines mines
+  // returns false if the step budget ran out
+  boolean assign(int i, int mines, boolean[] isMine, int[][] cellConstraints, int[] placed,
+      int[] left) {
+    this.steps++;
+    if (this.steps > Probabilities.STEP_BUDGET) {
+      return false;
+    }
+    if (i == this.cells.length) {
+      this.ways[mines]++;
+      for (int j = 0; j < isMine.length; j++) {
+        if (isMine[j]) {
+          this.mineWays[mines][j]++;
+        }
+      }
+      return true;
+    }
+    for (int choice = 0; choice < 2; choice++) {
+      boolean fits = true;
+      for (int c : cellConstraints[i]) {
+        left[c]--;
+        placed[c] += choice;
+        if (placed[c] > this.constraintNeeds[c] || placed[c] + left[c] < this.constraintNeeds[c]) {
+          fits = false;
+        }
+      }
+      isMine[i] = choice == 1;
+      boolean finished = !fits || this.assign(i + 1, mines + choice, isMine, cellConstraints,
+          placed, left);
+      for (int c : cellConstraints[i]) {
+        left[c]++;
+        placed[c] -= choice;
+      }
+      isMine[i] = false;
+      if (!finished) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
+
+//to represent enumerating the configurations of many components in parallel
+class EnumerateComponents extends RecursiveAction {
+  ArrayList<ComponentResult> results;
+  int first;
+  int last;
+
+  EnumerateComponents(ArrayList<ComponentResult> results, int first, int last) {
+    this.results = results;
+    this.first = first;
+    this.last = last;
+  }
+
+  // EFFECT: enumerates the components from first up to but not including last,
+  // splitting the range in half until each task has one component
+  protected void compute() {
+    if (this.last - this.first == 1) {
+      this.results.get(this.first).enumerate();
+    }
+    else if (this.last - this.first > 1) {
+      int middle = (this.first + this.last) / 2;
+      RecursiveAction.invokeAll(new EnumerateComponents(this.results, this.first, middle),
+          new EnumerateComponents(this.results, middle, this.last));
+    }
+  }
+}
+
+//to represent an engine for the chance that each covered cell of a board is a mine
+//The covered cells next to uncovered numbers are split into independent components,
+//whose configurations are enumerated in parallel and cached by component, so a click
+//that does not touch a component reuses its configurations. The components are then
+//combined, weighing each total by the ways to place the remaining mines among the
+//covered cells away from the numbers. Flags are trusted to be mines.
+class Probabilities {
+  // how many search steps one component may take before it is estimated instead
+  static final long STEP_BUDGET = 1L << 22;
+  // frontiers with more cells than this are combined with combineLinearized
+  static final int EXACT_FRONTIER = 2048;
+
+  Board board;
+  int numMines;
+  HashMap<ComponentKey, ComponentResult> cache;
+  // how many components the last compute found in the cache
+  int cacheHits;
+
+  Probabilities(Board board, int numMines) {
+    this.board = board;
+    this.numMines = numMines;
+    this.cache = new HashMap<ComponentKey, ComponentResult>();
+  }
+
+  // is the cell at idx covered and without a flag?
+  boolean unknown(int idx) {
+    return !this.board.isUncovered(idx) && !this.board.isMarked(idx);
+  }
+
+  // the root of idx in the union-find forest parent, halving paths on the way
+  static int find(int[] parent, int idx) {
+    while (parent[idx] != idx) {
+      parent[idx] = parent[parent[idx]];
+      idx = parent[idx];
+    }
+    return idx;
+  }
+
+  // the chance that each cell of the board is a mine: 1 for flags, 0 for uncovered
+  // cells, and for every other cell the fraction of consistent layouts that put a
+  // mine there
+  // EFFECT: replaces the cache with the components of the current board
+  double[] compute() {
+    int[] around = new int[this.board.maxNeighbors()];
+    // the frontier: every unknown cell next to an uncovered number, numbered in order
+    int[] frontierId = new int[this.board.size()];
+    Arrays.fill(frontierId, -1);
+    IntList frontier = new IntList();
+    IntList numbers = new IntList();
+    int knownMines = 0;
+    for (int idx = 0; idx < this.board.size(); idx++) {
+      if (this.board.isMarked(idx) && !this.board.isUncovered(idx)
+          || this.board.isUncovered(idx) && this.board.isMine(idx)) {
+        knownMines++;
+      }
+      if (this.board.isUncovered(idx) && !this.board.isMine(idx)) {
+        int n = this.board.neighbors(idx, around);
+        boolean touches = false;
+        for (int k = 0; k < n; k++) {
+          if (this.unknown(around[k])) {
+            touches = true;
+            if (frontierId[around[k]] < 0) {
+              frontierId[around[k]] = frontier.size();
+              frontier.add(around[k]);
+            }
+          }
+        }
+        if (touches) {
+          numbers.add(idx);
+        }
+      }
+    }
+
+    // join the frontier cells around each number into components
+    int[] parent = new int[frontier.size()];
+    for (int f = 0; f < parent.length; f++) {
+      parent[f] = f;
+    }
+    for (int c = 0; c < numbers.size(); c++) {
+      int n = this.board.neighbors(numbers.get(c), around);
+      int first = -1;
+      for (int k = 0; k < n; k++) {
+        if (this.unknown(around[k])) {
+          int root = Probabilities.find(parent, frontierId[around[k]]);
+          if (first < 0) {
+            first = root;
+          }
+          else {
+            parent[root] = first;
+          }
+        }
+      }
+    }
+    ArrayList<ComponentResult> components = this.components(frontier, frontierId, numbers,
+        parent);
+
+    // enumerate the components that are not cached, in parallel
+    ArrayList<ComponentResult> fresh = new ArrayList<ComponentResult>();
+    HashMap<ComponentKey, ComponentResult> cached = new HashMap<ComponentKey, ComponentResult>();
+    this.cacheHits = 0;
+    for (int i = 0; i < components.size(); i++) {
+      ComponentResult component = components.get(i);
+      ComponentKey key = Probabilities.key(component);
+      ComponentResult old = this.cache.get(key);
+      if (old != null) {
+        this.cacheHits++;
+        components.set(i, old);
+      }
+      else {
+        fresh.add(component);
+      }
+      cached.put(key, components.get(i));
+    }
+    ForkJoinPool.commonPool().invoke(new EnumerateComponents(fresh, 0, fresh.size()));
+    this.cache = cached;
+
+    return this.combine(components, frontier.size(), knownMines);
+  }
+
+  // the components of the frontier, each with its cells and the numbers around them
+  ArrayList<ComponentResult> components(IntList frontier, int[] frontierId, IntList numbers,
+      int[] parent) {
+    HashMap<Integer, IntList> cellsByRoot = new HashMap<Integer, IntList>();
+    HashMap<Integer, IntList> numbersByRoot = new HashMap<Integer, IntList>();
+    ArrayList<Integer> roots = new ArrayList<Integer>();
+    for (int f = 0; f < frontier.size(); f++) {
+      Integer root = Probabilities.find(parent, f);
+      if (!cellsByRoot.containsKey(root)) {
+        cellsByRoot.put(root, new IntList());
+        numbersByRoot.put(root, new IntList());
+        roots.add(root);
+      }
+      cellsByRoot.get(root).add(frontier.get(f));
+    }
+    int[] around = new int[this.board.maxNeighbors()];
+    for (int c = 0; c < numbers.size(); c++) {
+      int n = this.board.neighbors(numbers.get(c), around);
+      for (int k = 0; k < n; k++) {
+        if (this.unknown(around[k])) {
+          numbersByRoot.get(Probabilities.find(parent, frontierId[around[k]])).add(numbers.get(c));
+          break;
+        }
+      }
+    }
+
+    ArrayList<ComponentResult> components = new ArrayList<ComponentResult>();
+    for (Integer root : roots) {
+      int[] cells = cellsByRoot.get(root).toArray();
+      Arrays.sort(cells);
+      int[] ids = numbersByRoot.get(root).toArray();
+      int[][] constraintCells = new int[ids.length][];
+      int[] constraintNeeds = new int[ids.length];
+      for (int c = 0; c < ids.length; c++) {
+        int n = this.board.neighbors(ids[c], around);
+        IntList positions = new IntList();
+        int mines = 0;
+        for (int k = 0; k < n; k++) {
+          if (this.unknown(around[k])) {
+            positions.add(Arrays.binarySearch(cells, around[k]));
+          }
+          else if (this.board.isMarked(around[k]) || this.board.isMine(around[k])) {
+            mines++;
+          }
+        }
+        constraintCells[c] = positions.toArray();
+        constraintNeeds[c] = this.board.nearMines(ids[c]) - mines;
+      }
+      components.add(new ComponentResult(cells, constraintCells, constraintNeeds));
+    }
+    return components;
+  }
+
+  // the cache key of a component
+  static ComponentKey key(ComponentResult component) {
+    IntList data = new IntList();
+    for (int cell : component.cells) {
+      data.add(cell);
+    }
+    for (int c = 0; c < component.constraintNeeds.length; c++) {
+      data.add(-1 - component.constraintNeeds[c]);
+      for (int i : component.constraintCells[c]) {
+        data.add(i);
+      }
+    }
+    return new ComponentKey(data.toArray());
+  }
+
+  // the chance that each cell is a mine, combining the enumerated components
+  // frontierSize is the number of frontier cells, and knownMines the number of flags
+  // and uncovered mines
+  double[] combine(ArrayList<ComponentResult> components, int frontierSize, int knownMines) {
+    double[] result = new double[this.board.size()];
+    ArrayList<ComponentResult> exact = new ArrayList<ComponentResult>();
+    // components that ran out of budget are estimated from their numbers alone
+    double estimatedMines = 0;
+    int exactCells = 0;
+    for (ComponentResult component : components) {
+      if (component.exact) {
+        exact.add(component);
+        exactCells += component.cells.length;
+      }
+      else {
+        estimatedMines += Probabilities.estimate(component, result);
+      }
+    }
+    int remaining = Math.max(this.numMines - knownMines - (int) Math.round(estimatedMines), 0);
+    int others = this.countUnknown() - frontierSize;
+
+    double otherChance;
+    if (exactCells <= EXACT_FRONTIER) {
+      otherChance = this.combineExact(exact, remaining, others, result);
+    }
+    else {
+      otherChance = this.combineLinearized(exact, remaining, others, result);
+    }
+    for (int idx = 0; idx < this.board.size(); idx++) {
+      if (this.board.isMarked(idx) && !this.board.isUncovered(idx)) {
+        result[idx] = 1;
+      }
+      else if (this.board.isUncovered(idx)) {
+        result[idx] = 0;
+      }
+    }
+    int[] around = new int[this.board.maxNeighbors()];
+    for (int idx = 0; idx < this.board.size(); idx++) {
+      if (this.unknown(idx) && !this.onFrontier(idx, around)) {
+        result[idx] = otherChance;
+      }
+    }
+    return result;
+  }
+
+  // EFFECT: stores the exact chance of each cell of the exact components in result,
+  // summing over every total number of mines the components could hold
+  // returns the chance for each of the others covered cells away from the numbers,
+  // among which the remaining mines not in the components are spread
+  double combineExact(ArrayList<ComponentResult> exact, int remaining, int others,
+      double[] result) {
+    int m = exact.size();
+    // weight[r] is proportional to the ways to place r mines among the other cells
+    double[] weight = Probabilities.binomialWeights(others, remaining);
+
+    // prefix[i] is the mine count distribution of the first i exact components
+    int[] before = new int[m + 1];
+    double[][] prefix = new double[m + 1][];
+    prefix[0] = new double[] { 1 };
+    for (int i = 0; i < m; i++) {
+      before[i + 1] = before[i] + exact.get(i).ways.length - 1;
+      prefix[i + 1] = Probabilities.normalize(
+          Probabilities.convolve(prefix[i], exact.get(i).ways));
+    }
+    // message[i][s] weighs the components from i on, given that the components before
+    // them used s mines
+    double[][] message = new double[m + 1][];
+    message[m] = new double[before[m] + 1];
+    for (int s = 0; s <= before[m]; s++) {
+      message[m][s] = Probabilities.at(weight, remaining - s);
+    }
+    for (int i = m - 1; i >= 0; i--) {
+      double[] ways = exact.get(i).ways;
+      message[i] = new double[before[i] + 1];
+      for (int s = 0; s <= before[i]; s++) {
+        for (int k = 0; k < ways.length; k++) {
+          message[i][s] += ways[k] * message[i + 1][s + k];
+        }
+      }
+      message[i] = Probabilities.normalize(message[i]);
+    }
+
+    for (int i = 0; i < m; i++) {
+      ComponentResult component = exact.get(i);
+      double[] kWeight = new double[component.ways.length];
+      for (int k = 0; k < kWeight.length; k++) {
+        for (int a = 0; a < prefix[i].length; a++) {
+          kWeight[k] += prefix[i][a] * message[i + 1][a + k];
+        }
+      }
+      Probabilities.store(component, kWeight, result);
+    }
+
+    // every other covered cell shares the expected number of mines left over
+    double expected = 0;
+    double total = 0;
+    for (int t = 0; t < prefix[m].length; t++) {
+      double w = prefix[m][t] * Probabilities.at(weight, remaining - t);
+      expected += w * (remaining - t);
+      total += w;
+    }
+    if (others > 0 && total > 0) {
+      return expected / total / others;
+    }
+    return 0;
+  }
+
+  // EFFECT: stores a close estimate of the chance of each cell of the exact
+  // components in result, for frontiers too big to sum over every total exactly
+  // Near the expected total t, one more mine in the components multiplies the ways to
+  // place the rest among the other cells by about ratio = r / (others - r + 1), where
+  // r = remaining - t, so each component can be weighed on its own by ratio^k. The
+  // expected total and the ratio are refined together a few times.
+  // returns the chance for each of the other covered cells
+  double combineLinearized(ArrayList<ComponentResult> exact, int remaining, int others,
+      double[] result) {
+    double expected = 0;
+    for (ComponentResult component : exact) {
+      expected += Probabilities.expectedMines(component, 1);
+    }
+    double ratio = 1;
+    for (int round = 0; round < 4; round++) {
+      double r = Math.min(Math.max(remaining - expected, 0), others);
+      ratio = r / (others - r + 1);
+      expected = 0;
+      for (ComponentResult component : exact) {
+        expected += Probabilities.expectedMines(component, ratio);
+      }
+    }
+    for (ComponentResult component : exact) {
+      Probabilities.store(component, Probabilities.powers(component, ratio), result);
+    }
+    if (others > 0) {
+      return Math.min(Math.max(remaining - expected, 0), others) / others;
+    }
+    return 0;
+  }
+
+  // ratio^k for each number of mines k the component could hold, scaled so that the
+  // largest weighted count of configurations is 1
+  static double[] powers(ComponentResult component, double ratio) {
+    double[] logs = new double[component.ways.length];
+    double best = Double.NEGATIVE_INFINITY;
+    for (int k = 0; k < logs.length; k++) {
+      logs[k] = Double.NEGATIVE_INFINITY;
+      if (component.ways[k] > 0 && (k == 0 || ratio > 0)) {
+        logs[k] = Math.log(component.ways[k]);
+        if (k > 0) {
+          logs[k] += k * Math.log(ratio);
+        }
+        best = Math.max(best, logs[k]);
+      }
+    }
+    double[] weights = new double[logs.length];
+    for (int k = 0; k < logs.length; k++) {
+      if (logs[k] != Double.NEGATIVE_INFINITY) {
+        weights[k] = Math.exp(logs[k] - best) / component.ways[k];
+      }
+    }
+    return weights;
+  }
+
+  // the expected number of mines in a component when configurations with k mines are
+  // weighed by ratio^k
+  static double expectedMines(ComponentResult component, double ratio) {
+    double[] weights = Probabilities.powers(component, ratio);
+    double total = 0;
+    double mines = 0;
+    for (int k = 0; k < weights.length; k++) {
+      total += component.ways[k] * weights[k];
+      mines += k * component.ways[k] * weights[k];
+    }
+    if (total == 0) {
+      return 0;
+    }
+    return mines / total;
+  }
+
+  // EFFECT: stores in result the chance of each cell of component, when its
+  // configurations with k mines are weighed by kWeight[k]
+  static void store(ComponentResult component, double[] kWeight, double[] result) {
+    double total = 0;
+    double[] cellWeight = new double[component.cells.length];
+    for (int k = 0; k < component.ways.length; k++) {
+      total += component.ways[k] * kWeight[k];
+      for (int j = 0; j < cellWeight.length; j++) {
+        cellWeight[j] += component.mineWays[k][j] * kWeight[k];
+      }
+    }
+    if (total > 0) {
+      for (int j = 0; j < cellWeight.length; j++) {
+        result[component.cells[j]] = cellWeight[j] / total;
+      }
+    }
+  }
+
+  // the number of covered cells without a flag
+  int countUnknown() {
+    int count = 0;
+    for (int idx = 0; idx < this.board.size(); idx++) {
+      if (this.unknown(idx)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  // is the cell at idx next to an uncovered number?
+  boolean onFrontier(int idx, int[] around) {
+    int n = this.board.neighbors(idx, around);
+    for (int k = 0; k < n; k++) {
+      if (this.board.isUncovered(around[k]) && !this.board.isMine(around[k])) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // EFFECT: stores a rough chance for each cell of a component that was too big to
+  // enumerate: the highest share of remaining mines among the numbers around it
+  // returns the expected number of mines in the component
+  static double estimate(ComponentResult component, double[] result) {
+    double[] chance = new double[component.cells.length];
+    for (int c = 0; c < component.constraintCells.length; c++) {
+      int[] cells = component.constraintCells[c];
+      for (int i : cells) {
+        chance[i] = Math.max(chance[i], (double) component.constraintNeeds[c] / cells.length);
+      }
+    }
+    double sum = 0;
+    for (int i = 0; i < chance.length; i++) {
+      result[component.cells[i]] = chance[i];
+      sum += chance[i];
+    }
+    return sum;
+  }
+
+  // weights proportional to n choose r for r from 0 to max, scaled so the largest is 1
+  static double[] binomialWeights(int n, int max) {
+    double[] logs = new double[max + 1];
+    double best = 0;
+    for (int r = 1; r <= max; r++) {
+      if (r > n) {
+        logs[r] = Double.NEGATIVE_INFINITY;
+      }
+      else {
+        logs[r] = logs[r - 1] + Math.log((double) (n - r + 1) / r);
+        best = Math.max(best, logs[r]);
+      }
+    }
+    double[] weights = new double[max + 1];
+    for (int r = 0; r <= max; r++) {
+      weights[r] = Math.exp(logs[r] - best);
+    }
+    return weights;
+  }
+
+  // the weight at r, or 0 if r is out of range
+  static double at(double[] weights, int r) {
+    if (r < 0 || r >= weights.length) {
+      return 0;
+    }
+    return weights[r];
+  }
+
+  // the convolution of two distributions over mine counts
+  static double[] convolve(double[] a, double[] b) {
+    double[] result = new double[a.length + b.length - 1];
+    for (int i = 0; i < a.length; i++) {
+      for (int j = 0; j < b.length; j++) {
+        result[i + j] += a[i] * b[j];
+      }
+    }
+    return result;
+  }
+
+  // EFFECT: scales values so that the largest is 1, unless they are all 0
+  // returns values
+  static double[] normalize(double[] values) {
+    double best = 0;
+    for (double v : values) {
+      best = Math.max(best, v);
+    }
+    if (best > 0) {
+      for (int i = 0; i < values.length; i++) {
+        values[i] /= best;
+      }
+    }
+    return values;
+  }
+}
+
+//tests and examples for Probabilities
+class ExamplesProbabilities {
+
+  // a board with mines at the given cells, with its counts computed
+  Board boardWith(int rows, int cols, int... mines) {
+    Board board = new Board(rows, cols);
+    for (int idx : mines) {
+      board.placeMine(idx);
+    }
+    board.computeCounts();
+    return board;
+  }
+
+  // the chance of a mine on each cell, found by trying every layout of the mines
+  // that agrees with what the board shows
+  double[] bruteForce(Board board, int numMines) {
+    int size = board.size();
+    double[] mineCount = new double[size];
+    double layouts = 0;
+    for (int mask = 0; mask < (1 << size); mask++) {
+      if (Integer.bitCount(mask) != numMines) {
+        continue;
+      }
+      boolean fits = true;
+      for (int idx = 0; idx < size && fits; idx++) {
+        boolean mine = (mask >> idx & 1) == 1;
+        if (board.isMarked(idx) && !mine || board.isUncovered(idx) && mine) {
+          fits = false;
+        }
+        if (board.isUncovered(idx)) {
+          int[] around = new int[board.maxNeighbors()];
+          int n = board.neighbors(idx, around);
+          int count = 0;
+          for (int k = 0; k < n; k++) {
+            count += mask >> around[k] & 1;
+          }
+          fits = fits && count == board.nearMines(idx);
+        }
+      }
+      if (fits) {
+        layouts++;
+        for (int idx = 0; idx < size; idx++) {
+          mineCount[idx] += mask >> idx & 1;
+        }
+      }
+    }
+    for (int idx = 0; idx < size; idx++) {
+      mineCount[idx] /= layouts;
+    }
+    return mineCount;
+  }
+
+  // do the two arrays of chances agree to within 1e-9?
+  boolean close(double[] a, double[] b) {
+    for (int i = 0; i < a.length; i++) {
+      if (Math.abs(a[i] - b[i]) > 1e-9) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // tests for the small helpers
+  void testHelpers(Tester t) {
+    t.checkExpect(Probabilities.convolve(new double[] { 1, 1 }, new double[] { 1, 2, 1 }),
+        new double[] { 1, 3, 3, 1 });
+    t.checkExpect(Probabilities.normalize(new double[] { 2, 4 }), new double[] { 0.5, 1 });
+    t.checkExpect(Probabilities.normalize(new double[] { 0, 0 }), new double[] { 0, 0 });
+    // 4 choose 0..4 is 1 4 6 4 1
+    t.checkExpect(this.close(Probabilities.binomialWeights(4, 4),
+        new double[] { 1 / 6.0, 4 / 6.0, 1, 4 / 6.0, 1 / 6.0 }), true);
+    t.checkExpect(Probabilities.binomialWeights(1, 2)[2], 0.0);
+    t.checkExpect(Probabilities.at(new double[] { 3 }, 1), 0.0);
+    t.checkExpect(Probabilities.at(new double[] { 3 }, -1), 0.0);
+    int[] parent = new int[] { 0, 0, 1, 2 };
+    t.checkExpect(Probabilities.find(parent, 3), 0);
+    t.checkExpect(new ComponentKey(new int[] { 1, 2 }), new ComponentKey(new int[] { 1, 2 }));
+    t.checkExpect(new ComponentKey(new int[] { 1, 2 }).hashCode(),
+        new ComponentKey(new int[] { 1, 2 }).hashCode());
+  }
+
+  // tests for enumerate
+  void testEnumerate(Tester t) {
+    // one number needing one mine among three cells
+    ComponentResult one = new ComponentResult(new int[] { 4, 5, 6 },
+        new int[][] { { 0, 1, 2 } }, new int[] { 1 });
+    one.enumerate();
+    t.checkExpect(one.exact, true);
+    t.checkExpect(one.ways, new double[] { 0, 3, 0, 0 });
+    t.checkExpect(one.mineWays[1], new double[] { 1, 1, 1 });
+    // two numbers: cells 0 and 1 hold one mine, cells 1 and 2 hold one mine
+    ComponentResult two = new ComponentResult(new int[] { 0, 1, 2 },
+        new int[][] { { 0, 1 }, { 1, 2 } }, new int[] { 1, 1 });
+    two.enumerate();
+    t.checkExpect(two.ways, new double[] { 0, 1, 1, 0 });
+    t.checkExpect(two.mineWays[1], new double[] { 0, 1, 0 });
+    t.checkExpect(two.mineWays[2], new double[] { 1, 0, 1 });
+  }
+
+  // tests for compute, against trying every layout
+  void testCompute(Tester t) {
+    // . X .
+    // . . .   with (1, 1) uncovered, showing 1: each of the 8 cells around is a mine
+    // with chance 1/8
+    Board board = this.boardWith(3, 3, 1);
+    board.setUncovered(4);
+    double[] chances = new Probabilities(board, 1).compute();
+    t.checkInexact(chances[0], 0.125, 1e-9);
+    t.checkExpect(chances[4], 0.0);
+    t.checkExpect(this.close(chances, this.bruteForce(board, 1)), true);
+
+    // random boards played partway, checked against brute force
+    Random rand = new Random(5);
+    for (int trial = 0; trial < 30; trial++) {
+      Board b = new Board(4, 4);
+      b.placeRandomMines(4, rand);
+      b.computeCounts();
+      for (int tries = 0; tries < 3; tries++) {
+        int idx = rand.nextInt(16);
+        if (!b.isMine(idx)) {
+          b.uncover(idx);
+        }
+      }
+      if (rand.nextBoolean() && !b.isUncovered(b.mines.get(0))) {
+        b.toggleMarked(b.mines.get(0));
+      }
+      t.checkExpect(this.close(new Probabilities(b, 4).compute(), this.bruteForce(b, 4)), true);
+    }
+  }
+
+  // tests that the chances on a layered board, where a cell has up to ten neighbors,
+  // agree with brute force
+  void testLayered(Tester t) {
+    Random rand = new Random(11);
+    for (int trial = 0; trial < 20; trial++) {
+      Board b = new Board(new LayeredTopology(2, 3, 3));
+      b.placeRandomMines(4, rand);
+      b.computeCounts();
+      for (int tries = 0; tries < 3; tries++) {
+        int idx = rand.nextInt(b.size());
+        if (!b.isMine(idx)) {
+          b.uncover(idx);
+        }
+      }
+      t.checkExpect(this.close(new Probabilities(b, 4).compute(), this.bruteForce(b, 4)), true);
+    }
+  }
+
+  // tests that combineLinearized stays close to combineExact
+  void testCombineLinearized(Tester t) {
+    Random rand = new Random(11);
+    Board board = new Board(40, 40);
+    board.placeRandomMines(300, rand);
+    board.computeCounts();
+    for (int tries = 0; tries < 60; tries++) {
+      int idx = rand.nextInt(board.size());
+      if (!board.isMine(idx)) {
+        board.uncover(idx);
+      }
+    }
+    Probabilities engine = new Probabilities(board, 300);
+    engine.compute();
+    ArrayList<ComponentResult> components = new ArrayList<ComponentResult>(
+        engine.cache.values());
+    int frontier = 0;
+    for (ComponentResult component : components) {
+      frontier += component.cells.length;
+    }
+    int others = engine.countUnknown() - frontier;
+    double[] exact = new double[board.size()];
+    double[] linearized = new double[board.size()];
+    double exactOther = engine.combineExact(components, 300, others, exact);
+    double linearizedOther = engine.combineLinearized(components, 300, others, linearized);
+    double worst = 0;
+    for (int idx = 0; idx < board.size(); idx++) {
+      worst = Math.max(worst, Math.abs(exact[idx] - linearized[idx]));
+    }
+    t.checkExpect(components.size() > 1, true);
+    t.checkExpect(worst < 0.01, true);
+    t.checkInexact(linearizedOther, exactOther, 0.01);
+  }
+
+  // tests that components are cached between calls
+  void testCache(Tester t) {
+    // two numbers far apart make two components:
+    // . X . . . . . . . . X .
+    // . u . . . . . . . . u .
+    // . . . . . . X . . . . .
+    Board board = this.boardWith(3, 12, 1, 10, 30);
+    board.setUncovered(board.index(1, 1));
+    board.setUncovered(board.index(1, 10));
+    Probabilities engine = new Probabilities(board, 3);
+    double[] first = engine.compute();
+    t.checkExpect(engine.cacheHits, 0);
+    t.checkExpect(engine.cache.size(), 2);
+    t.checkInexact(first[0], 0.125, 1e-9);
+    // the third mine is somewhere among the 18 cells away from both numbers
+    t.checkInexact(first[board.index(2, 6)], 1 / 18.0, 1e-9);
+    t.checkExpect(engine.compute(), first);
+    t.checkExpect(engine.cacheHits, 2);
+    // flagging a cell away from both numbers keeps both components
+    board.toggleMarked(board.index(2, 6));
+    double[] flagged = engine.compute();
+    t.checkExpect(engine.cacheHits, 2);
+    t.checkExpect(flagged[board.index(2, 6)], 1.0);
+    t.checkExpect(flagged[board.index(0, 5)], 0.0);
+    t.checkExpect(this.close(flagged, this.bruteForceFlagged(board)), true);
+    // uncovering next to one number replaces only that component
+    board.setUncovered(board.index(2, 11));
+    engine.compute();
+    t.checkExpect(engine.cacheHits, 1);
+    // the chances add up to the number of mines
+    double sum = 0;
+    for (double chance : engine.compute()) {
+      sum += chance;
+    }
+    t.checkInexact(sum, 3.0, 1e-9);
+  }
+
+  // the chances for the 3x12 board of testCache, where the flag accounts for the mine
+  // away from the numbers, leaving one mine for each number's eight cells
+  double[] bruteForceFlagged(Board board) {
+    double[] chances = new double[board.size()];
+    int[] around = new int[board.maxNeighbors()];
+    for (int number : new int[] { board.index(1, 1), board.index(1, 10) }) {
+      int n = board.neighbors(number, around);
+      for (int k = 0; k < n; k++) {
+        chances[around[k]] += 1.0 / 8;
+      }
+    }
+    chances[board.index(2, 6)] = 1;
+    return chances;
+  }
+}
@@ -0,0 +1,641 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import tester.*;
+
+//to represent one board played by many threads at once
+//Every change to a cell is a compare and swap on its byte, so two players can never
+//both uncover the same cell: whoever swaps in the uncovered bit first owns the cell,
+//counts it, and floods on from it. Floods that meet simply stop at each other's cells,
+//and no locks are ever taken, so nothing can deadlock. The counts of neighboring mines
+//are worked out before the board is shared and never change.
+//Uncovering a mine does not end the game for everyone; it is counted as an explosion
+//and play goes on until every safe cell is uncovered.
+class SharedBoard {
+  static final VarHandle CELLS = MethodHandles.arrayElementVarHandle(byte[].class);
+
+  Board board;
+  byte[] cells;
+  AtomicInteger coveredSafe;
+  AtomicInteger flags;
+  AtomicInteger explosions;
+  AtomicInteger moves;
+
+  // throws an IllegalArgumentException if game has not placed its mines yet
+  SharedBoard(Game game) {
+    if (!game.placed) {
+      throw new IllegalArgumentException("A shared board needs its mines placed first");
+    }
+    game.board.finishCounts();
+    this.board = game.board;
+    this.cells = game.board.cells;
+    this.coveredSafe = new AtomicInteger(game.board.coveredSafe);
+    this.flags = new AtomicInteger(game.board.flags);
+    this.explosions = new AtomicInteger(0);
+    this.moves = new AtomicInteger(0);
+  }
+
+  // the cell at idx, as last written by any thread
+  int cell(int idx) {
+    return (byte) CELLS.getAcquire(this.cells, idx);
+  }
+
+  // EFFECT: uncovers the cell at idx, if no thread has uncovered or marked it yet
+  // returns whether this call uncovered it
+  boolean claim(int idx) {
+    while (true) {
+      byte cell = (byte) CELLS.getAcquire(this.cells, idx);
+      if ((cell & (Board.UNCOVERED | Board.MARKED)) != 0) {
+        return false;
+      }
+      if (CELLS.compareAndSet(this.cells, idx, cell, (byte) (cell | Board.UNCOVERED))) {
+        return true;
+      }
+    }
+  }
+
+  // EFFECT: uncovers the cell at idx and floods outward like Board.uncover, uncovering
+  // only cells no other thread got to first
+  // EFFECT: appends the index of every cell this call uncovered to changed
+  // returns how many cells this call uncovered
+  int reveal(int idx, IntList changed) {
+    IntList cells = new IntList();
+    cells.add(idx);
+    return this.revealAll(cells, changed);
+  }
+
+  // EFFECT: uncovers every cell in cells like reveal, as one move whose floods share a
+  // single stack
+  // EFFECT: appends the index of every cell this call uncovered to changed
+  // returns how many cells this call uncovered
+  int revealAll(IntList cells, IntList changed) {
+    this.moves.incrementAndGet();
+    IntList stack = new IntList();
+    int opened = 0;
+    int exploded = 0;
+    for (int i = 0; i < cells.size(); i++) {
+      int idx = cells.get(i);
+      if (this.claim(idx)) {
+        changed.add(idx);
+        int cell = this.cell(idx);
+        if ((cell & Board.MINE) != 0) {
+          this.explosions.incrementAndGet();
+          exploded++;
+        }
+        else {
+          opened++;
+          if ((cell & Board.NEAR_MINES) == 0) {
+            stack.add(idx);
+          }
+        }
+      }
+    }
+    int[] around = new int[this.board.maxNeighbors()];
+    while (!stack.isEmpty()) {
+      int n = this.board.neighbors(stack.removeLast(), around);
+      for (int k = 0; k < n; k++) {
+        int next = around[k];
+        if ((this.cell(next) & Board.MINE) == 0 && this.claim(next)) {
+          changed.add(next);
+          opened++;
+          if ((this.cell(next) & Board.NEAR_MINES) == 0) {
+            stack.add(next);
+          }
+        }
+      }
+    }
+    this.coveredSafe.addAndGet(-opened);
+    return opened + exploded;
+  }
+
+  // EFFECT: chords the cell at idx like Board.chord: if it is an uncovered number with
+  // as many flags around it as mines, uncovers the rest of its covered neighbors
+  // EFFECT: appends the index of every cell this call uncovered to changed
+  // returns how many cells this call uncovered
+  int chord(int idx, IntList changed) {
+    int cell = this.cell(idx);
+    if ((cell & Board.UNCOVERED) == 0 || (cell & Board.MINE) != 0) {
+      this.moves.incrementAndGet();
+      return 0;
+    }
+    int[] around = new int[this.board.maxNeighbors()];
+    int n = this.board.neighbors(idx, around);
+    int marked = 0;
+    IntList covered = new IntList();
+    for (int k = 0; k < n; k++) {
+      int near = this.cell(around[k]);
+      if ((near & Board.MARKED) != 0) {
+        marked++;
+      }
+      else if ((near & Board.UNCOVERED) == 0) {
+        covered.add(around[k]);
+      }
+    }
+    if (marked != (cell & Board.NEAR_MINES)) {
+      this.moves.incrementAndGet();
+      return 0;
+    }
+    return this.revealAll(covered, changed);
+  }
+
+  // EFFECT: flips the flag on the cell at idx, if it is still covered
+  // returns whether the cell is now flagged
+  boolean flag(int idx) {
+    this.moves.incrementAndGet();
+    while (true) {
+      byte cell = (byte) CELLS.getAcquire(this.cells, idx);
+      if ((cell & Board.UNCOVERED) != 0) {
+        return (cell & Board.MARKED) != 0;
+      }
+      byte flipped = (byte) (cell ^ Board.MARKED);
+      if (CELLS.compareAndSet(this.cells, idx, cell, flipped)) {
+        if ((flipped & Board.MARKED) != 0) {
+          this.flags.incrementAndGet();
+          return true;
+        }
+        this.flags.decrementAndGet();
+        return false;
+      }
+    }
+  }
+
+  // what a player sees at idx, like Game.state
+  int state(int idx) {
+    int cell = this.cell(idx);
+    if ((cell & Board.UNCOVERED) != 0) {
+      if ((cell & Board.MINE) != 0) {
+        return Game.EXPLODED;
+      }
+      return cell & Board.NEAR_MINES;
+    }
+    else if ((cell & Board.MARKED) != 0) {
+      return Game.FLAGGED;
+    }
+    return Game.COVERED;
+  }
+
+  // has every safe cell been uncovered?
+  boolean cleared() {
+    return this.coveredSafe.get() == 0;
+  }
+}
+
+//to represent a server that lets many players play one SharedBoard over TCP
+//Each connection is served by its own thread. Players send one command per line and
+//get one line back:
+//  R row col   reveals a cell        -> OK opened  or  BOOM
+//  C row col   chords a number       -> OK opened  or  BOOM opened
+//  B row col row col ...
+//              reveals many cells at once -> OK opened  or  BOOM opened
+//  F row col   flips a flag          -> FLAG 1  or  FLAG 0
+//  S row col   asks what a cell shows -> the number, or -1 covered, -2 flag, -3 mine
+//  I           asks about the board  -> rows cols mines coveredSafe flags explosions
+//  Q           ends the connection
+//Anything else gets a line starting with ERR.
+class BoardServer {
+  SharedBoard shared;
+  int rows;
+  int cols;
+  int numMines;
+  ServerSocket socket;
+  ExecutorService connections;
+  // the sockets of the players connected now
+  Set<Socket> clients;
+  Thread acceptor;
+  // the hub streaming the board to spectators, or null if no one is watching
+  SpectatorHub spectators;
+
+  BoardServer(Game game) {
+    this.shared = new SharedBoard(game);
+    this.rows = game.rows;
+    this.cols = game.cols;
+    this.numMines = game.numMines;
+    this.clients = ConcurrentHashMap.newKeySet();
+  }
+
+  // EFFECT: starts listening on port of the loopback address, or any free port if
+  // port is 0
+  void start(int port) throws IOException {
+    this.socket = new ServerSocket(port, 256, InetAddress.getLoopbackAddress());
+    this.connections = Executors.newCachedThreadPool(r -> {
+      Thread thread = new Thread(r, "minesweeper-player");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.acceptor = new Thread(this::acceptAll, "minesweeper-acceptor");
+    this.acceptor.setDaemon(true);
+    this.acceptor.start();
+  }
+
+  // the port the server is listening on
+  int port() {
+    return this.socket.getLocalPort();
+  }
+
+  // EFFECT: accepts connections until the server is closed, serving each on a thread
+  // of its own
+  void acceptAll() {
+    try {
+      while (!this.socket.isClosed()) {
+        Socket client = this.socket.accept();
+        client.setTcpNoDelay(true);
+        this.clients.add(client);
+        this.connections.execute(() -> this.serve(client));
+      }
+    }
+    catch (IOException e) {
+      // the server socket was closed
+      return;
+    }
+  }
+
+  // EFFECT: answers the commands of one player until they quit or disconnect
+  void serve(Socket client) {
+    try (Socket s = client;
+        BufferedReader in = new BufferedReader(
+            new InputStreamReader(s.getInputStream(), StandardCharsets.US_ASCII));
+        PrintWriter out = new PrintWriter(s.getOutputStream(), false,
+            StandardCharsets.US_ASCII)) {
+      IntList changed = new IntList();
+      String line = in.readLine();
+      while (line != null && !line.trim().equals("Q")) {
+        out.print(this.handle(line, changed));
+        out.print('\n');
+        out.flush();
+        line = in.readLine();
+      }
+    }
+    catch (IOException e) {
+      // the player disconnected, or the server was closed
+      return;
+    }
+    finally {
+      this.clients.remove(client);
+    }
+  }
+
+  // the reply to one command, using changed as scratch space
+  String handle(String line, IntList changed) {
+    String[] words = line.trim().split("\\s+");
+    if (words.length == 1 && words[0].equals("I")) {
+      return this.rows + " " + this.cols + " " + this.numMines + " "
+          + this.shared.coveredSafe.get() + " " + this.shared.flags.get() + " "
+          + this.shared.explosions.get();
+    }
+    boolean batch = words[0].equals("B");
+    if (words.length < 3 || words.length % 2 == 0 || !batch && words.length != 3) {
+      return "ERR expected a command and a cell";
+    }
+    IntList cells = new IntList();
+    for (int w = 1; w < words.length; w += 2) {
+      int row;
+      int col;
+      try {
+        row = Integer.parseInt(words[w]);
+        col = Integer.parseInt(words[w + 1]);
+      }
+      catch (NumberFormatException e) {
+        return "ERR bad cell " + words[w] + " " + words[w + 1];
+      }
+      if (row < 0 || row >= this.rows || col < 0 || col >= this.cols) {
+        return "ERR cell " + row + " " + col + " is not on the board";
+      }
+      cells.add(this.shared.board.index(row, col));
+    }
+    int idx = cells.get(0);
+    changed.clear();
+    if (words[0].equals("R")) {
+      int opened = this.shared.reveal(idx, changed);
+      this.spectate(changed);
+      if (opened == 1 && (this.shared.cell(idx) & Board.MINE) != 0) {
+        return "BOOM";
+      }
+      return "OK " + opened;
+    }
+    else if (words[0].equals("C")) {
+      int opened = this.shared.chord(idx, changed);
+      this.spectate(changed);
+      return this.opened(opened, changed);
+    }
+    else if (batch) {
+      int opened = this.shared.revealAll(cells, changed);
+      this.spectate(changed);
+      return this.opened(opened, changed);
+    }
+    else if (words[0].equals("F")) {
+      boolean flagged = this.shared.flag(idx);
+      changed.add(idx);
+      this.spectate(changed);
+      if (flagged) {
+        return "FLAG 1";
+      }
+      return "FLAG 0";
+    }
+    else if (words[0].equals("S")) {
+      return Integer.toString(this.shared.state(idx));
+    }
+    return "ERR unknown command " + words[0];
+  }
+
+  // EFFECT: hands the cells in changed to the spectators, if anyone is watching
+  void spectate(IntList changed) {
+    if (this.spectators != null) {
+      this.spectators.changedAll(changed);
+    }
+  }
+
+  // the reply to a chord or batch that uncovered the cells in changed
+  String opened(int count, IntList changed) {
+    for (int i = 0; i < changed.size(); i++) {
+      if ((this.shared.cell(changed.get(i)) & Board.MINE) != 0) {
+        return "BOOM " + count;
+      }
+    }
+    return "OK " + count;
+  }
+
+  // EFFECT: stops accepting players and disconnects the ones playing
+  void close() throws IOException {
+    this.socket.close();
+    for (Socket client : this.clients) {
+      client.close();
+    }
+    this.connections.shutdownNow();
+  }
+
+  // runs a server from the command line:
+  // java BoardServer port rows cols mines [seed]
+  public static void main(String[] args) throws IOException, InterruptedException {
+    if (args.length < 4) {
+      System.out.println("usage: java BoardServer port rows cols mines [seed]");
+      return;
+    }
+    long seed = new Random().nextLong();
+    if (args.length > 4) {
+      seed = Long.parseLong(args[4]);
+    }
+    BoardServer server = new BoardServer(new Game(Integer.parseInt(args[1]),
+        Integer.parseInt(args[2]), Integer.parseInt(args[3]), seed));
+    server.start(Integer.parseInt(args[0]));
+    System.out.println("serving on port " + server.port());
+    server.acceptor.join();
+  }
+}
+
+//tests and examples for SharedBoard and BoardServer
+class ExamplesServer {
+
+  // tests for claim, flag and state
+  void testSharedBoard(Tester t) {
+    Board board = new Board(3, 4);
+    board.placeMine(board.index(0, 1));
+    board.placeMine(board.index(2, 0));
+    SharedBoard shared = new SharedBoard(new Game(board, 2));
+    IntList changed = new IntList();
+    t.checkExpect(shared.flag(0), true);
+    t.checkExpect(shared.flags.get(), 1);
+    t.checkExpect(shared.claim(0), false);
+    t.checkExpect(shared.reveal(0, changed), 0);
+    t.checkExpect(shared.state(0), Game.FLAGGED);
+    t.checkExpect(shared.flag(0), false);
+    t.checkExpect(shared.reveal(0, changed), 1);
+    t.checkExpect(shared.claim(0), false);
+    // flags cannot go on uncovered cells
+    t.checkExpect(shared.flag(0), false);
+    t.checkExpect(shared.flags.get(), 0);
+    t.checkExpect(shared.state(0), 1);
+    t.checkExpect(shared.state(2), Game.COVERED);
+    t.checkExpect(shared.reveal(board.index(2, 3), changed), 8);
+    t.checkExpect(shared.reveal(board.index(2, 3), changed), 0);
+    t.checkExpect(changed.size(), 9);
+    t.checkExpect(shared.coveredSafe.get(), 10 - 1 - 8);
+    t.checkExpect(shared.reveal(board.index(0, 1), changed), 1);
+    t.checkExpect(shared.explosions.get(), 1);
+    t.checkExpect(shared.state(1), Game.EXPLODED);
+    t.checkExpect(shared.cleared(), false);
+
+    // a safeStart game is shared once its first reveal placed its mines, with every
+    // cell counted
+    Game safe = new Game(10, 10, 20, 4L, true);
+    t.checkConstructorException(
+        new IllegalArgumentException("A shared board needs its mines placed first"),
+        "SharedBoard", safe);
+    safe.reveal(5, 5);
+    SharedBoard later = new SharedBoard(safe);
+    boolean counted = true;
+    for (int idx = 0; idx < safe.board.size(); idx++) {
+      counted = counted && (safe.board.isMine(idx)
+          || safe.board.nearMines(idx) == safe.board.countMines(idx));
+    }
+    t.checkExpect(counted, true);
+    t.checkExpect(later.coveredSafe.get(), safe.board.coveredSafe);
+  }
+
+  // tests that threads flooding one board together uncover each cell exactly once
+  void testConcurrentReveals(Tester t) {
+    Game game = new Game(300, 300, 4000, 6L);
+    SharedBoard shared = new SharedBoard(game);
+    int safe = game.board.coveredSafe;
+    int threads = 8;
+    int[] opened = new int[threads];
+    int[] seen = new int[game.board.size()];
+    ArrayList<Thread> players = new ArrayList<Thread>();
+    ArrayList<IntList> changes = new ArrayList<IntList>();
+    for (int p = 0; p < threads; p++) {
+      int player = p;
+      IntList changed = new IntList();
+      changes.add(changed);
+      players.add(new Thread(() -> {
+        Random rand = new Random(player);
+        for (int idx = 0; idx < game.board.size(); idx++) {
+          // every player visits every safe cell, each in their own order
+          int cell = (idx * 7919 + player * 104729) % game.board.size();
+          if (!game.board.isMine(cell)) {
+            opened[player] += shared.reveal(cell, changed);
+          }
+          if (rand.nextInt(50) == 0) {
+            shared.flag(rand.nextInt(game.board.size()));
+          }
+        }
+      }));
+    }
+    for (Thread player : players) {
+      player.start();
+    }
+    for (Thread player : players) {
+      try {
+        player.join();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    int total = 0;
+    for (int p = 0; p < threads; p++) {
+      total += opened[p];
+      for (int i = 0; i < changes.get(p).size(); i++) {
+        seen[changes.get(p).get(i)]++;
+      }
+    }
+    boolean once = true;
+    int flagged = 0;
+    int covered = 0;
+    for (int idx = 0; idx < seen.length; idx++) {
+      boolean uncovered = (shared.cell(idx) & Board.UNCOVERED) != 0;
+      if (seen[idx] > 1 || uncovered != (seen[idx] == 1)) {
+        once = false;
+      }
+      if ((shared.cell(idx) & Board.MARKED) != 0) {
+        flagged++;
+      }
+      if (!uncovered && !game.board.isMine(idx)) {
+        covered++;
+      }
+    }
+    t.checkExpect(once, true);
+    t.checkExpect(shared.explosions.get(), 0);
+    t.checkExpect(total, safe - covered);
+    t.checkExpect(shared.coveredSafe.get(), covered);
+    t.checkExpect(shared.flags.get(), flagged);
+  }
+
+  // tests for the replies to commands
+  void testHandle(Tester t) {
+    Board board = new Board(3, 4);
+    board.placeMine(board.index(0, 1));
+    BoardServer server = new BoardServer(new Game(board, 1));
+    IntList changed = new IntList();
+    t.checkExpect(server.handle("I", changed), "3 4 1 11 0 0");
+    t.checkExpect(server.handle("F 0 0", changed), "FLAG 1");
+    t.checkExpect(server.handle("S 0 0", changed), "-2");
+    t.checkExpect(server.handle("F 0 0", changed), "FLAG 0");
+    t.checkExpect(server.handle(" R 2 3 ", changed), "OK 10");
+    t.checkExpect(server.handle("S 1 1", changed), "1");
+    t.checkExpect(server.handle("R 0 1", changed), "BOOM");
+    t.checkExpect(server.shared.cleared(), false);
+    t.checkExpect(server.handle("R 0 0", changed), "OK 1");
+    t.checkExpect(server.handle("I", changed), "3 4 1 0 0 1");
+    t.checkExpect(server.handle("R 3 0", changed), "ERR cell 3 0 is not on the board");
+    t.checkExpect(server.handle("R x 0", changed), "ERR bad cell x 0");
+    t.checkExpect(server.handle("X 0 0", changed), "ERR unknown command X");
+    t.checkExpect(server.handle("R 0", changed), "ERR expected a command and a cell");
+    t.checkExpect(server.shared.cleared(), true);
+  }
+
+  // tests for chording and batches, on the board and through commands
+  void testChordAndBatch(Tester t) {
+    BoardServer server = new BoardServer(new Game(this.fresh(), 1));
+    IntList changed = new IntList();
+    t.checkExpect(server.handle("C 1 1", changed), "OK 0");
+    t.checkExpect(server.handle("R 1 1", changed), "OK 1");
+    t.checkExpect(server.handle("C 1 1", changed), "OK 0");
+    t.checkExpect(server.handle("F 0 1", changed), "FLAG 1");
+    t.checkExpect(server.handle("C 1 1", changed), "OK 10");
+    t.checkExpect(server.shared.cleared(), true);
+    t.checkExpect(server.handle("C 0 0 1 1", changed), "ERR expected a command and a cell");
+
+    // a wrong flag explodes the mine, which counts toward the cells uncovered
+    server = new BoardServer(new Game(this.fresh(), 1));
+    server.handle("R 1 1", changed);
+    server.handle("F 0 0", changed);
+    t.checkExpect(server.handle("C 1 1", changed), "BOOM 10");
+    t.checkExpect(server.shared.explosions.get(), 1);
+    // the wrongly flagged cell is still covered
+    t.checkExpect(server.shared.coveredSafe.get(), 1);
+
+    // a batch shares one flood
+    server = new BoardServer(new Game(this.fresh(), 1));
+    t.checkExpect(server.handle("B 2 0 0 0", changed), "OK 11");
+    t.checkExpect(server.handle("B 0 0 3 3", changed), "ERR cell 3 3 is not on the board");
+    t.checkExpect(server.handle("B 0 0 1", changed), "ERR expected a command and a cell");
+    changed.clear();
+    changed.add(0);
+    IntList cells = new IntList();
+    cells.add(1);
+    cells.add(1);
+    t.checkExpect(server.shared.revealAll(cells, changed), 1);
+    t.checkExpect(changed.size(), 2);
+    t.checkExpect(server.shared.coveredSafe.get(), 0);
+  }
+
+  // a 3x4 board with one mine in the top row
+  Board fresh() {
+    Board board = new Board(3, 4);
+    board.placeMine(board.index(0, 1));
+    return board;
+  }
+
+  // tests simulated players on localhost
+  void testPlayers(Tester t) {
+    int players = 6;
+    int movesEach = 300;
+    int[] replies = new int[players];
+    try {
+      BoardServer server = new BoardServer(new Game(200, 200, 3000, 12L));
+      server.start(0);
+      ArrayList<Thread> clients = new ArrayList<Thread>();
+      for (int p = 0; p < players; p++) {
+        int player = p;
+        clients.add(new Thread(() -> {
+          try (Socket s = new Socket(InetAddress.getLoopbackAddress(), server.port());
+              BufferedReader in = new BufferedReader(
+                  new InputStreamReader(s.getInputStream(), StandardCharsets.US_ASCII));
+              PrintWriter out = new PrintWriter(s.getOutputStream(), true,
+                  StandardCharsets.US_ASCII)) {
+            Random rand = new Random(player);
+            for (int m = 0; m < movesEach; m++) {
+              String kind = "R";
+              if (m % 5 == 0) {
+                kind = "F";
+              }
+              out.println(kind + " " + rand.nextInt(200) + " " + rand.nextInt(200));
+              String reply = in.readLine();
+              if (reply != null && !reply.startsWith("ERR")) {
+                replies[player]++;
+              }
+            }
+            out.println("Q");
+          }
+          catch (IOException e) {
+            return;
+          }
+        }));
+      }
+      for (Thread client : clients) {
+        client.start();
+      }
+      for (Thread client : clients) {
+        client.join(TimeUnit.SECONDS.toMillis(30));
+      }
+      server.close();
+      int total = 0;
+      for (int p = 0; p < players; p++) {
+        total += replies[p];
+      }
+      t.checkExpect(total, players * movesEach);
+      t.checkExpect(server.shared.moves.get(), players * movesEach);
+    }
+    catch (IOException e) {
+      t.checkExpect(e.getMessage(), "no exception");
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,417 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import tester.*;
+
+//to represent saving and loading games in a compact binary format
+//A snapshot holds a header followed by three planes, one bit per cell, for the mines,
+//the uncovered cells and the marked cells. Each plane is cut into 64 cell words and
+//stored as runs: a run of all-clear words or of all-set words takes five bytes however
+//long it is, so open regions and untouched areas cost almost nothing. Words that are
+//neither are stored as they are. The mine counts are not stored, since they are
+//worked out again on loading.
+//
+//  int magic, int version
+//  int rows, int cols, int mines, long seed, int clicks, byte lost
+//  three planes, each a sequence of runs: byte kind, int words, then the words of a
+//  LITERAL run
+//
+//Files are written and read through a small buffer, so a snapshot is never held in
+//memory whole.
+class Snapshot {
+  static final int MAGIC = 0x4D535750;
+  static final int VERSION = 1;
+  // the kinds of run
+  static final byte CLEAR = 0;
+  static final byte SET = 1;
+  static final byte LITERAL = 2;
+  // the most words one LITERAL run holds
+  static final int LITERAL_RUN = 4096;
+  static final int BUFFER_BYTES = 1 << 20;
+
+  FileChannel channel;
+  ByteBuffer buffer;
+
+  Snapshot(FileChannel channel) {
+    this.channel = channel;
+    this.buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+  }
+
+  // EFFECT: writes game to the file at path, replacing anything already there
+  // throws an IllegalArgumentException if game is not played on a square board
+  static void write(Game game, Path path) throws IOException {
+    Snapshot.checkSquare(game, "save");
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      Snapshot out = new Snapshot(channel);
+      out.room(33);
+      out.buffer.putInt(MAGIC);
+      out.buffer.putInt(VERSION);
+      out.buffer.putInt(game.rows);
+      out.buffer.putInt(game.cols);
+      out.buffer.putInt(game.numMines);
+      out.buffer.putLong(game.seed);
+      out.buffer.putInt(game.clicks);
+      out.buffer.put((byte) (game.lost ? 1 : 0));
+      out.writePlane(game.board.cells, Board.MINE);
+      out.writePlane(game.board.cells, Board.UNCOVERED);
+      out.writePlane(game.board.cells, Board.MARKED);
+      out.flush();
+    }
+  }
+
+  // the game saved in the file at path
+  // throws an IOException if the file is not a snapshot or ends early
+  static Game read(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      Snapshot in = new Snapshot(channel);
+      in.buffer.flip();
+      in.need(33);
+      if (in.buffer.getInt() != MAGIC) {
+        throw new IOException(path + " is not a minesweeper snapshot");
+      }
+      int version = in.buffer.getInt();
+      if (version != VERSION) {
+        throw new IOException("Cannot read snapshot version " + version);
+      }
+      int rows = in.buffer.getInt();
+      int cols = in.buffer.getInt();
+      int numMines = in.buffer.getInt();
+      long seed = in.buffer.getLong();
+      int clicks = in.buffer.getInt();
+      boolean lost = in.buffer.get() != 0;
+      Board board;
+      try {
+        board = new Board(rows, cols);
+      }
+      catch (IllegalArgumentException e) {
+        throw new IOException("Bad snapshot: " + e.getMessage());
+      }
+      IntList mines = new IntList();
+      in.readPlane(board.cells, Board.MINE, mines);
+      in.readPlane(board.cells, Board.UNCOVERED, null);
+      in.readPlane(board.cells, Board.MARKED, null);
+      return Snapshot.restore(board, mines, numMines, seed, clicks, lost);
+    }
+  }
+
+  // throws an IllegalArgumentException if game is not played on a square board, since
+  // saved games only keep its rows and columns, and are rebuilt square from them
+  static void checkSquare(Game game, String action) {
+    if (!(game.board.topology instanceof SquareTopology)) {
+      throw new IllegalArgumentException("Cannot " + action + " a game played on a "
+          + game.board.topology.getClass().getSimpleName() + " board");
+    }
+  }
+
+  // the game played on board, whose cells were filled in directly and whose mines are
+  // listed in mines, with the rest of its state as given
+  static Game restore(Board board, IntList mines, int numMines, long seed, int clicks,
+      boolean lost) {
+    board.recount(mines);
+    Game game = new Game(board, numMines);
+    game.seed = seed;
+    game.rand = new Random(seed);
+    game.clicks = clicks;
+    game.lost = lost;
+    // only a safeStart game can be missing its mines, before its first reveal
+    if (mines.isEmpty() && numMines > 0) {
+      game.safeStart = true;
+      game.placed = false;
+    }
+    return game;
+  }
+
+  // the word of bit's plane holding cells 64 * word up to 64 * word + 63
+  static long word(byte[] cells, int bit, int word) {
+    int shift = Integer.numberOfTrailingZeros(bit);
+    int first = word * 64;
+    int last = Math.min(first + 64, cells.length);
+    long bits = 0;
+    for (int idx = first; idx < last; idx++) {
+      bits |= (long) ((cells[idx] >>> shift) & 1) << (idx - first);
+    }
+    return bits;
+  }
+
+  // EFFECT: sets bit in the cells the given word of a plane has set, and adds their
+  // indices to found in order unless found is null
+  static void setWord(byte[] cells, int bit, int word, long bits, IntList found) {
+    int first = word * 64;
+    while (bits != 0) {
+      int idx = first + Long.numberOfTrailingZeros(bits);
+      cells[idx] |= bit;
+      if (found != null) {
+        found.add(idx);
+      }
+      bits &= bits - 1;
+    }
+  }
+
+  // EFFECT: writes the plane of cells with bit set, as runs
+  void writePlane(byte[] cells, int bit) throws IOException {
+    int words = (cells.length + 63) / 64;
+    long[] literal = new long[LITERAL_RUN];
+    int literals = 0;
+    int w = 0;
+    while (w < words) {
+      long bits = Snapshot.word(cells, bit, w);
+      if (bits == 0 || bits == -1L) {
+        this.writeLiterals(literal, literals);
+        literals = 0;
+        int start = w;
+        w++;
+        while (w < words && Snapshot.word(cells, bit, w) == bits) {
+          w++;
+        }
+        this.room(5);
+        this.buffer.put(bits == 0 ? CLEAR : SET);
+        this.buffer.putInt(w - start);
+      }
+      else {
+        literal[literals] = bits;
+        literals++;
+        w++;
+        if (literals == LITERAL_RUN) {
+          this.writeLiterals(literal, literals);
+          literals = 0;
+        }
+      }
+    }
+    this.writeLiterals(literal, literals);
+  }
+
+  // EFFECT: writes the first count words of literal as a LITERAL run, if there are any
+  void writeLiterals(long[] literal, int count) throws IOException {
+    if (count == 0) {
+      return;
+    }
+    this.room(5);
+    this.buffer.put(LITERAL);
+    this.buffer.putInt(count);
+    for (int i = 0; i < count; i++) {
+      this.room(8);
+      this.buffer.putLong(literal[i]);
+    }
+  }
+
+  // EFFECT: sets bit in every cell the next plane of the file has set, and adds their
+  // indices to found in order unless found is null
+  void readPlane(byte[] cells, int bit, IntList found) throws IOException {
+    int words = (cells.length + 63) / 64;
+    int w = 0;
+    while (w < words) {
+      this.need(5);
+      byte kind = this.buffer.get();
+      int count = this.buffer.getInt();
+      if (count <= 0 || count > words - w) {
+        throw new IOException("Bad snapshot: a run of " + count + " words at word " + w);
+      }
+      if (kind == SET) {
+        int last = (int) Math.min((long) (w + count) * 64, cells.length);
+        for (int idx = w * 64; idx < last; idx++) {
+          cells[idx] |= bit;
+          if (found != null) {
+            found.add(idx);
+          }
+        }
+      }
+      else if (kind == LITERAL) {
+        for (int i = 0; i < count; i++) {
+          this.need(8);
+          Snapshot.setWord(cells, bit, w + i, this.buffer.getLong(), found);
+        }
+      }
+      else if (kind != CLEAR) {
+        throw new IOException("Bad snapshot: unknown run kind " + kind);
+      }
+      w += count;
+    }
+  }
+
+  // EFFECT: makes room for at least bytes more bytes in the buffer, writing out what
+  // it holds if needed
+  void room(int bytes) throws IOException {
+    if (this.buffer.remaining() < bytes) {
+      this.flush();
+    }
+  }
+
+  // EFFECT: writes everything in the buffer to the channel and empties it
+  void flush() throws IOException {
+    this.buffer.flip();
+    while (this.buffer.hasRemaining()) {
+      this.channel.write(this.buffer);
+    }
+    this.buffer.clear();
+  }
+
+  // EFFECT: reads from the channel until the buffer holds at least bytes unread bytes
+  // throws an EOFException if the file ends first
+  void need(int bytes) throws IOException {
+    if (this.buffer.remaining() >= bytes) {
+      return;
+    }
+    this.buffer.compact();
+    while (this.buffer.position() < bytes) {
+      if (this.channel.read(this.buffer) < 0) {
+        throw new EOFException("The snapshot ended early");
+      }
+    }
+    this.buffer.flip();
+  }
+}
+
+//tests and examples for Snapshot
+class ExamplesSnapshot {
+
+  // a game partly played: a few reveals and a few flags
+  Game played(int rows, int cols, int mines, long seed) {
+    Game game = new Game(rows, cols, mines, seed);
+    Random rand = new Random(seed);
+    for (int i = 0; i < 6; i++) {
+      int idx = rand.nextInt(game.board.size());
+      if (!game.board.isMine(idx)) {
+        game.reveal(idx / cols, idx % cols);
+      }
+      else {
+        game.flag(idx / cols, idx % cols);
+      }
+    }
+    return game;
+  }
+
+  // tests for word and setWord
+  void testWords(Tester t) {
+    byte[] cells = new byte[70];
+    cells[0] = Board.MINE;
+    cells[3] = Board.MINE | Board.MARKED;
+    cells[65] = Board.MINE;
+    t.checkExpect(Snapshot.word(cells, Board.MINE, 0), 9L);
+    t.checkExpect(Snapshot.word(cells, Board.MARKED, 0), 8L);
+    t.checkExpect(Snapshot.word(cells, Board.MINE, 1), 2L);
+    byte[] copy = new byte[70];
+    IntList found = new IntList();
+    Snapshot.setWord(copy, Board.MINE, 0, 9L, found);
+    Snapshot.setWord(copy, Board.MINE, 1, 2L, found);
+    t.checkExpect(found.toArray(), new int[] { 0, 3, 65 });
+    t.checkExpect(copy[3], (byte) Board.MINE);
+    t.checkExpect(copy[65], (byte) Board.MINE);
+  }
+
+  // tests that games come back from a snapshot exactly as they were saved
+  void testRoundTrip(Tester t) {
+    try {
+      Path file = Files.createTempFile("minesweeper", ".snap");
+      Game game = this.played(37, 53, 300, 4);
+      Snapshot.write(game, file);
+      Game loaded = Snapshot.read(file);
+      t.checkExpect(loaded.board.cells, game.board.cells);
+      t.checkExpect(loaded.rows, 37);
+      t.checkExpect(loaded.numMines, 300);
+      t.checkExpect(loaded.seed, 4L);
+      t.checkExpect(loaded.clicks, game.clicks);
+      t.checkExpect(loaded.lost, game.lost);
+      t.checkExpect(loaded.board.coveredSafe, game.board.coveredSafe);
+      t.checkExpect(loaded.board.flags, game.board.flags);
+      t.checkExpect(loaded.board.mines.size(), 300);
+
+      // a board opened in one click is mostly runs, so its snapshot is small
+      Game open = new Game(1000, 1000, 0, 1L);
+      open.reveal(0, 0);
+      open.flag(999, 999);
+      Snapshot.write(open, file);
+      t.checkExpect(Files.size(file) < 100, true);
+      t.checkExpect(Snapshot.read(file).board.cells, open.board.cells);
+
+      // a world saves through its game
+      Minesweeper world = new Minesweeper(this.played(9, 9, 10, 2));
+      world.save(file);
+      t.checkExpect(new Minesweeper(Snapshot.read(file)).board.cells, world.board.cells);
+      Files.delete(file);
+    }
+    catch (IOException e) {
+      t.checkExpect(e.getMessage(), "no exception");
+    }
+  }
+
+  // tests that a safeStart game saved before its first reveal places its mines there
+  // once loaded, just as it would have
+  void testSafeStart(Tester t) {
+    try {
+      Path file = Files.createTempFile("minesweeper", ".snap");
+      Game game = new Game(20, 25, 50, 6L, true);
+      game.flag(1, 1);
+      Snapshot.write(game, file);
+      Game loaded = Snapshot.read(file);
+      t.checkExpect(loaded.placed, false);
+      t.checkExpect(loaded.safeStart, true);
+      t.checkExpect(loaded.board.flags, 1);
+      game.reveal(10, 10);
+      loaded.reveal(10, 10);
+      t.checkExpect(loaded.board.cells, game.board.cells);
+      Files.delete(file);
+    }
+    catch (IOException e) {
+      t.checkExpect(e.getMessage(), "no exception");
+    }
+  }
+
+  // the message of the exception reading the file at path throws, or "read" if it
+  // reads without one
+  String readError(Path path) {
+    try {
+      Snapshot.read(path);
+      return "read";
+    }
+    catch (IOException e) {
+      return e.getMessage();
+    }
+  }
+
+  // the message of the IllegalArgumentException writing game to the file at path
+  // throws, or "written" if it writes without one
+  String writeError(Game game, Path path) throws IOException {
+    try {
+      Snapshot.write(game, path);
+      return "written";
+    }
+    catch (IllegalArgumentException e) {
+      return e.getMessage();
+    }
+  }
+
+  // tests for files that are not snapshots
+  void testBadFiles(Tester t) {
+    try {
+      Path file = Files.createTempFile("minesweeper", ".snap");
+      Files.write(file, new byte[40]);
+      t.checkExpect(this.readError(file), file + " is not a minesweeper snapshot");
+      Snapshot.write(this.played(20, 20, 40, 9), file);
+      t.checkExpect(this.readError(file), "read");
+      byte[] bytes = Files.readAllBytes(file);
+      Files.write(file, Arrays.copyOf(bytes, bytes.length - 3));
+      t.checkExpect(this.readError(file), "The snapshot ended early");
+      bytes[33] = 7;
+      Files.write(file, bytes);
+      t.checkExpect(this.readError(file), "Bad snapshot: unknown run kind 7");
+      // only square boards are saved, since loading rebuilds them square
+      Board torus = new Board(new TorusTopology(9, 9));
+      torus.placeMine(0);
+      torus.computeCounts();
+      t.checkExpect(this.writeError(new Game(torus, 1), file),
+          "Cannot save a game played on a TorusTopology board");
+      Files.delete(file);
+    }
+    catch (IOException e) {
+      t.checkExpect(e.getMessage(), "no exception");
+    }
+  }
+}
@@ -0,0 +1,580 @@
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+import tester.*;
+
+//to represent a solver that deduces which covered cells are certainly safe and which
+//are certainly mines, from the uncovered numbers and the flags on a board
+//The solver listens to its board, and a change only queues the uncovered cells
+//around it to be examined again, so the work after a click follows the part of
+//the frontier that click touched rather than the size of the board.
+//Flags are trusted to be mines, but what is deduced from them is kept apart from what
+//the numbers alone prove: the numbers never change, so those deductions always hold,
+//while everything deduced from the flags is forgotten and worked out again whenever a
+//flag is placed or removed. Hints offer the cells the numbers prove safe first.
+class Solver implements ICellListener {
+  // a comfortable share of one frame at 60 frames per second
+  static final long FRAME_BUDGET_NANOS = 8000000L;
+
+  Board board;
+  // the most cells around any one cell; a constraint keeps its count of mines still to
+  // be found, and whether it trusts a flag, in the two entries just past them
+  int width;
+  // cells the numbers alone prove to be safe and to be mines
+  BitSet safe;
+  BitSet mine;
+  // cells deduced to be safe and to be mines by trusting the flags
+  BitSet flagSafe;
+  BitSet flagMine;
+  // the cells flagged when the solver last looked at them
+  BitSet flagged;
+  // uncovered cells waiting to be examined, and which cells are in that queue
+  IntList pending;
+  BitSet queued;
+  // every cell the numbers prove safe, and every cell the flags show to be safe, in the
+  // order they were found
+  IntList safeCells;
+  IntList flagSafeCells;
+  // how far into safeCells and flagSafeCells hints have already looked
+  int safeCursor;
+  int flagSafeCursor;
+
+  Solver(Board board) {
+    this.board = board;
+    this.width = board.maxNeighbors();
+    this.safe = new BitSet();
+    this.mine = new BitSet();
+    this.flagSafe = new BitSet();
+    this.flagMine = new BitSet();
+    this.flagged = new BitSet();
+    this.pending = new IntList();
+    this.queued = new BitSet();
+    this.safeCells = new IntList();
+    this.flagSafeCells = new IntList();
+    this.safeCursor = 0;
+    this.flagSafeCursor = 0;
+    for (int idx = 0; idx < board.size(); idx++) {
+      if (board.isUncovered(idx)) {
+        this.enqueue(idx);
+      }
+      else if (board.isMarked(idx)) {
+        this.flagged.set(idx);
+      }
+    }
+    board.addListener(this);
+  }
+
+  // EFFECT: queues the cells whose constraints changed because the cell at idx did
+  // EFFECT: if its flag was placed or removed, forgets what was deduced from the flags
+  public void cellChanged(int idx) {
+    if (this.board.isMarked(idx) != this.flagged.get(idx)) {
+      this.flagged.flip(idx);
+      this.forgetFlagDeductions();
+      if (this.safe.get(idx) && !this.board.isMarked(idx)) {
+        // hints may have skipped it while it was flagged
+        this.safeCells.add(idx);
+      }
+    }
+    this.enqueue(idx);
+    this.enqueueAround(idx);
+  }
+
+  // EFFECT: forgets every deduction that trusted the flags, and queues the numbers
+  // around each flag there is now, so those deductions are made again from them
+  void forgetFlagDeductions() {
+    this.flagSafe.clear();
+    this.flagMine.clear();
+    this.flagSafeCells.clear();
+    this.flagSafeCursor = 0;
+    for (int idx = this.flagged.nextSetBit(0); idx >= 0;
+        idx = this.flagged.nextSetBit(idx + 1)) {
+      this.enqueueAround(idx);
+    }
+  }
+
+  // EFFECT: queues the cell at idx to be examined, if it is an uncovered number
+  // that is not already queued
+  void enqueue(int idx) {
+    if (this.board.isUncovered(idx) && !this.board.isMine(idx) && !this.queued.get(idx)) {
+      this.queued.set(idx);
+      this.pending.add(idx);
+    }
+  }
+
+  // EFFECT: queues the uncovered numbers around the cell at idx
+  void enqueueAround(int idx) {
+    int[] around = new int[this.width];
+    int n = this.board.neighbors(idx, around);
+    for (int k = 0; k < n; k++) {
+      this.enqueue(around[k]);
+    }
+  }
+
+  // is the cell at idx known to be a mine, because it is flagged or was deduced?
+  // a cell the numbers prove safe is not, even if it is wrongly flagged
+  boolean knownMine(int idx) {
+    return !this.safe.get(idx) && (this.mine.get(idx) || this.board.isMarked(idx)
+        || this.flagMine.get(idx));
+  }
+
+  // EFFECT: writes the cells around the uncovered number at idx that are not known to
+  // be safe or mines into out, the number of mines still to be found among them into
+  // out[width], and into out[width + 1] 1 if that number trusts a flag, and 0 if it
+  // rests on the numbers alone; only if trustFlags are the flags and what was deduced
+  // from them known
+  // returns how many unknown cells there are
+  // out must hold at least width + 2 entries
+  int constraint(int idx, int[] out, boolean trustFlags) {
+    int[] around = new int[this.width];
+    int n = this.board.neighbors(idx, around);
+    int count = 0;
+    int mines = 0;
+    out[this.width + 1] = 0;
+    for (int k = 0; k < n; k++) {
+      int near = around[k];
+      if (this.board.isUncovered(near)) {
+        if (this.board.isMine(near)) {
+          mines++;
+        }
+      }
+      else if (this.mine.get(near)) {
+        mines++;
+      }
+      else if (this.safe.get(near)) {
+        continue;
+      }
+      else if (trustFlags && (this.board.isMarked(near) || this.flagMine.get(near))) {
+        mines++;
+        out[this.width + 1] = 1;
+      }
+      else if (trustFlags && this.flagSafe.get(near)) {
+        out[this.width + 1] = 1;
+      }
+      else {
+        out[count] = near;
+        count++;
+      }
+    }
+    out[this.width] = this.board.nearMines(idx) - mines;
+    return count;
+  }
+
+  // EFFECT: records that the cell at idx is safe, as proved by the numbers alone or,
+  // if onFlags, by trusting the flags, and queues the numbers around it; the flags are
+  // not trusted against what the numbers prove
+  void markSafe(int idx, boolean onFlags) {
+    if (this.safe.get(idx) || (onFlags && (this.flagSafe.get(idx) || this.mine.get(idx)))) {
+      return;
+    }
+    if (onFlags) {
+      this.flagSafe.set(idx);
+      this.flagSafeCells.add(idx);
+    }
+    else {
+      this.safe.set(idx);
+      this.safeCells.add(idx);
+    }
+    this.enqueueAround(idx);
+  }
+
+  // EFFECT: records that the cell at idx is a mine, as proved by the numbers alone or,
+  // if onFlags, by trusting the flags, and queues the numbers around it; the flags are
+  // not trusted against what the numbers prove
+  void markMine(int idx, boolean onFlags) {
+    if (this.mine.get(idx) || (onFlags && (this.flagMine.get(idx) || this.safe.get(idx)))) {
+      return;
+    }
+    if (onFlags) {
+      this.flagMine.set(idx);
+    }
+    else {
+      this.mine.set(idx);
+    }
+    this.enqueueAround(idx);
+  }
+
+  // EFFECT: deduces what it can from the uncovered number at idx, first from the
+  // numbers alone and then, if there are flags, trusting them too
+  void examine(int idx) {
+    this.examine(idx, false);
+    if (!this.flagged.isEmpty()) {
+      this.examine(idx, true);
+    }
+  }
+
+  // EFFECT: deduces what it can from the uncovered number at idx, on its own and
+  // together with each nearby number whose unknown cells contain or are contained
+  // by its own, trusting the flags only if trustFlags
+  void examine(int idx, boolean trustFlags) {
+    int[] cells = new int[this.width + 2];
+    int size = this.constraint(idx, cells, trustFlags);
+    int need = cells[this.width];
+    boolean onFlags = cells[this.width + 1] != 0;
+    if (size == 0) {
+      return;
+    }
+    if (need == 0) {
+      for (int k = 0; k < size; k++) {
+        this.markSafe(cells[k], onFlags);
+      }
+      return;
+    }
+    if (need == size) {
+      for (int k = 0; k < size; k++) {
+        this.markMine(cells[k], onFlags);
+      }
+      return;
+    }
+    // every number that shares an unknown cell with this one lies around one of them
+    int[] other = new int[this.width + 2];
+    int[] around = new int[this.width];
+    IntList seen = new IntList();
+    for (int k = 0; k < size; k++) {
+      int n = this.board.neighbors(cells[k], around);
+      for (int j = 0; j < n; j++) {
+        int near = around[j];
+        if (near != idx && this.board.isUncovered(near) && !this.board.isMine(near)
+            && !Solver.contains(seen.items, seen.size(), near)) {
+          seen.add(near);
+          int otherSize = this.constraint(near, other, trustFlags);
+          int otherNeed = other[this.width];
+          boolean both = onFlags || other[this.width + 1] != 0;
+          if (Solver.subset(cells, size, other, otherSize)) {
+            this.deduceDifference(other, otherSize, cells, size, otherNeed - need, both);
+          }
+          else if (Solver.subset(other, otherSize, cells, size)) {
+            this.deduceDifference(cells, size, other, otherSize, need - otherNeed, both);
+          }
+        }
+      }
+    }
+  }
+
+  // EFFECT: given that the cells in big but not in small hold exactly mines mines,
+  // marks them all safe or all mines when that follows, trusting the flags if onFlags
+  void deduceDifference(int[] big, int bigSize, int[] small, int smallSize, int mines,
+      boolean onFlags) {
+    int extra = bigSize - smallSize;
+    if (extra == 0 || (mines != 0 && mines != extra)) {
+      return;
+    }
+    for (int k = 0; k < bigSize; k++) {
+      if (!Solver.contains(small, smallSize, big[k])) {
+        if (mines == 0) {
+          this.markSafe(big[k], onFlags);
+        }
+        else {
+          this.markMine(big[k], onFlags);
+        }
+      }
+    }
+  }
+
+  // are the first aSize cells of a all among the first bSize cells of b?
+  static boolean subset(int[] a, int aSize, int[] b, int bSize) {
+    if (aSize == 0 || aSize > bSize) {
+      return false;
+    }
+    for (int i = 0; i < aSize; i++) {
+      if (!Solver.contains(b, bSize, a[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // is idx among the first size cells of cells?
+  static boolean contains(int[] cells, int size, int idx) {
+    for (int i = 0; i < size; i++) {
+      if (cells[i] == idx) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // EFFECT: examines queued numbers until the queue is empty or, when budgetNanos is
+  // positive, until that much time has passed or a usable cell the numbers prove safe
+  // is known
+  void work(long budgetNanos) {
+    long deadline = System.nanoTime() + budgetNanos;
+    int examined = 0;
+    while (!this.pending.isEmpty()) {
+      if (budgetNanos > 0) {
+        if (this.nextProvenSafe() >= 0) {
+          return;
+        }
+        if ((examined & 63) == 0 && System.nanoTime() > deadline) {
+          return;
+        }
+      }
+      int idx = this.pending.removeLast();
+      this.queued.clear(idx);
+      this.examine(idx);
+      examined++;
+    }
+  }
+
+  // EFFECT: examines every queued number, repeating until nothing more can be deduced
+  void solve() {
+    this.work(0);
+  }
+
+  // the first deduced safe cell that is still covered and without a flag, or -1,
+  // looking at the cells the numbers alone prove safe before those the flags do
+  // EFFECT: skips past deduced safe cells that have since been uncovered or flagged;
+  // a safe cell skipped while flagged is added again when its flag is removed
+  int nextSafe() {
+    int idx = this.nextProvenSafe();
+    if (idx >= 0) {
+      return idx;
+    }
+    this.flagSafeCursor = this.skipUsed(this.flagSafeCells, this.flagSafeCursor);
+    if (this.flagSafeCursor < this.flagSafeCells.size()) {
+      return this.flagSafeCells.get(this.flagSafeCursor);
+    }
+    return -1;
+  }
+
+  // the first cell the numbers alone prove safe that is still covered and without a
+  // flag, or -1
+  // EFFECT: skips past those cells that have since been uncovered or flagged
+  int nextProvenSafe() {
+    this.safeCursor = this.skipUsed(this.safeCells, this.safeCursor);
+    if (this.safeCursor < this.safeCells.size()) {
+      return this.safeCells.get(this.safeCursor);
+    }
+    return -1;
+  }
+
+  // the position of the first cell of cells from position on that is still covered,
+  // without a flag and not proved a mine by the numbers since, or the size of cells if
+  // there is none
+  int skipUsed(IntList cells, int position) {
+    int at = position;
+    while (at < cells.size() && (this.board.isUncovered(cells.get(at))
+        || this.board.isMarked(cells.get(at)) || this.mine.get(cells.get(at)))) {
+      at++;
+    }
+    return at;
+  }
+
+  // a covered cell that is certainly safe to reveal, or -1 if none was found
+  // within budgetNanos of work
+  int hint(long budgetNanos) {
+    this.work(budgetNanos);
+    return this.nextSafe();
+  }
+
+  // a covered cell that is certainly safe to reveal, found within one frame's budget
+  int hint() {
+    return this.hint(FRAME_BUDGET_NANOS);
+  }
+}
+
+//to represent a bot that reveals the cells its solver proves safe and guesses
+//at random when nothing is certain
+class SolverStrategy implements IStrategy {
+  Solver solver;
+  RandomStrategy guesser = new RandomStrategy();
+
+  // EFFECT: reveals a certainly safe cell if there is one, otherwise guesses
+  public void move(Game game, Random rand) {
+    if (this.solver == null || this.solver.board != game.board) {
+      this.solver = new Solver(game.board);
+    }
+    this.solver.solve();
+    int idx = this.solver.nextSafe();
+    if (idx >= 0) {
+      game.reveal(idx / game.cols, idx % game.cols);
+    }
+    else {
+      this.guesser.move(game, rand);
+    }
+  }
+}
+
+//tests and examples for Solver
+class ExamplesSolver {
+
+  // a board with mines at the given cells, with its counts computed
+  Board boardWith(int rows, int cols, int... mines) {
+    Board board = new Board(rows, cols);
+    for (int idx : mines) {
+      board.placeMine(idx);
+    }
+    board.computeCounts();
+    return board;
+  }
+
+  // tests for the single number rules
+  void testSimpleDeductions(Tester t) {
+    // . X . .
+    // . . . .
+    // X . . .
+    Board board = this.boardWith(3, 4, 1, 8);
+    Solver solver = new Solver(board);
+    t.checkExpect(solver.hint(), -1);
+    board.uncover(board.index(2, 3));
+    board.uncover(board.index(0, 0));
+    // the 1 at (0, 2) has only (0, 1) left covered, so it is a mine; that satisfies
+    // the 1 at (0, 0), so (1, 0) is safe; then the 1 at (2, 1) pins down (2, 0)
+    t.checkExpect(solver.hint(), 4);
+    solver.solve();
+    t.checkExpect(solver.mine.get(1), true);
+    t.checkExpect(solver.mine.get(8), true);
+    t.checkExpect(solver.knownMine(1), true);
+    board.uncover(4);
+    t.checkExpect(solver.hint(), -1);
+  }
+
+  // tests for constraint, subset and contains
+  void testConstraint(Tester t) {
+    Board board = this.boardWith(2, 3, 0);
+    board.setUncovered(1);
+    board.toggleMarked(0);
+    Solver solver = new Solver(board);
+    int[] cells = new int[solver.width + 2];
+    // (0, 1) shows 1, and the flag accounts for it
+    t.checkExpect(solver.constraint(1, cells, true), 4);
+    t.checkExpect(Arrays.copyOf(cells, 4), new int[] { 2, 3, 4, 5 });
+    t.checkExpect(cells[solver.width], 0);
+    t.checkExpect(cells[solver.width + 1], 1);
+    t.checkExpect(Solver.contains(cells, 4, 4), true);
+    t.checkExpect(Solver.contains(cells, 3, 5), false);
+    t.checkExpect(Solver.subset(new int[] { 3, 5 }, 2, cells, 4), true);
+    t.checkExpect(Solver.subset(new int[] { 3, 7 }, 2, cells, 4), false);
+    t.checkExpect(Solver.subset(new int[] { 3 }, 0, cells, 4), false);
+    // the numbers alone leave the flagged cell unknown too
+    t.checkExpect(solver.constraint(1, cells, false), 5);
+    t.checkExpect(cells[0], 0);
+    t.checkExpect(cells[solver.width], 1);
+    t.checkExpect(cells[solver.width + 1], 0);
+    t.checkExpect(solver.hint(), 2);
+    solver.solve();
+    t.checkExpect(solver.flagSafeCells.toArray(), new int[] { 2, 3, 4, 5 });
+    t.checkExpect(solver.safeCells.size(), 0);
+  }
+
+  // tests for the subset rule
+  void testSubsetDeduction(Tester t) {
+    // . X . .
+    // 1 1 . .   <- only (1, 0) and (1, 1) are uncovered
+    // the 1 at (1, 0) covers {(0, 0), (0, 1)}, which is inside the cells covered by
+    // the 1 at (1, 1), so the rest of those, (0, 2) and (1, 2), are safe
+    Board board = this.boardWith(2, 4, 1);
+    board.setUncovered(board.index(1, 0));
+    board.setUncovered(board.index(1, 1));
+    Solver solver = new Solver(board);
+    t.checkExpect(solver.hint(), 2);
+    solver.solve();
+    t.checkExpect(solver.safe.get(6), true);
+    t.checkExpect(solver.mine.get(1), false);
+    t.checkExpect(solver.safe.get(0), false);
+  }
+
+  // tests that the solver only examines what a change touched
+  void testIncremental(Tester t) {
+    Board board = this.boardWith(50, 50, 0);
+    Solver solver = new Solver(board);
+    t.checkExpect(solver.pending.size(), 0);
+    board.uncover(board.index(49, 49));
+    // every uncovered number was queued by the opening
+    t.checkExpect(solver.pending.size() > 0, true);
+    solver.solve();
+    t.checkExpect(solver.pending.size(), 0);
+    t.checkExpect(solver.mine.get(0), true);
+    t.checkExpect(solver.hint(), -1);
+    board.toggleMarked(0);
+    // flagging the mine queues the three numbers around it
+    t.checkExpect(solver.pending.size(), 3);
+  }
+
+  // tests that deductions from a wrong flag are taken back once it is removed
+  void testWrongFlag(Tester t) {
+    // hints skip a safe cell while it is flagged, and offer it again afterwards
+    Board board = this.boardWith(3, 4, 1, 8);
+    Solver solver = new Solver(board);
+    board.uncover(board.index(2, 3));
+    board.uncover(board.index(0, 0));
+    board.toggleMarked(4);
+    // the flag is trusted only where the numbers do not prove otherwise
+    int hinted = solver.hint();
+    t.checkExpect(hinted != 4 && (hinted < 0 || !board.isMine(hinted)), true);
+    board.toggleMarked(4);
+    t.checkExpect(solver.hint(), 4);
+
+    // a wrong flag beside the first opening, taken away after a hint, never leads the
+    // hints onto a mine
+    int games = 0;
+    int lost = 0;
+    for (long seed = 0; games < 40; seed++) {
+      Game game = new Game(16, 30, 99, seed);
+      int start = 0;
+      while (start < game.board.size()
+          && (game.board.isMine(start) || game.board.nearMines(start) > 0)) {
+        start++;
+      }
+      if (start < game.board.size()) {
+        game.reveal(start / 30, start % 30);
+        int wrong = -1;
+        int[] around = new int[game.board.maxNeighbors()];
+        for (int idx = 0; idx < game.board.size() && wrong < 0; idx++) {
+          if (game.board.isUncovered(idx) && game.board.nearMines(idx) > 0) {
+            int n = game.board.neighbors(idx, around);
+            for (int k = 0; k < n && wrong < 0; k++) {
+              if (!game.board.isUncovered(around[k]) && !game.board.isMine(around[k])) {
+                wrong = around[k];
+              }
+            }
+          }
+        }
+        if (wrong >= 0) {
+          games++;
+          Solver guided = new Solver(game.board);
+          game.flag(wrong / 30, wrong % 30);
+          guided.hint();
+          game.flag(wrong / 30, wrong % 30);
+          int idx = guided.hint();
+          while (idx >= 0 && !game.isOver()) {
+            game.reveal(idx / 30, idx % 30);
+            idx = guided.hint();
+          }
+          if (game.lost) {
+            lost++;
+          }
+        }
+      }
+    }
+    t.checkExpect(lost, 0);
+  }
+
+  // tests for SolverStrategy
+  void testSolverStrategy(Tester t) {
+    BatchRunner solving = new BatchRunner(9, 9, 10, 77, SolverStrategy::new);
+    BatchRunner guessing = new BatchRunner(9, 9, 10, 77, RandomStrategy::new);
+    BatchStats solved = solving.run(300);
+    t.checkExpect(solved.wins > guessing.run(300).wins, true);
+    t.checkExpect(solved.winRate() > 0.3, true);
+  }
+
+  // tests that the solver works on boards whose cells have more than eight neighbors
+  void testLayered(Tester t) {
+    // a 3x3x3 cube with its mine in the middle: the flood from a corner stops at the
+    // middle of the first two layers, leaving the last layer covered; the ten-neighbor
+    // numbers pin the mine down and prove safe all of that layer but its middle, which
+    // touches no uncovered number
+    Board cube = new Board(new LayeredTopology(3, 3, 3));
+    cube.placeMine(13);
+    cube.computeCounts();
+    cube.uncover(0);
+    Solver solver = new Solver(cube);
+    int hinted = solver.hint();
+    t.checkExpect(hinted >= 0 && !cube.isMine(hinted), true);
+    solver.solve();
+    t.checkExpect(solver.mine.get(13), true);
+    t.checkExpect(solver.safe.cardinality(), 8);
+    t.checkExpect(solver.safe.get(22), false);
+  }
+}
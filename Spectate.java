@@ -0,0 +1,670 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import tester.*;
+
+//to represent many spectators watching one live game over local sockets
+//Every cell changed between two ticks is collected once, and each tick turns them into
+//one delta frame: the changed cells are sorted, and runs of neighboring indices that
+//now show the same thing are written as a gap from the last run, a length and the
+//state, so a flood of zeros along a row costs three bytes. The one frame is handed to
+//every spectator as is, so encoding costs the same however many are watching, and
+//grows with the cells changed rather than with the board.
+//Every keyframeTicks ticks, if anything changed, the whole board is encoded once as a
+//keyframe. A spectator who joins late, or falls too far behind, is sent the last
+//keyframe and the deltas since, instead of the whole history of the game.
+//A frame is a type byte, the tick as an int, the payload length as an int and the
+//payload. A keyframe's payload starts with the rows and cols, and its runs cover every
+//cell that is not plainly covered; a delta's runs cover only the cells that changed.
+class SpectatorHub implements ICellListener {
+  static final byte KEYFRAME = 'K';
+  static final byte DELTA = 'D';
+  // the bytes before a frame's payload
+  static final int HEADER = 9;
+
+  Board board;
+  int keyframeTicks;
+  // the cells changed since the last tick, guarded by its own lock
+  DirtyCells dirty;
+  int ticks;
+  // the last keyframe and the deltas since, all a late spectator needs
+  byte[] keyframe;
+  ArrayList<byte[]> sinceKeyframe;
+  // the tick the last keyframe was made at
+  int keyframeTick;
+  Set<Spectator> spectators;
+  // the cells and bytes encoded, and the frames handed to spectators
+  long encodedCells;
+  long encodedBytes;
+  long framesSent;
+  ServerSocket socket;
+  Thread acceptor;
+  ScheduledExecutorService ticker;
+
+  SpectatorHub(Board board, int keyframeTicks) {
+    if (keyframeTicks <= 0) {
+      throw new IllegalArgumentException("Invalid keyframe interval: " + keyframeTicks);
+    }
+    this.board = board;
+    this.keyframeTicks = keyframeTicks;
+    this.dirty = new DirtyCells(board.size());
+    this.dirty.clear();
+    this.sinceKeyframe = new ArrayList<byte[]>();
+    this.spectators = ConcurrentHashMap.newKeySet();
+    this.keyframe = this.encodeKeyframe();
+    board.addListener(this);
+  }
+
+  // what a spectator sees of a cell: its number, mine and uncovered bits once it is
+  // uncovered, and only its flag while it is covered
+  static byte view(byte cell) {
+    if ((cell & Board.UNCOVERED) != 0) {
+      return (byte) (cell & (Board.UNCOVERED | Board.MINE | Board.NEAR_MINES));
+    }
+    return (byte) (cell & Board.MARKED);
+  }
+
+  // EFFECT: adds the cell at idx to the cells to send at the next tick
+  public void cellChanged(int idx) {
+    synchronized (this.dirty) {
+      this.dirty.cellChanged(idx);
+    }
+  }
+
+  // EFFECT: adds every cell in changed to the cells to send at the next tick, for
+  // boards changed without telling their listeners
+  void changedAll(IntList changed) {
+    synchronized (this.dirty) {
+      for (int i = 0; i < changed.size(); i++) {
+        this.dirty.cellChanged(changed.get(i));
+      }
+    }
+  }
+
+  // EFFECT: encodes the cells changed since the last tick into one delta frame and
+  // hands it to every spectator; every keyframeTicks ticks, if anything changed since
+  // the last keyframe, makes a new one for spectators who join later
+  // returns the delta frame, or null if nothing changed
+  synchronized byte[] tick() {
+    int[] cells;
+    synchronized (this.dirty) {
+      cells = this.dirty.cells.toArray();
+      this.dirty.clear();
+    }
+    this.ticks++;
+    byte[] frame = null;
+    if (cells.length > 0) {
+      Arrays.sort(cells);
+      frame = this.encodeDelta(cells);
+      this.sinceKeyframe.add(frame);
+      for (Spectator spectator : this.spectators) {
+        spectator.send(frame, this);
+        this.framesSent++;
+      }
+    }
+    if (this.ticks - this.keyframeTick >= this.keyframeTicks && !this.sinceKeyframe.isEmpty()) {
+      this.keyframe = this.encodeKeyframe();
+      this.keyframeTick = this.ticks;
+      this.sinceKeyframe.clear();
+    }
+    return frame;
+  }
+
+  // EFFECT: starts spectator on the last keyframe and the deltas since, then hands it
+  // every later frame
+  synchronized void join(Spectator spectator) {
+    spectator.resync(this);
+    this.spectators.add(spectator);
+  }
+
+  // EFFECT: stops handing frames to spectator
+  void leave(Spectator spectator) {
+    this.spectators.remove(spectator);
+  }
+
+  // a delta frame for the cells at the sorted, distinct indices in cells
+  byte[] encodeDelta(int[] cells) {
+    ByteArrayOutputStream runs = new ByteArrayOutputStream(cells.length + 16);
+    int last = 0;
+    int i = 0;
+    while (i < cells.length) {
+      int start = cells[i];
+      byte state = SpectatorHub.view(this.board.cells[start]);
+      int end = i + 1;
+      while (end < cells.length && cells[end] == start + end - i
+          && SpectatorHub.view(this.board.cells[cells[end]]) == state) {
+        end++;
+      }
+      SpectatorHub.writeRun(runs, start - last, end - i, state);
+      last = start + end - i;
+      i = end;
+    }
+    this.encodedCells += cells.length;
+    return this.frame(DELTA, runs);
+  }
+
+  // a keyframe of the whole board, whose runs skip the cells that are plainly covered
+  byte[] encodeKeyframe() {
+    ByteArrayOutputStream runs = new ByteArrayOutputStream(64);
+    SpectatorHub.writeInt(runs, this.board.rows);
+    SpectatorHub.writeInt(runs, this.board.cols);
+    byte[] cells = this.board.cells;
+    int last = 0;
+    int idx = 0;
+    while (idx < cells.length) {
+      byte state = SpectatorHub.view(cells[idx]);
+      int end = idx + 1;
+      while (end < cells.length && SpectatorHub.view(cells[end]) == state) {
+        end++;
+      }
+      if (state != 0) {
+        SpectatorHub.writeRun(runs, idx - last, end - idx, state);
+        last = end;
+      }
+      idx = end;
+    }
+    this.encodedCells += cells.length;
+    return this.frame(KEYFRAME, runs);
+  }
+
+  // a frame of the given type for this tick, holding the bytes written to payload
+  byte[] frame(byte type, ByteArrayOutputStream payload) {
+    ByteBuffer frame = ByteBuffer.allocate(HEADER + payload.size());
+    frame.put(type);
+    frame.putInt(this.ticks);
+    frame.putInt(payload.size());
+    frame.put(payload.toByteArray());
+    this.encodedBytes += frame.capacity();
+    return frame.array();
+  }
+
+  // EFFECT: writes a run of length cells showing state, starting gap cells after the
+  // last run ended
+  static void writeRun(ByteArrayOutputStream out, int gap, int length, byte state) {
+    SpectatorHub.writeVarint(out, gap);
+    SpectatorHub.writeVarint(out, length);
+    out.write(state);
+  }
+
+  // EFFECT: writes value seven bits at a time, low bits first, with the high bit of
+  // each byte set when more follow
+  static void writeVarint(ByteArrayOutputStream out, int value) {
+    int rest = value;
+    while ((rest & ~0x7F) != 0) {
+      out.write((rest & 0x7F) | 0x80);
+      rest >>>= 7;
+    }
+    out.write(rest);
+  }
+
+  // EFFECT: writes value as four bytes, high byte first
+  static void writeInt(ByteArrayOutputStream out, int value) {
+    out.write(value >>> 24);
+    out.write(value >>> 16);
+    out.write(value >>> 8);
+    out.write(value);
+  }
+
+  // EFFECT: starts accepting spectators on port of the loopback address, or any free
+  // port if port is 0, and ticks every tickMillis milliseconds, or only when tick is
+  // called if tickMillis is 0
+  void start(int port, long tickMillis) throws IOException {
+    this.socket = new ServerSocket(port, 256, InetAddress.getLoopbackAddress());
+    this.acceptor = new Thread(this::acceptAll, "minesweeper-spectators");
+    this.acceptor.setDaemon(true);
+    this.acceptor.start();
+    if (tickMillis > 0) {
+      this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "minesweeper-spectator-tick");
+        thread.setDaemon(true);
+        return thread;
+      });
+      this.ticker.scheduleAtFixedRate(this::tick, tickMillis, tickMillis,
+          TimeUnit.MILLISECONDS);
+    }
+  }
+
+  // the port spectators connect to
+  int port() {
+    return this.socket.getLocalPort();
+  }
+
+  // EFFECT: accepts spectators until the hub is closed, each with a thread of its own
+  // that writes its frames
+  void acceptAll() {
+    try {
+      while (!this.socket.isClosed()) {
+        Socket client = this.socket.accept();
+        client.setTcpNoDelay(true);
+        Spectator spectator = new Spectator(client.getOutputStream());
+        spectator.socket = client;
+        this.join(spectator);
+        spectator.start(this);
+      }
+    }
+    catch (IOException e) {
+      // the hub was closed
+      return;
+    }
+  }
+
+  // EFFECT: stops ticking and accepting spectators, and disconnects the ones watching
+  void close() throws IOException {
+    if (this.ticker != null) {
+      this.ticker.shutdownNow();
+    }
+    if (this.socket != null) {
+      this.socket.close();
+    }
+    for (Spectator spectator : this.spectators) {
+      spectator.close();
+    }
+    this.spectators.clear();
+  }
+
+  // plays a shared board for players and streams it to spectators from the command
+  // line: java SpectatorHub playerPort spectatorPort rows cols mines [seed]
+  public static void main(String[] args) throws IOException, InterruptedException {
+    if (args.length < 5) {
+      System.out.println(
+          "usage: java SpectatorHub playerPort spectatorPort rows cols mines [seed]");
+      return;
+    }
+    long seed = new Random().nextLong();
+    if (args.length > 5) {
+      seed = Long.parseLong(args[5]);
+    }
+    BoardServer server = new BoardServer(new Game(Integer.parseInt(args[2]),
+        Integer.parseInt(args[3]), Integer.parseInt(args[4]), seed));
+    SpectatorHub hub = new SpectatorHub(server.shared.board, 60);
+    server.spectators = hub;
+    server.start(Integer.parseInt(args[0]));
+    hub.start(Integer.parseInt(args[1]), 33);
+    System.out.println("players on port " + server.port() + ", spectators on port "
+        + hub.port());
+    server.acceptor.join();
+  }
+}
+
+//to represent one spectator's connection, with the frames waiting to be written to it
+//The hub only queues frames it has already encoded; a thread of the spectator's own
+//writes them, so a slow spectator never holds up the tick or the others. One that
+//falls MAX_QUEUED frames behind is started over from the last keyframe.
+class Spectator {
+  static final int MAX_QUEUED = 256;
+
+  OutputStream out;
+  Socket socket;
+  LinkedBlockingQueue<byte[]> frames;
+  // the times this spectator fell behind and was started over
+  int resyncs;
+  Thread writer;
+
+  Spectator(OutputStream out) {
+    this.out = out;
+    this.frames = new LinkedBlockingQueue<byte[]>();
+  }
+
+  // EFFECT: queues frame to be written, or starts over from hub's last keyframe if too
+  // many frames are already waiting
+  void send(byte[] frame, SpectatorHub hub) {
+    if (this.frames.size() >= MAX_QUEUED) {
+      this.resync(hub);
+      this.resyncs++;
+    }
+    else {
+      this.frames.offer(frame);
+    }
+  }
+
+  // EFFECT: replaces the waiting frames with hub's last keyframe and the deltas since
+  void resync(SpectatorHub hub) {
+    this.frames.clear();
+    this.frames.offer(hub.keyframe);
+    for (byte[] delta : hub.sinceKeyframe) {
+      this.frames.offer(delta);
+    }
+  }
+
+  // EFFECT: starts the thread writing this spectator's frames, which leaves hub when the
+  // spectator disconnects
+  void start(SpectatorHub hub) {
+    this.writer = new Thread(() -> this.writeAll(hub), "minesweeper-spectator");
+    this.writer.setDaemon(true);
+    this.writer.start();
+  }
+
+  // EFFECT: writes frames as they are queued until the connection fails or is closed
+  void writeAll(SpectatorHub hub) {
+    try {
+      while (true) {
+        byte[] frame = this.frames.take();
+        this.out.write(frame);
+        if (this.frames.isEmpty()) {
+          this.out.flush();
+        }
+      }
+    }
+    catch (IOException | InterruptedException e) {
+      hub.leave(this);
+      this.close();
+    }
+  }
+
+  // EFFECT: disconnects this spectator
+  void close() {
+    if (this.writer != null) {
+      this.writer.interrupt();
+    }
+    try {
+      if (this.socket != null) {
+        this.socket.close();
+      }
+    }
+    catch (IOException e) {
+      // already closed
+      return;
+    }
+  }
+}
+
+//to represent what a spectator has been shown of a game, rebuilt from the frames
+class SpectatorView {
+  int rows;
+  int cols;
+  // what the spectator sees of each cell, or null before the first keyframe
+  byte[] cells;
+  // the tick of the last frame read
+  int tick;
+
+  // EFFECT: reads one frame from in and shows it
+  // returns the frame's type
+  // throws an EOFException if the stream ends first, and an IOException if it holds
+  // something other than a frame
+  byte read(DataInputStream in) throws IOException {
+    byte type = in.readByte();
+    int tick = in.readInt();
+    byte[] payload = new byte[in.readInt()];
+    in.readFully(payload);
+    this.apply(type, tick, payload);
+    return type;
+  }
+
+  // EFFECT: shows the frame of the given type and tick with the given payload
+  // throws an IOException if the frame is not a keyframe or a delta following one
+  void apply(byte type, int tick, byte[] payload) throws IOException {
+    ByteBuffer in = ByteBuffer.wrap(payload);
+    if (type == SpectatorHub.KEYFRAME) {
+      this.rows = in.getInt();
+      this.cols = in.getInt();
+      this.cells = new byte[this.rows * this.cols];
+    }
+    else if (type != SpectatorHub.DELTA || this.cells == null) {
+      throw new IOException("Unexpected frame " + (char) type);
+    }
+    int at = 0;
+    while (in.hasRemaining()) {
+      at += SpectatorView.readVarint(in);
+      int length = SpectatorView.readVarint(in);
+      byte state = in.get();
+      if (at < 0 || length < 0 || at + length > this.cells.length) {
+        throw new IOException("Run past the end of the board");
+      }
+      Arrays.fill(this.cells, at, at + length, state);
+      at += length;
+    }
+    this.tick = tick;
+  }
+
+  // an int written seven bits at a time by SpectatorHub.writeVarint
+  static int readVarint(ByteBuffer in) {
+    int value = 0;
+    int shift = 0;
+    byte b = in.get();
+    while ((b & 0x80) != 0) {
+      value |= (b & 0x7F) << shift;
+      shift += 7;
+      b = in.get();
+    }
+    return value | (b << shift);
+  }
+
+  // does this view show what a spectator should see of board?
+  boolean shows(Board board) {
+    if (this.cells == null || this.cells.length != board.size()) {
+      return false;
+    }
+    for (int idx = 0; idx < this.cells.length; idx++) {
+      if (this.cells[idx] != SpectatorHub.view(board.cells[idx])) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
+
+//tests and examples for SpectatorHub, Spectator and SpectatorView
+class ExamplesSpectate {
+
+  // the 3x4 board with mines at (0, 1) and (2, 0), and its counts
+  Game game3x4() {
+    Board board = new Board(3, 4);
+    board.placeMine(board.index(0, 1));
+    board.placeMine(board.index(2, 0));
+    return new Game(board, 2);
+  }
+
+  // EFFECT: shows frame in view
+  void show(SpectatorView view, byte[] frame) throws IOException {
+    view.read(new DataInputStream(new java.io.ByteArrayInputStream(frame)));
+  }
+
+  // a view built from the frames queued for spectator
+  SpectatorView queued(Spectator spectator) {
+    SpectatorView view = new SpectatorView();
+    try {
+      for (byte[] frame : spectator.frames) {
+        this.show(view, frame);
+      }
+    }
+    catch (IOException e) {
+      return null;
+    }
+    return view;
+  }
+
+  // tests for what a spectator sees of a cell
+  void testView(Tester t) {
+    t.checkExpect(SpectatorHub.view((byte) (Board.MINE | 3)), (byte) 0);
+    t.checkExpect(SpectatorHub.view((byte) (Board.MINE | Board.MARKED)), (byte) Board.MARKED);
+    t.checkExpect(SpectatorHub.view((byte) (Board.UNCOVERED | Board.MARKED | 2)),
+        (byte) (Board.UNCOVERED | 2));
+    t.checkExpect(SpectatorHub.view((byte) (Board.UNCOVERED | Board.MINE)),
+        (byte) (Board.UNCOVERED | Board.MINE));
+  }
+
+  // tests for the bytes of delta frames and keyframes
+  void testEncode(Tester t) {
+    Game game = this.game3x4();
+    SpectatorHub hub = new SpectatorHub(game.board, 10);
+    // a covered board's keyframe is only its size
+    t.checkExpect(hub.keyframe, new byte[] { 'K', 0, 0, 0, 0, 0, 0, 0, 8, 0, 0, 0, 3, 0, 0,
+        0, 4 });
+    t.checkExpect(hub.tick(), null);
+    // revealing (0, 3) opens cells 2, 3, 5, 6, 7, 9, 10 and 11
+    game.reveal(0, 3);
+    byte zero = (byte) Board.UNCOVERED;
+    byte one = (byte) (Board.UNCOVERED | 1);
+    byte two = (byte) (Board.UNCOVERED | 2);
+    t.checkExpect(hub.tick(), new byte[] { 'D', 0, 0, 0, 2, 0, 0, 0, 21,
+        2, 1, one, 0, 1, zero, 1, 1, two, 0, 1, one, 0, 1, zero, 1, 1, one, 0, 2, zero });
+    game.flag(0, 1);
+    t.checkExpect(hub.tick(), new byte[] { 'D', 0, 0, 0, 3, 0, 0, 0, 3, 1, 1, Board.MARKED });
+    t.checkExpect(hub.encodedCells, 12L + 8 + 1);
+    SpectatorView view = new SpectatorView();
+    try {
+      this.show(view, hub.keyframe);
+      for (byte[] delta : hub.sinceKeyframe) {
+        this.show(view, delta);
+      }
+    }
+    catch (IOException e) {
+      t.checkExpect(e.getMessage(), "no exception");
+    }
+    t.checkExpect(view.shows(game.board), true);
+    t.checkExpect(view.tick, 3);
+    // varints longer than a byte
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    SpectatorHub.writeVarint(out, 300);
+    t.checkExpect(out.toByteArray(), new byte[] { (byte) 0xAC, 0x02 });
+    t.checkExpect(SpectatorView.readVarint(ByteBuffer.wrap(out.toByteArray())), 300);
+    t.checkConstructorException(
+        new IllegalArgumentException("Invalid keyframe interval: 0"), "SpectatorHub",
+        game.board, 0);
+  }
+
+  // tests that keyframes are made every keyframeTicks ticks once something changed, and
+  // that late and lagging spectators start from them
+  void testKeyframes(Tester t) {
+    Game game = new Game(60, 60, 400, 8L);
+    SpectatorHub hub = new SpectatorHub(game.board, 4);
+    Spectator early = new Spectator(new ByteArrayOutputStream());
+    hub.join(early);
+    int safe = 0;
+    while (game.board.isMine(safe)) {
+      safe++;
+    }
+    game.reveal(safe / 60, safe % 60);
+    for (int i = 0; i < 10; i++) {
+      game.flag(59, i);
+      hub.tick();
+    }
+    t.checkExpect(hub.keyframeTick, 8);
+    t.checkExpect(hub.sinceKeyframe.size(), 2);
+    t.checkExpect(this.queued(early).shows(game.board), true);
+    Spectator late = new Spectator(new ByteArrayOutputStream());
+    hub.join(late);
+    t.checkExpect(late.frames.size(), 3);
+    t.checkExpect(this.queued(late).shows(game.board), true);
+    // nothing changes, so no more keyframes are made
+    for (int i = 0; i < 8; i++) {
+      hub.tick();
+    }
+    t.checkExpect(hub.keyframeTick, 12);
+    t.checkExpect(hub.ticks, 18);
+    // a spectator whose frames are never written falls behind and starts over
+    int mine = game.board.mines.get(0);
+    for (int i = 0; i < Spectator.MAX_QUEUED + 10; i++) {
+      game.flag(mine / 60, mine % 60);
+      hub.tick();
+    }
+    t.checkExpect(late.resyncs > 0, true);
+    t.checkExpect(late.frames.size() < Spectator.MAX_QUEUED, true);
+    t.checkExpect(this.queued(late).shows(game.board), true);
+  }
+
+  // tests that one frame is encoded per tick however many spectators there are, and
+  // that a frame's size follows the cells changed rather than the board
+  void testCost(Tester t) {
+    Game game = new Game(2000, 2000, 0, 1L);
+    SpectatorHub hub = new SpectatorHub(game.board, 1000);
+    for (int i = 0; i < 300; i++) {
+      hub.join(new Spectator(new ByteArrayOutputStream()));
+    }
+    game.flag(1000, 1000);
+    byte[] frame = hub.tick();
+    t.checkExpect(frame.length, SpectatorHub.HEADER + 5);
+    t.checkExpect(hub.encodedCells, 4000000L + 1);
+    t.checkExpect(hub.framesSent, 300L);
+    boolean shared = true;
+    for (Spectator spectator : hub.spectators) {
+      shared = shared && spectator.frames.peek() == hub.keyframe
+          && spectator.frames.toArray()[1] == frame;
+    }
+    t.checkExpect(shared, true);
+    // a whole row opened at once is one run
+    for (int col = 0; col < 2000; col++) {
+      game.board.setUncovered(game.board.index(5, col));
+    }
+    t.checkExpect(hub.tick().length, SpectatorHub.HEADER + 5);
+  }
+
+  // tests streaming a game played on a BoardServer to spectators over sockets
+  void testSockets(Tester t) {
+    Game game = new Game(40, 40, 200, 6L);
+    BoardServer server = new BoardServer(game);
+    SpectatorHub hub = new SpectatorHub(server.shared.board, 3);
+    server.spectators = hub;
+    ArrayList<Socket> sockets = new ArrayList<Socket>();
+    try {
+      hub.start(0, 0);
+      for (int i = 0; i < 20; i++) {
+        sockets.add(new Socket(InetAddress.getLoopbackAddress(), hub.port()));
+      }
+      // wait for the hub to accept every spectator
+      while (hub.spectators.size() < 20) {
+        Thread.sleep(1);
+      }
+      Random rand = new Random(2);
+      IntList changed = new IntList();
+      // the tick of the last frame sent
+      int last = 0;
+      for (int i = 0; i < 12; i++) {
+        server.handle("R " + rand.nextInt(40) + " " + rand.nextInt(40), changed);
+        server.handle("F " + rand.nextInt(40) + " " + rand.nextInt(40), changed);
+        if (hub.tick() != null) {
+          last = hub.ticks;
+        }
+      }
+      sockets.add(new Socket(InetAddress.getLoopbackAddress(), hub.port()));
+      while (hub.spectators.size() < 21) {
+        Thread.sleep(1);
+      }
+      server.handle("F 39 39", changed);
+      hub.tick();
+      last = hub.ticks;
+      boolean all = true;
+      for (Socket socket : sockets) {
+        SpectatorView view = new SpectatorView();
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        while (view.tick < last) {
+          view.read(in);
+        }
+        all = all && view.shows(server.shared.board);
+      }
+      t.checkExpect(all, true);
+      hub.close();
+    }
+    catch (IOException e) {
+      t.checkExpect(e.getMessage(), "no exception");
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    finally {
+      for (Socket socket : sockets) {
+        try {
+          socket.close();
+        }
+        catch (IOException e) {
+          // already closed
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,261 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import tester.*;
+import javalib.worldimages.*;
+
+//Flight Recorder events for the hot paths of the game
+//Each event is only written while a recording has it enabled, and a disabled event
+//costs little more than the check for whether it is enabled, so they are always left
+//in place. Record a session with
+//  java -XX:StartFlightRecording=filename=game.jfr ...
+//and open the file in JDK Mission Control or read it with the jfr tool.
+
+//to represent the creation of a board: placing its mines and counting them
+@Name("minesweeper.Generate")
+@Label("Board Generation")
+@Category("Minesweeper")
+class GenerateEvent extends Event {
+  @Label("Rows")
+  int rows;
+  @Label("Columns")
+  int cols;
+  @Label("Mines")
+  int mines;
+}
+
+//to represent one reveal, with the cells it opened and how deep its flood went
+@Name("minesweeper.Reveal")
+@Label("Reveal")
+@Category("Minesweeper")
+class RevealEvent extends Event {
+  @Label("Cell")
+  int cell;
+  @Label("Cells Opened")
+  int opened;
+  @Label("Flood Depth")
+  @Description("The most cells waiting on the flood's stack at once")
+  int depth;
+  @Label("Hit Mine")
+  boolean hitMine;
+}
+
+//to represent drawing one frame
+@Name("minesweeper.Frame")
+@Label("Frame")
+@Category("Minesweeper")
+class FrameEvent extends Event {
+  @Label("Cells Drawn")
+  int cellsDrawn;
+  @Label("Full Redraw")
+  boolean full;
+}
+
+//to represent one check of whether the game has ended
+@Name("minesweeper.Tick")
+@Label("Tick")
+@Category("Minesweeper")
+class TickEvent extends Event {
+  @Label("Won")
+  boolean won;
+}
+
+//to represent a histogram of latencies in nanoseconds, with buckets that grow
+//exponentially so that every recorded value is within 1/8 of its bucket's bounds
+//Recording is a few shifts and an array increment, with no allocation, so it is cheap
+//enough to run on every click. It is not thread safe, and is meant to be used from the
+//thread that draws the world.
+class LatencyHistogram {
+  // values below this each get a bucket of their own
+  static final int LINEAR = 16;
+  // buckets per power of two above LINEAR
+  static final int SUB_BUCKETS = 8;
+  static final int BUCKETS = LINEAR + (63 - 4) * SUB_BUCKETS;
+
+  long[] counts;
+  long total;
+  long sum;
+  long max;
+
+  LatencyHistogram() {
+    this.counts = new long[BUCKETS];
+  }
+
+  // the bucket holding value, which is not negative
+  static int bucket(long value) {
+    if (value < LINEAR) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int sub = (int) (value >>> (exponent - 3)) & (SUB_BUCKETS - 1);
+    return LINEAR + (exponent - 4) * SUB_BUCKETS + sub;
+  }
+
+  // the smallest value that falls in bucket
+  static long lowest(int bucket) {
+    if (bucket < LINEAR) {
+      return bucket;
+    }
+    int exponent = (bucket - LINEAR) / SUB_BUCKETS + 4;
+    long sub = (bucket - LINEAR) % SUB_BUCKETS;
+    return (SUB_BUCKETS + sub) << (exponent - 3);
+  }
+
+  // EFFECT: adds one latency to this histogram; negative latencies count as 0
+  void record(long nanos) {
+    long value = Math.max(nanos, 0);
+    this.counts[LatencyHistogram.bucket(value)]++;
+    this.total++;
+    this.sum += value;
+    this.max = Math.max(this.max, value);
+  }
+
+  // the number of latencies recorded
+  long count() {
+    return this.total;
+  }
+
+  // the average latency, or 0 if none were recorded
+  double mean() {
+    if (this.total == 0) {
+      return 0;
+    }
+    return (double) this.sum / this.total;
+  }
+
+  // a latency that at least the given fraction of the recorded latencies are no more
+  // than: the top of the bucket holding that rank, and never more than the maximum
+  // returns 0 if nothing was recorded
+  long percentile(double fraction) {
+    if (this.total == 0) {
+      return 0;
+    }
+    long rank = Math.max((long) Math.ceil(fraction * this.total), 1);
+    long seen = 0;
+    for (int b = 0; b < BUCKETS; b++) {
+      seen += this.counts[b];
+      if (seen >= rank) {
+        if (b + 1 < BUCKETS) {
+          return Math.min(LatencyHistogram.lowest(b + 1) - 1, this.max);
+        }
+        return this.max;
+      }
+    }
+    return this.max;
+  }
+
+  // EFFECT: forgets every recorded latency
+  void reset() {
+    Arrays.fill(this.counts, 0);
+    this.total = 0;
+    this.sum = 0;
+    this.max = 0;
+  }
+
+  // a one line summary, in milliseconds
+  String report() {
+    return String.format("%d samples, mean %.3f ms, p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, "
+        + "max %.3f ms", this.total, this.mean() / 1e6, this.percentile(0.5) / 1e6,
+        this.percentile(0.9) / 1e6, this.percentile(0.99) / 1e6, this.max / 1e6);
+  }
+}
+
+//tests and examples for the events and LatencyHistogram
+class ExamplesTelemetry {
+
+  // tests for bucket and lowest
+  void testBuckets(Tester t) {
+    t.checkExpect(LatencyHistogram.bucket(0), 0);
+    t.checkExpect(LatencyHistogram.bucket(15), 15);
+    t.checkExpect(LatencyHistogram.bucket(16), 16);
+    t.checkExpect(LatencyHistogram.bucket(17), 16);
+    t.checkExpect(LatencyHistogram.bucket(18), 17);
+    t.checkExpect(LatencyHistogram.bucket(32), 24);
+    t.checkExpect(LatencyHistogram.bucket(Long.MAX_VALUE), LatencyHistogram.BUCKETS - 1);
+    t.checkExpect(LatencyHistogram.lowest(17), 18L);
+    t.checkExpect(LatencyHistogram.lowest(24), 32L);
+    boolean matches = true;
+    for (int b = 0; b < LatencyHistogram.BUCKETS; b++) {
+      long low = LatencyHistogram.lowest(b);
+      if (LatencyHistogram.bucket(low) != b
+          || low > 0 && LatencyHistogram.bucket(low - 1) != b - 1) {
+        matches = false;
+      }
+    }
+    t.checkExpect(matches, true);
+  }
+
+  // tests for record, percentile and reset
+  void testHistogram(Tester t) {
+    LatencyHistogram h = new LatencyHistogram();
+    t.checkExpect(h.percentile(0.5), 0L);
+    t.checkExpect(h.mean(), 0.0);
+    for (int i = 1; i <= 100; i++) {
+      h.record(i * 1000000L);
+    }
+    h.record(-5);
+    t.checkExpect(h.count(), 101L);
+    t.checkExpect(h.max, 100000000L);
+    // each percentile is within an eighth above the exact value
+    long p50 = h.percentile(0.5);
+    t.checkExpect(p50 >= 50000000L && p50 <= 50000000L * 9 / 8, true);
+    t.checkExpect(h.percentile(1.0), 100000000L);
+    t.checkExpect(h.percentile(0), 0L);
+    t.checkExpect(h.report().startsWith("101 samples"), true);
+    h.reset();
+    t.checkExpect(h.count(), 0L);
+    t.checkExpect(h.percentile(0.99), 0L);
+  }
+
+  // tests that the events reach a recording
+  void testEvents(Tester t) {
+    int reveals = 0;
+    int frames = 0;
+    int depth = 0;
+    boolean written = true;
+    try {
+      Path file = Files.createTempFile("minesweeper", ".jfr");
+      try (Recording recording = new Recording()) {
+        recording.enable(RevealEvent.class);
+        recording.enable(FrameEvent.class);
+        recording.start();
+        Minesweeper world = new Minesweeper(8, 8, 0, new Random(1));
+        world.makeScene();
+        world.onMouseReleased(new Posn(5, 5), "LeftButton");
+        world.makeScene();
+        recording.stop();
+        recording.dump(file);
+      }
+      for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+        if (event.getEventType().getName().equals("minesweeper.Reveal")) {
+          reveals++;
+          depth = event.getInt("depth");
+          t.checkExpect(event.getInt("opened"), 64);
+        }
+        else if (event.getEventType().getName().equals("minesweeper.Frame")) {
+          frames++;
+        }
+      }
+      Files.delete(file);
+    }
+    catch (IOException e) {
+      written = false;
+    }
+    t.checkExpect(written, true);
+    t.checkExpect(reveals, 1);
+    t.checkExpect(frames, 2);
+    t.checkExpect(depth > 0, true);
+  }
+}
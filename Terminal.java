@@ -0,0 +1,462 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import tester.*;
+
+//to represent a board drawn on an ANSI terminal, a window of it at a time
+//The first frame clears the screen and draws the whole window. After that, a frame
+//only moves the cursor to each cell that changed and writes its one character, and
+//sends no cursor move at all for the next cell of a run along a row, or a color code
+//the terminal already has. The status line is only written again when it changes.
+class TerminalView {
+  static final String ESC = "\u001b[";
+  static final String CLEAR = ESC + "2J";
+  static final String RESET = ESC + "0m";
+
+  Board board;
+  DirtyCells dirty;
+  // the window of the board shown: its top left cell and its size
+  int firstRow;
+  int firstCol;
+  int viewRows;
+  int viewCols;
+  // are covered mines drawn, as after the game is lost?
+  boolean minesShown;
+  String status;
+  // where the terminal's cursor is and which color it writes in, while drawing a frame
+  int cursorRow;
+  int cursorCol;
+  String color;
+
+  TerminalView(Board board, int viewRows, int viewCols) {
+    this.board = board;
+    this.viewRows = Math.min(viewRows, board.rows);
+    this.viewCols = Math.min(viewCols, board.cols);
+    this.dirty = new DirtyCells(board.size());
+    board.addListener(this.dirty);
+    this.status = "";
+    this.color = "";
+  }
+
+  // the character the cell at idx is drawn with
+  char symbol(int idx) {
+    if (this.board.isUncovered(idx)) {
+      if (this.board.isMine(idx)) {
+        return '*';
+      }
+      else if (this.board.nearMines(idx) == 0) {
+        return '.';
+      }
+      return (char) ('0' + this.board.nearMines(idx));
+    }
+    else if (this.board.isMarked(idx)) {
+      return 'F';
+    }
+    else if (this.minesShown && this.board.isMine(idx)) {
+      return 'x';
+    }
+    return '#';
+  }
+
+  // the escape code for the color the cell at idx is drawn in
+  String colorOf(int idx) {
+    return TerminalView.colorFor(this.symbol(idx));
+  }
+
+  // the escape code for the color a cell drawn with symbol is drawn in
+  static String colorFor(char symbol) {
+    if (symbol >= '1' && symbol <= '8') {
+      return ESC + "3" + "42153670".charAt(symbol - '1') + "m";
+    }
+    else if (symbol == '*' || symbol == 'x') {
+      return ESC + "31m";
+    }
+    else if (symbol == 'F') {
+      return ESC + "33m";
+    }
+    return RESET;
+  }
+
+  // EFFECT: shows or hides the covered mines, marking them to be drawn again if that
+  // changes
+  void showMines(boolean show) {
+    if (show == this.minesShown) {
+      return;
+    }
+    this.minesShown = show;
+    for (int i = 0; i < this.board.mines.size(); i++) {
+      this.dirty.cellChanged(this.board.mines.get(i));
+    }
+  }
+
+  // EFFECT: moves the window so that its top left cell is at row and col, as far as
+  // the board allows, and marks the whole window to be drawn again
+  void scrollTo(int row, int col) {
+    this.firstRow = Math.max(Math.min(row, this.board.rows - this.viewRows), 0);
+    this.firstCol = Math.max(Math.min(col, this.board.cols - this.viewCols), 0);
+    this.dirty.all = true;
+  }
+
+  // is the cell at idx in the window?
+  boolean visible(int idx) {
+    int row = idx / this.board.cols - this.firstRow;
+    int col = idx % this.board.cols - this.firstCol;
+    return row >= 0 && row < this.viewRows && col >= 0 && col < this.viewCols;
+  }
+
+  // EFFECT: appends what moves the cursor to the given screen row and column, counted
+  // from 0, unless it is already there
+  void moveTo(StringBuilder out, int row, int col) {
+    if (row != this.cursorRow || col != this.cursorCol) {
+      out.append(ESC).append(row + 1).append(';').append(col + 1).append('H');
+      this.cursorRow = row;
+      this.cursorCol = col;
+    }
+  }
+
+  // EFFECT: appends the cell at idx, which is in the window, at its place on screen
+  void drawCell(StringBuilder out, int idx) {
+    this.moveTo(out, idx / this.board.cols - this.firstRow,
+        idx % this.board.cols - this.firstCol);
+    String color = this.colorOf(idx);
+    if (!color.equals(this.color)) {
+      out.append(color);
+      this.color = color;
+    }
+    out.append(this.symbol(idx));
+    this.cursorCol++;
+  }
+
+  // the output that brings the terminal up to date with the board and with status,
+  // which is shown on the line below the window
+  // EFFECT: empties the dirty cells
+  String frame(String status) {
+    StringBuilder out = new StringBuilder();
+    this.cursorRow = -1;
+    this.cursorCol = -1;
+    boolean full = this.dirty.all;
+    if (full) {
+      out.append(CLEAR);
+      this.color = "";
+      for (int row = 0; row < this.viewRows; row++) {
+        int start = (this.firstRow + row) * this.board.cols + this.firstCol;
+        for (int col = 0; col < this.viewCols; col++) {
+          this.drawCell(out, start + col);
+        }
+      }
+    }
+    else {
+      int[] cells = this.dirty.cells.toArray();
+      Arrays.sort(cells);
+      for (int idx : cells) {
+        if (this.visible(idx)) {
+          this.drawCell(out, idx);
+        }
+      }
+    }
+    this.dirty.clear();
+    if (full || !status.equals(this.status)) {
+      this.moveTo(out, this.viewRows + 1, 0);
+      if (!this.color.equals(RESET)) {
+        out.append(RESET);
+        this.color = RESET;
+      }
+      out.append(status).append(ESC).append('K');
+      this.status = status;
+      this.cursorCol = -1;
+    }
+    if (out.length() > 0) {
+      this.moveTo(out, this.viewRows + 2, 0);
+    }
+    return out.toString();
+  }
+}
+
+//to represent a game of minesweeper played from a terminal, a line of input at a time
+//Moves are one command per line, with rows and columns counted from 0:
+//  R row col   reveals a cell, or chords it if it is an uncovered number
+//  F row col   flips a flag
+//  U / Y       undoes the last move / redoes the last undone move
+//  V row col   scrolls the window so that the cell is at its top left
+//  Q           quits
+//After each line only the changed cells are sent, as a TerminalView frame. In batch
+//mode, for moves read from a file or a pipe, no prompt is written, and the session
+//ends with the cursor below the board at the end of the input.
+class TerminalGame {
+  Game game;
+  History history;
+  TerminalView view;
+  PrintStream out;
+  boolean batch;
+  String message;
+
+  TerminalGame(Game game, int viewRows, int viewCols, PrintStream out, boolean batch) {
+    this.game = game;
+    this.history = new History(game);
+    this.view = new TerminalView(game.board, viewRows, viewCols);
+    this.out = out;
+    this.batch = batch;
+    this.message = "";
+  }
+
+  // the line shown below the board
+  String status() {
+    String state = "playing";
+    if (this.game.won()) {
+      state = "YOU WIN";
+    }
+    else if (this.game.lost) {
+      state = "GAME OVER";
+    }
+    String status = "mines " + (this.game.numMines - this.game.board.flags) + "  moves "
+        + this.game.clicks + "  " + state;
+    if (!this.message.isEmpty()) {
+      status += "  " + this.message;
+    }
+    return status;
+  }
+
+  // EFFECT: carries out the command on line, leaving any complaint about it in message
+  // returns false if the command was to quit
+  boolean apply(String line) {
+    this.message = "";
+    String[] words = line.trim().split("\\s+");
+    String command = words[0].toUpperCase();
+    if (command.equals("Q")) {
+      return false;
+    }
+    else if (command.equals("U") && words.length == 1) {
+      this.history.undo();
+    }
+    else if (command.equals("Y") && words.length == 1) {
+      this.history.redo();
+    }
+    else if (words.length == 3 && (command.equals("R") || command.equals("F")
+        || command.equals("V"))) {
+      int row;
+      int col;
+      try {
+        row = Integer.parseInt(words[1]);
+        col = Integer.parseInt(words[2]);
+      }
+      catch (NumberFormatException e) {
+        this.message = "bad cell " + words[1] + " " + words[2];
+        return true;
+      }
+      if (command.equals("V")) {
+        this.view.scrollTo(row, col);
+      }
+      else {
+        this.move(command.equals("F"), row, col);
+      }
+    }
+    else if (!command.isEmpty()) {
+      this.message = "unknown command " + line.trim();
+    }
+    this.view.showMines(this.game.lost);
+    return true;
+  }
+
+  // EFFECT: reveals or flags the cell at row and col and records the move for undo,
+  // unless the game is over or the cell is not on the board
+  void move(boolean flag, int row, int col) {
+    if (this.game.isOver()) {
+      this.message = "the game is over";
+      return;
+    }
+    IntList changed = new IntList();
+    try {
+      if (flag) {
+        this.game.flag(row, col);
+        changed.add(this.game.board.index(row, col));
+      }
+      else {
+        this.game.open(row, col, changed);
+      }
+    }
+    catch (IllegalArgumentException e) {
+      this.message = e.getMessage();
+      return;
+    }
+    this.history.record(changed);
+  }
+
+  // EFFECT: sends the next frame, and the prompt unless in batch mode
+  void draw() {
+    this.out.print(this.view.frame(this.status()));
+    if (!this.batch) {
+      this.out.print("> ");
+    }
+    this.out.flush();
+  }
+
+  // EFFECT: plays the commands read from in until it ends or one of them quits
+  void run(Reader in) throws IOException {
+    BufferedReader lines = new BufferedReader(in);
+    this.draw();
+    String line = lines.readLine();
+    while (line != null && this.apply(line)) {
+      this.draw();
+      line = lines.readLine();
+    }
+    this.out.println();
+    this.out.flush();
+  }
+
+  // plays a game on this terminal:
+  //   java TerminalGame rows cols mines [seed] [--batch]
+  public static void main(String[] args) throws IOException {
+    boolean batch = args.length > 0 && args[args.length - 1].equals("--batch");
+    int count = args.length;
+    if (batch) {
+      count--;
+    }
+    if (count < 3) {
+      System.err.println("usage: java TerminalGame rows cols mines [seed] [--batch]");
+      System.exit(2);
+    }
+    long seed = System.nanoTime();
+    if (count > 3) {
+      seed = Long.parseLong(args[3]);
+    }
+    Game game = new Game(Integer.parseInt(args[0]), Integer.parseInt(args[1]),
+        Integer.parseInt(args[2]), seed);
+    PrintStream out = new PrintStream(System.out, false, StandardCharsets.UTF_8);
+    new TerminalGame(game, 40, 120, out, batch)
+        .run(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+  }
+}
+
+//tests and examples for TerminalView and TerminalGame
+class ExamplesTerminal {
+  static final String E = TerminalView.ESC;
+
+  // the 3x4 board, where X is a mine:
+  // . X . .
+  // . . . .
+  // X . . .
+  Game game() {
+    Board board = new Board(3, 4);
+    board.placeMine(board.index(0, 1));
+    board.placeMine(board.index(2, 0));
+    return new Game(board, 2);
+  }
+
+  // tests for symbol and colorOf
+  void testSymbols(Tester t) {
+    Game game = this.game();
+    TerminalView view = new TerminalView(game.board, 10, 10);
+    t.checkExpect(view.symbol(0), '#');
+    t.checkExpect(view.colorOf(0), TerminalView.RESET);
+    game.reveal(0, 0);
+    t.checkExpect(view.symbol(0), '1');
+    t.checkExpect(view.colorOf(0), E + "34m");
+    game.reveal(2, 3);
+    t.checkExpect(view.symbol(11), '.');
+    game.flag(0, 1);
+    t.checkExpect(view.symbol(1), 'F');
+    view.showMines(true);
+    t.checkExpect(view.symbol(8), 'x');
+    t.checkExpect(view.symbol(1), 'F');
+    t.checkExpect(view.dirty.all, true);
+    game.reveal(2, 0);
+    t.checkExpect(view.symbol(8), '*');
+  }
+
+  // tests for the first frame and the frames after it
+  void testFrames(Tester t) {
+    Game game = this.game();
+    TerminalView view = new TerminalView(game.board, 10, 10);
+    String first = view.frame("hello");
+    t.checkExpect(first, TerminalView.CLEAR + E + "1;1H" + TerminalView.RESET + "####"
+        + E + "2;1H####" + E + "3;1H####" + E + "5;1Hhello" + E + "K" + E + "6;1H");
+    // nothing changed, so nothing is sent
+    t.checkExpect(view.frame("hello"), "");
+    game.flag(1, 3);
+    t.checkExpect(view.frame("hello"), E + "2;4H" + E + "33mF" + E + "6;1H");
+    // a run of changed cells along a row needs only one cursor move
+    game.flag(1, 3);
+    game.reveal(2, 3);
+    t.checkExpect(view.frame("bye"), E + "1;3H" + E + "34m1" + TerminalView.RESET + "."
+        + E + "2;2H" + E + "32m2" + E + "34m1" + TerminalView.RESET + "." + E + "3;2H" + E
+        + "34m1" + TerminalView.RESET + ".." + E + "5;1H" + "bye" + E + "K" + E + "6;1H");
+  }
+
+  // tests for a window smaller than the board
+  void testWindow(Tester t) {
+    Game game = new Game(50, 50, 0, 1L);
+    TerminalView view = new TerminalView(game.board, 5, 8);
+    t.checkExpect(view.frame("").length() < 100, true);
+    view.scrollTo(100, 10);
+    t.checkExpect(view.firstRow, 45);
+    t.checkExpect(view.firstCol, 10);
+    t.checkExpect(view.visible(game.board.index(45, 10)), true);
+    t.checkExpect(view.visible(game.board.index(45, 18)), false);
+    view.frame("");
+    // the flood changes every cell, but only the window is sent
+    game.reveal(0, 0);
+    String frame = view.frame("");
+    t.checkExpect(frame.length() < 5 * (8 + 10) + 10, true);
+    t.checkExpect(frame.indexOf("........") >= 0, true);
+  }
+
+  // tests for the commands
+  void testApply(Tester t) {
+    TerminalGame session = new TerminalGame(this.game(), 10, 10, System.out, true);
+    t.checkExpect(session.status(), "mines 2  moves 0  playing");
+    t.checkExpect(session.apply("f 0 1"), true);
+    t.checkExpect(session.game.board.isMarked(1), true);
+    session.apply("R 1 1");
+    // a number without enough flags around it does not chord, but counts as a move
+    session.apply("r 1 1");
+    t.checkExpect(session.status(), "mines 1  moves 3  playing");
+    session.apply("U");
+    session.apply("U");
+    session.apply("U");
+    t.checkExpect(session.game.board.flags, 0);
+    t.checkExpect(session.game.clicks, 0);
+    session.apply("Y");
+    t.checkExpect(session.game.board.flags, 1);
+    session.apply("R 9 9");
+    t.checkExpect(session.status(),
+        "mines 1  moves 1  playing  Cell (9, 9) is not on a 3x4 board");
+    session.apply("R a 9");
+    t.checkExpect(session.message, "bad cell a 9");
+    session.apply("jump");
+    t.checkExpect(session.message, "unknown command jump");
+    session.apply("R 2 0");
+    t.checkExpect(session.status(), "mines 1  moves 2  GAME OVER");
+    t.checkExpect(session.view.minesShown, true);
+    session.apply("R 0 0");
+    t.checkExpect(session.message, "the game is over");
+    session.apply("u");
+    t.checkExpect(session.view.minesShown, false);
+    t.checkExpect(session.apply(" q "), false);
+  }
+
+  // tests playing a whole game from a script
+  void testBatch(Tester t) {
+    java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+    PrintStream out = new PrintStream(bytes, true, StandardCharsets.UTF_8);
+    TerminalGame session = new TerminalGame(this.game(), 10, 10, out, true);
+    try {
+      session.run(new StringReader("R 2 3\nR 0 0\nR 1 0\nR 0 2\n"));
+    }
+    catch (IOException e) {
+      t.checkExpect(e.getMessage(), "no exception");
+    }
+    String output = bytes.toString(StandardCharsets.UTF_8);
+    t.checkExpect(session.game.won(), true);
+    t.checkExpect(output.contains("YOU WIN"), true);
+    t.checkExpect(output.contains("> "), false);
+    // the board is cleared once, and never reprinted
+    t.checkExpect(output.indexOf(TerminalView.CLEAR), 0);
+    t.checkExpect(output.lastIndexOf(TerminalView.CLEAR), 0);
+  }
+}
@@ -0,0 +1,492 @@
+import java.util.concurrent.ConcurrentHashMap;
+
+import tester.*;
+
+//to represent the shape of a board: which of its cells neighbor each other
+//The cells of a board fall into a few classes, such as the corners, the edges and the
+//middle of a square board, and every cell of a class finds its neighbors at the same
+//index offsets from its own. The offsets of each class are worked out once, when the
+//topology is made, so finding the neighbors of a cell is one lookup of its class and
+//one add per neighbor, with no bounds checks and no memory kept per cell.
+//A new shape only says how its cells are classed and, slowly and plainly, what the
+//neighbors of one cell are; every board algorithm then runs on it unchanged.
+abstract class ATopology {
+  int rows;
+  int cols;
+  // offsets[c] holds how far from a cell of class c each of its neighbors is
+  int[][] offsets;
+  // the most neighbors any cell has
+  int maxNeighbors;
+
+  ATopology(int rows, int cols) {
+    if (rows <= 0 || cols <= 0 || (long) rows * cols > Integer.MAX_VALUE - 8) {
+      throw new IllegalArgumentException("Invalid board dimensions: " + rows + "x" + cols);
+    }
+    this.rows = rows;
+    this.cols = cols;
+  }
+
+  // the number of classes of cell
+  abstract int classes();
+
+  // the class of the cell at row and col
+  abstract int cellClass(int row, int col);
+
+  // EFFECT: adds the index of every neighbor of the cell at row and col to out, checking
+  // each against the edges of the board; only used to build the offsets
+  abstract void around(int row, int col, IntList out);
+
+  // 0 for the first of size places, 2 for the last and 1 for any in between
+  static int edge(int at, int size) {
+    if (at == 0) {
+      return 0;
+    }
+    else if (at == size - 1) {
+      return 2;
+    }
+    else {
+      return 1;
+    }
+  }
+
+  // EFFECT: works out the neighbor offsets of every class of cell, from the first cell
+  // of each class met in the first and last few columns of every row; the subclass
+  // constructors call this once their own fields are set
+  void buildOffsets() {
+    this.offsets = new int[this.classes()][];
+    int[] sampleCols = new int[] { 0, 1, 2, this.cols - 3, this.cols - 2, this.cols - 1 };
+    IntList around = new IntList();
+    for (int row = 0; row < this.rows; row++) {
+      for (int s = 0; s < sampleCols.length; s++) {
+        int col = sampleCols[s];
+        if (col >= 0 && col < this.cols && this.offsets[this.cellClass(row, col)] == null) {
+          around.clear();
+          this.around(row, col, around);
+          this.offsets[this.cellClass(row, col)] = this.distinctOffsets(row * this.cols + col,
+              around);
+        }
+      }
+    }
+    for (int c = 0; c < this.offsets.length; c++) {
+      if (this.offsets[c] == null) {
+        this.offsets[c] = new int[0];
+      }
+      this.maxNeighbors = Math.max(this.maxNeighbors, this.offsets[c].length);
+    }
+    if (this.maxNeighbors > Board.NEAR_MINES) {
+      throw new IllegalArgumentException("A cell cannot have " + this.maxNeighbors
+          + " neighbors, only " + Board.NEAR_MINES + " fit in its count of mines");
+    }
+  }
+
+  // the offsets from idx of the cells in around, leaving out idx itself and repeats,
+  // which wrapping around a narrow board can produce
+  int[] distinctOffsets(int idx, IntList around) {
+    IntList distinct = new IntList();
+    for (int k = 0; k < around.size(); k++) {
+      int offset = around.get(k) - idx;
+      boolean seen = offset == 0;
+      for (int j = 0; j < distinct.size(); j++) {
+        seen = seen || distinct.get(j) == offset;
+      }
+      if (!seen) {
+        distinct.add(offset);
+      }
+    }
+    return distinct.toArray();
+  }
+
+  // EFFECT: writes the indices of the cells around idx into out, which must hold at
+  // least maxNeighbors entries
+  // returns how many neighbors were written
+  int neighbors(int idx, int[] out) {
+    int row = idx / this.cols;
+    int[] table = this.offsets[this.cellClass(row, idx - row * this.cols)];
+    for (int k = 0; k < table.length; k++) {
+      out[k] = idx + table[k];
+    }
+    return table.length;
+  }
+
+  // the number of mines among the neighbors of the cell at idx of cells
+  int countMines(byte[] cells, int idx) {
+    int row = idx / this.cols;
+    int[] table = this.offsets[this.cellClass(row, idx - row * this.cols)];
+    int sum = 0;
+    for (int k = 0; k < table.length; k++) {
+      sum += (cells[idx + table[k]] >> 4) & 1;
+    }
+    return sum;
+  }
+
+  // EFFECT: stores the number of neighboring mines in every cell of board that is not a
+  // mine, in the rows from firstRow up to but not including lastRow
+  void countRows(Board board, int firstRow, int lastRow) {
+    byte[] cells = board.cells;
+    for (int row = firstRow; row < lastRow; row++) {
+      for (int col = 0; col < this.cols; col++) {
+        int idx = row * this.cols + col;
+        if ((cells[idx] & Board.MINE) == 0) {
+          int[] table = this.offsets[this.cellClass(row, col)];
+          int sum = 0;
+          for (int k = 0; k < table.length; k++) {
+            sum += (cells[idx + table[k]] >> 4) & 1;
+          }
+          cells[idx] = (byte) ((cells[idx] & ~Board.NEAR_MINES) | sum);
+        }
+      }
+    }
+  }
+}
+
+//to represent a rectangular board, where each cell touches the up to 8 cells around it
+class SquareTopology extends ATopology {
+  // topologies never change once made, so every board of a size can share one; at most
+  // MAX_SHARED sizes are kept
+  static final ConcurrentHashMap<Long, SquareTopology> SHARED =
+      new ConcurrentHashMap<Long, SquareTopology>();
+  static final int MAX_SHARED = 256;
+
+  SquareTopology(int rows, int cols) {
+    super(rows, cols);
+    this.buildOffsets();
+  }
+
+  // the topology of a rows by cols board, shared with the other boards of that size
+  static SquareTopology of(int rows, int cols) {
+    Long size = ((long) rows << 32) | (cols & 0xFFFFFFFFL);
+    SquareTopology shared = SHARED.get(size);
+    if (shared == null) {
+      shared = new SquareTopology(rows, cols);
+      if (SHARED.size() < MAX_SHARED) {
+        SHARED.put(size, shared);
+      }
+    }
+    return shared;
+  }
+
+  // corners, edges and the middle
+  int classes() {
+    return 9;
+  }
+
+  // the class of the cell at row and col
+  int cellClass(int row, int col) {
+    return ATopology.edge(row, this.rows) * 3 + ATopology.edge(col, this.cols);
+  }
+
+  // EFFECT: adds the index of every cell around the cell at row and col to out
+  void around(int row, int col, IntList out) {
+    for (int r = Math.max(row - 1, 0); r <= Math.min(row + 1, this.rows - 1); r++) {
+      for (int c = Math.max(col - 1, 0); c <= Math.min(col + 1, this.cols - 1); c++) {
+        out.add(r * this.cols + c);
+      }
+    }
+  }
+
+  // EFFECT: stores the number of neighboring mines in every cell of board that is not a
+  // mine, in the rows from firstRow up to but not including lastRow
+  // Each row is counted in one pass: the mines in each column of the three rows
+  // around it are summed, then a sliding window adds up three of those column sums
+  void countRows(Board board, int firstRow, int lastRow) {
+    byte[] cells = board.cells;
+    int[] columnMines = new int[this.cols + 2];
+    for (int row = firstRow; row < lastRow; row++) {
+      int top = Math.max(row - 1, 0);
+      int bottom = Math.min(row + 1, this.rows - 1);
+      for (int col = 0; col < this.cols; col++) {
+        int sum = 0;
+        for (int r = top; r <= bottom; r++) {
+          sum += (cells[r * this.cols + col] >> 4) & 1;
+        }
+        columnMines[col + 1] = sum;
+      }
+      int window = columnMines[1];
+      int start = row * this.cols;
+      for (int col = 0; col < this.cols; col++) {
+        window += columnMines[col + 2] - (col > 0 ? columnMines[col - 1] : 0);
+        byte cell = cells[start + col];
+        if ((cell & Board.MINE) == 0) {
+          cells[start + col] = (byte) ((cell & ~Board.NEAR_MINES) | window);
+        }
+      }
+    }
+  }
+}
+
+//to represent a rectangular board whose edges wrap around, so that every cell has
+//8 neighbors and the last row and column touch the first
+class TorusTopology extends ATopology {
+
+  TorusTopology(int rows, int cols) {
+    super(rows, cols);
+    this.buildOffsets();
+  }
+
+  // the edges wrap in different directions, so they are classed like a square board's
+  int classes() {
+    return 9;
+  }
+
+  // the class of the cell at row and col
+  int cellClass(int row, int col) {
+    return ATopology.edge(row, this.rows) * 3 + ATopology.edge(col, this.cols);
+  }
+
+  // EFFECT: adds the index of every cell around the cell at row and col to out,
+  // wrapping past the edges
+  void around(int row, int col, IntList out) {
+    for (int i = -1; i < 2; i++) {
+      for (int j = -1; j < 2; j++) {
+        int r = (row + i + this.rows) % this.rows;
+        int c = (col + j + this.cols) % this.cols;
+        out.add(r * this.cols + c);
+      }
+    }
+  }
+}
+
+//to represent a board of hexagons, where each cell touches up to 6 others
+//Rows are laid out with every odd row pushed half a cell to the right, so a cell on an
+//even row touches the two cells below-left and below it, and one on an odd row the two
+//below and below-right, and likewise above
+class HexTopology extends ATopology {
+
+  HexTopology(int rows, int cols) {
+    super(rows, cols);
+    this.buildOffsets();
+  }
+
+  // the classes of a square board, once for even rows and once for odd ones
+  int classes() {
+    return 18;
+  }
+
+  // the class of the cell at row and col
+  int cellClass(int row, int col) {
+    return (row & 1) * 9 + ATopology.edge(row, this.rows) * 3
+        + ATopology.edge(col, this.cols);
+  }
+
+  // EFFECT: adds the index of every cell touching the cell at row and col to out
+  void around(int row, int col, IntList out) {
+    int shift = row & 1;
+    for (int r = Math.max(row - 1, 0); r <= Math.min(row + 1, this.rows - 1); r++) {
+      int first = col - 1;
+      int last = col + 1;
+      if (r != row) {
+        first = col - 1 + shift;
+        last = col + shift;
+      }
+      for (int c = Math.max(first, 0); c <= Math.min(last, this.cols - 1); c++) {
+        out.add(r * this.cols + c);
+      }
+    }
+  }
+}
+
+//to represent a stack of layers, each a rectangle of layerRows by cols cells, where
+//each cell touches the up to 8 cells around it in its own layer and the cells straight
+//above and below it; touching the whole cube around a cell would give it 26 neighbors,
+//more mines than a cell's 4 bit count can hold
+//The layers are stored one after another, so the board has layers * layerRows rows
+class LayeredTopology extends ATopology {
+  int layers;
+  int layerRows;
+
+  LayeredTopology(int layers, int layerRows, int cols) {
+    super(layers * layerRows, cols);
+    if (layers <= 0 || layerRows <= 0) {
+      throw new IllegalArgumentException(
+          "Invalid board dimensions: " + layers + "x" + layerRows + "x" + cols);
+    }
+    this.layers = layers;
+    this.layerRows = layerRows;
+    this.buildOffsets();
+  }
+
+  // the classes of a square board, for the first, middle and last layers
+  int classes() {
+    return 27;
+  }
+
+  // the class of the cell at row and col
+  int cellClass(int row, int col) {
+    return ATopology.edge(row / this.layerRows, this.layers) * 9
+        + ATopology.edge(row % this.layerRows, this.layerRows) * 3
+        + ATopology.edge(col, this.cols);
+  }
+
+  // EFFECT: adds the index of every cell around the cell at row and col in its layer,
+  // and of the cells above and below it, to out
+  void around(int row, int col, IntList out) {
+    int layer = row / this.layerRows;
+    int first = layer * this.layerRows;
+    for (int r = Math.max(row - 1, first); r <= Math.min(row + 1, first + this.layerRows - 1);
+        r++) {
+      for (int c = Math.max(col - 1, 0); c <= Math.min(col + 1, this.cols - 1); c++) {
+        out.add(r * this.cols + c);
+      }
+    }
+    if (layer > 0) {
+      out.add((row - this.layerRows) * this.cols + col);
+    }
+    if (layer < this.layers - 1) {
+      out.add((row + this.layerRows) * this.cols + col);
+    }
+  }
+}
+
+//tests and examples for the topologies
+class ExamplesTopology {
+
+  // the neighbors of idx on topology, as an array
+  int[] neighbors(ATopology topology, int idx) {
+    int[] out = new int[topology.maxNeighbors];
+    int n = topology.neighbors(idx, out);
+    int[] result = new int[n];
+    for (int k = 0; k < n; k++) {
+      result[k] = out[k];
+    }
+    java.util.Arrays.sort(result);
+    return result;
+  }
+
+  // does every cell of topology find the same neighbors through its offsets as its
+  // plain definition gives, and is every cell a neighbor of its own neighbors?
+  boolean matchesDefinition(ATopology topology) {
+    boolean matches = true;
+    IntList around = new IntList();
+    for (int idx = 0; idx < topology.rows * topology.cols; idx++) {
+      around.clear();
+      topology.around(idx / topology.cols, idx % topology.cols, around);
+      int[] expected = topology.distinctOffsets(idx, around);
+      for (int k = 0; k < expected.length; k++) {
+        expected[k] += idx;
+      }
+      java.util.Arrays.sort(expected);
+      int[] actual = this.neighbors(topology, idx);
+      matches = matches && java.util.Arrays.equals(expected, actual);
+      for (int k = 0; k < actual.length; k++) {
+        matches = matches && java.util.Arrays.binarySearch(
+            this.neighbors(topology, actual[k]), idx) >= 0;
+      }
+    }
+    return matches;
+  }
+
+  // tests for the neighbors on each topology
+  void testNeighbors(Tester t) {
+    SquareTopology square = new SquareTopology(3, 4);
+    t.checkExpect(this.neighbors(square, 0), new int[] { 1, 4, 5 });
+    t.checkExpect(this.neighbors(square, 5), new int[] { 0, 1, 2, 4, 6, 8, 9, 10 });
+    t.checkExpect(square.maxNeighbors, 8);
+    t.checkExpect(SquareTopology.of(3, 4) == SquareTopology.of(3, 4), true);
+    t.checkExpect(new Board(3, 4).topology == new Board(3, 4).topology, true);
+    TorusTopology torus = new TorusTopology(3, 4);
+    t.checkExpect(this.neighbors(torus, 0), new int[] { 1, 3, 4, 5, 7, 8, 9, 11 });
+    HexTopology hex = new HexTopology(3, 4);
+    t.checkExpect(this.neighbors(hex, 5), new int[] { 1, 2, 4, 6, 9, 10 });
+    t.checkExpect(this.neighbors(hex, 4), new int[] { 0, 1, 5, 8, 9 });
+    t.checkExpect(hex.maxNeighbors, 6);
+    LayeredTopology layered = new LayeredTopology(3, 3, 3);
+    t.checkExpect(this.neighbors(layered, 13),
+        new int[] { 4, 9, 10, 11, 12, 14, 15, 16, 17, 22 });
+    t.checkExpect(this.neighbors(layered, 0), new int[] { 1, 3, 4, 9 });
+    t.checkExpect(layered.maxNeighbors, 10);
+    // the last row of one layer does not touch the first row of the next
+    t.checkExpect(this.neighbors(layered, 6), new int[] { 3, 4, 7, 15 });
+  }
+
+  // tests that the offsets agree with the plain definitions, including on boards too
+  // narrow for every class to appear and ones where wrapping meets itself
+  void testOffsets(Tester t) {
+    int[][] sizes = new int[][] { { 1, 1 }, { 1, 5 }, { 2, 2 }, { 2, 7 }, { 5, 1 },
+        { 6, 9 }, { 7, 4 } };
+    for (int[] size : sizes) {
+      t.checkExpect(this.matchesDefinition(new SquareTopology(size[0], size[1])), true);
+      t.checkExpect(this.matchesDefinition(new TorusTopology(size[0], size[1])), true);
+      t.checkExpect(this.matchesDefinition(new HexTopology(size[0], size[1])), true);
+      t.checkExpect(this.matchesDefinition(new LayeredTopology(size[0], 2, size[1])), true);
+      t.checkExpect(this.matchesDefinition(new LayeredTopology(3, size[0], size[1])), true);
+    }
+    t.checkExpect(this.neighbors(new TorusTopology(1, 1), 0), new int[0]);
+    t.checkExpect(this.neighbors(new TorusTopology(2, 2), 0), new int[] { 1, 2, 3 });
+  }
+
+  // tests for making topologies of invalid sizes
+  void testInvalid(Tester t) {
+    t.checkConstructorException(new IllegalArgumentException("Invalid board dimensions: 0x4"),
+        "HexTopology", 0, 4);
+    t.checkConstructorException(
+        new IllegalArgumentException("Invalid board dimensions: -1x-3x3"),
+        "LayeredTopology", -1, -3, 3);
+  }
+
+  // tests that counting, flooding, chording and winning run on every topology
+  void testGames(Tester t) {
+    // a torus with one mine: every cell is next to it or next to a cell that is
+    // . . . .
+    // . X . .
+    // . . . .
+    // . . . .
+    Board torus = new Board(new TorusTopology(4, 4));
+    torus.placeMine(torus.index(1, 1));
+    torus.computeCounts();
+    t.checkExpect(torus.nearMines(torus.index(0, 0)), 1);
+    t.checkExpect(torus.nearMines(torus.index(3, 3)), 0);
+    Game game = new Game(torus, 1);
+    t.checkExpect(game.reveal(3, 3), 15);
+    t.checkExpect(game.won(), true);
+    // the same mine on a square board leaves the far corner's flood smaller
+    Board square = new Board(4, 4);
+    square.placeMine(square.index(1, 1));
+    square.computeCounts();
+    t.checkExpect(square.nearMines(square.index(3, 3)), 0);
+    t.checkExpect(square.uncover(square.index(3, 3)), 12);
+    // the middle cells of the top and bottom layers of a 3x3x3 cube count the mine in
+    // the middle of the cube, and the flood through the top layer stops at the middle one
+    Board cube = new Board(new LayeredTopology(3, 3, 3));
+    cube.placeMine(13);
+    cube.computeCounts();
+    t.checkExpect(cube.nearMines(4), 1);
+    t.checkExpect(cube.nearMines(22), 1);
+    t.checkExpect(cube.countMines(0), 0);
+    t.checkExpect(cube.uncover(0), 17);
+    // hexagons: the mine at (1, 1) touches (0, 1) and (0, 2) above it on an odd row
+    Board hex = new Board(new HexTopology(3, 4));
+    hex.placeMine(hex.index(1, 1));
+    hex.computeCounts();
+    t.checkExpect(hex.nearMines(hex.index(0, 2)), 1);
+    t.checkExpect(hex.nearMines(hex.index(0, 0)), 0);
+    t.checkExpect(hex.nearMines(hex.index(2, 0)), 0);
+    t.checkExpect(hex.uncover(hex.index(0, 0)), 3);
+  }
+
+  // tests that random boards count the same on every path, and that the 3BV still
+  // matches the clicks it takes to clear them
+  void testRandomBoards(Tester t) {
+    java.util.Random rand = new java.util.Random(9);
+    boolean matches = true;
+    for (int i = 0; i < 40; i++) {
+      int rows = 1 + rand.nextInt(12);
+      int cols = 1 + rand.nextInt(12);
+      ATopology[] topologies = new ATopology[] { new SquareTopology(rows, cols),
+          new TorusTopology(rows, cols), new HexTopology(rows, cols),
+          new LayeredTopology(rows, 3, cols) };
+      for (ATopology topology : topologies) {
+        Board board = new Board(topology);
+        board.placeRandomMines(rand.nextInt(board.size() / 4 + 1), rand);
+        board.computeCounts();
+        for (int idx = 0; idx < board.size(); idx++) {
+          matches = matches && (board.isMine(idx) || board.nearMines(idx) == board.countMines(idx));
+        }
+        Game game = new Game(board, board.mines.size());
+        BoardAnalytics analytics = new BoardAnalytics(board);
+        matches = matches && new ExamplesAnalytics().playedClicks(game) == analytics.bbbv
+            && game.won();
+      }
+    }
+    t.checkExpect(matches, true);
+  }
+}
@@ -0,0 +1,606 @@
+import java.awt.Color;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+
+import tester.*;
+import javalib.impworld.*;
+import javalib.worldimages.*;
+
+//to represent a summary of every square block of cells on a board, at each power of
+//two, for drawing boards zoomed out so far that many cells share one pixel
+//Level l holds one byte for each 2^l by 2^l block of cells, with a bit set for each
+//kind of cell the block holds. A change to a cell only marks its block at level 1 as
+//stale; stale blocks, and the blocks above them, are worked out again the next time
+//the summary is read, so a flood costs as much as the cells it changed.
+class StateMipmap implements ICellListener {
+  // the kinds of cell a block can hold
+  static final int COVERED = 1;
+  static final int OPEN = 2;
+  static final int FLAGGED = 4;
+  static final int EXPLODED = 8;
+
+  Board board;
+  // levels[l] summarizes the blocks at level l, for l from 1 on; levels[0] is unused
+  byte[][] levels;
+  int[] levelRows;
+  int[] levelCols;
+  // the blocks at level 1 that are stale, and which blocks are in that list
+  IntList stale;
+  BitSet listed;
+  // are the covered mines shown as exploded, as they are once the game is lost?
+  boolean minesShown;
+
+  StateMipmap(Board board) {
+    this.board = board;
+    int count = 1;
+    while ((board.rows - 1) >> (count - 1) > 0 || (board.cols - 1) >> (count - 1) > 0) {
+      count++;
+    }
+    this.levels = new byte[count][];
+    this.levelRows = new int[count];
+    this.levelCols = new int[count];
+    this.levelRows[0] = board.rows;
+    this.levelCols[0] = board.cols;
+    for (int l = 1; l < count; l++) {
+      this.levelRows[l] = (this.levelRows[l - 1] + 1) / 2;
+      this.levelCols[l] = (this.levelCols[l - 1] + 1) / 2;
+      this.levels[l] = new byte[this.levelRows[l] * this.levelCols[l]];
+      for (int idx = 0; idx < this.levels[l].length; idx++) {
+        int cols = this.levelCols[l];
+        this.levels[l][idx] = this.summarize(l, idx / cols, idx % cols);
+      }
+    }
+    this.stale = new IntList();
+    this.listed = new BitSet();
+    this.minesShown = false;
+    board.addListener(this);
+  }
+
+  // the kind of cell the given board cell is, counting it as exploded if it is a mine
+  // and the mines are shown
+  static int kind(byte cell, boolean minesShown) {
+    if ((cell & Board.UNCOVERED) != 0 || minesShown && (cell & Board.MINE) != 0) {
+      if ((cell & Board.MINE) != 0) {
+        return EXPLODED;
+      }
+      return OPEN;
+    }
+    if ((cell & Board.MARKED) != 0) {
+      return FLAGGED;
+    }
+    return COVERED;
+  }
+
+  // the kinds of cell held by the block at row and col of the given level, read from
+  // the level below it
+  byte summarize(int level, int row, int col) {
+    int below = level - 1;
+    int lastRow = Math.min(2 * row + 2, this.levelRows[below]);
+    int lastCol = Math.min(2 * col + 2, this.levelCols[below]);
+    int kinds = 0;
+    for (int r = 2 * row; r < lastRow; r++) {
+      for (int c = 2 * col; c < lastCol; c++) {
+        kinds |= this.get(below, r, c);
+      }
+    }
+    return (byte) kinds;
+  }
+
+  // the kinds of cell held by the block at row and col of the given level; level 0 is
+  // the board's own cells
+  int get(int level, int row, int col) {
+    if (level == 0) {
+      return StateMipmap.kind(this.board.cells[row * this.board.cols + col], this.minesShown);
+    }
+    return this.levels[level][row * this.levelCols[level] + col];
+  }
+
+  // the number of levels, counting the board itself as level 0
+  int levels() {
+    return this.levels.length;
+  }
+
+  // EFFECT: marks the block at level 1 holding the cell at idx as stale
+  public void cellChanged(int idx) {
+    if (this.levels.length < 2) {
+      return;
+    }
+    int block = (idx / this.board.cols) / 2 * this.levelCols[1] + (idx % this.board.cols) / 2;
+    if (!this.listed.get(block)) {
+      this.listed.set(block);
+      this.stale.add(block);
+    }
+  }
+
+  // EFFECT: shows or hides the covered mines, marking the blocks holding them as stale
+  // if that changes
+  void showMines(boolean show) {
+    if (show == this.minesShown) {
+      return;
+    }
+    this.minesShown = show;
+    for (int i = 0; i < this.board.mines.size(); i++) {
+      this.cellChanged(this.board.mines.get(i));
+    }
+  }
+
+  // EFFECT: works out every stale block again, and then the blocks above them
+  void refresh() {
+    IntList blocks = this.stale;
+    for (int l = 1; l < this.levels.length && !blocks.isEmpty(); l++) {
+      IntList above = new IntList();
+      BitSet aboveListed = new BitSet();
+      int cols = this.levelCols[l];
+      for (int i = 0; i < blocks.size(); i++) {
+        int block = blocks.get(i);
+        int row = block / cols;
+        int col = block % cols;
+        this.levels[l][block] = this.summarize(l, row, col);
+        if (l + 1 < this.levels.length) {
+          int parent = row / 2 * this.levelCols[l + 1] + col / 2;
+          if (!aboveListed.get(parent)) {
+            aboveListed.set(parent);
+            above.add(parent);
+          }
+        }
+      }
+      blocks = above;
+    }
+    this.stale = new IntList();
+    this.listed.clear();
+  }
+}
+
+//to represent the part of a board shown on screen, and how large its cells are drawn
+//At zoom 0 each cell is IConstants.tileSize pixels across, and each step out halves
+//that until a cell is a single pixel; after that each step out doubles the number of
+//cells across one pixel. Positions are in pixels of the whole board at the current
+//zoom, with left and top the board pixel at the top left corner of the screen.
+//Zoomed in, cells are drawn with their tile images, and only the visible ones are
+//drawn. Below DETAIL_PIXELS pixels per cell the screen is drawn as one image with a
+//colored pixel per cell, or per block of cells, so a frame costs as much as the
+//screen has pixels whatever the size of the board.
+class Viewport {
+  // the largest screen a world opens, in pixels
+  static final int MAX_WIDTH = 1200;
+  static final int MAX_HEIGHT = 900;
+  // fewer pixels per cell than this are drawn as plain colors
+  static final int DETAIL_PIXELS = 8;
+  // the color of a block holding both covered and uncovered cells
+  static final Color MIXED = new Color(96, 160, 160);
+
+  Board board;
+  int width;
+  int height;
+  int zoom;
+  int cellPixels;
+  int cellsPerPixel;
+  int left;
+  int top;
+  // has the view changed since the screen was last drawn?
+  boolean moved;
+  // the tile images at the current zoom, keyed by the full size image they scale
+  IdentityHashMap<WorldImage, WorldImage> scaled;
+  // made the first time the board is drawn with several cells to a pixel
+  StateMipmap mipmap;
+  // are the covered mines drawn as exploded, as they are once the game is lost?
+  boolean minesShown;
+
+  Viewport(Board board, int maxWidth, int maxHeight) {
+    this.board = board;
+    this.width = Math.min(maxWidth, board.cols * IConstants.tileSize);
+    this.height = Math.min(maxHeight, board.rows * IConstants.tileSize);
+    this.scaled = new IdentityHashMap<WorldImage, WorldImage>();
+    this.setZoom(0);
+    this.left = 0;
+    this.top = 0;
+    this.moved = false;
+    this.minesShown = false;
+  }
+
+  Viewport(Board board) {
+    this(board, MAX_WIDTH, MAX_HEIGHT);
+  }
+
+  // EFFECT: sets the zoom, and the sizes of cells that follow from it
+  void setZoom(int zoom) {
+    int pixelSteps = 31 - Integer.numberOfLeadingZeros(IConstants.tileSize);
+    this.zoom = zoom;
+    this.cellPixels = Math.max(IConstants.tileSize >> zoom, 1);
+    this.cellsPerPixel = 1 << Math.max(zoom - pixelSteps, 0);
+    this.scaled.clear();
+    this.moved = true;
+  }
+
+  // the width of the whole board in pixels at the current zoom
+  int boardWidth() {
+    return (this.board.cols * this.cellPixels + this.cellsPerPixel - 1) / this.cellsPerPixel;
+  }
+
+  // the height of the whole board in pixels at the current zoom
+  int boardHeight() {
+    return (this.board.rows * this.cellPixels + this.cellsPerPixel - 1) / this.cellsPerPixel;
+  }
+
+  // is the board drawn with tile images, rather than colors?
+  boolean detailed() {
+    return this.cellPixels >= DETAIL_PIXELS;
+  }
+
+  // EFFECT: keeps the screen on the board, or at its top left if the board is smaller
+  void clamp() {
+    this.left = Math.max(Math.min(this.left, this.boardWidth() - this.width), 0);
+    this.top = Math.max(Math.min(this.top, this.boardHeight() - this.height), 0);
+  }
+
+  // EFFECT: moves the screen dx pixels right and dy pixels down, staying on the board
+  void pan(int dx, int dy) {
+    int oldLeft = this.left;
+    int oldTop = this.top;
+    this.left += dx;
+    this.top += dy;
+    this.clamp();
+    if (this.left != oldLeft || this.top != oldTop) {
+      this.moved = true;
+    }
+  }
+
+  // EFFECT: zooms by the given number of steps, out if positive and in if negative,
+  // keeping the cell at the center of the screen there
+  // Zooming in stops at zoom 0, and zooming out stops once the whole board fits
+  // returns whether the zoom changed
+  boolean zoomBy(int steps) {
+    int zoom = this.zoom + steps;
+    if (zoom < 0 || steps > 0 && this.boardWidth() <= this.width
+        && this.boardHeight() <= this.height) {
+      return false;
+    }
+    double centerCol = (this.left + this.width / 2.0) * this.cellsPerPixel / this.cellPixels;
+    double centerRow = (this.top + this.height / 2.0) * this.cellsPerPixel / this.cellPixels;
+    this.setZoom(zoom);
+    this.left = (int) Math.round(centerCol * this.cellPixels / this.cellsPerPixel
+        - this.width / 2.0);
+    this.top = (int) Math.round(centerRow * this.cellPixels / this.cellsPerPixel
+        - this.height / 2.0);
+    this.clamp();
+    return true;
+  }
+
+  // the column of the cell under screen x, which may be past the board
+  int colAt(int x) {
+    return (int) ((long) (this.left + x) * this.cellsPerPixel / this.cellPixels);
+  }
+
+  // the row of the cell under screen y, which may be past the board
+  int rowAt(int y) {
+    return (int) ((long) (this.top + y) * this.cellsPerPixel / this.cellPixels);
+  }
+
+  // the index of the cell under the screen position p, or -1 if there is none
+  int cellAt(Posn p) {
+    if (p.x < 0 || p.y < 0 || p.x >= this.width || p.y >= this.height) {
+      return -1;
+    }
+    int row = this.rowAt(p.y);
+    int col = this.colAt(p.x);
+    if (row >= this.board.rows || col >= this.board.cols) {
+      return -1;
+    }
+    return this.board.index(row, col);
+  }
+
+  // the first visible column
+  int firstCol() {
+    return this.colAt(0);
+  }
+
+  // the column after the last visible one
+  int lastCol() {
+    return Math.min(this.colAt(this.width - 1) + 1, this.board.cols);
+  }
+
+  // the first visible row
+  int firstRow() {
+    return this.rowAt(0);
+  }
+
+  // the row after the last visible one
+  int lastRow() {
+    return Math.min(this.rowAt(this.height - 1) + 1, this.board.rows);
+  }
+
+  // is the cell at idx on screen?
+  boolean visible(int idx) {
+    int row = idx / this.board.cols;
+    int col = idx % this.board.cols;
+    return row >= this.firstRow() && row < this.lastRow() && col >= this.firstCol()
+        && col < this.lastCol();
+  }
+
+  // the screen x of the center of the cell in col, when detailed
+  int centerX(int col) {
+    return col * this.cellPixels - this.left + this.cellPixels / 2;
+  }
+
+  // the screen y of the center of the cell in row, when detailed
+  int centerY(int row) {
+    return row * this.cellPixels - this.top + this.cellPixels / 2;
+  }
+
+  // image, a full size tile image, drawn at the current zoom
+  WorldImage scale(WorldImage image) {
+    if (this.cellPixels == IConstants.tileSize) {
+      return image;
+    }
+    WorldImage scaled = this.scaled.get(image);
+    if (scaled == null) {
+      scaled = new ScaleImage(image, (double) this.cellPixels / IConstants.tileSize);
+      this.scaled.put(image, scaled);
+    }
+    return scaled;
+  }
+
+  // the color a block holding the given kinds of cell is drawn with
+  static Color color(int kinds) {
+    if ((kinds & StateMipmap.EXPLODED) != 0) {
+      return IConstants.explodedMineTile;
+    }
+    else if ((kinds & StateMipmap.FLAGGED) != 0) {
+      return Color.YELLOW;
+    }
+    else if (kinds == (StateMipmap.COVERED | StateMipmap.OPEN)) {
+      return MIXED;
+    }
+    else if (kinds == StateMipmap.OPEN) {
+      return IConstants.unlockedTileColor;
+    }
+    return IConstants.tileColor;
+  }
+
+  // the color the cell at idx is drawn with when it has a few pixels to itself:
+  // uncovered numbers take the color of their number
+  Color cellColor(int idx) {
+    int kind = StateMipmap.kind(this.board.cells[idx], this.minesShown);
+    if (kind == StateMipmap.OPEN && this.board.nearMines(idx) > 0) {
+      return IConstants.colors.get(this.board.nearMines(idx) - 1);
+    }
+    return Viewport.color(kind);
+  }
+
+  // EFFECT: shows or hides the covered mines, in the block summary too if there is one
+  void showMines(boolean show) {
+    this.minesShown = show;
+    if (this.mipmap != null) {
+      this.mipmap.showMines(show);
+    }
+  }
+
+  // the screen drawn with a colored pixel per cell, or per block of cells
+  // EFFECT: brings the block summary up to date, making it if it is needed
+  WorldImage overview() {
+    ComputedPixelImage image = new ComputedPixelImage(this.width, this.height);
+    int level = Integer.numberOfTrailingZeros(this.cellsPerPixel);
+    if (level > 0) {
+      if (this.mipmap == null) {
+        this.mipmap = new StateMipmap(this.board);
+        this.mipmap.showMines(this.minesShown);
+      }
+      this.mipmap.refresh();
+    }
+    int blockRows = (this.board.rows + (1 << level) - 1) >> level;
+    int blockCols = (this.board.cols + (1 << level) - 1) >> level;
+    for (int y = 0; y < this.height; y++) {
+      int row = (this.top + y) / this.cellPixels;
+      if (level > 0) {
+        row = this.top + y;
+      }
+      if (row >= blockRows) {
+        break;
+      }
+      for (int x = 0; x < this.width; x++) {
+        int col = (this.left + x) / this.cellPixels;
+        if (level > 0) {
+          col = this.left + x;
+        }
+        if (col >= blockCols) {
+          break;
+        }
+        if (level == 0) {
+          image.setPixel(x, y, this.cellColor(row * this.board.cols + col));
+        }
+        else {
+          image.setPixel(x, y, Viewport.color(this.mipmap.get(level, row, col)));
+        }
+      }
+    }
+    return image;
+  }
+}
+
+//tests and examples for Viewport and StateMipmap
+class ExamplesViewport {
+
+  // tests for the sizes that follow from the zoom
+  void testZoom(Tester t) {
+    Board board = new Board(1000, 2000);
+    Viewport view = new Viewport(board, 600, 400);
+    t.checkExpect(view.width, 600);
+    t.checkExpect(view.boardWidth(), 60000);
+    t.checkExpect(view.detailed(), true);
+    t.checkExpect(view.zoomBy(-1), false);
+    view.zoomBy(1);
+    t.checkExpect(view.cellPixels, 15);
+    t.checkExpect(view.detailed(), true);
+    view.zoomBy(1);
+    t.checkExpect(view.cellPixels, 7);
+    t.checkExpect(view.detailed(), false);
+    view.zoomBy(2);
+    t.checkExpect(view.cellPixels, 1);
+    t.checkExpect(view.cellsPerPixel, 1);
+    view.zoomBy(2);
+    t.checkExpect(view.cellsPerPixel, 4);
+    t.checkExpect(view.boardWidth(), 500);
+    // the whole board fits now, so zooming out further does nothing
+    t.checkExpect(view.zoomBy(1), false);
+    t.checkExpect(view.left, 0);
+    t.checkExpect(view.top, 0);
+    // a small board fits at full size and cannot zoom out at all
+    Viewport small = new Viewport(new Board(3, 4));
+    t.checkExpect(small.width, 4 * IConstants.tileSize);
+    t.checkExpect(small.zoomBy(1), false);
+  }
+
+  // tests for pan and for keeping the center while zooming
+  void testPan(Tester t) {
+    Viewport view = new Viewport(new Board(100, 100), 300, 300);
+    view.moved = false;
+    view.pan(-50, 0);
+    t.checkExpect(view.moved, false);
+    view.pan(1000, 20000);
+    t.checkExpect(view.left, 1000);
+    t.checkExpect(view.top, 3000 - 300);
+    t.checkExpect(view.moved, true);
+    view.pan(0, -1700);
+    // the cell at the center of the screen stays there
+    int centerCol = view.colAt(150);
+    int centerRow = view.rowAt(150);
+    view.zoomBy(1);
+    t.checkExpect(view.colAt(150), centerCol);
+    t.checkExpect(view.rowAt(150), centerRow);
+    t.checkExpect(view.cellAt(new Posn(150, 150)), view.board.index(centerRow, centerCol));
+    t.checkExpect(view.cellAt(new Posn(-1, 150)), -1);
+    t.checkExpect(view.cellAt(new Posn(300, 150)), -1);
+  }
+
+  // tests for the visible range of cells
+  void testVisible(Tester t) {
+    Viewport view = new Viewport(new Board(100, 100), 300, 200);
+    view.pan(45, 0);
+    t.checkExpect(view.firstCol(), 1);
+    t.checkExpect(view.lastCol(), 12);
+    t.checkExpect(view.firstRow(), 0);
+    t.checkExpect(view.lastRow(), 7);
+    t.checkExpect(view.visible(view.board.index(6, 11)), true);
+    t.checkExpect(view.visible(view.board.index(7, 11)), false);
+    t.checkExpect(view.visible(view.board.index(0, 0)), false);
+    t.checkExpect(view.centerX(1), 0);
+    t.checkExpect(view.centerY(0), 15);
+    WorldImage covered = view.scale(TileImages.COVERED);
+    t.checkExpect(covered, TileImages.COVERED);
+    view.zoomBy(1);
+    t.checkExpect(view.scale(TileImages.COVERED) == view.scale(TileImages.COVERED), true);
+    t.checkExpect(view.scale(TileImages.COVERED),
+        new ScaleImage(TileImages.COVERED, 0.5));
+  }
+
+  // tests for StateMipmap
+  void testMipmap(Tester t) {
+    Board board = new Board(5, 6);
+    board.placeMine(board.index(4, 5));
+    board.computeCounts();
+    StateMipmap mipmap = new StateMipmap(board);
+    t.checkExpect(mipmap.levels(), 4);
+    t.checkExpect(mipmap.levelRows[1], 3);
+    t.checkExpect(mipmap.levelCols[3], 1);
+    t.checkExpect(mipmap.get(3, 0, 0), StateMipmap.COVERED);
+    board.toggleMarked(board.index(4, 5));
+    board.setUncovered(board.index(0, 0));
+    // nothing changes until the summary is refreshed
+    t.checkExpect(mipmap.get(3, 0, 0), StateMipmap.COVERED);
+    mipmap.refresh();
+    t.checkExpect(mipmap.get(3, 0, 0),
+        StateMipmap.COVERED | StateMipmap.OPEN | StateMipmap.FLAGGED);
+    t.checkExpect(mipmap.get(1, 0, 0), StateMipmap.OPEN | StateMipmap.COVERED);
+    t.checkExpect(mipmap.get(1, 2, 2), StateMipmap.COVERED | StateMipmap.FLAGGED);
+    t.checkExpect(mipmap.get(2, 1, 1), StateMipmap.COVERED | StateMipmap.FLAGGED);
+    t.checkExpect(mipmap.stale.size(), 0);
+    // the flood opens every cell but the mine
+    board.uncover(board.index(0, 0));
+    board.setUncovered(board.index(4, 5));
+    mipmap.refresh();
+    t.checkExpect(mipmap.get(1, 0, 0), StateMipmap.OPEN);
+    t.checkExpect(mipmap.get(1, 2, 2), StateMipmap.OPEN | StateMipmap.EXPLODED);
+    t.checkExpect(mipmap.get(3, 0, 0), StateMipmap.OPEN | StateMipmap.EXPLODED);
+    t.checkExpect(Viewport.color(mipmap.get(1, 2, 2)), IConstants.explodedMineTile);
+    t.checkExpect(new StateMipmap(new Board(1, 1)).levels(), 1);
+  }
+
+  // tests for overview
+  void testOverview(Tester t) {
+    Board board = new Board(400, 400);
+    board.placeMine(board.index(399, 399));
+    board.computeCounts();
+    board.uncover(0);
+    Viewport view = new Viewport(board, 100, 100);
+    view.zoomBy(2);
+    ComputedPixelImage image = (ComputedPixelImage) view.overview();
+    // seven pixels to a cell
+    t.checkExpect(image.getPixel(0, 0), IConstants.unlockedTileColor);
+    t.checkExpect(image.getPixel(6, 6), IConstants.unlockedTileColor);
+    view.zoomBy(3);
+    t.checkExpect(view.cellsPerPixel, 2);
+    view.pan(1000, 1000);
+    image = (ComputedPixelImage) view.overview();
+    t.checkExpect(image.getPixel(0, 0), IConstants.unlockedTileColor);
+    // the block with the mine in it also holds uncovered cells
+    t.checkExpect(image.getPixel(99, 99), Viewport.MIXED);
+    board.toggleMarked(board.index(399, 399));
+    image = (ComputedPixelImage) view.overview();
+    t.checkExpect(image.getPixel(99, 99), Color.YELLOW);
+    // shown mines are drawn exploded, and hidden again, without uncovering them
+    view.showMines(true);
+    image = (ComputedPixelImage) view.overview();
+    t.checkExpect(image.getPixel(99, 99), IConstants.explodedMineTile);
+    t.checkExpect(board.isUncovered(board.index(399, 399)), false);
+    view.showMines(false);
+    image = (ComputedPixelImage) view.overview();
+    t.checkExpect(image.getPixel(99, 99), Color.YELLOW);
+
+    // past the edge of a small board the screen is left blank
+    Board small = new Board(40, 40);
+    Viewport whole = new Viewport(small, 100, 100);
+    whole.zoomBy(4);
+    image = (ComputedPixelImage) whole.overview();
+    t.checkExpect(image.getPixel(39, 39), IConstants.tileColor);
+    t.checkExpect(image.getPixel(40, 0), null);
+  }
+
+  // tests that a world bigger than the screen only draws what is on screen
+  void testWorldView(Tester t) {
+    Minesweeper world = new Minesweeper(new Game(1000, 1000, 0, 1L));
+    t.checkExpect(world.scene.width, Viewport.MAX_WIDTH);
+    t.checkExpect(world.makeScene().count(), 40 * 30);
+    world.onKeyEvent("right");
+    world.onKeyEvent("down");
+    t.checkExpect(world.viewport.left, Viewport.MAX_WIDTH / 4);
+    t.checkExpect(world.makeScene().count(), 40 * 31);
+    // clicks land on the cell under the mouse, wherever the view is
+    world.onMouseReleased(new Posn(0, 0), "RightButton");
+    t.checkExpect(world.board.isMarked(world.board.index(7, 10)), true);
+    world.onMouseReleased(new Posn(Viewport.MAX_WIDTH, 0), "RightButton");
+    t.checkExpect(world.board.flags, 1);
+    // only the flagged cell is drawn again
+    t.checkExpect(world.makeScene().count(), 40 * 31 + 1);
+    // far out the whole screen is one image
+    for (int i = 0; i < 3; i++) {
+      world.onKeyEvent("-");
+    }
+    t.checkExpect(world.viewport.detailed(), false);
+    t.checkExpect(world.makeScene().count(), 1);
+    // the board fits once two cells share a pixel, so zooming stops there
+    for (int i = 0; i < 3; i++) {
+      world.onKeyEvent("-");
+    }
+    t.checkExpect(world.viewport.zoom, 5);
+    t.checkExpect(world.viewport.cellsPerPixel, 2);
+    world.onKeyEvent("u");
+    t.checkExpect(world.board.flags, 0);
+    world.onMouseReleased(new Posn(0, 0), "LeftButton");
+    world.onTick();
+    t.checkExpect(world.winner, true);
+    WorldScene scene = world.makeScene();
+    t.checkExpect(scene.count(), 2);
+    world.onKeyEvent("+");
+    t.checkExpect(world.viewport.zoom, 4);
+  }
+}